@@ -0,0 +1,168 @@
+import java.util.concurrent.atomic.*;
+
+/**
+ * Class ActionQueue - a lock-free queue of player actions from one producer
+ * thread (the event dispatch thread) to one consumer thread (the game loop).
+ *
+ * The queue is a ring of int slots.  A slot holds the ordinal of an action
+ * in its low byte and a repeat count above it, so zero means "empty".  When
+ * a move is offered and the newest queued entry is the same move, its count
+ * is raised instead of taking a new slot; a burst of key repeats thus takes
+ * one slot however long it is.  The producer raises the count with a
+ * compare-and-set that fails if the consumer has already taken the entry,
+ * in which case the move goes into a new slot.
+ */
+public class ActionQueue
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    private static final MintrisEngine.Action[] ACTIONS = MintrisEngine.Action.values();
+
+    //a slot is (count << COUNT_SHIFT) | ordinal
+    private static final int COUNT_SHIFT = 8;
+    private static final int ORDINAL_MASK = (1 << COUNT_SHIFT) - 1;
+    private static final int MAX_COUNT = Integer.MAX_VALUE >>> COUNT_SHIFT;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private AtomicIntegerArray slots;
+    private int mask;
+
+    //when the entry in each slot was first offered (only kept while
+    //metrics are enabled), and when the last entry polled was
+    private long[] offered;
+    private long lastOffered = 0;
+
+    //the next slot to take from and the next slot to put into; only the
+    //consumer moves head and only the producer moves tail
+    private AtomicLong head = new AtomicLong();
+    private AtomicLong tail = new AtomicLong();
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * ActionQueue
+     *
+     * @param capacity the most entries the queue holds; rounded up to a
+     *                 power of two
+     */
+    public ActionQueue(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        slots = new AtomicIntegerArray(size);
+        offered = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * offer
+     *
+     * Adds an action to the queue.  Only the producer thread may call this.
+     *
+     * @param action what the player did
+     * @return false if the queue was full and the action was dropped
+     */
+    public boolean offer(MintrisEngine.Action action)
+    {
+        long t = tail.get();
+        long size = t - head.get();
+
+        //add to the newest entry if it is the same move
+        if ((size > 0) && coalesces(action))
+        {
+            int index = (int) (t - 1) & mask;
+            int newest = slots.get(index);
+            if ((newest != 0)
+                && ((newest & ORDINAL_MASK) == action.ordinal())
+                && ((newest >>> COUNT_SHIFT) < MAX_COUNT)
+                && slots.compareAndSet(index, newest, newest + (1 << COUNT_SHIFT)))
+            {
+                return true;
+            }
+        }
+
+        if (size > mask)
+        {
+            return false;
+        }
+        if (Metrics.ENABLED)
+        {
+            offered[(int) t & mask] = System.nanoTime();
+        }
+        slots.set((int) t & mask, (1 << COUNT_SHIFT) | action.ordinal());
+        tail.lazySet(t + 1);
+        return true;
+    }//offer
+
+    /**
+     * poll
+     *
+     * Takes the oldest entry from the queue.  Only the consumer thread may
+     * call this.
+     *
+     * @return the entry (see {@link #action} and {@link #count}), or 0 if
+     *         the queue is empty
+     */
+    public int poll()
+    {
+        long h = head.get();
+        if (h == tail.get())
+        {
+            return 0;
+        }
+        int entry = slots.getAndSet((int) h & mask, 0);
+        lastOffered = offered[(int) h & mask];
+        head.lazySet(h + 1);
+        return entry;
+    }//poll
+
+    /**
+     * getLastOffered
+     *
+     * @return the System.nanoTime() at which the entry last polled was first
+     *         offered, if metrics are enabled
+     */
+    public long getLastOffered()
+    {
+        return lastOffered;
+    }
+
+    /**
+     * @return the action of an entry taken from the queue
+     */
+    public static MintrisEngine.Action action(int entry)
+    {
+        return ACTIONS[entry & ORDINAL_MASK];
+    }
+
+    /**
+     * @return how many times the action of an entry was offered in a row
+     */
+    public static int count(int entry)
+    {
+        return entry >>> COUNT_SHIFT;
+    }
+
+    /**
+     * coalesces
+     *
+     * @return true for the moves that are merged with the same move queued
+     *         just before them
+     */
+    private static boolean coalesces(MintrisEngine.Action action)
+    {
+        return (action == MintrisEngine.Action.LEFT)
+            || (action == MintrisEngine.Action.RIGHT)
+            || (action == MintrisEngine.Action.DOWN)
+            || (action == MintrisEngine.Action.ROTATE);
+    }//coalesces
+
+}//class ActionQueue
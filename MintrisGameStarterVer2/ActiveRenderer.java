@@ -0,0 +1,276 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Class ActiveRenderer - draws a Mintris game on a Canvas from a thread of
+ * its own, instead of waiting for Swing to get round to a repaint.
+ *
+ * The thread draws each frame the {@link GameLoop} publishes into the back
+ * buffer of a BufferStrategy and flips it to the screen.  Frames are paced
+ * to a fixed cadence of at most fpsCap per second: a frame that arrives
+ * early waits for the next slot, and when several arrive in one slot only
+ * the newest is drawn.  Nothing is drawn while the game has not changed.
+ */
+public class ActiveRenderer extends Canvas implements Runnable
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    public static final int DEFAULT_FPS = 60;
+
+    //the front buffer and one back buffer
+    private static final int BUFFERS = 2;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    //how long to sleep when there is nothing to draw, in case a wakeup is
+    //missed
+    private static final long IDLE_NANOS = NANOS_PER_SECOND / 4;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private GameLoop loop;
+    private RenderCache cache;
+
+    //nanoseconds between frames (0 for no cap)
+    private long framePeriod;
+
+    //set when the window must be redrawn even though the game is unchanged
+    private volatile boolean dirty = true;
+
+    //the sequence number of the frame on the screen
+    private long drawnSequence = -1;
+
+    //statistics
+    private volatile long framesDrawn = 0;
+    private volatile long framesSkipped = 0;
+
+    private volatile Thread thread = null;
+    private volatile boolean running = false;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * ActiveRenderer
+     *
+     * Creates a canvas that shows the frames of a game loop.  It takes over
+     * the loop's listener (see {@link GameLoop#setListener}).
+     *
+     * @param loop the game to show
+     * @param cache the images to draw it with
+     * @param fpsCap the most frames to draw per second, or 0 for no cap
+     */
+    public ActiveRenderer(GameLoop loop, RenderCache cache, int fpsCap)
+    {
+        this.loop = loop;
+        this.cache = cache;
+        this.framePeriod = (fpsCap > 0) ? NANOS_PER_SECOND / fpsCap : 0;
+        setPreferredSize(new Dimension(Mintris.WINDOW_WIDTH, Mintris.WINDOW_HEIGHT));
+        setBackground(RenderCache.BACKGROUND_COLOR);
+        loop.setListener(new Runnable() {
+                public void run() {
+                    wake();
+                }
+            });
+    }//ActiveRenderer
+
+    /**
+     * paint
+     *
+     * Called by AWT when the window was uncovered or resized; the render
+     * thread redraws it.
+     */
+    public void paint(Graphics g)
+    {
+        dirty = true;
+        wake();
+    }
+
+    /**
+     * update
+     *
+     * Overridden so that AWT does not clear the canvas before painting.
+     */
+    public void update(Graphics g)
+    {
+        paint(g);
+    }
+
+    /**
+     * @return the number of frames drawn
+     */
+    public long getFramesDrawn()
+    {
+        return framesDrawn;
+    }
+
+    /**
+     * @return the number of frames published by the loop that were never
+     *         drawn because a newer one came along in the same slot
+     */
+    public long getFramesSkipped()
+    {
+        return framesSkipped;
+    }
+
+    /**
+     * start
+     *
+     * Starts the render thread.  The canvas should be in a visible window.
+     */
+    public synchronized void start()
+    {
+        if (thread != null)
+        {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "Mintris renderer");
+        thread.setDaemon(true);
+        thread.start();
+    }//start
+
+    /**
+     * stop
+     *
+     * Stops the render thread and waits for it to finish.
+     */
+    public synchronized void stop() throws InterruptedException
+    {
+        if (thread == null)
+        {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        thread = null;
+    }//stop
+
+    /**
+     * run
+     *
+     * The render loop: wait for a new frame, wait for its slot, then draw
+     * the newest frame there is.
+     */
+    public void run()
+    {
+        BufferStrategy strategy = null;
+        long lastShown = System.nanoTime() - framePeriod;
+        while (running)
+        {
+            if (strategy == null)
+            {
+                if (!isDisplayable())
+                {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                    continue;
+                }
+                createBufferStrategy(BUFFERS);
+                strategy = getBufferStrategy();
+            }
+
+            if ((loop.getSequence() == drawnSequence) && !dirty
+                && !strategy.contentsLost())
+            {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+                continue;
+            }
+
+            //wait for the frame's slot
+            long due = lastShown + framePeriod;
+            long now;
+            while (running && ((now = System.nanoTime()) - due < 0))
+            {
+                LockSupport.parkNanos(this, due - now);
+            }
+            now = System.nanoTime();
+
+            GameFrame frame = loop.acquireFrame();
+            try
+            {
+                dirty = false;
+                draw(strategy, frame);
+                if (frame.getSequence() > drawnSequence + 1)
+                {
+                    framesSkipped += frame.getSequence() - drawnSequence - 1;
+                }
+                drawnSequence = frame.getSequence();
+            }
+            finally
+            {
+                loop.releaseFrame(frame);
+            }
+
+            //keep to the cadence unless the renderer fell a whole slot behind
+            lastShown = (now - due < framePeriod) ? due : now;
+        }
+    }//run
+
+    /**
+     * draw
+     *
+     * Draws a frame into the back buffer and shows it, drawing it again if
+     * the buffer's contents were lost on the way.
+     */
+    private void draw(BufferStrategy strategy, GameFrame frame)
+    {
+        long start = 0;
+        PaintEvent event = null;
+        if (Metrics.ENABLED)
+        {
+            start = System.nanoTime();
+            event = new PaintEvent();
+            event.begin();
+        }
+
+        do
+        {
+            do
+            {
+                Graphics g = strategy.getDrawGraphics();
+                try
+                {
+                    cache.paintFrame(g, frame);
+                }
+                finally
+                {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+
+        //push the flip out to the display now rather than when the window
+        //system gets to it
+        Toolkit.getDefaultToolkit().sync();
+        ++framesDrawn;
+
+        if (Metrics.ENABLED)
+        {
+            Metrics.PAINT_TIME.record(System.nanoTime() - start);
+            Metrics.FRAMES_PAINTED.increment();
+            event.frame = frame.getSequence();
+            event.commit();
+        }
+    }//draw
+
+    /**
+     * wake
+     *
+     * Tells the render thread that there may be something new to draw.
+     */
+    private void wake()
+    {
+        LockSupport.unpark(thread);
+    }
+
+}//class ActiveRenderer
@@ -0,0 +1,392 @@
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.*;
+import java.lang.management.*;
+import java.util.*;
+
+/**
+ * Class AllocationCheck - checks that playing and drawing a game allocate
+ * nothing once they are warmed up, so the garbage collector never has a
+ * reason to stop the game in the middle of a move.
+ *
+ * The paths are the engine's steps (validMove, move, rotate and
+ * removeRows), a key press through the view to the game loop and back out
+ * as a published frame, and painting a frame, all the way the window does
+ * it.  The engine is the one a window makes, recording its replay log as
+ * it does in the game.  Each path is run for a while to warm it up, long
+ * enough for the JIT compiler to be done with it, then run a few more
+ * times while the bytes allocated by the threads it runs on are counted
+ * with the ThreadMXBean.  The check exits with status 1 if any path
+ * allocated in any of the measured runs.  The build runs it in the test
+ * phase.
+ *
+ * The key presses start a new game every few keys, which empties the log.
+ * A game that takes more actions than the log was made with room for (see
+ * {@link Mintris#REPLAY_CAPACITY}) makes it double its buffer on the game
+ * loop's thread.  So one more run plays a single game that long, and
+ * checks that the game loop allocated nothing but the log's new buffers.
+ *
+ * One thing is left out on purpose.  The game loop's listener, which asks
+ * Swing for a repaint, is replaced: Swing allocates an event for every
+ * invokeLater and repaint of its own, which is not this code's to avoid.
+ */
+public class AllocationCheck
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    public static final int DEFAULT_OPERATIONS = 100000;
+
+    //how many times a path is run to warm it up, and then to measure it
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 3;
+
+    //how long to wait for the game loop to apply a key press
+    private static final long KEY_TIMEOUT_NANOS = 1000000000L;
+
+    //the most bytes the JVM puts in front of the elements of an array
+    private static final int ARRAY_HEADER_BYTES = 24;
+
+    private static final MintrisEngine.Action[] MOVES = {
+        MintrisEngine.Action.LEFT, MintrisEngine.Action.RIGHT, MintrisEngine.Action.DOWN,
+        MintrisEngine.Action.ROTATE, MintrisEngine.Action.DROP };
+
+    //the keys pressed, the last of which starts a new game
+    private static final int[] KEYS = {
+        KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_DOWN, KeyEvent.VK_UP, ' ', 'n' };
+
+    //the keys pressed in the long game, which never lock a piece
+    private static final int[] LONG_GAME_KEYS = { KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT };
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    //the number of paths that allocated
+    private int failures = 0;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    private AllocationCheck()
+    {
+    }
+
+    /**
+     * report
+     *
+     * Prints how much a path allocated in all of its measured rounds and
+     * per operation, and counts it as a failure if it allocated at all.
+     *
+     * @param operations the operations measured, in all of the rounds
+     */
+    private void report(String path, long bytes, long operations)
+    {
+        System.out.printf("%-24s %10d bytes, %.3f per operation%n",
+            path, bytes, (double) bytes / operations);
+        if (bytes != 0)
+        {
+            ++failures;
+        }
+    }//report
+
+    /**
+     * measured
+     *
+     * @return the bytes allocated so far plus those of a round, if it is a
+     *         measured round; warm-up rounds do not count
+     */
+    private static long measured(long total, int round, long bytes)
+    {
+        return (round < WARMUP_ROUNDS) ? total : total + bytes;
+    }
+
+    /**
+     * checkEngine
+     *
+     * Steps a game with random moves, starting a new one whenever it ends.
+     */
+    private void checkEngine(int operations)
+    {
+        MintrisEngine engine = new Mintris().getEngine();
+        SplittableRandom random = new SplittableRandom(1);
+        engine.newGame(1);
+
+        long bytes = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; ++round)
+        {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < operations; ++i)
+            {
+                if (engine.isGameOver())
+                {
+                    engine.newGame(i);
+                }
+                else
+                {
+                    engine.step(MOVES[random.nextInt(MOVES.length)]);
+                }
+            }
+            bytes = measured(bytes, round, threads.getCurrentThreadAllocatedBytes() - before);
+        }
+        report("engine steps", bytes, (long) operations * MEASURED_ROUNDS);
+    }//checkEngine
+
+    /**
+     * checkKeys
+     *
+     * Presses keys in a view whose game loop is running, waiting each time
+     * for the loop to publish the frame, and counts what both this thread
+     * and the loop thread allocated.
+     */
+    private void checkKeys(int operations) throws InterruptedException
+    {
+        Mintris view = new Mintris();
+        GameLoop loop = view.getLoop();
+        loop.setListener(null);
+        loop.start();
+        Thread loopThread = findThread("Mintris game loop");
+        KeyEvent[] presses = presses(view, KEYS);
+
+        long bytes = 0;
+        long loopBytes = 0;
+        try
+        {
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; ++round)
+            {
+                long before = threads.getCurrentThreadAllocatedBytes();
+                long loopBefore = threads.getThreadAllocatedBytes(loopThread.getId());
+                press(view, presses, operations);
+                bytes = measured(bytes, round, threads.getCurrentThreadAllocatedBytes() - before);
+                loopBytes = measured(loopBytes, round,
+                    threads.getThreadAllocatedBytes(loopThread.getId()) - loopBefore);
+            }
+        }
+        finally
+        {
+            loop.stop();
+        }
+        report("key presses", bytes, (long) operations * MEASURED_ROUNDS);
+        report("game loop", loopBytes, (long) operations * MEASURED_ROUNDS);
+    }//checkKeys
+
+    /**
+     * checkLongGame
+     *
+     * Presses keys that never lock a piece in one game until its replay log
+     * has had to grow, and counts what the game loop allocated besides the
+     * log's new buffers.  This runs after checkKeys, which warms up the
+     * same code.
+     */
+    private void checkLongGame() throws InterruptedException
+    {
+        Mintris view = new Mintris();
+        GameLoop loop = view.getLoop();
+        loop.setListener(null);
+        ReplayLog log = view.getReplayLog();
+        int capacity = log.getCapacity();
+
+        //a new field copies each row the first time it is written (see
+        //BitBoard), so the engine plays a game to the end first
+        MintrisEngine engine = view.getEngine();
+        engine.newGame(1);
+        while (!engine.isGameOver())
+        {
+            engine.step(MintrisEngine.Action.DROP);
+        }
+        engine.newGame(1);
+        loop.start();
+        Thread loopThread = findThread("Mintris game loop");
+        KeyEvent[] presses = presses(view, LONG_GAME_KEYS);
+
+        //each of these keys costs the log a byte, unless the piece falls
+        //in between; the first half of the log's room warms up the loop
+        //thread, and the rest fills it and more
+        int operations = 3 * capacity;
+        long loopBytes;
+        try
+        {
+            press(view, presses, capacity / 2);
+            long loopBefore = threads.getThreadAllocatedBytes(loopThread.getId());
+            press(view, presses, operations);
+            loopBytes = threads.getThreadAllocatedBytes(loopThread.getId()) - loopBefore;
+        }
+        finally
+        {
+            loop.stop();
+        }
+
+        //the log doubles its buffer each time it grows
+        long grown = 0;
+        int growths = 0;
+        for (int size = capacity * 2; size <= log.getCapacity(); size *= 2)
+        {
+            grown += size + ARRAY_HEADER_BYTES;
+            ++growths;
+        }
+        System.out.printf("long game: %d actions, the log grew %d times to %d bytes%n",
+            log.getActionCount(), growths, log.getCapacity());
+        if (growths == 0)
+        {
+            System.out.println("the long game never made the log grow");
+            ++failures;
+        }
+        report("long game loop", Math.max(0, loopBytes - grown), operations);
+    }//checkLongGame
+
+    /**
+     * presses
+     *
+     * @return an event for pressing each of the keys in the view
+     */
+    private static KeyEvent[] presses(Mintris view, int[] keys)
+    {
+        KeyEvent[] presses = new KeyEvent[keys.length];
+        for (int i = 0; i < keys.length; ++i)
+        {
+            presses[i] = new KeyEvent(view, KeyEvent.KEY_PRESSED, 0, 0, keys[i], (char) keys[i]);
+        }
+        return presses;
+    }//presses
+
+    /**
+     * press
+     *
+     * Presses keys in turn in a view whose game loop is running, waiting
+     * each time for the loop to publish the frame.
+     */
+    private static void press(Mintris view, KeyEvent[] presses, int operations)
+    {
+        GameLoop loop = view.getLoop();
+        for (int i = 0; i < operations; ++i)
+        {
+            long sequence = loop.getSequence();
+            view.keyPressed(presses[i % presses.length]);
+            long deadline = System.nanoTime() + KEY_TIMEOUT_NANOS;
+            while ((loop.getSequence() == sequence) && (System.nanoTime() - deadline < 0))
+            {
+                Thread.yield();
+            }
+        }
+    }//press
+
+    /**
+     * checkPaint
+     *
+     * Paints a game in progress into an image the size of the window, the
+     * way Swing repaints the view, the way the active renderer draws
+     * borrowed frames, and with the clip on just the score.
+     */
+    private void checkPaint(int operations)
+    {
+        Mintris view = new Mintris();
+        MintrisEngine engine = view.getEngine();
+        engine.newGame(1);
+        for (int i = 0; (i < 40) && !engine.isGameOver(); ++i)
+        {
+            engine.step(MOVES[i % MOVES.length]);
+        }
+        GameLoop loop = view.getLoop();
+        loop.publish();
+
+        BufferedImage image = new BufferedImage(Mintris.WINDOW_WIDTH, Mintris.WINDOW_HEIGHT,
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        RenderCache cache = view.getRenderCache();
+
+        long viewBytes = 0;
+        long frameBytes = 0;
+        long scoreBytes = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; ++round)
+        {
+            g.setClip(null);
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < operations; ++i)
+            {
+                view.paint(g);
+            }
+            viewBytes = measured(viewBytes, round, threads.getCurrentThreadAllocatedBytes() - before);
+
+            before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < operations; ++i)
+            {
+                GameFrame frame = loop.acquireFrame();
+                cache.paintFrame(g, frame);
+                loop.releaseFrame(frame);
+            }
+            frameBytes = measured(frameBytes, round, threads.getCurrentThreadAllocatedBytes() - before);
+
+            g.setClip(RenderCache.SCORE_AREA);
+            before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < operations; ++i)
+            {
+                view.paint(g);
+            }
+            scoreBytes = measured(scoreBytes, round, threads.getCurrentThreadAllocatedBytes() - before);
+        }
+        g.dispose();
+        report("view paint", viewBytes, (long) operations * MEASURED_ROUNDS);
+        report("borrowed frame paint", frameBytes, (long) operations * MEASURED_ROUNDS);
+        report("score repaint", scoreBytes, (long) operations * MEASURED_ROUNDS);
+    }//checkPaint
+
+    /**
+     * findThread
+     *
+     * @return the live thread with a name, which must exist
+     */
+    private static Thread findThread(String name)
+    {
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if (thread.getName().equals(name))
+            {
+                return thread;
+            }
+        }
+        throw new IllegalStateException("no thread named " + name);
+    }//findThread
+
+    /**
+     * This method runs the check and prints what each path allocated.
+     *
+     * @param args the operations to measure on each path (default 100000);
+     *             key presses and paints use a tenth of them
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        if (System.getProperty("java.awt.headless") == null)
+        {
+            System.setProperty("java.awt.headless", "true");
+        }
+        int operations = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_OPERATIONS;
+
+        AllocationCheck check = new AllocationCheck();
+        if (!check.threads.isThreadAllocatedMemorySupported())
+        {
+            System.out.println("this JVM can't count the bytes a thread allocates");
+            System.exit(1);
+        }
+        check.threads.setThreadAllocatedMemoryEnabled(true);
+
+        check.checkEngine(operations);
+        check.checkKeys(Math.max(1, operations / 10));
+        check.checkLongGame();
+        check.checkPaint(Math.max(1, operations / 10));
+
+        if (check.failures > 0)
+        {
+            System.out.println(check.failures + " paths allocated");
+            System.exit(1);
+        }
+        System.out.println("nothing allocated");
+    }//main
+
+}//class AllocationCheck
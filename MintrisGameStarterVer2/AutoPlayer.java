@@ -0,0 +1,587 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Class AutoPlayer - a computer player for Mintris.
+ *
+ * For the current piece the player tries every rotation in every column,
+ * drops it, removes complete rows and scores the resulting field with a
+ * {@link Heuristic}.  Every Mintris piece is the same three-block shape in
+ * one of four rotations, so the pieces to come are known up to rotation and
+ * the player can look several pieces ahead.  The search tree is split into
+ * fork/join tasks so that a deep lookahead uses every core.
+ *
+ * The same field is reached by many orders of placements.  Given a
+ * {@link TranspositionCache}, the player remembers the value of each field
+ * it has searched below, keyed by the field's {@link Zobrist} hash, the
+ * depth left and the lines cleared, and searches it only once.  Fields at
+ * the bottom of the tree are cheaper to score than to look up, so they are
+ * not cached.
+ *
+ * The player works on a {@link MintrisEngine} one action at a time with
+ * {@link #nextAction}, so it can drive the Swing view as well as a headless
+ * game ({@link #playPiece}, {@link #playGame}).  It searches fields of
+ * the standard size only.
+ */
+public class AutoPlayer implements Policy
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    private static final int NUM_ROWS = MintrisEngine.NUM_ROWS;
+    private static final int NUM_COLS = MintrisEngine.NUM_COLS;
+    private static final int FULL_ROW = BitBoard.FULL_ROW;
+
+    //the four rotations of a piece
+    private static final int NUM_ROTATIONS = 4;
+
+    //the patterns every future piece may have
+    private static final int[] SHAPES = { 0xE, 0xD, 0xB, 0x7 };
+
+    //subtrees with fewer pieces left to place than this are searched
+    //without forking any further
+    private static final int SEQUENTIAL_DEPTH = 1;
+
+    //score of a placement that can't be made
+    private static final double IMPOSSIBLE = Double.NEGATIVE_INFINITY;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private Heuristic heuristic;
+
+    //the number of pieces to look ahead beyond the current one
+    private int lookahead;
+
+    private ForkJoinPool pool;
+
+    //values of fields already searched, or null
+    private TranspositionCache cache;
+
+    //the placement being played, the piece it is for and the number of
+    //actions taken towards it
+    private int planPiece = -1;
+    private int planPattern;
+    private int planCol;
+    private int planSteps;
+
+    //statistics
+    private LongAdder placements = new LongAdder();
+    private AtomicLong searchNanos = new AtomicLong();
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * AutoPlayer
+     *
+     * Creates a player with the default heuristic that looks one piece
+     * ahead, using the common fork/join pool.
+     */
+    public AutoPlayer()
+    {
+        this(WeightedHeuristic.DEFAULT, 1, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * AutoPlayer
+     *
+     * @param heuristic scores the fields the search ends up with
+     * @param lookahead how many pieces beyond the current one to search
+     * @param pool where the search tasks run
+     */
+    public AutoPlayer(Heuristic heuristic, int lookahead, ForkJoinPool pool)
+    {
+        this(heuristic, lookahead, pool, null);
+    }
+
+    /**
+     * AutoPlayer
+     *
+     * @param heuristic scores the fields the search ends up with
+     * @param lookahead how many pieces beyond the current one to search
+     * @param pool where the search tasks run
+     * @param cache remembers the values of fields searched, or null; it may
+     *              be shared by players with the same heuristic
+     */
+    public AutoPlayer(Heuristic heuristic, int lookahead, ForkJoinPool pool,
+                      TranspositionCache cache)
+    {
+        if (lookahead < 0)
+        {
+            throw new IllegalArgumentException("lookahead must not be negative: " + lookahead);
+        }
+        this.heuristic = heuristic;
+        this.lookahead = lookahead;
+        this.pool = pool;
+        this.cache = cache;
+    }//AutoPlayer
+
+    /**
+     * @return the transposition cache of the player, or null
+     */
+    public TranspositionCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * newGame
+     *
+     * Forgets the placement planned for the previous game.
+     */
+    public void newGame(long seed)
+    {
+        planPiece = -1;
+    }
+
+    /**
+     * nextAction
+     *
+     * Decides what to do next with the current piece of a game: rotate it
+     * until it has the chosen orientation, move it to the chosen column and
+     * drop it.  A new placement is searched for whenever a new piece appears.
+     *
+     * @param engine the game to play
+     * @return the action to step the game with
+     * @throws IllegalStateException if the game has no current piece (see
+     *         {@link MintrisEngine#clearPiece})
+     */
+    public MintrisEngine.Action nextAction(MintrisEngine engine)
+    {
+        if (engine.getCurrRow() < 0)
+        {
+            throw new IllegalStateException("the game has no current piece to play");
+        }
+        if (engine.getPieces() != planPiece)
+        {
+            plan(engine);
+        }
+
+        //if the piece didn't get where it should (rows were removed under
+        //it on the way), give up and drop it
+        if (++planSteps > NUM_ROTATIONS + NUM_COLS)
+        {
+            return MintrisEngine.Action.DROP;
+        }
+
+        if (engine.getCurrPattern() != planPattern)
+        {
+            return MintrisEngine.Action.ROTATE;
+        }
+        if (engine.getCurrCol() < planCol)
+        {
+            return MintrisEngine.Action.RIGHT;
+        }
+        if (engine.getCurrCol() > planCol)
+        {
+            return MintrisEngine.Action.LEFT;
+        }
+        return MintrisEngine.Action.DROP;
+    }//nextAction
+
+    /**
+     * playPiece
+     *
+     * Places the current piece of a headless game.
+     *
+     * @param engine the game to play
+     */
+    public void playPiece(MintrisEngine engine)
+    {
+        int piece = engine.getPieces();
+        while (!engine.isGameOver() && (engine.getPieces() == piece))
+        {
+            engine.step(nextAction(engine));
+        }
+    }//playPiece
+
+    /**
+     * playGame
+     *
+     * Plays a headless game until it is over or enough pieces were placed.
+     *
+     * @param engine the game to play; it is started if it has no piece yet
+     * @param maxPieces the most pieces to place
+     */
+    public void playGame(MintrisEngine engine, int maxPieces)
+    {
+        if (engine.getPieces() == 0)
+        {
+            engine.step(MintrisEngine.Action.NEW_GAME);
+        }
+        while (!engine.isGameOver() && (engine.getPieces() <= maxPieces))
+        {
+            playPiece(engine);
+        }
+    }//playGame
+
+    /**
+     * @return the number of placements scored so far
+     */
+    public long getPlacementsEvaluated()
+    {
+        return placements.sum();
+    }
+
+    /**
+     * @return placements scored per second of searching so far
+     */
+    public double getPlacementsPerSecond()
+    {
+        long nanos = searchNanos.get();
+        return (nanos == 0) ? 0 : placements.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * plan
+     *
+     * Searches for the best placement of the current piece and remembers it.
+     */
+    private void plan(MintrisEngine engine)
+    {
+        if ((engine.getNumRows() != NUM_ROWS) || (engine.getNumCols() != NUM_COLS))
+        {
+            throw new IllegalArgumentException("the computer player only plays a "
+                + NUM_ROWS + "x" + NUM_COLS + " field");
+        }
+        long start = System.nanoTime();
+
+        //the field without the current piece
+        int row = engine.getCurrRow();
+        int col = engine.getCurrCol();
+        int pattern = engine.getCurrPattern();
+        int[] stack = new int[NUM_ROWS];
+        for (int r = 0; r < NUM_ROWS; ++r)
+        {
+            stack[r] = engine.getRowMask(r);
+        }
+        stack[row] &= ~((pattern & 3) << col);
+        stack[row + 1] &= ~((pattern >>> 2) << col);
+        long hash = (cache == null) ? 0 : Zobrist.hash(stack);
+
+        //one task per reachable placement of the current piece
+        List<SearchTask> tasks = new ArrayList<SearchTask>();
+        int turned = pattern;
+        for (int rotation = 0; rotation < NUM_ROTATIONS; ++rotation)
+        {
+            if (rotation > 0)
+            {
+                turned = BitBoard.rotatePattern(turned);
+                if (!fits(stack, row, col, turned) || !fits(stack, row + 1, col, turned))
+                {
+                    break; //this and any further rotation is out of reach
+                }
+            }
+            for (int target = 0; target <= NUM_COLS - 2; ++target)
+            {
+                if (reachable(stack, row, col, turned, target))
+                {
+                    tasks.add(new SearchTask(stack, hash, row, target, turned, lookahead, 0));
+                }
+            }
+        }
+
+        //the best one, or just drop where it is if nothing can be reached
+        planPiece = engine.getPieces();
+        planPattern = pattern;
+        planCol = col;
+        planSteps = 0;
+        double best = IMPOSSIBLE;
+        if (!tasks.isEmpty())
+        {
+            pool.invoke(new ForkAll(tasks));
+            for (SearchTask task : tasks)
+            {
+                double score = task.join();
+                if (score > best)
+                {
+                    best = score;
+                    planPattern = task.pattern;
+                    planCol = task.col;
+                }
+            }
+        }
+
+        searchNanos.addAndGet(System.nanoTime() - start);
+    }//plan
+
+    /**
+     * reachable
+     *
+     * @return true if a piece at (row, col) can be moved sideways to the
+     *         target column without hitting a block and without coming to
+     *         rest on the way there
+     */
+    private static boolean reachable(int[] stack, int row, int col, int pattern, int target)
+    {
+        int step = (target > col) ? 1 : -1;
+        for (int c = col; c != target; c += step)
+        {
+            if (!fits(stack, row, c + step, pattern) || !fits(stack, row + 1, c + step, pattern))
+            {
+                return false;
+            }
+        }
+        return true;
+    }//reachable
+
+    /**
+     * fits
+     *
+     * @return true if a piece at the given position is on the field and
+     *         does not overlap the stack
+     */
+    private static boolean fits(int[] stack, int row, int col, int pattern)
+    {
+        if ((row < 0) || (row > NUM_ROWS - 2) || (col < 0) || (col > NUM_COLS - 2))
+        {
+            return false;
+        }
+        return ((stack[row] & ((pattern & 3) << col))
+                | (stack[row + 1] & ((pattern >>> 2) << col))) == 0;
+    }//fits
+
+    /**
+     * place
+     *
+     * Drops a piece straight down from the given row, adds it to the stack
+     * and removes complete rows.
+     *
+     * @param stack the field before the piece is placed; it is not changed
+     * @param into receives the field after the piece is placed
+     * @return the number of rows removed, or -1 if the piece doesn't fit
+     */
+    private static int place(int[] stack, int[] into, int row, int col, int pattern)
+    {
+        if (!fits(stack, row, col, pattern))
+        {
+            return -1;
+        }
+        while (fits(stack, row + 1, col, pattern))
+        {
+            ++row;
+        }
+
+        //compact the rows from the bottom up, skipping complete ones
+        int cleared = 0;
+        for (int r = NUM_ROWS - 1; r >= 0; --r)
+        {
+            int mask = stack[r];
+            if (r == row)
+            {
+                mask |= (pattern & 3) << col;
+            }
+            else if (r == row + 1)
+            {
+                mask |= (pattern >>> 2) << col;
+            }
+
+            if (mask == FULL_ROW)
+            {
+                ++cleared;
+            }
+            else
+            {
+                into[r + cleared] = mask;
+            }
+        }
+        for (int r = 0; r < cleared; ++r)
+        {
+            into[r] = 0;
+        }
+        return cleared;
+    }//place
+
+    /**
+     * Scores one placement of a piece: the heuristic value of the field it
+     * leaves, or the best value reachable by placing the pieces to come.
+     * Lines cleared along the way count towards the final field's score.
+     */
+    private class SearchTask extends RecursiveTask<Double>
+    {
+        private int[] stack;
+        private long hash;
+        private int row;
+        private int col;
+        private int pattern;
+        private int depth;
+        private int lines;
+
+        SearchTask(int[] stack, long hash, int row, int col, int pattern, int depth, int lines)
+        {
+            this.stack = stack;
+            this.hash = hash;
+            this.row = row;
+            this.col = col;
+            this.pattern = pattern;
+            this.depth = depth;
+            this.lines = lines;
+        }
+
+        protected Double compute()
+        {
+            int[] after = new int[NUM_ROWS];
+            int cleared = place(stack, after, row, col, pattern);
+            placements.increment();
+            if (cleared < 0)
+            {
+                return IMPOSSIBLE;
+            }
+
+            //only fields with pieces left to place are worth caching
+            boolean cached = (cache != null) && (depth > 0);
+            long afterHash = 0;
+            long key = 0;
+            if (cached)
+            {
+                afterHash = Zobrist.update(hash, stack, after);
+                key = Zobrist.withContext(afterHash, depth, lines + cleared);
+                double known = cache.get(key);
+                if (!Double.isNaN(known))
+                {
+                    return known;
+                }
+            }
+
+            //the next piece appears at the top in any rotation and column
+            double best;
+            if (depth > SEQUENTIAL_DEPTH)
+            {
+                List<SearchTask> children = new ArrayList<SearchTask>();
+                for (int shape : SHAPES)
+                {
+                    for (int c = 0; c <= NUM_COLS - 2; ++c)
+                    {
+                        children.add(new SearchTask(after, afterHash, 0, c, shape, depth - 1,
+                                lines + cleared));
+                    }
+                }
+                invokeAll(children);
+                best = IMPOSSIBLE;
+                for (SearchTask child : children)
+                {
+                    best = Math.max(best, child.join());
+                }
+            }
+            else
+            {
+                best = (depth == 0)
+                    ? heuristic.evaluate(after, lines + cleared)
+                    : best(after, afterHash, depth - 1, lines + cleared);
+            }
+
+            if (cached)
+            {
+                cache.put(key, best);
+            }
+            return best;
+        }
+
+        /**
+         * best
+         *
+         * Searches the rest of the tree below a field without forking.
+         *
+         * @param field the field after a placement
+         * @param fieldHash its Zobrist hash, if there is a cache
+         * @param depth the number of pieces to place after the next one
+         * @param lines the lines cleared on the way to the field
+         * @return the best value of placing the next piece anywhere
+         */
+        private double best(int[] field, long fieldHash, int depth, int lines)
+        {
+            double best = IMPOSSIBLE;
+            int[] next = new int[NUM_ROWS];
+            for (int shape : SHAPES)
+            {
+                for (int c = 0; c <= NUM_COLS - 2; ++c)
+                {
+                    int cleared = place(field, next, 0, c, shape);
+                    placements.increment();
+                    if (cleared < 0)
+                    {
+                        continue;
+                    }
+
+                    if (depth == 0)
+                    {
+                        best = Math.max(best, heuristic.evaluate(next, lines + cleared));
+                        continue;
+                    }
+                    if (cache == null)
+                    {
+                        best = Math.max(best, best(next, 0, depth - 1, lines + cleared));
+                        continue;
+                    }
+
+                    long nextHash = Zobrist.update(fieldHash, field, next);
+                    long key = Zobrist.withContext(nextHash, depth, lines + cleared);
+                    double score = cache.get(key);
+                    if (Double.isNaN(score))
+                    {
+                        score = best(next, nextHash, depth - 1, lines + cleared);
+                        cache.put(key, score);
+                    }
+                    best = Math.max(best, score);
+                }
+            }
+            return best;
+        }//best
+    }//class SearchTask
+
+    /**
+     * Runs a list of search tasks in the pool.
+     */
+    private static class ForkAll extends RecursiveAction
+    {
+        private List<SearchTask> tasks;
+
+        ForkAll(List<SearchTask> tasks)
+        {
+            this.tasks = tasks;
+        }
+
+        protected void compute()
+        {
+            invokeAll(tasks);
+        }
+    }//class ForkAll
+
+    /**
+     * This method plays a number of headless games with the default
+     * heuristic and prints how they went and how fast the search was.
+     *
+     * @param args number of games (default 10), lookahead (default 1) and
+     *             transposition cache entries (default 0, no cache)
+     */
+    public static void main(String[] args)
+    {
+        int games = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+        int lookahead = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+        int cacheSize = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+        TranspositionCache cache = (cacheSize > 0) ? new TranspositionCache(cacheSize) : null;
+        AutoPlayer player = new AutoPlayer(WeightedHeuristic.DEFAULT, lookahead,
+            ForkJoinPool.commonPool(), cache);
+        for (int game = 0; game < games; ++game)
+        {
+            MintrisEngine engine = new MintrisEngine(new Random(game));
+            player.playGame(engine, 10000);
+            System.out.println("game " + game + ": score " + engine.getScore()
+                + ", pieces " + engine.getPieces());
+        }
+        System.out.printf("%d placements evaluated, %.0f per second%n",
+            player.getPlacementsEvaluated(), player.getPlacementsPerSecond());
+        if (cache != null)
+        {
+            System.out.println("cache: " + cache);
+        }
+    }//main
+
+}//class AutoPlayer
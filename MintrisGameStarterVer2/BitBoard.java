@@ -0,0 +1,985 @@
+/**
+ * Class BitBoard - a bitboard representation of the Mintris playing field.
+ *
+ * Each row of the field is stored as an occupancy bitmask (bit c is set
+ * when column c holds a block) and the block colors are kept in a separate
+ * plane.  A row takes one long per 64 columns, so the field can be as wide
+ * as wanted; the standard 10 columns fit in one.  Each row also keeps its
+ * number of filled cells, which makes a full row a single compare however
+ * wide it is, and a collision check is a few ANDs of two-bit windows.
+ *
+ * A 2x2 piece is described by a 4-bit pattern:
+ *
+ *      bit 0 = upper-left     bit 1 = upper-right
+ *      bit 2 = lower-left     bit 3 = lower-right
+ *
+ * so (pattern & 3) is the upper row of the piece and (pattern >> 2) is the
+ * lower row, each lined up with a two-column window of the field.
+ *
+ * The board also keeps the {@link Zobrist} hash of its occupancy up to
+ * date as cells change.
+ *
+ * The color rows are copy-on-write.  A {@link Snapshot} shares the row
+ * arrays of the board it was taken from, and the board copies a shared row
+ * only when it next writes to it, so taking a snapshot costs one reference
+ * per row and a position reached from it pays only for the rows its moves
+ * change.  Clearing a shared row points it at a shared empty row, and
+ * moving a row down when full rows are removed hands its array over instead
+ * of copying.  Rows that belong to the board alone are cleared in place and
+ * trade arrays when they move, so a game that takes no snapshots stops
+ * allocating once each row has an array of its own.
+ *
+ * The board remembers the highest row that may hold a block, so removing
+ * rows and finding column heights never look at the empty rows above the
+ * stack.  On a tall board their cost depends on the height of the stack and
+ * the rows that changed, not on the height of the board.
+ */
+public class BitBoard
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //a row of the standard field with every column filled
+    public static final int FULL_ROW = (1 << MintrisEngine.NUM_COLS) - 1;
+
+    //the two cells of one row of a 2x2 piece
+    private static final int PAIR = 3;
+
+    //bits in a word of a row
+    private static final int WORD_BITS = 64;
+    private static final int WORD_SHIFT = 6;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    // the size of the field, and the number of longs in each row's mask
+    private final int numRows;
+    private final int numCols;
+    private final int words;
+
+    // the occupancy bitmasks, row after row
+    private long[] rows;
+
+    // the number of filled cells in each row
+    private int[] fill;
+
+    // the color of each cell (EMPTY where the occupancy bit is clear)
+    private int[][] colors;
+
+    // true for each row of colors that may also be referenced by a
+    // snapshot, another row or emptyRow, and must be copied before writing
+    private boolean[] shared;
+
+    // the colors of a cleared row; shared by every cleared row and never
+    // written
+    private final int[] emptyRow;
+
+    // the range of rows changed since full rows were last cleared
+    // (empty when touchedTop > touchedBottom)
+    private int touchedTop = Integer.MAX_VALUE;
+    private int touchedBottom = -1;
+
+    // no row above this one holds a block (numRows when the board is empty)
+    private int top;
+
+    // the Zobrist hash of the occupancy masks
+    private long hash = 0;
+
+    // reused by columnTops
+    private long[] found;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * BitBoard
+     *
+     * Creates an empty board of the standard size.
+     */
+    public BitBoard()
+    {
+        this(MintrisEngine.NUM_ROWS, MintrisEngine.NUM_COLS);
+    }
+
+    /**
+     * BitBoard
+     *
+     * Creates an empty board.
+     *
+     * @param numRows the number of rows, at least 2
+     * @param numCols the number of columns, at least 2
+     */
+    public BitBoard(int numRows, int numCols)
+    {
+        if ((numRows < 2) || (numCols < 2))
+        {
+            throw new IllegalArgumentException("a board must be at least 2x2, not "
+                + numRows + "x" + numCols);
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.words = (numCols + WORD_BITS - 1) >>> WORD_SHIFT;
+        rows = new long[numRows * words];
+        fill = new int[numRows];
+        colors = new int[numRows][];
+        shared = new boolean[numRows];
+        found = new long[words];
+        emptyRow = new int[numCols];
+        java.util.Arrays.fill(emptyRow, MintrisEngine.EMPTY);
+        java.util.Arrays.fill(colors, emptyRow);
+        java.util.Arrays.fill(shared, true);
+        clear();
+    }//BitBoard
+
+    public int getNumRows()
+    {
+        return numRows;
+    }
+
+    public int getNumCols()
+    {
+        return numCols;
+    }
+
+    /**
+     * @return the number of longs in the occupancy mask of a row
+     */
+    public int getWords()
+    {
+        return words;
+    }
+
+    /**
+     * clear
+     *
+     * Sets every cell on the board to EMPTY.
+     */
+    public void clear()
+    {
+        for (int row = 0; row < numRows; ++row)
+        {
+            clearRow(row);
+        }
+        top = numRows;
+        untouch();
+    }//clear
+
+    /**
+     * get
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return the color of the given cell
+     */
+    public int get(int row, int col)
+    {
+        return colors[row][col];
+    }
+
+    /**
+     * set
+     *
+     * Stores a color in a cell and keeps the occupancy mask of its row in step.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @param color the new contents of the cell (EMPTY clears it)
+     */
+    public void set(int row, int col, int color)
+    {
+        touch(row);
+        own(row)[col] = color;
+        int index = row * words + (col >>> WORD_SHIFT);
+        long bit = 1L << col;
+        boolean wasFilled = (rows[index] & bit) != 0;
+        if (color == MintrisEngine.EMPTY)
+        {
+            if (wasFilled)
+            {
+                rows[index] &= ~bit;
+                --fill[row];
+                hash ^= Zobrist.cellKey(row, col);
+            }
+        }
+        else
+        {
+            if (!wasFilled)
+            {
+                rows[index] |= bit;
+                ++fill[row];
+                hash ^= Zobrist.cellKey(row, col);
+            }
+            if (row < top)
+            {
+                top = row;
+            }
+        }
+    }//set
+
+    /**
+     * rowMask
+     *
+     * @param row the row to look at
+     * @return the occupancy bitmask of the first 32 columns of the given
+     *         row; the whole row on boards of up to 32 columns
+     */
+    public int rowMask(int row)
+    {
+        return (int) rows[row * words];
+    }
+
+    /**
+     * rowWord
+     *
+     * @param row the row to look at
+     * @param word which 64 columns of the row
+     * @return the occupancy bitmask of columns 64 * word and up
+     */
+    public long rowWord(int row, int word)
+    {
+        return rows[row * words + word];
+    }
+
+    /**
+     * getHash
+     *
+     * @return the Zobrist hash of which cells of the board are filled
+     */
+    public long getHash()
+    {
+        return hash;
+    }
+
+    /**
+     * isRowFull
+     *
+     * @param row the row to be checked
+     * @return true if every column of the row is filled
+     */
+    public boolean isRowFull(int row)
+    {
+        return fill[row] == numCols;
+    }
+
+    /**
+     * fillCount
+     *
+     * @param row the row to be counted
+     * @return the number of filled cells in the row
+     */
+    public int fillCount(int row)
+    {
+        return fill[row];
+    }
+
+    /**
+     * getTop
+     *
+     * @return a row that no block is above (the number of rows if the board
+     *         is empty); it may be above the highest block, never below
+     */
+    public int getTop()
+    {
+        return top;
+    }
+
+    /**
+     * clearFullRows
+     *
+     * Removes every complete row among the rows changed since the last call
+     * and shifts the rows above them down.  Rows that were not changed can't
+     * have become full, so they are not looked at.  The field is compacted in
+     * a single pass from the bottom up that stops at the top of the stack:
+     * each surviving row is moved exactly once, straight to its final
+     * position.
+     *
+     * @return the number of rows removed
+     */
+    public int clearFullRows()
+    {
+        if (touchedBottom < 0)
+        {
+            return 0;
+        }
+
+        int high = Math.min(top, touchedBottom + 1);
+        int cleared = 0;
+        for (int row = touchedBottom; row >= high; --row)
+        {
+            if ((row >= touchedTop) && (fill[row] == numCols))
+            {
+                ++cleared;
+            }
+            else if (cleared > 0)
+            {
+                moveRow(row, row + cleared);
+            }
+        }
+
+        //the rows at the top of the stack were shifted down and are now
+        //empty, like every row above them
+        for (int row = high; row < high + cleared; ++row)
+        {
+            clearRow(row);
+        }
+        if (cleared > 0)
+        {
+            top = high + cleared;
+        }
+        untouch();
+        return cleared;
+    }//clearFullRows
+
+    /**
+     * clearRow
+     *
+     * Sets every cell of one row to EMPTY.
+     *
+     * @param row the row to be cleared
+     */
+    public void clearRow(int row)
+    {
+        touch(row);
+        int base = row * words;
+        for (int w = 0; w < words; ++w)
+        {
+            hash ^= Zobrist.wordKey(row, w, rows[base + w]);
+            rows[base + w] = 0;
+        }
+        fill[row] = 0;
+        if (shared[row])
+        {
+            colors[row] = emptyRow;
+        }
+        else
+        {
+            java.util.Arrays.fill(colors[row], MintrisEngine.EMPTY);
+        }
+    }//clearRow
+
+    /**
+     * copyRow
+     *
+     * Overwrites one row with the contents of another.  The two rows share
+     * their colors until either is written.
+     *
+     * @param from the row to copy
+     * @param to the row to overwrite
+     */
+    public void copyRow(int from, int to)
+    {
+        copyMasks(from, to);
+        colors[to] = colors[from];
+        shared[to] = true;
+        shared[from] = true;
+    }//copyRow
+
+    /**
+     * moveRow
+     *
+     * Overwrites one row with the contents of another, like
+     * {@link #copyRow}, when the row moved from is about to be overwritten
+     * or cleared itself.  If neither row's colors are shared, the two trade
+     * arrays, which leaves stale colors in the row moved from until then.
+     *
+     * @param from the row to move
+     * @param to the row to overwrite
+     */
+    private void moveRow(int from, int to)
+    {
+        if (shared[from] || shared[to])
+        {
+            copyRow(from, to);
+            return;
+        }
+        copyMasks(from, to);
+        int[] spare = colors[to];
+        colors[to] = colors[from];
+        colors[from] = spare;
+    }//moveRow
+
+    /**
+     * copyMasks
+     *
+     * Overwrites the occupancy of one row with that of another, keeping the
+     * hash, fill count and top in step.
+     */
+    private void copyMasks(int from, int to)
+    {
+        touch(to);
+        int fromBase = from * words;
+        int toBase = to * words;
+        for (int w = 0; w < words; ++w)
+        {
+            hash ^= Zobrist.wordKey(to, w, rows[toBase + w] ^ rows[fromBase + w]);
+            rows[toBase + w] = rows[fromBase + w];
+        }
+        fill[to] = fill[from];
+        if ((fill[to] > 0) && (to < top))
+        {
+            top = to;
+        }
+    }//copyMasks
+
+    /**
+     * snapshot
+     *
+     * Takes a picture of the board that {@link #restore} can go back to.
+     * No colors are copied; every row becomes shared instead.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot()
+    {
+        java.util.Arrays.fill(shared, true);
+        return new Snapshot(this);
+    }//snapshot
+
+    /**
+     * restore
+     *
+     * Puts the board back the way it was when a snapshot was taken.  The
+     * snapshot can be restored again later.
+     *
+     * @param snapshot a snapshot of a board of the same size
+     */
+    public void restore(Snapshot snapshot)
+    {
+        if (snapshot.rows.length != rows.length || snapshot.colors.length != numRows)
+        {
+            throw new IllegalArgumentException("the snapshot is of a board of another size");
+        }
+        System.arraycopy(snapshot.rows, 0, rows, 0, rows.length);
+        System.arraycopy(snapshot.fill, 0, fill, 0, numRows);
+        System.arraycopy(snapshot.colors, 0, colors, 0, numRows);
+        java.util.Arrays.fill(shared, true);
+        hash = snapshot.hash;
+        top = snapshot.top;
+        touchedTop = snapshot.touchedTop;
+        touchedBottom = snapshot.touchedBottom;
+    }//restore
+
+    /**
+     * own
+     *
+     * Makes sure a row of colors belongs to this board alone.
+     *
+     * @return the colors of the row, safe to write
+     */
+    private int[] own(int row)
+    {
+        if (shared[row])
+        {
+            colors[row] = colors[row].clone();
+            shared[row] = false;
+        }
+        return colors[row];
+    }//own
+
+    /**
+     * window
+     *
+     * @param row the row of the upper-left corner of the 2x2 area
+     * @param col the column of the upper-left corner of the 2x2 area
+     * @return the 4-bit occupancy pattern of the 2x2 area
+     */
+    public int window(int row, int col)
+    {
+        return pair(row, col) | (pair(row + 1, col) << 2);
+    }
+
+    /**
+     * pair
+     *
+     * @return the occupancy of columns col and col + 1 of a row, as the two
+     *         low bits
+     */
+    private int pair(int row, int col)
+    {
+        return span(row, col, 2);
+    }
+
+    /**
+     * span
+     *
+     * @return the occupancy of width columns of a row starting at col, as
+     *         the low bits
+     */
+    private int span(int row, int col, int width)
+    {
+        int mask = (1 << width) - 1;
+        if (words == 1)
+        {
+            return (int) (rows[row] >>> col) & mask;
+        }
+        int index = row * words + (col >>> WORD_SHIFT);
+        int offset = col & (WORD_BITS - 1);
+        long bits = rows[index] >>> offset;
+        if (offset + width > WORD_BITS)
+        {
+            //the last columns are the first of the next word
+            bits |= rows[index + 1] << (WORD_BITS - offset);
+        }
+        return (int) bits & mask;
+    }//span
+
+    /**
+     * rotatePattern
+     *
+     * @param pattern a 4-bit piece pattern
+     * @return the pattern turned by 90 degrees the way {@link #rotate} turns
+     *         a piece: each block moves to the next corner counter-clockwise
+     */
+    public static int rotatePattern(int pattern)
+    {
+        return ((pattern >>> 1) & 1)            //upper-right to upper-left
+            | (((pattern >>> 3) & 1) << 1)      //lower-right to upper-right
+            | ((pattern & 1) << 2)              //upper-left to lower-left
+            | (((pattern >>> 2) & 1) << 3);     //lower-left to lower-right
+    }//rotatePattern
+
+    /**
+     * canShift
+     *
+     * Calculates whether the 2x2 piece at the given position may be moved by
+     * (dRow, dCol).  The move is legal if the piece stays on the field and
+     * none of its blocks lands on a block that is not part of the piece.
+     * Empty cells of the piece pass over other blocks.
+     *
+     * @param row the row of the upper-left corner of the piece
+     * @param col the column of the upper-left corner of the piece
+     * @param pattern the 4-bit pattern of the piece's blocks
+     * @param dRow rows to move by (0 or 1)
+     * @param dCol columns to move by (-1, 0 or 1)
+     * @return true if the move is legal
+     */
+    public boolean canShift(int row, int col, int pattern, int dRow, int dCol)
+    {
+        int toRow = row + dRow;
+        int toCol = col + dCol;
+        if ((toRow < 0) || (toRow > numRows - 2)
+            || (toCol < 0) || (toCol > numCols - 2))
+        {
+            return false;
+        }
+
+        return ((stack(toRow, toCol, row, col, pattern) & pattern & PAIR)
+                | (stack(toRow + 1, toCol, row, col, pattern) & (pattern >>> 2))) == 0;
+    }//canShift
+
+    /**
+     * canRotate
+     *
+     * @param row the row of the upper-left corner of the piece
+     * @param col the column of the upper-left corner of the piece
+     * @param pattern the 4-bit pattern of the piece's blocks
+     * @return true if the rotated piece does not overlap another block
+     */
+    public boolean canRotate(int row, int col, int pattern)
+    {
+        int turned = rotatePattern(pattern);
+        return ((stack(row, col, row, col, pattern) & turned & PAIR)
+                | (stack(row + 1, col, row, col, pattern) & (turned >>> 2))) == 0;
+    }//canRotate
+
+    /**
+     * canMove
+     *
+     * Calculates with one lookup in {@link MoveTable} whether the 2x2 piece
+     * at the given position may make a one-step move.  The answer is the
+     * same as {@link #canShift} or {@link #canRotate} would give.
+     *
+     * @param row the row of the upper-left corner of the piece
+     * @param col the column of the upper-left corner of the piece
+     * @param pattern the 4-bit pattern of the piece's blocks
+     * @param kind MoveTable.LEFT, DOWN, RIGHT or ROTATE
+     * @return true if the move is legal
+     */
+    public boolean canMove(int row, int col, int pattern, int kind)
+    {
+        return onField(row, col, kind)
+            && (MoveTable.lookup(kind, pattern, area(row, col, kind)) & MoveTable.LEGAL) != 0;
+    }//canMove
+
+    /**
+     * move
+     *
+     * Makes a one-step move of the 2x2 piece at the given position if it is
+     * legal, leaving the board as {@link #shift} or {@link #rotate} would.
+     * The legality and the occupancy of the area after the move come from
+     * a single lookup in {@link MoveTable}; only the blocks of the piece
+     * are then written.
+     *
+     * @param row the row of the upper-left corner of the piece
+     * @param col the column of the upper-left corner of the piece
+     * @param pattern the 4-bit pattern of the piece's blocks
+     * @param kind MoveTable.LEFT, DOWN, RIGHT or ROTATE
+     * @return true if the piece was moved, false if the move is not legal
+     */
+    public boolean move(int row, int col, int pattern, int kind)
+    {
+        if (!onField(row, col, kind))
+        {
+            return false;
+        }
+        int area = area(row, col, kind);
+        int after = MoveTable.lookup(kind, pattern, area);
+        if ((after & MoveTable.LEGAL) == 0)
+        {
+            return false;
+        }
+
+        //the colors of the blocks that move, four bits each, read before any
+        //of them is overwritten
+        int moving = 0;
+        int carried = 0;
+        for (int cell = 0; cell < 4; ++cell)
+        {
+            if ((((pattern >> cell) & 1) != 0)
+                && (((area >> MoveTable.from(kind, cell)) & 1) != 0))
+            {
+                moving |= 1 << cell;
+                carried |= colors[row + (cell >> 1)][col + (cell & 1)] << (cell << 2);
+            }
+        }
+
+        //empty the cells the piece leaves for good, then fill the cells it
+        //lands on
+        for (int cell = 0; cell < 4; ++cell)
+        {
+            if ((((moving >> cell) & 1) != 0)
+                && (((after >> MoveTable.from(kind, cell)) & 1) == 0))
+            {
+                set(row + (cell >> 1), col + (cell & 1), MintrisEngine.EMPTY);
+            }
+        }
+        for (int cell = 0; cell < 4; ++cell)
+        {
+            if (((moving >> cell) & 1) != 0)
+            {
+                set(row + MoveTable.toRow(kind, cell), col + MoveTable.toCol(kind, cell),
+                    (carried >>> (cell << 2)) & 0xF);
+            }
+        }
+        return true;
+    }//move
+
+    /**
+     * onField
+     *
+     * @return true if a one-step move keeps the piece on the field
+     */
+    private boolean onField(int row, int col, int kind)
+    {
+        if (kind == MoveTable.ROTATE)
+        {
+            return true;
+        }
+        int toRow = (kind == MoveTable.DOWN) ? row + 1 : row;
+        int toCol = col + kind - MoveTable.DOWN;
+        return (toRow >= 0) && (toRow <= numRows - 2)
+            && (toCol >= 0) && (toCol <= numCols - 2);
+    }//onField
+
+    /**
+     * area
+     *
+     * @return the occupancy of the area a one-step move involves, numbered
+     *         as in {@link MoveTable}
+     */
+    private int area(int row, int col, int kind)
+    {
+        switch(kind)
+        {
+            case MoveTable.DOWN:
+            return pair(row, col) | (pair(row + 1, col) << 2) | (pair(row + 2, col) << 4);
+
+            case MoveTable.ROTATE:
+            return pair(row, col) | (pair(row + 1, col) << 2);
+
+            default:
+            int left = (kind == MoveTable.LEFT) ? col - 1 : col;
+            return span(row, left, 3) | (span(row + 1, left, 3) << 3);
+        }//switch
+    }//area
+
+    /**
+     * stack
+     *
+     * @return the occupancy of columns c and c + 1 of row r, as the two low
+     *         bits, without the cells of the given piece
+     */
+    private int stack(int r, int c, int row, int col, int pattern)
+    {
+        int piece;
+        if (r == row)
+        {
+            piece = pattern & PAIR;
+        }
+        else if (r == row + 1)
+        {
+            piece = pattern >>> 2;
+        }
+        else
+        {
+            return pair(r, c);
+        }
+
+        //line the piece's cells up with the window
+        if (c == col + 1)
+        {
+            piece >>>= 1;
+        }
+        else if (c == col - 1)
+        {
+            piece = (piece << 1) & PAIR;
+        }
+        else if (c != col)
+        {
+            piece = 0;
+        }
+        return pair(r, c) & ~piece;
+    }//stack
+
+    /**
+     * columnTops
+     *
+     * Finds the highest block in each column, not counting the blocks of the
+     * 2x2 piece at the given position.  Rows are scanned from the top of the
+     * stack only until every column has been found.
+     *
+     * @param tops receives the row of the highest block in each column, or
+     *             the number of rows if the column is empty
+     * @param row the row of the upper-left corner of the piece
+     * @param col the column of the upper-left corner of the piece
+     * @param pattern the 4-bit pattern of the piece's blocks
+     */
+    public void columnTops(int[] tops, int row, int col, int pattern)
+    {
+        java.util.Arrays.fill(tops, 0, numCols, numRows);
+        java.util.Arrays.fill(found, 0);
+        int left = numCols;
+        for (int r = top; (r < numRows) && (left > 0); ++r)
+        {
+            int base = r * words;
+            for (int w = 0; w < words; ++w)
+            {
+                long bits = rows[base + w] & ~found[w] & ~pieceWord(r, w, row, col, pattern);
+                found[w] |= bits;
+                while (bits != 0)
+                {
+                    tops[(w << WORD_SHIFT) + Long.numberOfTrailingZeros(bits)] = r;
+                    bits &= bits - 1;
+                    --left;
+                }
+            }
+        }
+    }//columnTops
+
+    /**
+     * pieceWord
+     *
+     * @return the cells of the given piece in one word of row r
+     */
+    private long pieceWord(int r, int w, int row, int col, int pattern)
+    {
+        int piece;
+        if (r == row)
+        {
+            piece = pattern & PAIR;
+        }
+        else if (r == row + 1)
+        {
+            piece = pattern >>> 2;
+        }
+        else
+        {
+            return 0;
+        }
+
+        long bits = 0;
+        if (((piece & 1) != 0) && ((col >>> WORD_SHIFT) == w))
+        {
+            bits |= 1L << col;
+        }
+        if (((piece & 2) != 0) && (((col + 1) >>> WORD_SHIFT) == w))
+        {
+            bits |= 1L << (col + 1);
+        }
+        return bits;
+    }//pieceWord
+
+    /**
+     * shift
+     *
+     * Moves the blocks of the 2x2 piece at the given position by (dRow, dCol).
+     * Cells of the 2x2 area that are not part of the piece are left alone,
+     * so an empty cell of the piece never picks up or overwrites a block.
+     * This method does *not* check that the move is valid (see
+     * {@link #canShift}).
+     *
+     * @param row the row of the upper-left corner of the piece
+     * @param col the column of the upper-left corner of the piece
+     * @param pattern the 4-bit pattern of the piece's blocks
+     * @param dRow rows to move by (0 or more)
+     * @param dCol columns to move by (-1, 0 or 1)
+     */
+    public void shift(int row, int col, int pattern, int dRow, int dCol)
+    {
+        int upperLeft = take(row, col, pattern & 1);
+        int upperRight = take(row, col + 1, pattern & 2);
+        int lowerLeft = take(row + 1, col, pattern & 4);
+        int lowerRight = take(row + 1, col + 1, pattern & 8);
+
+        int toRow = row + dRow;
+        int toCol = col + dCol;
+        put(toRow, toCol, upperLeft);
+        put(toRow, toCol + 1, upperRight);
+        put(toRow + 1, toCol, lowerLeft);
+        put(toRow + 1, toCol + 1, lowerRight);
+    }//shift
+
+    /**
+     * rotate
+     *
+     * Rotates the blocks of the 2x2 piece at the given position by 90
+     * degrees (see {@link #rotatePattern}).  Cells of the 2x2 area that are
+     * not part of the piece are left alone.  It does not check that the
+     * rotation is valid (see {@link #canRotate}).
+     *
+     * @param row the row of the upper-left corner of the piece
+     * @param col the column of the upper-left corner of the piece
+     * @param pattern the 4-bit pattern of the piece's blocks
+     */
+    public void rotate(int row, int col, int pattern)
+    {
+        int upperLeft = take(row, col, pattern & 1);
+        int upperRight = take(row, col + 1, pattern & 2);
+        int lowerLeft = take(row + 1, col, pattern & 4);
+        int lowerRight = take(row + 1, col + 1, pattern & 8);
+
+        put(row, col, upperRight);
+        put(row, col + 1, lowerRight);
+        put(row + 1, col + 1, lowerLeft);
+        put(row + 1, col, upperLeft);
+    }//rotate
+
+    /**
+     * take
+     *
+     * Removes a block of a piece from the board.
+     *
+     * @return the color of the block, or EMPTY if the cell is not part of
+     *         the piece (bit is zero)
+     */
+    private int take(int row, int col, int bit)
+    {
+        if (bit == 0)
+        {
+            return MintrisEngine.EMPTY;
+        }
+        int color = colors[row][col];
+        set(row, col, MintrisEngine.EMPTY);
+        return color;
+    }//take
+
+    /**
+     * put
+     *
+     * Stores a color in a cell unless it is EMPTY.
+     */
+    private void put(int row, int col, int color)
+    {
+        if (color != MintrisEngine.EMPTY)
+        {
+            set(row, col, color);
+        }
+    }//put
+
+    /**
+     * touch
+     *
+     * Records that a row has changed and may have to be cleared.
+     */
+    private void touch(int row)
+    {
+        if (row < touchedTop)
+        {
+            touchedTop = row;
+        }
+        if (row > touchedBottom)
+        {
+            touchedBottom = row;
+        }
+    }//touch
+
+    /**
+     * untouch
+     *
+     * Forgets the changed rows once none of them can be full.
+     */
+    private void untouch()
+    {
+        touchedTop = Integer.MAX_VALUE;
+        touchedBottom = -1;
+    }//untouch
+
+    /**
+     * Class Snapshot - an unchangeable picture of a board.  It holds its
+     * own copy of the occupancy masks, which are small, and shares the
+     * color rows with the board.
+     */
+    public static class Snapshot
+    {
+        private final long[] rows;
+        private final int[] fill;
+        private final int[][] colors;
+        private final long hash;
+        private final int top;
+        private final int touchedTop;
+        private final int touchedBottom;
+
+        private Snapshot(BitBoard board)
+        {
+            rows = board.rows.clone();
+            fill = board.fill.clone();
+            colors = board.colors.clone();
+            hash = board.hash;
+            top = board.top;
+            touchedTop = board.touchedTop;
+            touchedBottom = board.touchedBottom;
+        }
+
+        /**
+         * @return the color of a cell when the snapshot was taken
+         */
+        public int get(int row, int col)
+        {
+            return colors[row][col];
+        }
+
+        /**
+         * @return the Zobrist hash of the board when the snapshot was taken
+         */
+        public long getHash()
+        {
+            return hash;
+        }
+
+        public int getNumRows()
+        {
+            return colors.length;
+        }
+
+        public int getNumCols()
+        {
+            return colors[0].length;
+        }
+    }//class Snapshot
+
+}//class BitBoard
@@ -0,0 +1,668 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Class BoardAnalyzer - checks a stream of Mintris positions and moves
+ * against the rules of {@link MintrisEngine}, headless and in parallel.
+ *
+ * The input has one record per line:
+ *
+ *      cells op op ...
+ *
+ * where cells is the field row by row, one character per cell ('.' for
+ * EMPTY, '0' to '3' for the other cell values), and each op is one of
+ *
+ *      Lrow,col  Rrow,col  Drow,col   move the 2x2 block at row,col left,
+ *                                      right or down (see validMove, move)
+ *      Wrow,col                        rotate it (see rotate)
+ *      X                               remove complete rows (see removeRows)
+ *
+ * The ops are applied in turn to the position; an op that is not legal is
+ * skipped.  Lines starting with '#' and empty lines are ignored.  For each
+ * record one line is written:
+ *
+ *      legal cleared cells
+ *
+ * where legal has a '1' or '0' per op (or is "-" if there are none),
+ * cleared is the number of rows removed and cells is the resulting field.
+ * A record that can't be parsed gives "ERR" and the reason instead.
+ *
+ * The input is read through a file channel in chunks of whole lines.  Each
+ * chunk is analyzed by a fork/join task with an engine of its own, and the
+ * results are written through another channel in input order.  At most a
+ * fixed number of chunks are in flight at once, so memory stays bounded
+ * however large the input is.
+ */
+public class BoardAnalyzer
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //how much input one task gets (it is cut back to the last whole line)
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    //chunks in flight per worker thread
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    //the field characters, indexed by cell value
+    private static final byte[] CELL_CHARS = { '0', '1', '2', '3', '.' };
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private ForkJoinPool pool;
+    private int numRows;
+    private int numCols;
+
+    //totals over all of the chunks written so far
+    private long records = 0;
+    private long errors = 0;
+    private long ops = 0;
+    private long legal = 0;
+    private long cleared = 0;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * BoardAnalyzer
+     *
+     * @param pool where the records are analyzed
+     * @param numRows the number of rows of the fields in the input
+     * @param numCols the number of columns of the fields in the input
+     */
+    public BoardAnalyzer(ForkJoinPool pool, int numRows, int numCols)
+    {
+        this.pool = pool;
+        this.numRows = numRows;
+        this.numCols = numCols;
+    }
+
+    /**
+     * run
+     *
+     * Analyzes every record of the input and writes the results.
+     *
+     * @param in the records
+     * @param out receives one result line per record
+     */
+    public void run(ReadableByteChannel in, WritableByteChannel out)
+        throws IOException, InterruptedException
+    {
+        //the chunks being analyzed, in input order, then the end marker
+        final BlockingQueue<ForkJoinTask<Chunk>> pending =
+            new ArrayBlockingQueue<ForkJoinTask<Chunk>>(pool.getParallelism() * CHUNKS_PER_THREAD);
+        final ForkJoinTask<Chunk> end = ForkJoinTask.adapt(() -> (Chunk) null);
+        final WritableByteChannel output = out;
+        final Exception[] failure = new Exception[1];
+
+        //after a failure the writer keeps taking chunks, so that the reader
+        //never blocks, but writes no more
+        Thread writer = new Thread(new Runnable() {
+                public void run() {
+                    try
+                    {
+                        ForkJoinTask<Chunk> task;
+                        while ((task = pending.take()) != end)
+                        {
+                            if (failure[0] == null)
+                            {
+                                try
+                                {
+                                    write(task.join(), output);
+                                }
+                                catch (IOException | RuntimeException e)
+                                {
+                                    failure[0] = e;
+                                }
+                            }
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, "BoardAnalyzer writer");
+        writer.start();
+
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            boolean eof = false;
+            while (!eof && (failure[0] == null))
+            {
+                eof = in.read(buffer) < 0;
+                if (!eof && buffer.hasRemaining())
+                {
+                    continue;
+                }
+
+                //hand over everything up to the last line break (or all of
+                //it at the end of the input) and keep the rest
+                int length = buffer.position();
+                int cut = eof ? length : lastLineEnd(buffer.array(), length);
+                if (cut < 0)
+                {
+                    //a line longer than the buffer
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                    continue;
+                }
+                if (cut > 0)
+                {
+                    pending.put(pool.submit(new Chunk(Arrays.copyOf(buffer.array(), cut))));
+                }
+                buffer.limit(length).position(cut);
+                buffer.compact();
+            }
+        }
+        finally
+        {
+            pending.put(end);
+            writer.join();
+        }
+        if (failure[0] instanceof IOException)
+        {
+            throw (IOException) failure[0];
+        }
+        if (failure[0] != null)
+        {
+            throw (RuntimeException) failure[0];
+        }
+    }//run
+
+    /**
+     * lastLineEnd
+     *
+     * @return the index just past the last line break in the first length
+     *         bytes, or -1 if there is none
+     */
+    private static int lastLineEnd(byte[] bytes, int length)
+    {
+        for (int i = length - 1; i >= 0; --i)
+        {
+            if (bytes[i] == '\n')
+            {
+                return i + 1;
+            }
+        }
+        return -1;
+    }//lastLineEnd
+
+    /**
+     * write
+     *
+     * Writes the results of a chunk and adds its totals to the analyzer's.
+     * Only the writer thread calls this.
+     */
+    private void write(Chunk chunk, WritableByteChannel out) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(chunk.output, 0, chunk.outputLength);
+        while (buffer.hasRemaining())
+        {
+            out.write(buffer);
+        }
+        records += chunk.records;
+        errors += chunk.errors;
+        ops += chunk.ops;
+        legal += chunk.legal;
+        cleared += chunk.cleared;
+    }//write
+
+    public long getRecords()
+    {
+        return records;
+    }
+
+    public long getErrors()
+    {
+        return errors;
+    }
+
+    public long getOps()
+    {
+        return ops;
+    }
+
+    public long getLegal()
+    {
+        return legal;
+    }
+
+    public long getCleared()
+    {
+        return cleared;
+    }
+
+    /**
+     * Analyzes the records in one chunk of the input on an engine of its
+     * own.
+     */
+    private class Chunk implements Callable<Chunk>
+    {
+        private byte[] input;
+        private MintrisEngine engine;
+
+        //the result lines
+        private byte[] output;
+        private int outputLength = 0;
+
+        //the totals of this chunk
+        private long records = 0;
+        private long errors = 0;
+        private long ops = 0;
+        private long legal = 0;
+        private long cleared = 0;
+
+        Chunk(byte[] input)
+        {
+            this.input = input;
+        }
+
+        public Chunk call()
+        {
+            engine = new MintrisEngine(numRows, numCols);
+            output = new byte[input.length + input.length / 2 + 64];
+            int pos = 0;
+            while (pos < input.length)
+            {
+                int end = pos;
+                while ((end < input.length) && (input[end] != '\n'))
+                {
+                    ++end;
+                }
+                int last = end;
+                if ((last > pos) && (input[last - 1] == '\r'))
+                {
+                    --last;
+                }
+                if ((last > pos) && (input[pos] != '#'))
+                {
+                    ++records;
+                    String error = analyze(pos, last);
+                    if (error != null)
+                    {
+                        ++errors;
+                        append("ERR " + error);
+                    }
+                    append('\n');
+                }
+                pos = end + 1;
+            }
+            input = null;
+            engine = null;
+            return this;
+        }//call
+
+        /**
+         * analyze
+         *
+         * Sets up the position of one record, applies its ops and appends
+         * the result (without a line break).
+         *
+         * @return why the record could not be analyzed, or null
+         */
+        private String analyze(int start, int end)
+        {
+            int cells = numRows * numCols;
+            if ((end - start < cells) || ((end - start > cells) && (input[start + cells] != ' ')))
+            {
+                return "field is not " + numRows + "x" + numCols;
+            }
+
+            engine.clearField();
+            for (int i = 0; i < cells; ++i)
+            {
+                int color = cellValue(input[start + i]);
+                if (color < 0)
+                {
+                    return "bad cell '" + (char) input[start + i] + "'";
+                }
+                if (color != MintrisEngine.EMPTY)
+                {
+                    engine.setCell(i / numCols, i % numCols, color);
+                }
+            }
+            engine.clearPiece();
+            int scoreBefore = engine.getScore();
+
+            //a flag per op, taken back if a later op can't be parsed
+            int flagsStart = outputLength;
+            int count = 0;
+            int passed = 0;
+            int pos = start + cells;
+            while (pos < end)
+            {
+                while ((pos < end) && (input[pos] == ' '))
+                {
+                    ++pos;
+                }
+                if (pos == end)
+                {
+                    break;
+                }
+                int opStart = pos;
+                while ((pos < end) && (input[pos] != ' '))
+                {
+                    ++pos;
+                }
+                int result = apply(opStart, pos);
+                if (result < 0)
+                {
+                    outputLength = flagsStart;
+                    return "bad op '" + new String(input, opStart, pos - opStart) + "'";
+                }
+                append((byte) ('0' + result));
+                ++count;
+                passed += result;
+            }
+            ops += count;
+            legal += passed;
+            if (count == 0)
+            {
+                append('-');
+            }
+
+            int rows = engine.getScore() - scoreBefore;
+            cleared += rows;
+            append(' ');
+            append(Integer.toString(rows));
+            append(' ');
+            ensure(cells);
+            for (int row = 0; row < numRows; ++row)
+            {
+                for (int col = 0; col < numCols; ++col)
+                {
+                    int color = engine.getCell(row, col);
+                    output[outputLength++] = ((color >= 0) && (color < CELL_CHARS.length))
+                        ? CELL_CHARS[color] : (byte) '?';
+                }
+            }
+            return null;
+        }//analyze
+
+        /**
+         * apply
+         *
+         * Applies one op to the engine.
+         *
+         * @return 1 if it was legal, 0 if it was skipped, -1 if it can't be
+         *         parsed
+         */
+        private int apply(int start, int end)
+        {
+            byte op = input[start];
+            if (op == 'X')
+            {
+                if (end != start + 1)
+                {
+                    return -1;
+                }
+                engine.removeRows();
+                return 1;
+            }
+
+            //the coordinates
+            int comma = start + 1;
+            while ((comma < end) && (input[comma] != ','))
+            {
+                ++comma;
+            }
+            int row = parseInt(start + 1, comma);
+            int col = parseInt(comma + 1, end);
+            if ((row < 0) || (col < 0))
+            {
+                return -1;
+            }
+            if ((row > numRows - 2) || (col > numCols - 2))
+            {
+                return 0;
+            }
+
+            switch (op)
+            {
+                case 'L':
+                return tryMove(row, col, MintrisEngine.LEFT);
+
+                case 'R':
+                return tryMove(row, col, MintrisEngine.RIGHT);
+
+                case 'D':
+                return tryMove(row, col, MintrisEngine.DOWN);
+
+                case 'W':
+                if (!engine.validRotate(row, col))
+                {
+                    return 0;
+                }
+                engine.rotate(row, col);
+                return 1;
+
+                default:
+                return -1;
+            }
+        }//apply
+
+        private int tryMove(int row, int col, int direction)
+        {
+            if (!engine.validMove(row, col, direction))
+            {
+                return 0;
+            }
+            engine.move(row, col, direction);
+            return 1;
+        }
+
+        /**
+         * parseInt
+         *
+         * @return the non-negative decimal number in input[start, end), or
+         *         -1 if there isn't one
+         */
+        private int parseInt(int start, int end)
+        {
+            if ((start >= end) || (end - start > 9))
+            {
+                return -1;
+            }
+            int value = 0;
+            for (int i = start; i < end; ++i)
+            {
+                int digit = input[i] - '0';
+                if ((digit < 0) || (digit > 9))
+                {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }//parseInt
+
+        private void append(String text)
+        {
+            ensure(text.length());
+            for (int i = 0; i < text.length(); ++i)
+            {
+                output[outputLength++] = (byte) text.charAt(i);
+            }
+        }
+
+        private void append(int b)
+        {
+            ensure(1);
+            output[outputLength++] = (byte) b;
+        }
+
+        private void ensure(int more)
+        {
+            if (outputLength + more > output.length)
+            {
+                output = Arrays.copyOf(output, Math.max(output.length * 2, outputLength + more));
+            }
+        }
+    }//class Chunk
+
+    /**
+     * cellValue
+     *
+     * @return the cell value of a field character, or -1 if it isn't one
+     */
+    private static int cellValue(byte c)
+    {
+        if (c == '.')
+        {
+            return MintrisEngine.EMPTY;
+        }
+        if ((c >= '0') && (c <= '3'))
+        {
+            return c - '0';
+        }
+        return -1;
+    }//cellValue
+
+    /**
+     * generate
+     *
+     * Writes records for testing: positions from random games, each with a
+     * few random ops on the blocks of the field.
+     *
+     * @param out where to write the records
+     * @param count the number of records
+     * @param seed the seed of the games and ops
+     */
+    public static void generate(WritableByteChannel out, long count, long seed) throws IOException
+    {
+        final char[] moves = { 'L', 'R', 'D', 'W' };
+        Random randGen = new Random(seed);
+        MintrisEngine engine = new MintrisEngine();
+        RandomPolicy policy = new RandomPolicy();
+        policy.newGame(seed);
+        engine.newGame(seed);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        StringBuilder line = new StringBuilder();
+        for (long i = 0; i < count; ++i)
+        {
+            //play on a bit, starting over when the game ends
+            for (int step = randGen.nextInt(8); step >= 0; --step)
+            {
+                if (engine.isGameOver())
+                {
+                    engine.newGame(randGen.nextLong());
+                }
+                engine.step(policy.nextAction(engine));
+            }
+
+            line.setLength(0);
+            for (int row = 0; row < MintrisEngine.NUM_ROWS; ++row)
+            {
+                for (int col = 0; col < MintrisEngine.NUM_COLS; ++col)
+                {
+                    line.append((char) CELL_CHARS[engine.getCell(row, col)]);
+                }
+            }
+            for (int op = randGen.nextInt(5); op > 0; --op)
+            {
+                if (randGen.nextInt(8) == 0)
+                {
+                    line.append(" X");
+                }
+                else
+                {
+                    line.append(' ').append(moves[randGen.nextInt(moves.length)])
+                        .append(randGen.nextInt(MintrisEngine.NUM_ROWS - 1)).append(',')
+                        .append(randGen.nextInt(MintrisEngine.NUM_COLS - 1));
+                }
+            }
+            line.append('\n');
+
+            if (buffer.remaining() < line.length())
+            {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+            for (int j = 0; j < line.length(); ++j)
+            {
+                buffer.put((byte) line.charAt(j));
+            }
+        }
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            out.write(buffer);
+        }
+    }//generate
+
+    /**
+     * This method analyzes a file of records, or writes one.
+     *
+     * @param args the input file and the output file ("-" for standard
+     *             input or output), then optionally the rows and columns
+     *             of the fields (default 20 and 10); or "generate", the
+     *             output file, the number of records (default 1000000) and
+     *             a seed (default 0)
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args[0].equals("generate"))
+        {
+            long count = (args.length > 2) ? Long.parseLong(args[2]) : 1000000;
+            long seed = (args.length > 3) ? Long.parseLong(args[3]) : 0;
+            try (WritableByteChannel out = openOutput(args[1]))
+            {
+                generate(out, count, seed);
+            }
+            return;
+        }
+
+        int numRows = (args.length > 2) ? Integer.parseInt(args[2]) : MintrisEngine.NUM_ROWS;
+        int numCols = (args.length > 3) ? Integer.parseInt(args[3]) : MintrisEngine.NUM_COLS;
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        BoardAnalyzer analyzer = new BoardAnalyzer(pool, numRows, numCols);
+        long start = System.nanoTime();
+        try (ReadableByteChannel in = openInput(args[0]);
+             WritableByteChannel out = openOutput(args[1]))
+        {
+            analyzer.run(in, out);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.err.printf("%d records (%d errors), %d ops (%d legal), %d rows cleared%n"
+            + "%.2f s, %.0f records per second on %d threads%n",
+            analyzer.getRecords(), analyzer.getErrors(), analyzer.getOps(),
+            analyzer.getLegal(), analyzer.getCleared(),
+            seconds, analyzer.getRecords() / seconds, pool.getParallelism());
+    }//main
+
+    private static ReadableByteChannel openInput(String name) throws IOException
+    {
+        if (name.equals("-"))
+        {
+            return Channels.newChannel(System.in);
+        }
+        return FileChannel.open(Paths.get(name), StandardOpenOption.READ);
+    }
+
+    private static WritableByteChannel openOutput(String name) throws IOException
+    {
+        if (name.equals("-"))
+        {
+            return Channels.newChannel(System.out);
+        }
+        return FileChannel.open(Paths.get(name), StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+}//class BoardAnalyzer
@@ -0,0 +1,1058 @@
+import java.util.*;
+
+/**
+ * Class BoardBatch - many fields of the standard size, laid out so that the
+ * tests a placement search makes over and over run on several fields at
+ * once.
+ *
+ * The fields are held as lanes of longs: a long holds the same row of four
+ * fields, one 16-bit lane each, with the row's occupancy mask in the low
+ * NUM_COLS bits of the lane (the layout of {@link BitBoard}).  Row r of the
+ * fields 4w to 4w + 3 is rows[r * words + w].  Plain long arithmetic then
+ * works on four fields at a time, and the spare bits above each mask keep
+ * carries from spilling into the next lane:
+ *
+ *   - a lane is not zero exactly when adding 0x7FFF to it sets its top bit,
+ *     which gives full rows (no bits missing) and collisions (bits in
+ *     common) for four fields in two or three instructions;
+ *   - holes are counted with a popcount of each 16-bit lane;
+ *   - the columns whose first block is in a row are found for four fields
+ *     at once, and only those are handled one at a time to set the column
+ *     heights.
+ *
+ * When the incubator module jdk.incubator.vector is present (run with
+ * --add-modules jdk.incubator.vector), the same layout is handed to
+ * {@link VectorBatchKernel}, which does the same work with the Vector API
+ * on as many fields as a vector holds.  That class is only loaded when the
+ * module is there, so the game still builds and runs without it, in BlueJ
+ * for one, on the long kernels.
+ *
+ * Every kernel also has a scalar version that goes through the fields one
+ * cell at a time.  A batch uses the scalar versions when it is made to, or
+ * when the system property mintris.batch.scalar is true.  {@link #main}
+ * checks every kind of kernel there is against the others and against
+ * {@link BitBoard} and {@link WeightedHeuristic}.
+ */
+public class BoardBatch
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    private static final int NUM_ROWS = MintrisEngine.NUM_ROWS;
+    private static final int NUM_COLS = MintrisEngine.NUM_COLS;
+    private static final int FULL_ROW = BitBoard.FULL_ROW;
+
+    //the fields in a long, and the bits of each lane
+    public static final int LANES = 4;
+    private static final int LANE_BITS = 16;
+    private static final int LANE_SHIFT = 2;
+
+    //a 1 in the lowest bit of each lane; multiplying a value below 2^16 by
+    //it copies the value into every lane
+    private static final long ONES = 0x0001000100010001L;
+
+    //the top bit of each lane, and everything below it
+    private static final long TOPS = 0x8000800080008000L;
+    private static final long BELOW_TOPS = 0x7FFF * ONES;
+
+    //a full row in every lane
+    private static final long FULL_ROWS = FULL_ROW * ONES;
+
+    //the Vector API kernels, or null without the module
+    private static final Kernel VECTOR_KERNEL = loadVectorKernel();
+
+    /**
+     * How a batch works on its fields.
+     */
+    public enum Mode
+    {
+        VECTOR,     //with the Vector API, many fields an instruction
+        LANES,      //on four fields at a time, in longs
+        SCALAR      //one cell at a time
+    }
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private int capacity;
+    private int words;
+
+    //the occupancy masks, row after row, four fields to a long
+    private long[] rows;
+
+    //which kernels are used
+    private Mode mode;
+
+    //reused by the kernels
+    private int[] heights = new int[LANES * NUM_COLS];
+    private int[] field = new int[NUM_ROWS];
+
+    //what the vector kernels hand back, a field a lane, for every field
+    //including the empty ones that pad the last vector; null unless the
+    //mode is VECTOR
+    private short[] vectorShorts;
+    private short[] vectorHoles;
+    private short[] vectorBumpiness;
+    private boolean[] vectorFits;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * BoardBatch
+     *
+     * Creates a batch of empty fields that uses the Vector API kernels if
+     * the module is present and the lane kernels if not, or the scalar ones
+     * if the system property mintris.batch.scalar is true.
+     *
+     * @param capacity the number of fields
+     */
+    public BoardBatch(int capacity)
+    {
+        this(capacity, Boolean.getBoolean("mintris.batch.scalar") ? Mode.SCALAR
+            : isVectorAvailable() ? Mode.VECTOR : Mode.LANES);
+    }
+
+    /**
+     * BoardBatch
+     *
+     * Creates a batch of empty fields.
+     *
+     * @param capacity the number of fields
+     * @param lanes true to work on four fields at a time, false to work on
+     *              one cell at a time
+     */
+    public BoardBatch(int capacity, boolean lanes)
+    {
+        this(capacity, lanes ? Mode.LANES : Mode.SCALAR);
+    }
+
+    /**
+     * BoardBatch
+     *
+     * Creates a batch of empty fields.
+     *
+     * @param capacity the number of fields
+     * @param mode how to work on the fields
+     * @throws UnsupportedOperationException if the mode is VECTOR and the
+     *         module jdk.incubator.vector is not present
+     */
+    public BoardBatch(int capacity, Mode mode)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("a batch holds at least one field");
+        }
+        if ((mode == Mode.VECTOR) && !isVectorAvailable())
+        {
+            throw new UnsupportedOperationException("the Vector API kernels need"
+                + " --add-modules jdk.incubator.vector");
+        }
+        this.capacity = capacity;
+        this.words = (capacity + LANES - 1) >>> LANE_SHIFT;
+        this.mode = mode;
+        if (mode == Mode.VECTOR)
+        {
+            //whole vectors only; the longs past the last field stay empty
+            int step = VECTOR_KERNEL.longsPerVector();
+            words = (words + step - 1) / step * step;
+            vectorShorts = new short[words * LANES * NUM_COLS];
+            vectorHoles = new short[words * LANES];
+            vectorBumpiness = new short[words * LANES];
+            vectorFits = new boolean[words * LANES];
+        }
+        this.rows = new long[NUM_ROWS * words];
+    }//BoardBatch
+
+    /**
+     * loadVectorKernel
+     *
+     * @return the Vector API kernels, or null if the module is not present
+     */
+    private static Kernel loadVectorKernel()
+    {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+        {
+            return null;
+        }
+        try
+        {
+            java.lang.reflect.Constructor<?> make =
+                Class.forName("VectorBatchKernel").getDeclaredConstructor();
+            return (Kernel) make.newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError | RuntimeException e)
+        {
+            return null;
+        }
+    }//loadVectorKernel
+
+    /**
+     * @return true if batches can use the Vector API kernels
+     */
+    public static boolean isVectorAvailable()
+    {
+        return VECTOR_KERNEL != null;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return true if the kernels work on several fields at a time
+     */
+    public boolean usesLanes()
+    {
+        return mode != Mode.SCALAR;
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * clear
+     *
+     * Empties every field.
+     */
+    public void clear()
+    {
+        Arrays.fill(rows, 0);
+    }
+
+    /**
+     * getRow
+     *
+     * @param board the field
+     * @param row the row
+     * @return the occupancy mask of the row
+     */
+    public int getRow(int board, int row)
+    {
+        return (int) (rows[row * words + (board >>> LANE_SHIFT)] >>> lane(board)) & FULL_ROW;
+    }
+
+    /**
+     * setRow
+     *
+     * @param board the field
+     * @param row the row
+     * @param mask the new occupancy mask of the row
+     */
+    public void setRow(int board, int row, int mask)
+    {
+        int index = row * words + (board >>> LANE_SHIFT);
+        int shift = lane(board);
+        rows[index] = (rows[index] & ~((long) FULL_ROW << shift))
+            | ((long) (mask & FULL_ROW) << shift);
+    }//setRow
+
+    /**
+     * setField
+     *
+     * @param board the field
+     * @param masks the occupancy mask of each row, top row first
+     */
+    public void setField(int board, int[] masks)
+    {
+        for (int r = 0; r < NUM_ROWS; ++r)
+        {
+            setRow(board, r, masks[r]);
+        }
+    }//setField
+
+    /**
+     * lane
+     *
+     * @return how far a field's lane is shifted up in its long
+     */
+    private static int lane(int board)
+    {
+        return (board & (LANES - 1)) * LANE_BITS;
+    }
+
+    /**
+     * nonZero
+     *
+     * @param x four lanes, each below 0x8001
+     * @return the top bit of every lane of x that is not zero
+     */
+    private static long nonZero(long x)
+    {
+        return (x + BELOW_TOPS) & TOPS;
+    }
+
+    /**
+     * countFullRows
+     *
+     * @param into receives the number of complete rows of each field
+     */
+    public void countFullRows(int[] into)
+    {
+        if (mode == Mode.VECTOR)
+        {
+            VECTOR_KERNEL.countFullRows(rows, words, vectorShorts);
+            copy(vectorShorts, into);
+            return;
+        }
+        if (mode == Mode.SCALAR)
+        {
+            countFullRowsScalar(into);
+            return;
+        }
+        for (int w = 0; w < words; ++w)
+        {
+            long count = 0;
+            for (int r = 0; r < NUM_ROWS; ++r)
+            {
+                long full = ~nonZero(rows[r * words + w] ^ FULL_ROWS) & TOPS;
+                count += full >>> (LANE_BITS - 1);
+            }
+            scatter(count, w, into);
+        }
+    }//countFullRows
+
+    /**
+     * countFullRowsScalar
+     */
+    private void countFullRowsScalar(int[] into)
+    {
+        for (int b = 0; b < capacity; ++b)
+        {
+            int count = 0;
+            for (int r = 0; r < NUM_ROWS; ++r)
+            {
+                if (getRow(b, r) == FULL_ROW)
+                {
+                    ++count;
+                }
+            }
+            into[b] = count;
+        }
+    }//countFullRowsScalar
+
+    /**
+     * fits
+     *
+     * Tests one position of a piece on every field.
+     *
+     * @param row the row of the piece's upper-left corner
+     * @param col the column of the piece's upper-left corner
+     * @param pattern the 4-bit pattern of the piece (see {@link BitBoard})
+     * @param into receives, for each field, whether the piece is on the
+     *             field and none of its blocks overlaps a block there
+     */
+    public void fits(int row, int col, int pattern, boolean[] into)
+    {
+        if (!onField(row, col))
+        {
+            Arrays.fill(into, 0, capacity, false);
+            return;
+        }
+        if (mode == Mode.VECTOR)
+        {
+            VECTOR_KERNEL.fits(rows, words, row, (pattern & 3) << col, (pattern >>> 2) << col,
+                vectorFits);
+            System.arraycopy(vectorFits, 0, into, 0, capacity);
+            return;
+        }
+        if (mode == Mode.SCALAR)
+        {
+            for (int b = 0; b < capacity; ++b)
+            {
+                into[b] = fitsScalar(b, row, col, pattern);
+            }
+            return;
+        }
+        long upper = ((pattern & 3) << col) * ONES;
+        long lower = ((pattern >>> 2) << col) * ONES;
+        for (int w = 0; w < words; ++w)
+        {
+            long fit = fitLanes(w, row, upper, lower);
+            for (int k = 0, b = w << LANE_SHIFT; (k < LANES) && (b < capacity); ++k, ++b)
+            {
+                into[b] = ((fit >>> (k * LANE_BITS + LANE_BITS - 1)) & 1) != 0;
+            }
+        }
+    }//fits
+
+    /**
+     * fitLanes
+     *
+     * @param upper the piece's upper row, in every lane
+     * @param lower the piece's lower row, in every lane
+     * @return the top bit of every lane of a long where the piece fits
+     */
+    private long fitLanes(int w, int row, long upper, long lower)
+    {
+        long overlap = (rows[row * words + w] & upper) | (rows[(row + 1) * words + w] & lower);
+        return ~nonZero(overlap) & TOPS;
+    }//fitLanes
+
+    /**
+     * fitsScalar
+     *
+     * @return true if a piece on the field overlaps no block of a field
+     */
+    private boolean fitsScalar(int board, int row, int col, int pattern)
+    {
+        for (int cell = 0; cell < 4; ++cell)
+        {
+            if ((((pattern >> cell) & 1) != 0)
+                && (((getRow(board, row + (cell >> 1)) >> (col + (cell & 1))) & 1) != 0))
+            {
+                return false;
+            }
+        }
+        return true;
+    }//fitsScalar
+
+    /**
+     * onField
+     *
+     * @return true if a piece with its upper-left corner here is on the field
+     */
+    private static boolean onField(int row, int col)
+    {
+        return (row >= 0) && (row <= NUM_ROWS - 2) && (col >= 0) && (col <= NUM_COLS - 2);
+    }
+
+    /**
+     * drop
+     *
+     * Drops a piece straight down on every field, the way the computer
+     * player places pieces.
+     *
+     * @param row the row the piece starts in
+     * @param col the column of the piece's left edge
+     * @param pattern the 4-bit pattern of the piece
+     * @param into receives, for each field, the row the piece comes to rest
+     *             in, or -1 if it doesn't fit where it starts
+     */
+    public void drop(int row, int col, int pattern, int[] into)
+    {
+        if (!onField(row, col))
+        {
+            Arrays.fill(into, 0, capacity, -1);
+            return;
+        }
+        if (mode == Mode.VECTOR)
+        {
+            VECTOR_KERNEL.drop(rows, words, row, (pattern & 3) << col, (pattern >>> 2) << col,
+                vectorShorts);
+            copy(vectorShorts, into);
+            return;
+        }
+        if (mode == Mode.SCALAR)
+        {
+            dropScalar(row, col, pattern, into);
+            return;
+        }
+        long upper = ((pattern & 3) << col) * ONES;
+        long lower = ((pattern >>> 2) << col) * ONES;
+        for (int w = 0; w < words; ++w)
+        {
+            //count the rows each piece falls, for as long as any still falls
+            long start = fitLanes(w, row, upper, lower);
+            long falling = start;
+            long fallen = 0;
+            for (int r = row + 1; (r <= NUM_ROWS - 2) && (falling != 0); ++r)
+            {
+                falling &= fitLanes(w, r, upper, lower);
+                fallen += falling >>> (LANE_BITS - 1);
+            }
+            for (int k = 0, b = w << LANE_SHIFT; (k < LANES) && (b < capacity); ++k, ++b)
+            {
+                into[b] = (((start >>> (k * LANE_BITS + LANE_BITS - 1)) & 1) == 0) ? -1
+                    : row + (int) ((fallen >>> (k * LANE_BITS)) & 0xFFFF);
+            }
+        }
+    }//drop
+
+    /**
+     * dropScalar
+     */
+    private void dropScalar(int row, int col, int pattern, int[] into)
+    {
+        for (int b = 0; b < capacity; ++b)
+        {
+            if (!fitsScalar(b, row, col, pattern))
+            {
+                into[b] = -1;
+                continue;
+            }
+            int r = row;
+            while ((r < NUM_ROWS - 2) && fitsScalar(b, r + 1, col, pattern))
+            {
+                ++r;
+            }
+            into[b] = r;
+        }
+    }//dropScalar
+
+    /**
+     * columnHeights
+     *
+     * @param into receives the height of each column of each field,
+     *             into[board * NUM_COLS + col]: the number of rows from the
+     *             highest block of the column down, or 0 if it has none
+     */
+    public void columnHeights(int[] into)
+    {
+        if (mode == Mode.VECTOR)
+        {
+            //the kernel hands them back a column at a time
+            VECTOR_KERNEL.columnHeights(rows, words, vectorShorts);
+            int fields = words * LANES;
+            for (int b = 0; b < capacity; ++b)
+            {
+                for (int c = 0; c < NUM_COLS; ++c)
+                {
+                    into[b * NUM_COLS + c] = vectorShorts[c * fields + b];
+                }
+            }
+            return;
+        }
+        for (int w = 0; w < words; ++w)
+        {
+            if (mode == Mode.LANES)
+            {
+                scan(w);
+            }
+            else
+            {
+                heightsScalar(w);
+            }
+            int count = Math.min(LANES, capacity - (w << LANE_SHIFT));
+            System.arraycopy(heights, 0, into, (w << LANE_SHIFT) * NUM_COLS, count * NUM_COLS);
+        }
+    }//columnHeights
+
+    /**
+     * scan
+     *
+     * Goes down the rows of the fields of a long once, finding the heights
+     * of their columns, in heights, and counting their holes.  A column's
+     * height is set in the row where its bit first turns up; the rows are
+     * combined four fields at a time, and only those first bits are looked
+     * at one by one.
+     *
+     * @return the number of holes of each field, in its lane
+     */
+    private long scan(int w)
+    {
+        Arrays.fill(heights, 0);
+        long seen = 0;
+        long holes = 0;
+        for (int r = 0; r < NUM_ROWS; ++r)
+        {
+            long row = rows[r * words + w];
+            holes += bitCounts(seen & ~row);
+            for (long fresh = row & ~seen; fresh != 0; fresh &= fresh - 1)
+            {
+                int bit = Long.numberOfTrailingZeros(fresh);
+                heights[(bit >>> 4) * NUM_COLS + (bit & (LANE_BITS - 1))] = NUM_ROWS - r;
+            }
+            seen |= row;
+        }
+        return holes;
+    }//scan
+
+    /**
+     * heightsScalar
+     *
+     * Finds the heights of the columns of the fields of a long, in heights,
+     * one cell at a time.
+     */
+    private void heightsScalar(int w)
+    {
+        for (int k = 0; k < LANES; ++k)
+        {
+            int b = (w << LANE_SHIFT) + k;
+            for (int c = 0; c < NUM_COLS; ++c)
+            {
+                int h = 0;
+                for (int r = 0; (b < capacity) && (r < NUM_ROWS); ++r)
+                {
+                    if (((getRow(b, r) >> c) & 1) != 0)
+                    {
+                        h = NUM_ROWS - r;
+                        break;
+                    }
+                }
+                heights[k * NUM_COLS + c] = h;
+            }
+        }
+    }//heightsScalar
+
+    /**
+     * countHoles
+     *
+     * @param into receives the number of holes of each field: empty cells
+     *             with a block somewhere above them in the same column
+     */
+    public void countHoles(int[] into)
+    {
+        if (mode == Mode.VECTOR)
+        {
+            VECTOR_KERNEL.countHoles(rows, words, vectorShorts);
+            copy(vectorShorts, into);
+            return;
+        }
+        for (int w = 0; w < words; ++w)
+        {
+            scatter((mode == Mode.LANES) ? holeLanes(w) : holesScalar(w), w, into);
+        }
+    }//countHoles
+
+    /**
+     * holeLanes
+     *
+     * @return the number of holes of each field of a long, in its lane
+     */
+    private long holeLanes(int w)
+    {
+        long seen = 0;
+        long holes = 0;
+        for (int r = 0; r < NUM_ROWS; ++r)
+        {
+            long row = rows[r * words + w];
+            holes += bitCounts(seen & ~row);
+            seen |= row;
+        }
+        return holes;
+    }//holeLanes
+
+    /**
+     * holesScalar
+     *
+     * @return the number of holes of each field of a long, in its lane,
+     *         found one cell at a time
+     */
+    private long holesScalar(int w)
+    {
+        long holes = 0;
+        for (int k = 0; k < LANES; ++k)
+        {
+            int b = (w << LANE_SHIFT) + k;
+            int count = 0;
+            for (int c = 0; (b < capacity) && (c < NUM_COLS); ++c)
+            {
+                boolean covered = false;
+                for (int r = 0; r < NUM_ROWS; ++r)
+                {
+                    boolean filled = ((getRow(b, r) >> c) & 1) != 0;
+                    if (covered && !filled)
+                    {
+                        ++count;
+                    }
+                    covered |= filled;
+                }
+            }
+            holes |= (long) count << (k * LANE_BITS);
+        }
+        return holes;
+    }//holesScalar
+
+    /**
+     * bitCounts
+     *
+     * @return the number of set bits of each 16-bit lane of x, in the lane
+     */
+    private static long bitCounts(long x)
+    {
+        x -= (x >>> 1) & 0x5555555555555555L;
+        x = (x & 0x3333333333333333L) + ((x >>> 2) & 0x3333333333333333L);
+        x = (x + (x >>> 4)) & 0x0F0F0F0F0F0F0F0FL;
+        return (x + (x >>> 8)) & 0x00FF00FF00FF00FFL;
+    }//bitCounts
+
+    /**
+     * scatter
+     *
+     * Stores the four lanes of a long as the values of its fields.
+     */
+    private void scatter(long values, int w, int[] into)
+    {
+        for (int k = 0, b = w << LANE_SHIFT; (k < LANES) && (b < capacity); ++k, ++b)
+        {
+            into[b] = (int) (values >>> (k * LANE_BITS)) & 0xFFFF;
+        }
+    }//scatter
+
+    /**
+     * copy
+     *
+     * Stores what a vector kernel handed back as the values of the fields.
+     */
+    private void copy(short[] values, int[] into)
+    {
+        for (int b = 0; b < capacity; ++b)
+        {
+            into[b] = values[b];
+        }
+    }//copy
+
+    /**
+     * evaluate
+     *
+     * Scores every field with a weighted heuristic, giving exactly what
+     * {@link WeightedHeuristic#evaluate} gives for each.
+     *
+     * @param heuristic the weights
+     * @param linesCleared the number of rows removed to reach each field
+     * @param into receives the score of each field
+     */
+    public void evaluate(WeightedHeuristic heuristic, int[] linesCleared, double[] into)
+    {
+        double[] weights = heuristic.getWeights();
+        if (mode == Mode.VECTOR)
+        {
+            VECTOR_KERNEL.surface(rows, words, vectorShorts, vectorHoles, vectorBumpiness);
+            for (int b = 0; b < capacity; ++b)
+            {
+                into[b] = weights[WeightedHeuristic.HEIGHT] * vectorShorts[b]
+                    + weights[WeightedHeuristic.LINES] * linesCleared[b]
+                    + weights[WeightedHeuristic.HOLES] * vectorHoles[b]
+                    + weights[WeightedHeuristic.BUMPINESS] * vectorBumpiness[b];
+            }
+            return;
+        }
+        if (mode == Mode.SCALAR)
+        {
+            for (int b = 0; b < capacity; ++b)
+            {
+                for (int r = 0; r < NUM_ROWS; ++r)
+                {
+                    field[r] = getRow(b, r);
+                }
+                into[b] = heuristic.evaluate(field, linesCleared[b]);
+            }
+            return;
+        }
+
+        for (int w = 0; w < words; ++w)
+        {
+            long holes = scan(w);
+            for (int k = 0, b = w << LANE_SHIFT; (k < LANES) && (b < capacity); ++k, ++b)
+            {
+                int height = 0;
+                int bumpiness = 0;
+                for (int c = 0; c < NUM_COLS; ++c)
+                {
+                    int h = heights[k * NUM_COLS + c];
+                    height += h;
+                    if (c > 0)
+                    {
+                        bumpiness += Math.abs(h - heights[k * NUM_COLS + c - 1]);
+                    }
+                }
+                into[b] = weights[WeightedHeuristic.HEIGHT] * height
+                    + weights[WeightedHeuristic.LINES] * linesCleared[b]
+                    + weights[WeightedHeuristic.HOLES] * (int) ((holes >>> (k * LANE_BITS)) & 0xFFFF)
+                    + weights[WeightedHeuristic.BUMPINESS] * bumpiness;
+            }
+        }
+    }//evaluate
+
+    /**
+     * Interface Kernel - the kernels of a batch in a class of their own, on
+     * the batch's rows: row r of the fields 4w to 4w + 3 in the lanes of
+     * rows[r * words + w].  Each hands back one value per field, in the
+     * order of the fields, for every field of the padded batch.
+     */
+    interface Kernel
+    {
+        /**
+         * @return the longs the kernels work on at a time; words is always
+         *         a multiple of it
+         */
+        int longsPerVector();
+
+        void countFullRows(long[] rows, int words, short[] into);
+
+        /**
+         * @param upper the piece's upper row, shifted to its column
+         * @param lower the piece's lower row, shifted to its column
+         */
+        void fits(long[] rows, int words, int row, int upper, int lower, boolean[] into);
+
+        /**
+         * @param into receives the row each piece comes to rest in, or -1
+         */
+        void drop(long[] rows, int words, int row, int upper, int lower, short[] into);
+
+        /**
+         * @param into receives the heights a column at a time: that of
+         *             column c of field b at into[c * words * 4 + b]
+         */
+        void columnHeights(long[] rows, int words, short[] into);
+
+        void countHoles(long[] rows, int words, short[] into);
+
+        /**
+         * Finds what a WeightedHeuristic needs of each field: the sum of
+         * its column heights, its holes and its bumpiness.
+         */
+        void surface(long[] rows, int words, short[] height, short[] holes, short[] bumpiness);
+    }//interface Kernel
+
+    /**
+     * This method fills a batch of every mode there is with random fields
+     * and checks every kernel against the rules of {@link BitBoard} and
+     * {@link WeightedHeuristic}.  The Vector API kernels are only checked
+     * when the program is run with --add-modules jdk.incubator.vector.
+     * Then it times the heuristic on each kind of batch.  It exits with
+     * status 1 if any answer differs, or if a new batch does not pick the
+     * mode it was told to expect.
+     *
+     * @param args the number of fields (default 4099, so the last long is
+     *             not full), the seed (default 1), the rounds of the timing
+     *             (default 1000) and the mode a new batch must pick, such
+     *             as VECTOR when run with the module and LANES without it
+     *             (default any)
+     */
+    public static void main(String[] args)
+    {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 4099;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+        Mode expectedMode = (args.length > 3) ? Mode.valueOf(args[3]) : null;
+
+        Mode picked = new BoardBatch(1).getMode();
+        System.out.println("a new batch uses the " + picked.name().toLowerCase() + " kernels");
+        if ((expectedMode != null) && (picked != expectedMode))
+        {
+            System.out.println("expected the " + expectedMode.name().toLowerCase() + " kernels");
+            System.exit(1);
+        }
+
+        List<BoardBatch> batches = new ArrayList<BoardBatch>();
+        for (Mode mode : Mode.values())
+        {
+            if ((mode != Mode.VECTOR) || isVectorAvailable())
+            {
+                batches.add(new BoardBatch(count, mode));
+            }
+        }
+        if (!isVectorAvailable())
+        {
+            System.out.println("jdk.incubator.vector is not present;"
+                + " the Vector API kernels are not checked");
+        }
+
+        BitBoard[] boards = new BitBoard[count];
+        SplittableRandom randGen = new SplittableRandom(seed);
+        for (int b = 0; b < count; ++b)
+        {
+            boards[b] = randomBoard(randGen);
+            for (BoardBatch batch : batches)
+            {
+                for (int r = 0; r < NUM_ROWS; ++r)
+                {
+                    batch.setRow(b, r, boards[b].rowMask(r));
+                }
+            }
+        }
+
+        long checked = 0;
+        long failed = 0;
+        int[] ints = new int[count * NUM_COLS];
+        int[] drops = new int[count];
+        boolean[] fits = new boolean[count];
+        double[] scores = new double[count];
+
+        //what the rules say
+        int[] fullRows = new int[count];
+        int[] heights = new int[count * NUM_COLS];
+        int[] holes = new int[count];
+        for (int b = 0; b < count; ++b)
+        {
+            for (int r = 0; r < NUM_ROWS; ++r)
+            {
+                fullRows[b] += boards[b].isRowFull(r) ? 1 : 0;
+            }
+            for (int c = 0; c < NUM_COLS; ++c)
+            {
+                boolean covered = false;
+                for (int r = 0; r < NUM_ROWS; ++r)
+                {
+                    boolean filled = boards[b].get(r, c) != MintrisEngine.EMPTY;
+                    if (filled && !covered)
+                    {
+                        heights[b * NUM_COLS + c] = NUM_ROWS - r;
+                    }
+                    holes[b] += (covered && !filled) ? 1 : 0;
+                    covered |= filled;
+                }
+            }
+        }
+        WeightedHeuristic heuristic = WeightedHeuristic.DEFAULT;
+        int[] lines = new int[count];
+        double[] expected = new double[count];
+        int[] field = new int[NUM_ROWS];
+        for (int b = 0; b < count; ++b)
+        {
+            lines[b] = randGen.nextInt(5);
+            for (int r = 0; r < NUM_ROWS; ++r)
+            {
+                field[r] = boards[b].rowMask(r);
+            }
+            expected[b] = heuristic.evaluate(field, lines[b]);
+        }
+
+        for (BoardBatch batch : batches)
+        {
+            String mode = batch.getMode().name().toLowerCase();
+
+            batch.countFullRows(ints);
+            for (int b = 0; b < count; ++b)
+            {
+                ++checked;
+                failed += report(ints[b] != fullRows[b], mode, "full rows", b);
+            }
+
+            //every position and drop of every pattern
+            for (int pattern = 1; pattern < 16; ++pattern)
+            {
+                for (int row = -1; row < NUM_ROWS; ++row)
+                {
+                    for (int col = -1; col < NUM_COLS; ++col)
+                    {
+                        batch.fits(row, col, pattern, fits);
+                        batch.drop(row, col, pattern, drops);
+                        for (int b = 0; b < count; ++b)
+                        {
+                            boolean fit = fitsRule(boards[b], row, col, pattern);
+                            int rest = -1;
+                            if (fit)
+                            {
+                                rest = row;
+                                while (fitsRule(boards[b], rest + 1, col, pattern))
+                                {
+                                    ++rest;
+                                }
+                            }
+                            checked += 2;
+                            failed += report(fits[b] != fit, mode, "fits", b);
+                            failed += report(drops[b] != rest, mode, "drop", b);
+                        }
+                    }
+                }
+            }
+
+            batch.columnHeights(ints);
+            for (int i = 0; i < count * NUM_COLS; ++i)
+            {
+                ++checked;
+                failed += report(ints[i] != heights[i], mode, "height", i / NUM_COLS);
+            }
+            batch.countHoles(ints);
+            for (int b = 0; b < count; ++b)
+            {
+                ++checked;
+                failed += report(ints[b] != holes[b], mode, "holes", b);
+            }
+
+            //the heuristic, which must agree to the last bit
+            batch.evaluate(heuristic, lines, scores);
+            for (int b = 0; b < count; ++b)
+            {
+                ++checked;
+                failed += report(Double.compare(scores[b], expected[b]) != 0, mode, "score", b);
+            }
+        }
+        System.out.println(checked + " answers checked, " + failed + " differ");
+
+        for (BoardBatch batch : batches)
+        {
+            System.out.printf("%-7s %.0f fields scored per second%n",
+                batch.getMode().name().toLowerCase() + ":",
+                time(batch, heuristic, lines, scores, rounds));
+        }
+        if (failed > 0)
+        {
+            System.exit(1);
+        }
+    }//main
+
+    /**
+     * randomBoard
+     *
+     * @return a field filled up to a random height, with a few holes and
+     *         now and then a full row
+     */
+    private static BitBoard randomBoard(SplittableRandom randGen)
+    {
+        BitBoard board = new BitBoard();
+        int top = randGen.nextInt(NUM_ROWS + 1);
+        double density = 0.5 + 0.5 * randGen.nextDouble();
+        for (int r = top; r < NUM_ROWS; ++r)
+        {
+            boolean full = randGen.nextInt(8) == 0;
+            for (int c = 0; c < NUM_COLS; ++c)
+            {
+                if (full || (randGen.nextDouble() < density))
+                {
+                    board.set(r, c, 1 + randGen.nextInt(MintrisEngine.NUM_COLORS));
+                }
+            }
+        }
+        return board;
+    }//randomBoard
+
+    /**
+     * fitsRule
+     *
+     * @return true if a piece at the given position is on a field and
+     *         overlaps no block of it, by the rules of {@link BitBoard}
+     */
+    private static boolean fitsRule(BitBoard board, int row, int col, int pattern)
+    {
+        return onField(row, col) && ((board.window(row, col) & pattern) == 0);
+    }
+
+    /**
+     * report
+     *
+     * @return 1 if a check failed, after saying so
+     */
+    private static int report(boolean failed, String mode, String what, int board)
+    {
+        if (failed)
+        {
+            System.out.println(mode + ": " + what + " differs for field " + board);
+        }
+        return failed ? 1 : 0;
+    }//report
+
+    /**
+     * time
+     *
+     * @return how many fields a batch scores per second
+     */
+    private static double time(BoardBatch batch, WeightedHeuristic heuristic,
+                               int[] lines, double[] into, int rounds)
+    {
+        //warm up first
+        for (int i = 0; i < rounds; ++i)
+        {
+            batch.evaluate(heuristic, lines, into);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; ++i)
+        {
+            batch.evaluate(heuristic, lines, into);
+        }
+        return (double) rounds * batch.getCapacity() / ((System.nanoTime() - start) / 1e9);
+    }//time
+
+}//class BoardBatch
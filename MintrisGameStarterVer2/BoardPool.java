@@ -0,0 +1,775 @@
+import java.util.*;
+
+/**
+ * Class BoardPool - many Mintris games stored side by side in a few flat
+ * primitive arrays, for hosting thousands of games in one JVM.
+ *
+ * A game in the pool is a slot, named by its board id.  Every part of a
+ * game lives in one array shared by all slots ("struct of arrays"): the row
+ * masks of board b are masks[b * NUM_ROWS ...], its cell colors are bytes
+ * colors[b * NUM_ROWS * NUM_COLS ...], and its score, piece and generator
+ * state are element b of their arrays.  A pool of any size is a dozen
+ * objects, and a board takes 280 bytes plus a few ints.
+ *
+ * The operations are those of {@link MintrisEngine}, with the board id
+ * first, and follow the same rules: the random number generator is the
+ * one java.util.Random uses, kept as a long per slot, so a slot started
+ * with newGame(id, seed) plays exactly like an engine started with
+ * newGame(seed) given the same actions.
+ *
+ * A pool is not thread-safe, but different threads may work on different
+ * slots as long as allocate and release are done by one of them.
+ */
+public class BoardPool
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    private static final int NUM_ROWS = MintrisEngine.NUM_ROWS;
+    private static final int NUM_COLS = MintrisEngine.NUM_COLS;
+    private static final int NUM_CELLS = NUM_ROWS * NUM_COLS;
+    private static final int EMPTY = MintrisEngine.EMPTY;
+    private static final int FULL_ROW = BitBoard.FULL_ROW;
+
+    //the linear congruential generator of java.util.Random
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long SEED_MASK = (1L << 48) - 1;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private int capacity;
+
+    //the field: one occupancy mask per row and one color per cell
+    private int[] masks;
+    private byte[] colors;
+
+    //the rows changed since full rows were last removed, as in BitBoard
+    private int[] touchedTop;
+    private int[] touchedBottom;
+
+    //the rest of each game
+    private int[] score;
+    private int[] currRow;
+    private int[] currCol;
+    private int[] currPattern;
+    private int[] pieces;
+    private boolean[] gameOver;
+    private long[] randState;
+
+    //the slots not in use, as a stack
+    private int[] free;
+    private int freeCount;
+    private boolean[] inUse;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * BoardPool
+     *
+     * @param capacity the most games the pool holds at once
+     */
+    public BoardPool(int capacity)
+    {
+        this.capacity = capacity;
+        masks = new int[capacity * NUM_ROWS];
+        colors = new byte[capacity * NUM_CELLS];
+        touchedTop = new int[capacity];
+        touchedBottom = new int[capacity];
+        score = new int[capacity];
+        currRow = new int[capacity];
+        currCol = new int[capacity];
+        currPattern = new int[capacity];
+        pieces = new int[capacity];
+        gameOver = new boolean[capacity];
+        randState = new long[capacity];
+        inUse = new boolean[capacity];
+
+        free = new int[capacity];
+        for (int i = 0; i < capacity; ++i)
+        {
+            free[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+        Arrays.fill(colors, (byte) EMPTY);
+    }//BoardPool
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return the number of slots in use
+     */
+    public int size()
+    {
+        return capacity - freeCount;
+    }
+
+    /**
+     * allocate
+     *
+     * Takes a free slot with an empty field.
+     *
+     * @return the board id of the slot
+     * @throws IllegalStateException if every slot is in use
+     */
+    public int allocate()
+    {
+        if (freeCount == 0)
+        {
+            throw new IllegalStateException("all " + capacity + " boards are in use");
+        }
+        int id = free[--freeCount];
+        inUse[id] = true;
+        clearField(id);
+        return id;
+    }//allocate
+
+    /**
+     * release
+     *
+     * Gives a slot back to the pool.
+     *
+     * @param id the board id of the slot
+     */
+    public void release(int id)
+    {
+        if (!inUse[id])
+        {
+            throw new IllegalArgumentException("board " + id + " is not in use");
+        }
+        inUse[id] = false;
+        free[freeCount++] = id;
+    }//release
+
+    /**
+     * newGame
+     *
+     * Starts a new game in a slot.
+     *
+     * @param id the board id of the slot
+     * @param seed the seed of the piece generator
+     */
+    public void newGame(int id, long seed)
+    {
+        randState[id] = (seed ^ MULTIPLIER) & SEED_MASK;
+        step(id, MintrisEngine.Action.NEW_GAME);
+    }
+
+    /**
+     * step
+     *
+     * Applies one player action to the game in a slot (see
+     * {@link MintrisEngine#step}).
+     *
+     * @param id the board id of the slot
+     * @param action what the player did
+     */
+    public void step(int id, MintrisEngine.Action action)
+    {
+        if (gameOver[id] && (action != MintrisEngine.Action.NEW_GAME)
+            && (action != MintrisEngine.Action.TEST_LAYOUT))
+        {
+            return;
+        }
+
+        int row = currRow[id];
+        int col = currCol[id];
+        switch(action)
+        {
+            case LEFT:
+            if (validMove(id, row, col, MintrisEngine.LEFT))
+            {
+                move(id, row, col, MintrisEngine.LEFT);
+                currCol[id] = col - 1;
+            }
+            break;
+
+            case RIGHT:
+            if (validMove(id, row, col, MintrisEngine.RIGHT))
+            {
+                move(id, row, col, MintrisEngine.RIGHT);
+                currCol[id] = col + 1;
+            }
+            break;
+
+            case DOWN:
+            if (validMove(id, row, col, MintrisEngine.DOWN))
+            {
+                move(id, row, col, MintrisEngine.DOWN);
+                currRow[id] = row + 1;
+            }
+            break;
+
+            case DROP:
+            while (canShift(id, currRow[id], col, currPattern[id], 1, 0))
+            {
+                shift(id, currRow[id], col, currPattern[id], 1, 0);
+                ++currRow[id];
+            }
+            if (currRow[id] > row)
+            {
+                removeRows(id);
+            }
+            break;
+
+            case ROTATE:
+            rotate(id, row, col);
+            break;
+
+            case NEW_GAME:
+            clearField(id);
+            score[id] = 0;
+            pieces[id] = 0;
+            createRandomPiece(id);
+            break;
+
+            case TEST_LAYOUT:
+            testLayout(id);
+            createRandomPiece(id);
+            break;
+        }//switch
+
+        //Regardless of action check for a piece that has bottomed out
+        if (!gameOver[id] && !validMove(id, currRow[id], currCol[id], MintrisEngine.DOWN))
+        {
+            removeRows(id);
+            createRandomPiece(id);
+        }
+    }//step
+
+    /**
+     * validMove
+     *
+     * @return true if the piece at the given position of a board may move
+     *         one space in the given direction (see
+     *         {@link MintrisEngine#validMove})
+     */
+    public boolean validMove(int id, int row, int col, int direction)
+    {
+        //a direction plus one is its kind of move in the MoveTable
+        int kind = direction + 1;
+        int toRow = (kind == MoveTable.DOWN) ? row + 1 : row;
+        int toCol = col + direction;
+        if ((toRow < 0) || (toRow > NUM_ROWS - 2) || (toCol < 0) || (toCol > NUM_COLS - 2))
+        {
+            return false;
+        }
+        return (MoveTable.lookup(kind, patternAt(id, row, col), area(id, row, col, kind))
+                & MoveTable.LEGAL) != 0;
+    }//validMove
+
+    /**
+     * move
+     *
+     * Moves the piece at the given position of a board one space without
+     * checking that the move is valid, then removes complete rows (see
+     * {@link MintrisEngine#move}).
+     */
+    public void move(int id, int row, int col, int direction)
+    {
+        int pattern = patternAt(id, row, col);
+        if (direction == MintrisEngine.DOWN)
+        {
+            shift(id, row, col, pattern, 1, 0);
+        }
+        else
+        {
+            shift(id, row, col, pattern, 0, direction);
+        }
+        removeRows(id);
+    }//move
+
+    /**
+     * rotate
+     *
+     * Rotates the piece at the given position of a board unless one of its
+     * blocks would land on another block (see {@link MintrisEngine#rotate}).
+     */
+    public void rotate(int id, int row, int col)
+    {
+        int pattern = patternAt(id, row, col);
+        int turned = BitBoard.rotatePattern(pattern);
+        int base = id * NUM_ROWS;
+        int upper = masks[base + row] & ~((pattern & 3) << col);
+        int lower = masks[base + row + 1] & ~((pattern >>> 2) << col);
+        if (((upper & ((turned & 3) << col)) | (lower & ((turned >>> 2) << col))) != 0)
+        {
+            return;
+        }
+
+        int upperLeft = take(id, row, col, pattern & 1);
+        int upperRight = take(id, row, col + 1, pattern & 2);
+        int lowerLeft = take(id, row + 1, col, pattern & 4);
+        int lowerRight = take(id, row + 1, col + 1, pattern & 8);
+        put(id, row, col, upperRight);
+        put(id, row, col + 1, lowerRight);
+        put(id, row + 1, col + 1, lowerLeft);
+        put(id, row + 1, col, upperLeft);
+
+        if ((row == currRow[id]) && (col == currCol[id]))
+        {
+            currPattern[id] = turned;
+        }
+    }//rotate
+
+    /**
+     * removeRows
+     *
+     * Removes the complete rows of a board among those changed since the
+     * last call, in one pass from the bottom up, and adds them to the score.
+     */
+    public void removeRows(int id)
+    {
+        int bottom = touchedBottom[id];
+        if (bottom < 0)
+        {
+            return;
+        }
+
+        int top = touchedTop[id];
+        int base = id * NUM_ROWS;
+        int cleared = 0;
+        for (int row = bottom; row >= 0; --row)
+        {
+            if ((row >= top) && (masks[base + row] == FULL_ROW))
+            {
+                ++cleared;
+            }
+            else if (cleared > 0)
+            {
+                masks[base + row + cleared] = masks[base + row];
+                System.arraycopy(colors, (base + row) * NUM_COLS,
+                    colors, (base + row + cleared) * NUM_COLS, NUM_COLS);
+            }
+        }
+        for (int row = 0; row < cleared; ++row)
+        {
+            clearRow(id, row);
+        }
+        untouch(id);
+
+        if (cleared > 0)
+        {
+            currPattern[id] = window(id, currRow[id], currCol[id]);
+            score[id] += cleared;
+        }
+    }//removeRows
+
+    /**
+     * getCell
+     *
+     * @return the color of a cell of a board
+     */
+    public int getCell(int id, int row, int col)
+    {
+        return colors[(id * NUM_ROWS + row) * NUM_COLS + col];
+    }
+
+    /**
+     * setCell
+     *
+     * Stores a color in a cell of a board.
+     */
+    public void setCell(int id, int row, int col, int color)
+    {
+        touch(id, row);
+        colors[(id * NUM_ROWS + row) * NUM_COLS + col] = (byte) color;
+        if (color == EMPTY)
+        {
+            masks[id * NUM_ROWS + row] &= ~(1 << col);
+        }
+        else
+        {
+            masks[id * NUM_ROWS + row] |= 1 << col;
+        }
+    }//setCell
+
+    /**
+     * @return the occupancy bitmask of a row of a board
+     */
+    public int getRowMask(int id, int row)
+    {
+        return masks[id * NUM_ROWS + row];
+    }
+
+    public int getScore(int id)
+    {
+        return score[id];
+    }
+
+    public int getPieces(int id)
+    {
+        return pieces[id];
+    }
+
+    public boolean isGameOver(int id)
+    {
+        return gameOver[id];
+    }
+
+    public int getCurrRow(int id)
+    {
+        return currRow[id];
+    }
+
+    public int getCurrCol(int id)
+    {
+        return currCol[id];
+    }
+
+    public int getCurrPattern(int id)
+    {
+        return currPattern[id];
+    }
+
+    /**
+     * checksum
+     *
+     * @return the same hash of a board's field as {@link MintrisEngine#checksum}
+     */
+    public long checksum(int id)
+    {
+        long hash = 0xcbf29ce484222325L;
+        int start = id * NUM_CELLS;
+        for (int i = start; i < start + NUM_CELLS; ++i)
+        {
+            hash ^= colors[i];
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }//checksum
+
+    /**
+     * clearField
+     *
+     * Empties the field of a board and clears its game over flag.
+     */
+    private void clearField(int id)
+    {
+        for (int row = 0; row < NUM_ROWS; ++row)
+        {
+            clearRow(id, row);
+        }
+        untouch(id);
+        gameOver[id] = false;
+    }//clearField
+
+    /**
+     * createRandomPiece
+     *
+     * Puts a new random piece at the top of a board, or ends the game if
+     * it doesn't fit (see {@link MintrisEngine#createRandomPiece}).
+     */
+    private void createRandomPiece(int id)
+    {
+        int col = nextInt(id, NUM_COLS - 1);
+        int type = nextInt(id, MintrisEngine.NUM_COLORS) + 1;
+        int which = nextInt(id, 4);
+
+        int pattern = 0xF & ~(1 << which);
+        if ((window(id, 0, col) & pattern) != 0)
+        {
+            gameOver[id] = true;
+            return;
+        }
+        put(id, 0, col, (pattern & 1) != 0 ? type : EMPTY);
+        put(id, 0, col + 1, (pattern & 2) != 0 ? type : EMPTY);
+        put(id, 1, col, (pattern & 4) != 0 ? type : EMPTY);
+        put(id, 1, col + 1, (pattern & 8) != 0 ? type : EMPTY);
+
+        currRow[id] = 0;
+        currCol[id] = col;
+        currPattern[id] = pattern;
+        ++pieces[id];
+    }//createRandomPiece
+
+    /**
+     * testLayout
+     *
+     * The layout of {@link MintrisEngine.Action#TEST_LAYOUT}.
+     */
+    private void testLayout(int id)
+    {
+        clearField(id);
+        for (int row = 3; row < NUM_ROWS; ++row)
+        {
+            setCell(id, row, NUM_COLS / 2, MintrisEngine.BLUE_BLOCK);
+        }
+        for (int row = NUM_ROWS - 2; row < NUM_ROWS; ++row)
+        {
+            for (int col = 0; col < NUM_COLS; ++col)
+            {
+                setCell(id, row, col, MintrisEngine.RED_BLOCK);
+            }
+        }
+        setCell(id, NUM_ROWS - 1, 0, EMPTY);
+        setCell(id, NUM_ROWS - 2, 1, EMPTY);
+        setCell(id, NUM_ROWS - 2, 0, EMPTY);
+    }//testLayout
+
+    /**
+     * nextInt
+     *
+     * Draws from the generator of a board exactly as
+     * java.util.Random.nextInt(bound) would.
+     */
+    private int nextInt(int id, int bound)
+    {
+        int r = next(id, 31);
+        int m = bound - 1;
+        if ((bound & m) == 0)
+        {
+            return (int) ((bound * (long) r) >> 31);
+        }
+        for (int u = r; u - (r = u % bound) + m < 0; u = next(id, 31))
+        {
+        }
+        return r;
+    }//nextInt
+
+    /**
+     * next
+     *
+     * @return the next given number of random bits of a board's generator
+     */
+    private int next(int id, int bits)
+    {
+        long seed = (randState[id] * MULTIPLIER + ADDEND) & SEED_MASK;
+        randState[id] = seed;
+        return (int) (seed >>> (48 - bits));
+    }//next
+
+    /**
+     * patternAt
+     *
+     * @return the blocks of the current piece if it is at the given
+     *         position, otherwise every occupied cell of the 2x2 area
+     */
+    private int patternAt(int id, int row, int col)
+    {
+        if ((row == currRow[id]) && (col == currCol[id]))
+        {
+            return currPattern[id];
+        }
+        return window(id, row, col);
+    }//patternAt
+
+    /**
+     * window
+     *
+     * @return the 4-bit occupancy pattern of a 2x2 area of a board
+     */
+    private int window(int id, int row, int col)
+    {
+        int base = id * NUM_ROWS;
+        return ((masks[base + row] >>> col) & 3) | (((masks[base + row + 1] >>> col) & 3) << 2);
+    }
+
+    /**
+     * area
+     *
+     * @return the occupancy of the area of a board a one-step move involves,
+     *         numbered as in {@link MoveTable}
+     */
+    private int area(int id, int row, int col, int kind)
+    {
+        int base = id * NUM_ROWS;
+        int width = MoveTable.width(kind);
+        int left = col + MoveTable.firstCol(kind);
+        int mask = (1 << width) - 1;
+        int area = ((masks[base + row] >>> left) & mask)
+            | (((masks[base + row + 1] >>> left) & mask) << width);
+        if (kind == MoveTable.DOWN)
+        {
+            area |= ((masks[base + row + 2] >>> left) & mask) << 4;
+        }
+        return area;
+    }//area
+
+    /**
+     * canShift
+     *
+     * @return true if a piece may be moved by (dRow, dCol) on a board (see
+     *         {@link BitBoard#canShift})
+     */
+    private boolean canShift(int id, int row, int col, int pattern, int dRow, int dCol)
+    {
+        int toRow = row + dRow;
+        int toCol = col + dCol;
+        if ((toRow < 0) || (toRow > NUM_ROWS - 2) || (toCol < 0) || (toCol > NUM_COLS - 2))
+        {
+            return false;
+        }
+        int upper = (pattern & 3) << toCol;
+        int lower = (pattern >>> 2) << toCol;
+        return ((stack(id, toRow, row, col, pattern) & upper)
+                | (stack(id, toRow + 1, row, col, pattern) & lower)) == 0;
+    }//canShift
+
+    /**
+     * stack
+     *
+     * @return the occupancy of a row of a board without the given piece
+     */
+    private int stack(int id, int r, int row, int col, int pattern)
+    {
+        int mask = masks[id * NUM_ROWS + r];
+        if (r == row)
+        {
+            return mask & ~((pattern & 3) << col);
+        }
+        if (r == row + 1)
+        {
+            return mask & ~((pattern >>> 2) << col);
+        }
+        return mask;
+    }//stack
+
+    /**
+     * shift
+     *
+     * Moves the blocks of a piece of a board by (dRow, dCol) without
+     * checking the move (see {@link BitBoard#shift}).
+     */
+    private void shift(int id, int row, int col, int pattern, int dRow, int dCol)
+    {
+        int upperLeft = take(id, row, col, pattern & 1);
+        int upperRight = take(id, row, col + 1, pattern & 2);
+        int lowerLeft = take(id, row + 1, col, pattern & 4);
+        int lowerRight = take(id, row + 1, col + 1, pattern & 8);
+
+        int toRow = row + dRow;
+        int toCol = col + dCol;
+        put(id, toRow, toCol, upperLeft);
+        put(id, toRow, toCol + 1, upperRight);
+        put(id, toRow + 1, toCol, lowerLeft);
+        put(id, toRow + 1, toCol + 1, lowerRight);
+    }//shift
+
+    /**
+     * take
+     *
+     * Removes a block of a piece from a board.
+     *
+     * @return the color of the block, or EMPTY if the bit is zero
+     */
+    private int take(int id, int row, int col, int bit)
+    {
+        if (bit == 0)
+        {
+            return EMPTY;
+        }
+        int color = getCell(id, row, col);
+        setCell(id, row, col, EMPTY);
+        return color;
+    }//take
+
+    /**
+     * put
+     *
+     * Stores a color in a cell of a board unless it is EMPTY.
+     */
+    private void put(int id, int row, int col, int color)
+    {
+        if (color != EMPTY)
+        {
+            setCell(id, row, col, color);
+        }
+    }//put
+
+    /**
+     * clearRow
+     *
+     * Sets every cell of one row of a board to EMPTY.
+     */
+    private void clearRow(int id, int row)
+    {
+        touch(id, row);
+        masks[id * NUM_ROWS + row] = 0;
+        int start = (id * NUM_ROWS + row) * NUM_COLS;
+        Arrays.fill(colors, start, start + NUM_COLS, (byte) EMPTY);
+    }//clearRow
+
+    /**
+     * touch
+     *
+     * Records that a row of a board has changed.
+     */
+    private void touch(int id, int row)
+    {
+        if (row < touchedTop[id])
+        {
+            touchedTop[id] = row;
+        }
+        if (row > touchedBottom[id])
+        {
+            touchedBottom[id] = row;
+        }
+    }//touch
+
+    /**
+     * untouch
+     *
+     * Forgets the changed rows of a board.
+     */
+    private void untouch(int id)
+    {
+        touchedTop[id] = Integer.MAX_VALUE;
+        touchedBottom[id] = -1;
+    }//untouch
+
+    /**
+     * This method fills a pool with games and plays random moves on boards
+     * picked at random, starting a new game on any board whose game is over.
+     *
+     * @param args the number of boards (default 100000) and of steps
+     *             (default 10000000)
+     */
+    public static void main(String[] args)
+    {
+        int boards = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        long steps = (args.length > 1) ? Long.parseLong(args[1]) : 10000000;
+
+        BoardPool pool = new BoardPool(boards);
+        for (int i = 0; i < boards; ++i)
+        {
+            pool.newGame(pool.allocate(), i);
+        }
+
+        MintrisEngine.Action[] moves = {
+            MintrisEngine.Action.LEFT, MintrisEngine.Action.RIGHT,
+            MintrisEngine.Action.DOWN, MintrisEngine.Action.DROP,
+            MintrisEngine.Action.ROTATE };
+        SplittableRandom randGen = new SplittableRandom(0);
+        long games = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < steps; ++i)
+        {
+            int id = randGen.nextInt(boards);
+            if (pool.isGameOver(id))
+            {
+                pool.newGame(id, randGen.nextLong());
+                ++games;
+            }
+            else
+            {
+                pool.step(id, moves[randGen.nextInt(moves.length)]);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d boards, %d steps, %d games finished, %.0f steps per second%n",
+            boards, steps, games, steps / seconds);
+    }//main
+
+}//class BoardPool
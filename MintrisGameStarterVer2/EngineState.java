@@ -0,0 +1,120 @@
+/**
+ * Class EngineState - an unchangeable picture of a whole game: the field,
+ * the current piece, the score and the pieces to come.  It is
+ * taken with {@link MintrisEngine#save} and put back with
+ * {@link MintrisEngine#restore}, as often as wanted.
+ *
+ * The field is held as a {@link BitBoard.Snapshot}, which shares its rows
+ * with the engine, so saving a game copies an int and a reference per row
+ * and the few pieces to come, no matter how full the field is.
+ */
+public class EngineState
+{
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private final BitBoard.Snapshot board;
+    private final int score;
+    private final int currRow;
+    private final int currCol;
+    private final int currPattern;
+    private final int pieces;
+    private final boolean gameOver;
+    private final long tick;
+
+    //a copy of the engine's piece queue, never dealt from
+    private final PieceQueue upcoming;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * EngineState
+     *
+     * Only the engine makes these; see {@link MintrisEngine#save}.
+     */
+    EngineState(BitBoard.Snapshot board, int score, int currRow, int currCol,
+                int currPattern, int pieces, boolean gameOver, long tick,
+                PieceQueue upcoming)
+    {
+        this.board = board;
+        this.score = score;
+        this.currRow = currRow;
+        this.currCol = currCol;
+        this.currPattern = currPattern;
+        this.pieces = pieces;
+        this.gameOver = gameOver;
+        this.tick = tick;
+        this.upcoming = upcoming;
+    }//EngineState
+
+    public BitBoard.Snapshot getBoard()
+    {
+        return board;
+    }
+
+    /**
+     * @return the color of a cell of the saved field
+     */
+    public int getCell(int row, int col)
+    {
+        return board.get(row, col);
+    }
+
+    public int getScore()
+    {
+        return score;
+    }
+
+    public int getCurrRow()
+    {
+        return currRow;
+    }
+
+    public int getCurrCol()
+    {
+        return currCol;
+    }
+
+    public int getCurrPattern()
+    {
+        return currPattern;
+    }
+
+    public int getPieces()
+    {
+        return pieces;
+    }
+
+    public boolean isGameOver()
+    {
+        return gameOver;
+    }
+
+    public long getTick()
+    {
+        return tick;
+    }
+
+    /**
+     * @return the pieces to come; only for restoring from (see
+     *         {@link PieceQueue#restore})
+     */
+    PieceQueue getUpcoming()
+    {
+        return upcoming;
+    }
+
+    /**
+     * @param index 0 for the piece that was to be spawned next, and so on
+     * @return the piece, packed (see {@link Piece})
+     */
+    public int getNextPiece(int index)
+    {
+        return upcoming.peek(index);
+    }
+
+}//class EngineState
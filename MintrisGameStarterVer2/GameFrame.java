@@ -0,0 +1,163 @@
+import java.util.concurrent.atomic.*;
+
+/**
+ * Class GameFrame - a picture of a Mintris game at one moment, published by
+ * the game loop for the view to draw.
+ *
+ * A frame made with the constructor, or got from {@link GameLoop#getFrame},
+ * never changes.  The game loop keeps a few frames of its own that it fills
+ * in turn so that it does not allocate one per change; those are lent out
+ * by {@link GameLoop#acquireFrame} and do not change until they are given
+ * back.
+ */
+public final class GameFrame
+{
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+
+    //the color of every cell, row by row
+    private byte[] cells;
+    private int numRows;
+    private int numCols;
+    private int score;
+    private boolean gameOver;
+
+    //the pieces to come, packed (see Piece)
+    private int[] next;
+
+    //counts the frames published by a game loop
+    private long sequence;
+
+    //how many threads have borrowed the frame from its game loop
+    final AtomicInteger holds = new AtomicInteger();
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * GameFrame
+     *
+     * Takes a picture of a game.
+     *
+     * @param engine the game
+     * @param sequence the number of the frame
+     */
+    public GameFrame(MintrisEngine engine, long sequence)
+    {
+        fill(engine, sequence);
+    }//GameFrame
+
+    /**
+     * GameFrame
+     *
+     * Copies a frame.
+     *
+     * @param other the frame to copy
+     */
+    GameFrame(GameFrame other)
+    {
+        cells = other.cells.clone();
+        numRows = other.numRows;
+        numCols = other.numCols;
+        score = other.score;
+        gameOver = other.gameOver;
+        next = other.next.clone();
+        sequence = other.sequence;
+    }//GameFrame
+
+    /**
+     * fill
+     *
+     * Takes a picture of a game into this frame, reusing its arrays when
+     * the game is the same size.
+     *
+     * @param engine the game
+     * @param sequence the number of the frame
+     */
+    void fill(MintrisEngine engine, long sequence)
+    {
+        numRows = engine.getNumRows();
+        numCols = engine.getNumCols();
+        if ((cells == null) || (cells.length != numRows * numCols))
+        {
+            cells = new byte[numRows * numCols];
+        }
+        for (int row = 0; row < numRows; ++row)
+        {
+            for (int col = 0; col < numCols; ++col)
+            {
+                cells[row * numCols + col] = (byte) engine.getCell(row, col);
+            }
+        }
+        score = engine.getScore();
+        gameOver = engine.isGameOver();
+        if ((next == null) || (next.length != engine.getLookahead()))
+        {
+            next = new int[engine.getLookahead()];
+        }
+        for (int i = 0; i < next.length; ++i)
+        {
+            next[i] = engine.getNextPiece(i);
+        }
+        this.sequence = sequence;
+    }//fill
+
+    /**
+     * getCell
+     *
+     * @return the color of a cell
+     */
+    public int getCell(int row, int col)
+    {
+        return cells[row * numCols + col];
+    }
+
+    public int getNumRows()
+    {
+        return numRows;
+    }
+
+    public int getNumCols()
+    {
+        return numCols;
+    }
+
+    /**
+     * getNextPiece
+     *
+     * @param index 0 for the piece that will be spawned next, and so on
+     * @return the piece, packed (see {@link Piece})
+     */
+    public int getNextPiece(int index)
+    {
+        return next[index];
+    }
+
+    /**
+     * @return how many of the next pieces the frame shows
+     */
+    public int getLookahead()
+    {
+        return next.length;
+    }
+
+    public int getScore()
+    {
+        return score;
+    }
+
+    public boolean isGameOver()
+    {
+        return gameOver;
+    }
+
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+}//class GameFrame
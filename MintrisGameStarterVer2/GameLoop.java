@@ -0,0 +1,451 @@
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Class GameLoop - a thread that owns a Mintris game.
+ *
+ * Once the loop is started, only its thread touches the engine.  Other
+ * threads hand it actions through an {@link ActionQueue} with
+ * {@link #offer}, and read the game through the {@link GameFrame}s it
+ * publishes after every change.  The loop also moves
+ * the current piece down one row every gravity tick, and steps the game for
+ * a computer player if one is set.
+ *
+ * The loop sleeps between ticks; offering an action wakes it straight away.
+ *
+ * Frames are not allocated per change: the loop fills a few of its own in
+ * turn, skipping the newest and any that a view has borrowed with
+ * {@link #acquireFrame} and not yet released.  More are made only while
+ * every one is in use.
+ */
+public class GameLoop implements Runnable
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //the most separate entries waiting in the action queue
+    public static final int QUEUE_CAPACITY = 64;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    //the frames the loop starts with: the newest, one being drawn and one
+    //to fill
+    private static final int FRAME_POOL = 3;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private MintrisEngine engine;
+    private ActionQueue queue = new ActionQueue(QUEUE_CAPACITY);
+
+    //nanoseconds between gravity ticks (0 for no gravity), and between the
+    //moves of the computer player
+    private long gravityPeriod;
+    private long policyPeriod;
+
+    //if not null, plays the game instead of the user
+    private volatile Policy policy = null;
+
+    //set when a policy was handed the game and has not been reset yet
+    private volatile boolean policyChanged = false;
+
+    //told about every frame published
+    private Runnable listener = null;
+
+    //the newest frame, and how many have been published
+    private volatile GameFrame frame;
+    private volatile long sequence;
+    private long frames = 0;
+
+    //the frames that publish fills in turn
+    private GameFrame[] pool = new GameFrame[FRAME_POOL];
+
+    private volatile Thread thread = null;
+    private volatile boolean running = false;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * GameLoop
+     *
+     * @param engine the game to run; no other thread may touch it after the
+     *               loop is started
+     * @param gravityRate gravity ticks per second, or 0 for no gravity
+     * @param policyDelay milliseconds between the moves of a computer player
+     */
+    public GameLoop(MintrisEngine engine, double gravityRate, long policyDelay)
+    {
+        this.engine = engine;
+        this.gravityPeriod = (gravityRate > 0) ? (long) (NANOS_PER_SECOND / gravityRate) : 0;
+        this.policyPeriod = policyDelay * 1000000L;
+        publish();
+    }//GameLoop
+
+    /**
+     * setListener
+     *
+     * @param listener is run on the loop thread after each frame is
+     *                 published; it should only schedule work elsewhere
+     */
+    public void setListener(Runnable listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the listener run after each frame is published, or null
+     */
+    public Runnable getListener()
+    {
+        return listener;
+    }
+
+    /**
+     * setPolicy
+     *
+     * Hands the game to a computer player.  The loop thread calls its
+     * newGame before asking it for a move, so that only the loop thread
+     * ever touches a policy, even one that is still finishing a move for
+     * a policy handed over before.
+     *
+     * @param policy the computer player to hand the game to, or null to
+     *               give it back to the user
+     */
+    public void setPolicy(Policy policy)
+    {
+        this.policy = policy;
+        policyChanged = true;
+        LockSupport.unpark(thread);
+    }//setPolicy
+
+    public Policy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * offer
+     *
+     * Hands an action to the loop.  Only one thread (the event dispatch
+     * thread) may offer actions.
+     *
+     * @param action what the player did
+     * @return false if the queue was full and the action was dropped
+     */
+    public boolean offer(MintrisEngine.Action action)
+    {
+        boolean queued = queue.offer(action);
+        LockSupport.unpark(thread);
+        return queued;
+    }//offer
+
+    /**
+     * getFrame
+     *
+     * @return a copy of the newest frame published, which never changes
+     */
+    public GameFrame getFrame()
+    {
+        GameFrame newest = acquireFrame();
+        try
+        {
+            return new GameFrame(newest);
+        }
+        finally
+        {
+            releaseFrame(newest);
+        }
+    }//getFrame
+
+    /**
+     * acquireFrame
+     *
+     * Borrows the newest frame without copying it.  The loop will not fill
+     * it again until it is given back with {@link #releaseFrame}.
+     *
+     * @return the newest frame published
+     */
+    public GameFrame acquireFrame()
+    {
+        while (true)
+        {
+            GameFrame newest = frame;
+            newest.holds.incrementAndGet();
+            //the loop only fills frames that are not the newest, so if it
+            //is still the newest now, it is held before it could be reused
+            if (newest == frame)
+            {
+                return newest;
+            }
+            newest.holds.decrementAndGet();
+        }
+    }//acquireFrame
+
+    /**
+     * releaseFrame
+     *
+     * @param borrowed a frame from {@link #acquireFrame}, which must not be
+     *                 used afterwards
+     */
+    public void releaseFrame(GameFrame borrowed)
+    {
+        borrowed.holds.decrementAndGet();
+    }
+
+    /**
+     * @return the sequence number of the newest frame published
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * publish
+     *
+     * Takes a picture of the game and makes it the newest frame.  This must
+     * be called on the thread that owns the engine: the loop thread, or any
+     * thread before the loop is started.
+     */
+    public void publish()
+    {
+        GameFrame next = null;
+        for (int i = 0; (i < pool.length) && (next == null); ++i)
+        {
+            if (pool[i] == null)
+            {
+                pool[i] = new GameFrame(engine, frames);
+                next = pool[i];
+            }
+            else if ((pool[i] != frame) && (pool[i].holds.get() == 0))
+            {
+                next = pool[i];
+                next.fill(engine, frames);
+            }
+        }
+        if (next == null)
+        {
+            //every frame is borrowed
+            int size = pool.length;
+            pool = Arrays.copyOf(pool, 2 * size);
+            next = pool[size] = new GameFrame(engine, frames);
+        }
+
+        frame = next;
+        sequence = frames++;
+        if (listener != null)
+        {
+            listener.run();
+        }
+    }//publish
+
+    /**
+     * start
+     *
+     * Starts the loop thread.
+     */
+    public synchronized void start()
+    {
+        if (thread != null)
+        {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "Mintris game loop");
+        thread.setDaemon(true);
+        thread.start();
+    }//start
+
+    /**
+     * stop
+     *
+     * Stops the loop thread and waits for it to finish.
+     */
+    public synchronized void stop() throws InterruptedException
+    {
+        if (thread == null)
+        {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        thread = null;
+    }//stop
+
+    /**
+     * run
+     *
+     * The loop: apply queued actions, then the computer player's move and
+     * gravity when they are due, publish a frame if anything happened, and
+     * sleep until the next tick or action.
+     */
+    public void run()
+    {
+        long now = System.nanoTime();
+        long nextGravity = now + gravityPeriod;
+        long nextPolicy = now;
+        while (running)
+        {
+            boolean changed = false;
+            int entry;
+            while ((entry = queue.poll()) != 0)
+            {
+                if (Metrics.ENABLED)
+                {
+                    applyMeasured(entry);
+                }
+                else
+                {
+                    apply(ActionQueue.action(entry), ActionQueue.count(entry));
+                }
+                changed = true;
+            }
+
+            now = System.nanoTime();
+            if (policyChanged)
+            {
+                //cleared before policy is read, so a policy set after
+                //this reset gets one of its own
+                policyChanged = false;
+                Policy handed = policy;
+                if (handed != null)
+                {
+                    handed.newGame(now);
+                }
+            }
+            Policy player = policy;
+            if ((player != null) && (now - nextPolicy >= 0))
+            {
+                if (!engine.isGameOver())
+                {
+                    step(player.nextAction(engine));
+                    changed = true;
+                }
+                nextPolicy = now + policyPeriod;
+            }
+
+            if ((gravityPeriod > 0) && (now - nextGravity >= 0))
+            {
+                if (!engine.isGameOver())
+                {
+                    fall();
+                    changed = true;
+                }
+                //don't try to catch up on ticks missed while stalled
+                nextGravity += gravityPeriod;
+                if (nextGravity - now < 0)
+                {
+                    nextGravity = now + gravityPeriod;
+                }
+            }
+
+            if (changed)
+            {
+                publish();
+            }
+
+            //sleep until the next thing that is due
+            long wake = (gravityPeriod > 0) ? nextGravity : now + NANOS_PER_SECOND;
+            if ((player != null) && (nextPolicy - wake < 0))
+            {
+                wake = nextPolicy;
+            }
+            LockSupport.parkNanos(this, wake - System.nanoTime());
+        }
+    }//run
+
+    /**
+     * apply
+     *
+     * Steps the game with an action from the queue, as many times as it
+     * was offered in a row.
+     */
+    private void apply(MintrisEngine.Action action, int count)
+    {
+        for (int i = 0; i < count; ++i)
+        {
+            if (action == MintrisEngine.Action.NEW_GAME)
+            {
+                long seed = System.nanoTime();
+                Policy player = policy;
+                if (player != null)
+                {
+                    player.newGame(seed);
+                }
+                engine.newGame(seed);
+            }
+            else
+            {
+                step(action);
+            }
+        }
+    }//apply
+
+    /**
+     * applyMeasured
+     *
+     * Applies an entry from the queue and records how long it waited
+     * there, as a histogram and as a JFR event.
+     */
+    private void applyMeasured(int entry)
+    {
+        InputEvent event = new InputEvent();
+        event.begin();
+        apply(ActionQueue.action(entry), ActionQueue.count(entry));
+        long latency = System.nanoTime() - queue.getLastOffered();
+        Metrics.INPUT_LATENCY.record(latency);
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.action = ActionQueue.action(entry).name();
+            event.count = ActionQueue.count(entry);
+            event.latency = latency;
+            event.commit();
+        }
+    }//applyMeasured
+
+    /**
+     * step
+     *
+     * Steps the engine, timing the step if metrics are enabled.
+     */
+    private void step(MintrisEngine.Action action)
+    {
+        if (!Metrics.ENABLED)
+        {
+            engine.step(action);
+            return;
+        }
+        long start = System.nanoTime();
+        engine.step(action);
+        Metrics.STEP_TIME.record(System.nanoTime() - start);
+        Metrics.ACTIONS.increment();
+    }//step
+
+    /**
+     * fall
+     *
+     * Lets the engine's gravity tick, timing and counting it like a step
+     * if metrics are enabled.
+     */
+    private void fall()
+    {
+        if (!Metrics.ENABLED)
+        {
+            engine.fall();
+            return;
+        }
+        long start = System.nanoTime();
+        engine.fall();
+        Metrics.STEP_TIME.record(System.nanoTime() - start);
+        Metrics.ACTIONS.increment();
+    }//fall
+
+}//class GameLoop
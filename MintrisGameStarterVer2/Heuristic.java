@@ -0,0 +1,20 @@
+/**
+ * Interface Heuristic - scores a Mintris field for the autoplayer.
+ *
+ * The field is given as one occupancy bitmask per row (bit c is set when
+ * column c holds a block), the same layout BitBoard uses.  Higher scores
+ * are better.
+ */
+public interface Heuristic
+{
+    /**
+     * evaluate
+     *
+     * @param rows the occupancy of each row after a piece has been placed
+     *             and complete rows removed
+     * @param linesCleared the number of rows removed by placing the piece
+     * @return how good the resulting field is
+     */
+    double evaluate(int[] rows, int linesCleared);
+
+}//interface Heuristic
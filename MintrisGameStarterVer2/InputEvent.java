@@ -0,0 +1,25 @@
+import jdk.jfr.*;
+
+/**
+ * Class InputEvent - a JFR event for one action taken from the game loop's
+ * queue and applied to the game.
+ */
+@Name("mintris.Input")
+@Label("Input")
+@Category("Mintris")
+@Description("An action applied by the game loop")
+public class InputEvent extends Event
+{
+    @Label("Action")
+    public String action;
+
+    @Label("Count")
+    @Description("How many times the action was offered in a row")
+    public int count;
+
+    @Label("Latency")
+    @Description("Time from offering the action to the game being updated")
+    @Timespan(Timespan.NANOSECONDS)
+    public long latency;
+
+}//class InputEvent
@@ -0,0 +1,182 @@
+import java.util.concurrent.atomic.*;
+
+/**
+ * Class LatencyHistogram - counts durations (or any non-negative values)
+ * in log-linear buckets, in the style of HdrHistogram.
+ *
+ * Values below 128 get a bucket each.  Above that every power of two is
+ * split into 64 buckets, so a value is known to within 1/64 (about 1.6%)
+ * whatever its size.  Recording a value is a few bit operations and an
+ * atomic increment; it never allocates and may be done from any thread.
+ */
+public class LatencyHistogram
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //values below 2^SUB_BITS are counted exactly
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT >>> 1;
+
+    //enough buckets for every non-negative long
+    private static final int NUM_BUCKETS = SUB_COUNT + (63 - SUB_BITS) * HALF_COUNT;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private String name;
+    private AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private AtomicLong total = new AtomicLong();
+    private AtomicLong sum = new AtomicLong();
+    private AtomicLong max = new AtomicLong();
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * LatencyHistogram
+     *
+     * @param name what the histogram measures, for reports
+     */
+    public LatencyHistogram(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * record
+     *
+     * Counts one value; negative values are counted as 0.
+     *
+     * @param value the value to count
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+        {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long highest = max.get();
+        while ((value > highest) && !max.compareAndSet(highest, value))
+        {
+            highest = max.get();
+        }
+    }//record
+
+    /**
+     * @return the number of values counted
+     */
+    public long getCount()
+    {
+        return total.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public double getMean()
+    {
+        long n = total.get();
+        return (n == 0) ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * percentile
+     *
+     * @param percent between 0 and 100
+     * @return the highest value in the bucket that holds the given
+     *         percentile of the values counted, or 0 if there are none
+     */
+    public long percentile(double percent)
+    {
+        long n = total.get();
+        long wanted = Math.max(1, (long) Math.ceil(n * percent / 100.0));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i)
+        {
+            seen += counts.get(i);
+            if (seen >= wanted)
+            {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }//percentile
+
+    /**
+     * reset
+     *
+     * Forgets every value counted so far.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < NUM_BUCKETS; ++i)
+        {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }//reset
+
+    /**
+     * bucket
+     *
+     * @return the index of the bucket a value is counted in
+     */
+    static int bucket(long value)
+    {
+        if (value < SUB_COUNT)
+        {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+    }//bucket
+
+    /**
+     * highest
+     *
+     * @return the highest value counted in a bucket
+     */
+    static long highest(int bucket)
+    {
+        if (bucket < SUB_COUNT)
+        {
+            return bucket;
+        }
+        int shift = (bucket - SUB_COUNT) / HALF_COUNT + 1;
+        long top = (bucket - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+        return ((top + 1) << shift) - 1;
+    }//highest
+
+    /**
+     * toString
+     *
+     * @return the count, mean and percentiles, in microseconds if the
+     *         values are nanoseconds
+     */
+    public String toString()
+    {
+        return String.format("%-16s n=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+            name, getCount(), getMean() / 1e3, percentile(50) / 1e3, percentile(99) / 1e3,
+            percentile(99.9) / 1e3, getMax() / 1e3);
+    }//toString
+
+}//class LatencyHistogram
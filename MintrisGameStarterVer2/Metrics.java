@@ -0,0 +1,199 @@
+import java.lang.management.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * Class Metrics - counters and latency histograms for the game loop, the
+ * engine and the view.
+ *
+ * Metrics are off unless the JVM is started with -Dmintris.metrics=true.
+ * Every place that records one checks {@link #ENABLED} first; it is a
+ * constant, so when it is false the JIT removes the recording code
+ * altogether.  When it is true:
+ *
+ *  - the metrics are registered as the MXBean "mintris:type=Metrics",
+ *  - -Dmintris.metrics.dump=N prints {@link #report} to System.err every N
+ *    seconds,
+ *  - the game loop and view also emit the JFR events {@link InputEvent} and
+ *    {@link PaintEvent}.
+ *
+ * Recording never allocates, apart from the JFR events while a recording
+ * is running.
+ */
+public final class Metrics implements MetricsMXBean
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    public static final boolean ENABLED = Boolean.getBoolean("mintris.metrics");
+
+    public static final String OBJECT_NAME = "mintris:type=Metrics";
+
+    //counters
+    public static final LongAdder LINES_CLEARED = new LongAdder();
+    public static final LongAdder PIECES_SPAWNED = new LongAdder();
+    public static final LongAdder ACTIONS = new LongAdder();
+    public static final LongAdder FRAMES_PAINTED = new LongAdder();
+
+    //histograms, all in nanoseconds
+    public static final LatencyHistogram INPUT_LATENCY = new LatencyHistogram("input latency");
+    public static final LatencyHistogram STEP_TIME = new LatencyHistogram("step");
+    public static final LatencyHistogram PAINT_TIME = new LatencyHistogram("paint");
+
+    static
+    {
+        if (ENABLED)
+        {
+            register();
+            long period = Long.getLong("mintris.metrics.dump", 0);
+            if (period > 0)
+            {
+                startDump(period);
+            }
+        }
+    }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    private Metrics()
+    {
+    }
+
+    /**
+     * report
+     *
+     * @return every counter and histogram, one per line
+     */
+    public static String report()
+    {
+        return String.format("lines cleared %d, pieces spawned %d, actions %d, frames painted %d%n"
+            + "%s%n%s%n%s",
+            LINES_CLEARED.sum(), PIECES_SPAWNED.sum(), ACTIONS.sum(), FRAMES_PAINTED.sum(),
+            INPUT_LATENCY, STEP_TIME, PAINT_TIME);
+    }//report
+
+    /**
+     * register
+     *
+     * Registers the metrics with the platform MBean server.
+     */
+    private static void register()
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new Metrics(), new ObjectName(OBJECT_NAME));
+        }
+        catch (JMException e)
+        {
+            System.err.println("Mintris metrics not registered: " + e);
+        }
+    }//register
+
+    /**
+     * startDump
+     *
+     * Prints the report to System.err at a fixed rate from a daemon thread.
+     *
+     * @param seconds the time between reports
+     */
+    private static void startDump(long seconds)
+    {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "Mintris metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        timer.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    System.err.println(report());
+                }
+            }, seconds, seconds, TimeUnit.SECONDS);
+    }//startDump
+
+    /*======================================================================
+     * MetricsMXBean
+     *----------------------------------------------------------------------
+     */
+
+    public long getLinesCleared()
+    {
+        return LINES_CLEARED.sum();
+    }
+
+    public long getPiecesSpawned()
+    {
+        return PIECES_SPAWNED.sum();
+    }
+
+    public long getActions()
+    {
+        return ACTIONS.sum();
+    }
+
+    public long getFramesPainted()
+    {
+        return FRAMES_PAINTED.sum();
+    }
+
+    public double getInputLatencyP50()
+    {
+        return INPUT_LATENCY.percentile(50) / 1e3;
+    }
+
+    public double getInputLatencyP99()
+    {
+        return INPUT_LATENCY.percentile(99) / 1e3;
+    }
+
+    public double getInputLatencyMax()
+    {
+        return INPUT_LATENCY.getMax() / 1e3;
+    }
+
+    public double getStepTimeP50()
+    {
+        return STEP_TIME.percentile(50) / 1e3;
+    }
+
+    public double getStepTimeP99()
+    {
+        return STEP_TIME.percentile(99) / 1e3;
+    }
+
+    public double getPaintTimeP50()
+    {
+        return PAINT_TIME.percentile(50) / 1e3;
+    }
+
+    public double getPaintTimeP99()
+    {
+        return PAINT_TIME.percentile(99) / 1e3;
+    }
+
+    public double getPaintTimeMax()
+    {
+        return PAINT_TIME.getMax() / 1e3;
+    }
+
+    public void reset()
+    {
+        LINES_CLEARED.reset();
+        PIECES_SPAWNED.reset();
+        ACTIONS.reset();
+        FRAMES_PAINTED.reset();
+        INPUT_LATENCY.reset();
+        STEP_TIME.reset();
+        PAINT_TIME.reset();
+    }//reset
+
+}//class Metrics
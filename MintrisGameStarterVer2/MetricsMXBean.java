@@ -0,0 +1,38 @@
+/**
+ * Interface MetricsMXBean - the Mintris metrics as seen over JMX, under the
+ * name "mintris:type=Metrics".  Times are in microseconds.
+ */
+public interface MetricsMXBean
+{
+    long getLinesCleared();
+
+    long getPiecesSpawned();
+
+    long getActions();
+
+    long getFramesPainted();
+
+    double getInputLatencyP50();
+
+    double getInputLatencyP99();
+
+    double getInputLatencyMax();
+
+    double getStepTimeP50();
+
+    double getStepTimeP99();
+
+    double getPaintTimeP50();
+
+    double getPaintTimeP99();
+
+    double getPaintTimeMax();
+
+    /**
+     * reset
+     *
+     * Sets every counter and histogram back to zero.
+     */
+    void reset();
+
+}//interface MetricsMXBean
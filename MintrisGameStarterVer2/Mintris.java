@@ -29,33 +29,64 @@ public class Mintris extends JPanel implements KeyListener
      *----------------------------------------------------------------------
      */
 
-    public static final int NUM_ROWS = 20;    //number of rows in the playing field
-    public static final int NUM_COLS = 10;    //number of columns in the playing field
+    public static final int NUM_ROWS = MintrisEngine.NUM_ROWS;    //number of rows in the playing field
+    public static final int NUM_COLS = MintrisEngine.NUM_COLS;    //number of columns in the playing field
     public static final int BLOCK_SIZE = 20;  //a block is this many pixels on a side
 
     //These constants define the possible contents of each cell in the playing field
-    public static final int NUM_COLORS    = 3;
-    public static final int INVALID_COLOR = 0;
-    public static final int RED_BLOCK     = 1;
-    public static final int GREEN_BLOCK   = 2;
-    public static final int BLUE_BLOCK    = 3;
-    public static final int EMPTY         = NUM_COLORS + 1;
+    public static final int NUM_COLORS    = MintrisEngine.NUM_COLORS;
+    public static final int INVALID_COLOR = MintrisEngine.INVALID_COLOR;
+    public static final int RED_BLOCK     = MintrisEngine.RED_BLOCK;
+    public static final int GREEN_BLOCK   = MintrisEngine.GREEN_BLOCK;
+    public static final int BLUE_BLOCK    = MintrisEngine.BLUE_BLOCK;
+    public static final int EMPTY         = MintrisEngine.EMPTY;
 
     //movement of the blocks on the playing field can be in one of these
     //directions
-    public static final int LEFT         = -1;
-    public static final int DOWN         =  0;
-    public static final int RIGHT        =  1;
+    public static final int LEFT         = MintrisEngine.LEFT;
+    public static final int DOWN         = MintrisEngine.DOWN;
+    public static final int RIGHT        = MintrisEngine.RIGHT;
+
+    //milliseconds between the moves of the computer player
+    public static final int AUTOPLAY_DELAY = 100;
+
+    //how many rows per second the current piece falls by itself
+    public static final double GRAVITY_RATE = 1.0;
+
+    //how many actions the replay log has room for before it has to grow
+    public static final int REPLAY_CAPACITY = 4096;
 
     /*======================================================================
      * Instance Variables
      *----------------------------------------------------------------------
      */
-    // a 2D array to store the playing field
-    private int[][] field = new int[NUM_ROWS][NUM_COLS];
-
-    // current score
-    private int score = 0;      
+    // the game being shown; all of the rules live in the engine
+    private MintrisEngine engine = new MintrisEngine();
+
+    // the thread that runs the engine; this view only offers it actions
+    // and draws the frames it publishes
+    private GameLoop loop = new GameLoop(engine, GRAVITY_RATE, AUTOPLAY_DELAY);
+
+    // every game played in this view is seeded and logged, so it can be
+    // replayed
+    private ReplayLog replayLog = new ReplayLog(REPLAY_CAPACITY);
+
+    // the computer player used while autoplay is on
+    private AutoPlayer autoPlayer = new AutoPlayer();
+
+    // set while a repaint of the newest frame is waiting on the event
+    // dispatch thread, so that frames published faster than they can be
+    // shown are skipped
+    private java.util.concurrent.atomic.AtomicBoolean repaintPending =
+        new java.util.concurrent.atomic.AtomicBoolean();
+
+    // the repaint that frameReady schedules, made once rather than per frame
+    private Runnable repaintTask = new Runnable() {
+            public void run() {
+                repaintPending.set(false);
+                repaintChanges();
+            }
+        };
 
     /*======================================================================
      * Methods
@@ -63,268 +94,86 @@ public class Mintris extends JPanel implements KeyListener
      */
 
     /**
-     * clearField
-     *
-     * Creates a new playing field sets all cells in the field to EMPTY.
+     * Mintris
      *
+     * Creates a view of a game that has not started yet.  Call
+     * {@link #newGame} and start the loop (see {@link #getLoop}) to play.
      */
-    public void clearField()
+    public Mintris()
     {
-        //for all [i][j] coordinates in the array, set value in those coordinates to EMPTY
-        for (int i = 0; i < field.length; ++i)
-        {
-            for (int j = 0; j < field[i].length; ++j) 
-            {
-                field[i][j] = EMPTY;
-            }
-        }
-    }//clearField
+        engine.setRecorder(replayLog);
+        loop.setListener(new Runnable() {
+                public void run() {
+                    frameReady();
+                }
+            });
+    }//Mintris
 
     /**
-     * rotate
-     *
-     * This method rotates a 2x2 block by 90 degrees. 
-     * It does not check that the rotation is valid.  
-     *
-     * @param row the row of the upper-left corner of the 2x2 block
-     * @param col the column of the upper-left block
+     * getEngine
      *
+     * @return the headless engine that this view displays; once the loop is
+     *         started it belongs to the loop thread
      */
-    public void rotate(int row, int col)
+    public MintrisEngine getEngine()
     {
-        int temp = field[row][col]; //create a temp to house the replaced field[row][col]
-        //rotate 90 degrees by moving blocks accordingly
-        field[row][col] = field[row][col+1];
-        field[row][col+1] = field[row+1][col+1];
-        field[row+1][col+1] = field[row+1][col];
-        field[row+1][col] = temp;
-
-    }//rotate
+        return engine;
+    }
 
     /**
-     * moveFaceBlock
+     * getLoop
      *
-     * Move face block (if filled) from one position to another depending on parameters set.
-     * Don't move if empty.
-     * 
-     * @param rowFrom the row of the upper-left corner of the block before
-     * @param colFrom the column of the upper-left corner of the block before
-     * @param rowTo the row of the upper-left corner of the block after
-     * @param colTo the column of the upper-left corner of the block after
+     * @return the game loop that runs the engine
      */
-    public void moveFaceBlock(int rowFrom, int colFrom, int rowTo, int colTo)
+    public GameLoop getLoop()
     {
-        if (field[rowFrom][colFrom] != EMPTY)
-        {
-            field[rowTo][colTo] = field[rowFrom][colFrom];
-        }
-        //if block is empty, don't move that block
+        return loop;
     }
 
     /**
-     * move
-     *
-     * This method moves a 2x2 piece by one space (left, right, or down)
-     * This method does *not* check to make sure that the movement is valid; 
-     * it is up to the caller to verify the move before calling move.
-     *
-     * The block is moved as would be expected for a Tetris game.
-     * Specifically, if an empty space moves onto a block, then the block remains
-     * and is not replaced by the empty space.
-     *
-     * @param row the row of the upper-left corner of the block
-     * @param col the column of the upper-left corner of the block
-     * @param direction the direction to move (LEFT, DOWN, or RIGHT)
-     *        (see the constants defined at the top of this class)
+     * newGame
      *
+     * Asks the game loop to start a new game with a fresh seed.
      */
-    public void move(int row, int col, int direction)
+    public void newGame()
     {
-        if (direction == LEFT)
-        {
-            //set parameters so the front face moves left and then the back face
-            moveFaceBlock(row,col,row,col-1);
-            moveFaceBlock(row + 1,col,row + 1,col-1);
-            field[row+1][col] = field[row+1][col+1];
-            field[row][col] = field[row][col+1];
-            //Empty blocks behind back plate
-            field[row][col+1] = EMPTY;
-            field[row+1][col+1] = EMPTY;
-        }
-        if (direction == DOWN)
-        {
-            //set parameters so the front face moves down and then the back face
-            moveFaceBlock(row + 1,col,row + 2,col);
-            moveFaceBlock(row + 1,col + 1,row + 2,col+1);
-            field[row+1][col+1] = field[row][col+1];
-            field[row+1][col] = field[row][col];
-            //Empty blocks behind back plate
-            field[row][col] = EMPTY;
-            field[row][col+1] = EMPTY;
-        }
-        if (direction == RIGHT)
-        {
-            //set parameters so the front face moves right and then the back face
-            moveFaceBlock(row,col+1,row,col+2);
-            moveFaceBlock(row + 1,col+1,row + 1,col+2);
-            field[row][col+1] = field[row][col];
-            field[row+1][col+1] = field[row+1][col];
-            //Empty blocks behind back plate
-            field[row][col] = EMPTY;
-            field[row+1][col] = EMPTY;
-        }
-        removeRows(); //checks if more than 1 row is needed for deletion
-
-    }//move
+        loop.offer(MintrisEngine.Action.NEW_GAME);
+    }
 
     /**
-     * validMove
-     *
-     * This method calculates whether a block may be moved one space in a particular
-     * direction: left, right or down.  A move is invalid if there is another block in
-     * the target location, or if the movement would take the block off of the
-     * playing field
-     *
-     * @param row the row of the upper-left corner of the block
-     * @param col the column of the upper-left corner of the block 
-     * @param direction direction to move (LEFT, RIGHT, or DOWN)
-     *              (see the constants defined at the top of this class)
+     * getRenderCache
      *
-     * @return    true if the movement is legal and false otherwise
-     * 
-     * known weakness: assumes that given initial position is valid
+     * @return the images the game is drawn with
      */
-    private boolean validMove(int row, int col, int direction)
+    public RenderCache getRenderCache()
     {
-        //keeps blocks within boundarys
-        if ((col <= 0) && ((direction == LEFT)))
-        {
-            return false; 
-        }
-        else if ((col > field[0].length - 3) && (direction == RIGHT))
-        {
-            return false; 
-        }
-        else if ((row > field.length - 3) && (direction == DOWN))
-        {
-            return false; 
-        }
-
-        //returns false if block goes down and hits other blocks
-        else if ((field[row + 1][col] != EMPTY) && (field[row][col] != EMPTY)
-        && (field[row + 1][col+1] != EMPTY) && (field[row][col+1] != EMPTY))
-        {
-            return false;
-        }
-
-        else if ((field[row + 2][col] != EMPTY) && (field[row + 1][col] != EMPTY))
-        {
-            return false;
-        }
-        else if ((field[row + 1][col + 1] != EMPTY) && (field[row + 2][col+1] != EMPTY))
-        {
-            return false;
-        }
-
-        //returns false if block goes to the right and hits blocks
-        else if (direction == RIGHT)
-        {
-            if (((field[row][col+2] != EMPTY) && (field[row][col+1] != EMPTY)))
-            {
-                return false;
-            }   
-            else if (((field[row + 1][col+2] != EMPTY) && (field[row+1][col+1] != EMPTY)))
-            {
-                return false;
-            }
-            else
-            {
-                return true;
-            }
-        }
-
-        //returns false if block goes to the left and hits blocks
-        else if (direction == LEFT)
-        {
-            if (((field[row][col] != EMPTY) && (field[row][col-1] != EMPTY)))
-            {
-                return false;
-            }   
-            else if (((field[row + 1][col] != EMPTY) && (field[row+1][col-1] != EMPTY)))
-            {
-                return false;
-            }
-            else
-            {
-                return true;
-            }
-        }
-
-        //if all if statements are false, return true
-        else
-        {
-            return true; 
-        }
-    }//validMove
+        return cache;
+    }
 
     /**
-     * checkRow
+     * getReplayLog
      *
-     * If the row (given by parameter row) has all columns filled then return true.
-     * @param row the row to be checked
+     * @return the log of the game being played (see {@link ReplayLog#finish})
      */
-    public boolean checkRow(int row)
+    public ReplayLog getReplayLog()
     {
-        int count = 0; //use count to determine if all columns are filled
-        for (int j = 0; j < NUM_COLS; ++j)
-        {
-            if (field[row][j] != EMPTY)
-            {
-                ++count;
-            }
-        }
-        if (count == NUM_COLS) //if whole row is filled, return true
-        {
-            return true;
-        }
-        else
-        {
-            return false;
-        }
+        return replayLog;
     }
 
     /**
-     * removeRows
+     * frameReady
      *
-     * This method searches the field for any complete rows of blocks and
-     * removes them.  Rows above the removed show shift down one row.
-     * The score is incremented for each complete row that is removed.
+     * Called on the game loop thread when it has published a frame;
+     * schedules a repaint of what changed unless one is already waiting.
      */
-    private void removeRows()
+    private void frameReady()
     {
-        int i = 0;
-        int j = 0;
-        //if the checked row is filled
-        for (i = NUM_ROWS - 1; i > 0; --i)
+        if (!repaintPending.getAndSet(true))
         {
-            if (checkRow(i) == true)//if row is filled, empty that row and shift everything down
-            {
-                for (j = 0; j < NUM_COLS; ++j)
-                {
-                    field[i][j] = EMPTY;
-                }
-                for (int row = i - 1; row > 0; --row)
-                {
-                    for (int col = 0; col < NUM_COLS; ++col) 
-                    {
-                        field[row+1][col] = field[row][col];
-                    }
-                }
-                score = score + 1; //increment score by 1 for each row deleted
-            }
+            SwingUtilities.invokeLater(repaintTask);
         }
+    }//frameReady
 
-    }//removeRows
     /*======================================================================
      *                    ATTENTION STUDENTS!
      *
@@ -343,13 +192,6 @@ public class Mintris extends JPanel implements KeyListener
     public static final int WINDOW_HEIGHT = 500;
     public static final int WINDOW_MARGIN = 10;
 
-    //The location of the current piece.
-    private int currRow = 0;
-    private int currCol = 0;
-
-    //random number generator
-    private Random randGen = new Random();
-
     // colors array for drawing the pieces
     // Constants for valid colors, INVALID_COLOR, and EMPTY are defined above, in the
     // area that students are expected to study
@@ -357,45 +199,36 @@ public class Mintris extends JPanel implements KeyListener
     // entry below), and the defined constant NUM_COLORS (defined above) adjusted accordingly
 
     // possible block colors
-    private Color[] blockColors = { 
-            Color.MAGENTA,          // invalid (so must be cleared explicitly)
-            Color.RED,              // red
-            new Color(0, 110, 0),   // green
-            new Color(0,0,170),     // blue
-            Color.BLACK };          // EMPTY (should never be displayed)
+    private Color[] blockColors = defaultBlockColors();
+
+    // pre-rendered background and block sprites
+    private RenderCache cache = new RenderCache(blockColors);
+
+    // the cells and score as of the last repaint request, so that only the
+    // cells that changed since then are repainted
+    private int[][] shown = new int[NUM_ROWS][NUM_COLS];
+    private int shownScore = 0;
+    private int[] shownNext = new int[RenderCache.MAX_PREVIEW];
+
+    // reused to read the clip of the Graphics object in paint
+    private Rectangle clip = new Rectangle();
 
     /**
-     * createRandomPiece
-     *
-     * creates a new piece at the top of the Mintris board
+     * defaultBlockColors
      *
+     * @return the possible block colors, indexed like the field; a new array
+     *         every time, so other views (see {@link OffscreenRenderer}) can
+     *         draw games the way this one does
      */
-    public void createRandomPiece()
+    public static Color[] defaultBlockColors()
     {
-        //Select a random starting column and color
-        int col = randGen.nextInt(NUM_COLS - 1);
-        int type = randGen.nextInt(NUM_COLORS) + 1;
-
-        //Fill the indicated 2x2 area
-        for(int x = 0; x < 2; ++x) 
-        {
-            for(int y = 0; y < 2; ++y) 
-            {
-                this.field[x][y + col] = type;
-            }
-        }
-
-        //randomly select which block in the 2x2 area of the piece will be empty
-        int which = randGen.nextInt(4);
-        int x = which / 2;
-        int y = which % 2;
-        field[x][y+col] = EMPTY;
-
-        //record the location of this new piece
-        this.currRow = 0;
-        this.currCol = col;
-
-    }//createRandomPiece
+        return new Color[] { 
+            Color.MAGENTA,          // invalid (so must be cleared explicitly)
+            Color.RED,              // red
+            new Color(0, 110, 0),   // green
+            new Color(0,0,170),     // blue
+            Color.BLACK };          // EMPTY (should never be displayed)
+    }//defaultBlockColors
 
     /**
      * drawBlock
@@ -409,22 +242,7 @@ public class Mintris extends JPanel implements KeyListener
      */
     public void drawBlock(Graphics g, int x, int y, Color blockColor)
     {
-        //draw the main block
-        g.setColor(blockColor);
-        g.fillRect(x, y, BLOCK_SIZE, BLOCK_SIZE);
-
-        //draw some shading on the edges for a 3D effect
-        g.setColor(Color.white); //blockColor.brighter());
-        g.drawLine(x, y+1, x + BLOCK_SIZE, y+1);
-        g.drawLine(x + BLOCK_SIZE - 1, y, x + BLOCK_SIZE - 1, y + BLOCK_SIZE);
-        g.setColor(blockColor.darker());
-        g.drawLine(x+1, y, x+1, y + BLOCK_SIZE);
-        g.drawLine(x+1, y + BLOCK_SIZE - 1, x + BLOCK_SIZE - 1, y + BLOCK_SIZE - 1);
-
-        //draw a black border around it
-        g.setColor(Color.BLACK);
-        g.drawRect(x, y, BLOCK_SIZE, BLOCK_SIZE);
-
+        RenderCache.drawBlock(g, x, y, blockColor);
     }//drawBlock
 
     /**
@@ -432,75 +250,100 @@ public class Mintris extends JPanel implements KeyListener
      *
      * This methods draws the current state of the game on a given canvas.  The
      * field occupies the bottom left corner.  A title is at the top and the
-     * current score is shown at right.
+     * current score is shown at right, with the next pieces above it.
+     *
+     * Only the part of the window inside the clip of the Graphics object is
+     * drawn, from the cached background and block sprites.
      * 
      * @param  g   the Graphics object for this application
      */
     public void paint(Graphics g)
     {
-        //start with the background color
-        Color bgColor = new Color(0x330088);  //medium-dark purple
-        g.setColor(bgColor);
-        g.fillRect(0,0,WINDOW_WIDTH,WINDOW_HEIGHT);
-
-        //Calculate the position of the playing field
-        int margin = 5;
-        int topSide = WINDOW_HEIGHT - ( NUM_ROWS * BLOCK_SIZE + margin + WINDOW_MARGIN);
-        int bottomSide = topSide + NUM_ROWS * BLOCK_SIZE;
-        int leftSide = WINDOW_MARGIN + margin;
-        int rightSide = leftSide + NUM_COLS * BLOCK_SIZE;
-
-        //Draw the playing field
-        Color fieldColor = new Color(0x9966FF);  //lavender
-        g.setColor(fieldColor);
-        g.fillRect(leftSide, topSide, NUM_COLS * BLOCK_SIZE, NUM_ROWS * BLOCK_SIZE);
-
-        //Draw a thick border around the playing field 
-        g.setColor(Color.WHITE);
-        for(int i = 1; i <= 5; ++i)
+        long start = 0;
+        PaintEvent event = null;
+        if (Metrics.ENABLED)
         {
-            g.drawRect(leftSide - i, topSide - i,
-                NUM_COLS * BLOCK_SIZE + margin , NUM_ROWS * BLOCK_SIZE + margin);
+            start = System.nanoTime();
+            event = new PaintEvent();
+            event.begin();
         }
 
-        //Draw the blocks
-        for(int row = 0; row < field.length; ++row)
+        //borrow the newest frame rather than copy it
+        GameFrame frame = loop.acquireFrame();
+        try
         {
-            for (int col = 0; col < field[row].length; ++col)
+            paintFrame(g, frame);
+
+            if (Metrics.ENABLED)
             {
-                //calculate block position
-                int xPos = leftSide + col * BLOCK_SIZE;
-                int yPos = topSide + row * BLOCK_SIZE;
+                Metrics.PAINT_TIME.record(System.nanoTime() - start);
+                Metrics.FRAMES_PAINTED.increment();
+                event.frame = frame.getSequence();
+                event.commit();
+            }
+        }
+        finally
+        {
+            loop.releaseFrame(frame);
+        }
+
+    }//paint
 
+    /**
+     * paintFrame
+     *
+     * a helper method for {@link paint}.  Draws the part of a frame inside
+     * the clip of the Graphics object.
+     */
+    private void paintFrame(Graphics g, GameFrame frame)
+    {
+        //the whole window unless the Graphics object has a clip
+        clip.setBounds(0, 0, WINDOW_WIDTH, WINDOW_HEIGHT);
+        g.getClipBounds(clip);
+
+        //start with the background, field, border and title
+        cache.paintBackground(g);
+
+        //Draw the blocks that overlap the clip (a block is drawn one pixel
+        //larger than BLOCK_SIZE, so its neighbor's border may reach in)
+        int firstRow = Math.max(0, (clip.y - RenderCache.FIELD_TOP - 1) / BLOCK_SIZE);
+        int lastRow = Math.min(NUM_ROWS - 1,
+            (clip.y + clip.height - RenderCache.FIELD_TOP) / BLOCK_SIZE);
+        int firstCol = Math.max(0, (clip.x - RenderCache.FIELD_LEFT - 1) / BLOCK_SIZE);
+        int lastCol = Math.min(NUM_COLS - 1,
+            (clip.x + clip.width - RenderCache.FIELD_LEFT) / BLOCK_SIZE);
+        for(int row = firstRow; row <= lastRow; ++row)
+        {
+            for (int col = firstCol; col <= lastCol; ++col)
+            {
                 //Verify the color index is valid
                 // (NUM_COLORS + 1 is EMPTY)
-                if ( (field[row][col] < 0) || (field[row][col] > EMPTY))
+                int color = frame.getCell(row, col);
+                if ( (color < 0) || (color > EMPTY))
                 {
-                    field[row][col] = INVALID_COLOR;
+                    color = INVALID_COLOR;
                 }
 
                 //draw the block
-                if (field[row][col] != EMPTY)
+                if (color != EMPTY)
                 {
-                    drawBlock(g, xPos, yPos, blockColors[field[row][col]]);
+                    cache.paintBlock(g, RenderCache.cellX(col), RenderCache.cellY(row), color);
                 }
             }//for
         }//for
 
-        //draw the title
-        g.setColor(Color.WHITE);
-        Font bigFont = new Font("SansSerif", Font.BOLD, 32);
-        g.setFont(bigFont);
-        g.drawString("Mintris",45,50);
-
         //draw the score
-        g.setColor(Color.WHITE);
-        Font medFont = new Font("SansSerif", Font.PLAIN, 18);
-        g.setFont(medFont);
-        int leftMargin = rightSide + 15;
-        g.drawString("Score:" + this.score, 70, 75);
+        if (clip.intersects(RenderCache.SCORE_AREA))
+        {
+            cache.paintScore(g, frame.getScore());
+        }
 
-    }//paint
+        //and the next pieces
+        if (clip.intersects(RenderCache.PREVIEW_AREA))
+        {
+            cache.paintNext(g, frame);
+        }
+    }//paintFrame
 
     /**
      * keyPressed
@@ -511,7 +354,7 @@ public class Mintris extends JPanel implements KeyListener
      */
     public void keyPressed(KeyEvent e)
     {
-        //Call the appropriate student method(s) based upon the key pressed
+        //Hand the game loop the action matching the key pressed
         int key = e.getKeyCode();
         switch(key)
         {
@@ -520,11 +363,7 @@ public class Mintris extends JPanel implements KeyListener
             case KeyEvent.VK_KP_LEFT:
             case 'a':
             case 'A':
-            if (validMove(currRow, currCol, LEFT))
-            {
-                move(currRow, currCol, LEFT);
-                --currCol;
-            }
+            loop.offer(MintrisEngine.Action.LEFT);
             break;
 
             //Move the piece right
@@ -532,67 +371,51 @@ public class Mintris extends JPanel implements KeyListener
             case KeyEvent.VK_KP_RIGHT:
             case 'd':
             case 'D':
-            if (validMove(currRow, currCol, RIGHT))
-            {
-                move(currRow, currCol, RIGHT);
-                ++currCol;
-            }
+            loop.offer(MintrisEngine.Action.RIGHT);
             break;
 
             //Drop the current piece down one row
             case KeyEvent.VK_DOWN:
             case 's':
             case 'S':
-            if (validMove(currRow, currCol, DOWN))
-            {
-                move(currRow, currCol, DOWN);
-                ++currRow;
-            }
+            loop.offer(MintrisEngine.Action.DOWN);
             break;
 
             //Drop the current piece all the way down
             case ' ':
-            while (validMove(currRow, currCol, DOWN))
-            {
-                move(currRow, currCol, DOWN);
-                ++currRow;
-            }
+            loop.offer(MintrisEngine.Action.DROP);
             break;
 
             case KeyEvent.VK_UP:
             case 'w':
             case 'W':
-            rotate(currRow, currCol);
+            loop.offer(MintrisEngine.Action.ROTATE);
             break;
 
             //Create a new game
             case 'n':
             case 'N':
-            clearField();
-            createRandomPiece();
-            score = 0;
+            loop.offer(MintrisEngine.Action.NEW_GAME);
             break;
 
             //create a quick layout to aid in testing
             case 't':
             case 'T':
-            clearField();
-            for(int i = 3; i < field.length; ++i)
+            loop.offer(MintrisEngine.Action.TEST_LAYOUT);
+            break;
+
+            //Let the computer play (or stop it)
+            case 'p':
+            case 'P':
+            if (loop.getPolicy() != null)
             {
-                field[i][NUM_COLS/2] = BLUE_BLOCK;
+                loop.setPolicy(null);
             }
-            for(int x = field.length - 2; x < field.length; ++x)
+            else
             {
-                for (int y = 0; y < field[x].length; ++y)
-                {
-                    field[x][y] = RED_BLOCK;
-                }
+                //the loop thread resets the player before its first move
+                loop.setPolicy(autoPlayer);
             }
-            int lastRow = field.length - 1;
-            field[lastRow][0]   = EMPTY;
-            field[lastRow-1][1] = EMPTY;
-            field[lastRow-1][0] = EMPTY;
-            createRandomPiece();
             break;
 
             //Quit the game
@@ -602,16 +425,62 @@ public class Mintris extends JPanel implements KeyListener
 
         }//switch
 
-        //Regardless of keypress check for a piece that has bottomed out
-        if (! validMove(currRow, currCol, DOWN))
+        //the loop publishes a frame, and the screen is redrawn, once it
+        //has applied the action
+    }//keyPressed
+
+    /**
+     * repaintChanges
+     *
+     * Asks for a repaint of every cell of the newest frame that changed
+     * since the last call, and of the score and the next pieces if they
+     * changed.
+     */
+    private void repaintChanges()
+    {
+        GameFrame frame = loop.acquireFrame();
+        try
         {
-            removeRows();
-            createRandomPiece();
+            repaintChanges(frame);
         }
+        finally
+        {
+            loop.releaseFrame(frame);
+        }
+    }//repaintChanges
 
-        //redraw the screen so user can see changes
-        repaint();
-    }//keyPressed
+    private void repaintChanges(GameFrame frame)
+    {
+        for (int row = 0; row < NUM_ROWS; ++row)
+        {
+            for (int col = 0; col < NUM_COLS; ++col)
+            {
+                int color = frame.getCell(row, col);
+                if (color != shown[row][col])
+                {
+                    shown[row][col] = color;
+                    repaint(RenderCache.cellX(col), RenderCache.cellY(row),
+                        RenderCache.SPRITE_SIZE, RenderCache.SPRITE_SIZE);
+                }
+            }
+        }
+
+        if (frame.getScore() != shownScore)
+        {
+            shownScore = frame.getScore();
+            repaint(RenderCache.SCORE_AREA);
+        }
+
+        int count = Math.min(frame.getLookahead(), RenderCache.MAX_PREVIEW);
+        for (int i = 0; i < count; ++i)
+        {
+            if (frame.getNextPiece(i) != shownNext[i])
+            {
+                shownNext[i] = frame.getNextPiece(i);
+                repaint(RenderCache.PREVIEW_AREA);
+            }
+        }
+    }//repaintChanges
 
     //These two method must be implemented but we don't care about these events.
     //We only care about key presses (see method above)
@@ -622,6 +491,12 @@ public class Mintris extends JPanel implements KeyListener
     /**
      * This method creates a window frame and displays the Mintris
      * game inside of it.  
+     *
+     * With -Dmintris.active=true the game is drawn by an
+     * {@link ActiveRenderer} instead of by Swing repaints, capped at
+     * -Dmintris.fps frames per second (default 60, 0 for no cap).  With
+     * -Dmintris.spectate=port the game is also broadcast to spectators (see
+     * {@link SpectatorServer}).
      */
     public static void main(String[] args)
     {
@@ -638,9 +513,23 @@ public class Mintris extends JPanel implements KeyListener
 
         //Display a new Mintris object in the window
         Mintris mintrisGame = new Mintris();
-        mintrisGame.clearField();
-        mintrisGame.createRandomPiece();
+        mintrisGame.newGame();
+        mintrisGame.getLoop().start();
         myFrame.addKeyListener(mintrisGame);
+        if (Boolean.getBoolean("mintris.active"))
+        {
+            ActiveRenderer renderer = new ActiveRenderer(mintrisGame.getLoop(),
+                mintrisGame.getRenderCache(),
+                Integer.getInteger("mintris.fps", ActiveRenderer.DEFAULT_FPS));
+            renderer.addKeyListener(mintrisGame);
+            spectate(mintrisGame.getLoop());
+            myFrame.getContentPane().add(renderer);
+            myFrame.setVisible(true);
+            renderer.requestFocus();
+            renderer.start();
+            return;
+        }
+        spectate(mintrisGame.getLoop());
         myFrame.getContentPane().add(mintrisGame);
 
         //show the user
@@ -648,6 +537,44 @@ public class Mintris extends JPanel implements KeyListener
 
     }//main
 
+    /**
+     * spectate
+     *
+     * Broadcasts a game to spectators on the port given by
+     * -Dmintris.spectate, if there is one.  The game loop's listener hands
+     * every frame to the server as well as to whoever listened before.
+     */
+    private static void spectate(final GameLoop loop)
+    {
+        Integer port = Integer.getInteger("mintris.spectate");
+        if (port == null)
+        {
+            return;
+        }
+        try
+        {
+            SpectatorServer server = new SpectatorServer(
+                new java.net.InetSocketAddress(port), SpectatorServer.DEFAULT_BUFFER_SIZE);
+            final SpectatorServer.Feed feed = server.addGame();
+            final Runnable previous = loop.getListener();
+            loop.setListener(new Runnable() {
+                    public void run() {
+                        if (previous != null)
+                        {
+                            previous.run();
+                        }
+                        feed.offer(loop.getFrame());
+                    }
+                });
+            feed.offer(loop.getFrame());
+            server.start();
+        }
+        catch (java.io.IOException e)
+        {
+            System.err.println("can't broadcast the game: " + e.getMessage());
+        }
+    }//spectate
+
 }//class Mintris
 
 
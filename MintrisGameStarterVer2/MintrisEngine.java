@@ -0,0 +1,1008 @@
+import java.util.*;
+
+/**
+ * Class MintrisEngine - the rules of Mintris without any user interface.
+ *
+ * The engine owns the playing field, the current piece and the score.  A
+ * game is driven by calling {@link #step} with one {@link Action} at a time,
+ * so it can be played on machines without a display just as well as from
+ * the Swing view in {@link Mintris}.  Stepping a game does not allocate
+ * unless undo is turned on.
+ *
+ * A whole game can be saved with {@link #save} and put back with
+ * {@link #restore}; saving is cheap because the field's rows are
+ * copy-on-write (see {@link BitBoard}).  With {@link #setUndoLimit} the
+ * engine saves the game before every step, and {@link #undo} goes back one
+ * step at a time.
+ *
+ * Pieces are dealt by a {@link PieceGenerator} into a {@link PieceQueue} a
+ * few pieces ahead of play, so the next pieces can be previewed (see
+ * {@link #getNextPiece}).
+ */
+public class MintrisEngine
+{
+
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //the size of the standard playing field; an engine can be given any
+    //other size
+    public static final int NUM_ROWS = 20;    //number of rows in the playing field
+    public static final int NUM_COLS = 10;    //number of columns in the playing field
+
+    //These constants define the possible contents of each cell in the playing field
+    public static final int NUM_COLORS    = 3;
+    public static final int INVALID_COLOR = 0;
+    public static final int RED_BLOCK     = 1;
+    public static final int GREEN_BLOCK   = 2;
+    public static final int BLUE_BLOCK    = 3;
+    public static final int EMPTY         = NUM_COLORS + 1;
+
+    //movement of the blocks on the playing field can be in one of these
+    //directions
+    public static final int LEFT         = -1;
+    public static final int DOWN         =  0;
+    public static final int RIGHT        =  1;
+
+    /**
+     * The things a player can do in one step of the game.
+     */
+    public enum Action
+    {
+        LEFT,           //move the piece left
+        RIGHT,          //move the piece right
+        DOWN,           //drop the piece down one row
+        DROP,           //drop the piece all the way down
+        ROTATE,         //rotate the piece by 90 degrees
+        NEW_GAME,       //clear the field and start over
+        TEST_LAYOUT     //create a quick layout to aid in testing
+    }
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    // the size of this engine's playing field
+    private final int numRows;
+    private final int numCols;
+
+    // the playing field: one occupancy bitmask per row plus a color plane
+    private BitBoard board;
+
+    // current score
+    private int score = 0;
+
+    //The location of the current piece.
+    private int currRow = 0;
+    private int currCol = 0;
+
+    //which cells of the 2x2 area at currRow, currCol hold the blocks of the
+    //current piece (a 4-bit pattern, see BitBoard)
+    private int currPattern = 0;
+
+    //the row of the highest block in each column that is not part of the
+    //current piece (numRows for an empty column); updated as pieces lock
+    //and recomputed after rows are removed or cells are set directly
+    private int[] heights;
+    private boolean heightsValid = false;
+
+    //number of pieces put on the field since the last new game
+    private int pieces = 0;
+
+    //set once a new piece no longer fits at the top of the field
+    private boolean gameOver = false;
+
+    //the pieces still to come
+    private PieceQueue upcoming;
+
+    //the number of gravity ticks (see fall) since the last seeded new game
+    private long tick = 0;
+
+    //if not null, every step is recorded here
+    private ReplayLog recorder = null;
+
+    //the games saved before the most recent steps, newest first, and how
+    //many of them to keep (0 turns undo off)
+    private ArrayDeque<EngineState> history = new ArrayDeque<EngineState>();
+    private int undoLimit = 0;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * MintrisEngine
+     *
+     * Creates an engine with an empty field.  Call {@link #spawn} or step a
+     * {@link Action#NEW_GAME} to put the first piece on it.  The pieces are
+     * dealt by a {@link RandomPieceGenerator}.
+     */
+    public MintrisEngine()
+    {
+        this(new PieceRandom());
+    }
+
+    /**
+     * MintrisEngine
+     *
+     * Creates an engine with an empty field that draws its pieces from the
+     * given random number generator.
+     *
+     * @param randGen the source of new pieces (see
+     *                {@link RandomPieceGenerator})
+     */
+    public MintrisEngine(Random randGen)
+    {
+        this(NUM_ROWS, NUM_COLS, randGen);
+    }
+
+    /**
+     * MintrisEngine
+     *
+     * Creates an engine with an empty field of any size.
+     *
+     * @param numRows the number of rows, at least 2
+     * @param numCols the number of columns, at least 2
+     */
+    public MintrisEngine(int numRows, int numCols)
+    {
+        this(numRows, numCols, new PieceRandom());
+    }
+
+    /**
+     * MintrisEngine
+     *
+     * Creates an engine with an empty field of any size that draws its
+     * pieces from the given random number generator.
+     *
+     * @param numRows the number of rows, at least 2
+     * @param numCols the number of columns, at least 2
+     * @param randGen the source of new pieces (see
+     *                {@link RandomPieceGenerator})
+     */
+    public MintrisEngine(int numRows, int numCols, Random randGen)
+    {
+        this(numRows, numCols, new RandomPieceGenerator(randGen),
+            PieceQueue.DEFAULT_LOOKAHEAD);
+    }
+
+    /**
+     * MintrisEngine
+     *
+     * Creates an engine with an empty field of any size that gets its
+     * pieces from the given generator.
+     *
+     * @param numRows the number of rows, at least 2
+     * @param numCols the number of columns, at least 2
+     * @param generator deals the pieces
+     * @param lookahead how many of the next pieces are known, at least 1
+     */
+    public MintrisEngine(int numRows, int numCols, PieceGenerator generator, int lookahead)
+    {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.board = new BitBoard(numRows, numCols);
+        this.heights = new int[numCols];
+        this.upcoming = new PieceQueue(generator, lookahead, numCols);
+    }//MintrisEngine
+
+    public int getNumRows()
+    {
+        return numRows;
+    }
+
+    public int getNumCols()
+    {
+        return numCols;
+    }
+
+    /**
+     * newGame
+     *
+     * Starts a new game whose pieces are drawn from a generator with the
+     * given seed, so that the same seed and steps play the same game.  If a
+     * recorder is set, it starts a new log for the game.  The steps of the
+     * previous game can no longer be undone.
+     *
+     * @param seed the seed of the piece generator
+     */
+    public void newGame(long seed)
+    {
+        upcoming.setSeed(seed);
+        tick = 0;
+        history.clear();
+        if (recorder != null)
+        {
+            recorder.begin(seed);
+        }
+        apply(Action.NEW_GAME);
+    }//newGame
+
+    /**
+     * step
+     *
+     * Applies one player action to the game, and records it with the
+     * current tick if a recorder is set.  If undo is on, the game is saved
+     * first.
+     *
+     * @param action what the player did
+     */
+    public void step(Action action)
+    {
+        if (undoLimit > 0)
+        {
+            history.addFirst(save());
+            if (history.size() > undoLimit)
+            {
+                history.removeLast();
+            }
+        }
+        if (recorder != null)
+        {
+            recorder.add(tick, action);
+        }
+        apply(action);
+    }//step
+
+    /**
+     * fall
+     *
+     * One gravity tick: moves the current piece down a row the way a DOWN
+     * step does, and advances the tick.  Falls are not recorded, since a
+     * replay lets the piece fall again at the same ticks, and not saved for
+     * undo; undoing a step also takes back the falls after it.
+     */
+    public void fall()
+    {
+        ++tick;
+        apply(Action.DOWN);
+    }//fall
+
+    /**
+     * apply
+     *
+     * Applies one player action to the game.  If the current piece has
+     * bottomed out afterwards, complete rows are removed and a new piece is
+     * spawned.  Once the game is over only NEW_GAME and TEST_LAYOUT have any
+     * effect.
+     *
+     * @param action what the player did
+     */
+    private void apply(Action action)
+    {
+        if (gameOver && (action != Action.NEW_GAME) && (action != Action.TEST_LAYOUT))
+        {
+            return;
+        }
+
+        switch(action)
+        {
+            case LEFT:
+            if (validMove(currRow, currCol, LEFT))
+            {
+                move(currRow, currCol, LEFT);
+                --currCol;
+            }
+            break;
+
+            case RIGHT:
+            if (validMove(currRow, currCol, RIGHT))
+            {
+                move(currRow, currCol, RIGHT);
+                ++currCol;
+            }
+            break;
+
+            case DOWN:
+            if (validMove(currRow, currCol, DOWN))
+            {
+                move(currRow, currCol, DOWN);
+                ++currRow;
+            }
+            break;
+
+            case DROP:
+            drop();
+            break;
+
+            case ROTATE:
+            rotate(currRow, currCol);
+            break;
+
+            case NEW_GAME:
+            clearField();
+            score = 0;
+            pieces = 0;
+            createRandomPiece();
+            break;
+
+            case TEST_LAYOUT:
+            testLayout();
+            createRandomPiece();
+            break;
+        }//switch
+
+        //Regardless of action check for a piece that has bottomed out
+        if (!gameOver && !validMove(currRow, currCol, DOWN))
+        {
+            lockPiece();
+            removeRows();
+            createRandomPiece();
+        }
+    }//apply
+
+    /**
+     * setRecorder
+     *
+     * Sets where the steps are recorded.  The steps taken so far can no
+     * longer be undone, since they are not in the new recorder's log.
+     *
+     * @param recorder the log to record the steps of the game in, or null
+     *                 to stop recording
+     */
+    public void setRecorder(ReplayLog recorder)
+    {
+        this.recorder = recorder;
+        history.clear();
+    }
+
+    /**
+     * save
+     *
+     * Takes a picture of the game that {@link #restore} can go back to.
+     * It shares the field's rows with the engine instead of copying them.
+     *
+     * @return the saved game
+     */
+    public EngineState save()
+    {
+        return new EngineState(board.snapshot(), score, currRow, currCol,
+            currPattern, pieces, gameOver, tick, upcoming.copy());
+    }//save
+
+    /**
+     * restore
+     *
+     * Puts a saved game back, along with the pieces to come unless the
+     * generator can't be copied (see {@link PieceGenerator#copy}).  A
+     * recorder's log is not rewound (only {@link #undo} does that), and the
+     * undo history is left alone.
+     *
+     * @param state a game saved by this or another engine
+     */
+    public void restore(EngineState state)
+    {
+        board.restore(state.getBoard());
+        score = state.getScore();
+        currRow = state.getCurrRow();
+        currCol = state.getCurrCol();
+        currPattern = state.getCurrPattern();
+        pieces = state.getPieces();
+        gameOver = state.isGameOver();
+        tick = state.getTick();
+        upcoming.restore(state.getUpcoming());
+        heightsValid = false;
+    }//restore
+
+    /**
+     * setUndoLimit
+     *
+     * @param limit the most steps that can be undone, or 0 to turn undo off
+     *              (which forgets the steps saved so far)
+     */
+    public void setUndoLimit(int limit)
+    {
+        if (limit < 0)
+        {
+            throw new IllegalArgumentException("negative undo limit: " + limit);
+        }
+        undoLimit = limit;
+        while (history.size() > limit)
+        {
+            history.removeLast();
+        }
+    }//setUndoLimit
+
+    public int getUndoLimit()
+    {
+        return undoLimit;
+    }
+
+    /**
+     * @return the number of steps that can be undone now
+     */
+    public int getUndoDepth()
+    {
+        return history.size();
+    }
+
+    /**
+     * undo
+     *
+     * Takes back the most recent step that has not been undone yet, along
+     * with the falls after it.  If a recorder is set, the step is taken out
+     * of its log too, so the log still replays to the game as it is now.
+     *
+     * @return false if there was no step to take back
+     */
+    public boolean undo()
+    {
+        EngineState state = history.pollFirst();
+        if (state == null)
+        {
+            return false;
+        }
+        restore(state);
+        if (recorder != null)
+        {
+            recorder.removeLast();
+        }
+        return true;
+    }//undo
+
+    /**
+     * getNextPiece
+     *
+     * @param index 0 for the piece that will be spawned next, 1 for the one
+     *              after, and so on up to getLookahead() - 1
+     * @return the piece, packed (see {@link Piece})
+     */
+    public int getNextPiece(int index)
+    {
+        return upcoming.peek(index);
+    }
+
+    /**
+     * @return how many of the next pieces are known
+     */
+    public int getLookahead()
+    {
+        return upcoming.size();
+    }
+
+    /**
+     * @return the number of gravity ticks since the last seeded new game
+     */
+    public long getTick()
+    {
+        return tick;
+    }
+
+    /**
+     * checksum
+     *
+     * @return a 64-bit FNV-1a hash of the color of every cell of the field
+     */
+    public long checksum()
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int row = 0; row < numRows; ++row)
+        {
+            for (int col = 0; col < numCols; ++col)
+            {
+                hash ^= board.get(row, col);
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }//checksum
+
+    /**
+     * spawn
+     *
+     * Puts a new random piece at the top of the field.
+     *
+     * @return false if the piece did not fit and the game is over
+     */
+    public boolean spawn()
+    {
+        createRandomPiece();
+        return !gameOver;
+    }//spawn
+
+    /**
+     * isGameOver
+     *
+     * @return true once a new piece could not be placed on the field
+     */
+    public boolean isGameOver()
+    {
+        return gameOver;
+    }
+
+    /**
+     * snapshot
+     *
+     * @return a copy of the playing field, one color per cell
+     */
+    public int[][] snapshot()
+    {
+        return snapshot(new int[numRows][numCols]);
+    }
+
+    /**
+     * snapshot
+     *
+     * Copies the playing field into an array supplied by the caller, so that
+     * a view or simulation can take snapshots without allocating.
+     *
+     * @param into an array of at least getNumRows() x getNumCols() cells
+     * @return the given array
+     */
+    public int[][] snapshot(int[][] into)
+    {
+        for (int row = 0; row < numRows; ++row)
+        {
+            for (int col = 0; col < numCols; ++col)
+            {
+                into[row][col] = board.get(row, col);
+            }
+        }
+        return into;
+    }//snapshot
+
+    /**
+     * getCell
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return the color of the given cell
+     */
+    public int getCell(int row, int col)
+    {
+        return board.get(row, col);
+    }
+
+    /**
+     * setCell
+     *
+     * Stores a color in one cell of the field, e.g. to set up a position.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @param color the new contents of the cell
+     */
+    public void setCell(int row, int col, int color)
+    {
+        board.set(row, col, color);
+        heightsValid = false;
+    }
+
+    /**
+     * @return the current score
+     */
+    public int getScore()
+    {
+        return score;
+    }
+
+    /**
+     * getRowMask
+     *
+     * @param row the row to look at
+     * @return the occupancy bitmask of the row, current piece included
+     *         (bit c is set when column c holds a block); only the first 32
+     *         columns on a wider field (see {@link #getRowWord})
+     */
+    public int getRowMask(int row)
+    {
+        return board.rowMask(row);
+    }
+
+    /**
+     * getRowWord
+     *
+     * @param row the row to look at
+     * @param word which 64 columns of the row
+     * @return the occupancy bitmask of columns 64 * word and up, current
+     *         piece included
+     */
+    public long getRowWord(int row, int word)
+    {
+        return board.rowWord(row, word);
+    }
+
+    /**
+     * getHash
+     *
+     * @return the Zobrist hash of which cells of the field are filled,
+     *         current piece included (see {@link Zobrist})
+     */
+    public long getHash()
+    {
+        return board.getHash();
+    }
+
+    /**
+     * @return the 4-bit pattern of the current piece's blocks (see BitBoard)
+     */
+    public int getCurrPattern()
+    {
+        return currPattern;
+    }
+
+    /**
+     * @return the number of pieces put on the field since the last new game
+     */
+    public int getPieces()
+    {
+        return pieces;
+    }
+
+    /**
+     * @return the row of the upper-left corner of the current piece
+     */
+    public int getCurrRow()
+    {
+        return currRow;
+    }
+
+    /**
+     * @return the column of the upper-left corner of the current piece
+     */
+    public int getCurrCol()
+    {
+        return currCol;
+    }
+
+    /**
+     * clearField
+     *
+     * Creates a new playing field sets all cells in the field to EMPTY.
+     *
+     */
+    public void clearField()
+    {
+        board.clear();
+        java.util.Arrays.fill(heights, numRows);
+        heightsValid = true;
+        gameOver = false;
+    }//clearField
+
+    /**
+     * rotate
+     *
+     * This method rotates a 2x2 block by 90 degrees.
+     * For the current piece, a rotation that would put one of its blocks
+     * onto another block is ignored.
+     *
+     * @param row the row of the upper-left corner of the 2x2 block
+     * @param col the column of the upper-left block
+     *
+     */
+    public void rotate(int row, int col)
+    {
+        int pattern = patternAt(row, col);
+        if (!board.move(row, col, pattern, MoveTable.ROTATE))
+        {
+            return;
+        }
+        if ((row == currRow) && (col == currCol))
+        {
+            currPattern = BitBoard.rotatePattern(currPattern);
+        }
+        else
+        {
+            heightsValid = false; //the heights only know the current piece
+        }
+    }//rotate
+
+    /**
+     * move
+     *
+     * This method moves a 2x2 piece by one space (left, right, or down)
+     * This method does *not* check to make sure that the movement is valid;
+     * it is up to the caller to verify the move before calling move.
+     *
+     * The block is moved as would be expected for a Tetris game.
+     * Specifically, if an empty space moves onto a block, then the block remains
+     * and is not replaced by the empty space.
+     *
+     * @param row the row of the upper-left corner of the block
+     * @param col the column of the upper-left corner of the block
+     * @param direction the direction to move (LEFT, DOWN, or RIGHT)
+     *        (see the constants defined at the top of this class)
+     *
+     */
+    public void move(int row, int col, int direction)
+    {
+        //a direction plus one is its kind of move in the MoveTable; a move
+        //the table refuses is still carried out cell by cell, as it always
+        //was
+        int pattern = patternAt(row, col);
+        if (!board.move(row, col, pattern, direction + 1))
+        {
+            if (direction == DOWN)
+            {
+                board.shift(row, col, pattern, 1, 0);
+            }
+            else
+            {
+                board.shift(row, col, pattern, 0, direction);
+            }
+        }
+        if ((row != currRow) || (col != currCol))
+        {
+            heightsValid = false; //the heights only know the current piece
+        }
+        removeRows(); //checks if more than 1 row is needed for deletion
+
+    }//move
+
+    /**
+     * validMove
+     *
+     * This method calculates whether a block may be moved one space in a particular
+     * direction: left, right or down.  A move is invalid if there is another block in
+     * the target location, or if the movement would take the block off of the
+     * playing field
+     *
+     * @param row the row of the upper-left corner of the block
+     * @param col the column of the upper-left corner of the block
+     * @param direction direction to move (LEFT, RIGHT, or DOWN)
+     *              (see the constants defined at the top of this class)
+     *
+     * @return    true if the movement is legal and false otherwise
+     */
+    public boolean validMove(int row, int col, int direction)
+    {
+        //the piece's shifted mask must stay on the field and not overlap
+        //any other block; one lookup in the MoveTable says whether it does
+        return board.canMove(row, col, patternAt(row, col), direction + 1);
+    }//validMove
+
+    /**
+     * validRotate
+     *
+     * @param row the row of the upper-left corner of the block
+     * @param col the column of the upper-left corner of the block
+     * @return true if {@link #rotate} would turn the block rather than
+     *         ignore the rotation
+     */
+    public boolean validRotate(int row, int col)
+    {
+        return board.canMove(row, col, patternAt(row, col), MoveTable.ROTATE);
+    }
+
+    /**
+     * clearPiece
+     *
+     * Forgets the current piece, so that its blocks are like any others and
+     * move, rotate and validMove see only the field.  This is for working on
+     * positions set up with setCell; step a NEW_GAME to play again.
+     */
+    public void clearPiece()
+    {
+        currRow = -1;
+        currCol = 0;
+        currPattern = 0;
+        heightsValid = false;
+    }//clearPiece
+
+    /**
+     * patternAt
+     *
+     * @return the blocks of the piece at the given position: those of the
+     *         current piece if it is there, otherwise every occupied cell of
+     *         the 2x2 area
+     */
+    private int patternAt(int row, int col)
+    {
+        if ((row == currRow) && (col == currCol))
+        {
+            return currPattern;
+        }
+        return board.window(row, col);
+    }//patternAt
+
+    /**
+     * checkRow
+     *
+     * If the row (given by parameter row) has all columns filled then return true.
+     * @param row the row to be checked
+     */
+    public boolean checkRow(int row)
+    {
+        return board.isRowFull(row);
+    }
+
+    /**
+     * removeRows
+     *
+     * This method removes any complete rows of blocks among the rows changed
+     * by the last action.  Rows above the removed ones shift down.
+     * The score is incremented for each complete row that is removed.
+     */
+    public void removeRows()
+    {
+        int cleared = board.clearFullRows();
+        if (cleared > 0)
+        {
+            heightsValid = false;
+
+            //if the piece itself was cleared or shifted, whatever is left in
+            //its 2x2 area carries on as the piece
+            if (currRow >= 0)
+            {
+                currPattern = board.window(currRow, currCol);
+            }
+
+            if (Metrics.ENABLED)
+            {
+                Metrics.LINES_CLEARED.add(cleared);
+            }
+        }
+        score = score + cleared; //increment score by 1 for each row deleted
+
+    }//removeRows
+
+    /**
+     * createRandomPiece
+     *
+     * creates a new piece at the top of the Mintris board.  If any block of
+     * the piece would land on a block that is already there, the piece is not
+     * placed and the game is over.
+     *
+     */
+    public void createRandomPiece()
+    {
+        //the next piece's starting column and color, and which block in
+        //the 2x2 area of the piece is empty
+        int piece = upcoming.take();
+        int col = Piece.col(piece);
+        int type = Piece.color(piece);
+        int which = Piece.which(piece);
+
+        //bit "which" of the piece pattern is the empty block
+        if ((board.window(0, col) & ~(1 << which) & 0xF) != 0)
+        {
+            gameOver = true;
+            return;
+        }
+
+        //Fill the indicated 2x2 area
+        for(int x = 0; x < 2; ++x)
+        {
+            for(int y = 0; y < 2; ++y)
+            {
+                if (x * 2 + y != which)
+                {
+                    board.set(x, y + col, type);
+                }
+            }
+        }
+
+        //record the location of this new piece
+        this.currRow = 0;
+        this.currCol = col;
+        this.currPattern = 0xF & ~(1 << which);
+        ++pieces;
+        if (Metrics.ENABLED)
+        {
+            Metrics.PIECES_SPAWNED.increment();
+        }
+
+    }//createRandomPiece
+
+    /**
+     * drop
+     *
+     * Drops the current piece all the way down.  The landing row is worked
+     * out from the column heights, so the piece is moved and rows are
+     * removed only once.  If a block hangs over the piece, the heights don't
+     * say what is below it and the piece is dropped one row at a time.
+     */
+    private void drop()
+    {
+        if (!heightsValid)
+        {
+            board.columnTops(heights, currRow, currCol, currPattern);
+            heightsValid = true;
+        }
+
+        int landing = numRows - 2;
+        for (int j = 0; j < 2; ++j)
+        {
+            boolean upper = ((currPattern >> j) & 1) != 0;
+            boolean lower = ((currPattern >> (j + 2)) & 1) != 0;
+            if (!upper && !lower)
+            {
+                continue;
+            }
+
+            //the lowest block of the piece in this column must end up
+            //directly above the highest block of the column
+            int offset = lower ? 1 : 0;
+            int top = heights[currCol + j];
+            if (top <= currRow + offset)
+            {
+                dropSlowly();
+                return;
+            }
+            landing = Math.min(landing, top - 1 - offset);
+        }
+
+        if (landing > currRow)
+        {
+            board.shift(currRow, currCol, currPattern, landing - currRow, 0);
+            currRow = landing;
+            removeRows();
+        }
+    }//drop
+
+    /**
+     * dropSlowly
+     *
+     * Drops the current piece all the way down one row at a time.  As with
+     * the fast path, rows are only removed if the piece moved.
+     */
+    private void dropSlowly()
+    {
+        int startRow = currRow;
+        while (board.move(currRow, currCol, currPattern, MoveTable.DOWN))
+        {
+            ++currRow;
+        }
+        if (currRow > startRow)
+        {
+            removeRows();
+        }
+    }//dropSlowly
+
+    /**
+     * lockPiece
+     *
+     * The current piece has bottomed out, so its blocks become part of the
+     * column heights.
+     */
+    private void lockPiece()
+    {
+        if (!heightsValid)
+        {
+            return;
+        }
+        for (int j = 0; j < 2; ++j)
+        {
+            int c = currCol + j;
+            if ((((currPattern >> j) & 1) != 0) && (currRow < heights[c]))
+            {
+                heights[c] = currRow;
+            }
+            else if ((((currPattern >> (j + 2)) & 1) != 0) && (currRow + 1 < heights[c]))
+            {
+                heights[c] = currRow + 1;
+            }
+        }
+    }//lockPiece
+
+    /**
+     * testLayout
+     *
+     * Clears the field and fills it with a column of blue blocks standing on
+     * two almost complete rows of red blocks.
+     */
+    private void testLayout()
+    {
+        clearField();
+        for(int i = 3; i < numRows; ++i)
+        {
+            board.set(i, numCols/2, BLUE_BLOCK);
+        }
+        for(int x = numRows - 2; x < numRows; ++x)
+        {
+            for (int y = 0; y < numCols; ++y)
+            {
+                board.set(x, y, RED_BLOCK);
+            }
+        }
+        int lastRow = numRows - 1;
+        board.set(lastRow, 0, EMPTY);
+        board.set(lastRow-1, 1, EMPTY);
+        board.set(lastRow-1, 0, EMPTY);
+        heightsValid = false;
+    }//testLayout
+
+}//class MintrisEngine
@@ -0,0 +1,317 @@
+/**
+ * Class MoveTable - every one-step move of a 2x2 piece worked out in
+ * advance.
+ *
+ * A move only involves the cells the piece covers before and after it: a
+ * 3x2 area for a move down, a 2x3 area for a move left or right and the
+ * 2x2 area itself for a rotation.  The table is indexed by the kind of
+ * move, the 4-bit pattern of the piece (see {@link BitBoard}) and the
+ * occupancy of that area, and gives in one lookup whether the move is
+ * legal and how the area is occupied after it.
+ *
+ * The areas are numbered row by row from the upper-left cell: bit
+ * r * width + c is the cell in row r and column c of the area.  A move left
+ * starts its area one column left of the piece; every other area starts at
+ * the piece's upper-left corner.
+ *
+ * The rules are those of {@link BitBoard#canShift} and
+ * {@link BitBoard#shift}: a block of the piece may not land on a block
+ * that is not part of the piece, and a cell of the piece that holds no
+ * block neither blocks the move nor overwrites anything.  {@link #main}
+ * checks the table against those methods exhaustively.
+ */
+public final class MoveTable
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //the kinds of move; a direction of MintrisEngine plus one is its kind
+    public static final int LEFT = 0;
+    public static final int DOWN = 1;
+    public static final int RIGHT = 2;
+    public static final int ROTATE = 3;
+
+    //an entry is the occupancy of the area after the move, plus LEGAL if
+    //the move is allowed
+    public static final int AREA = 0x3F;
+    public static final int LEGAL = 0x40;
+
+    //the shape of each kind's area, and where it starts relative to the
+    //piece
+    private static final int[] WIDTH = { 3, 2, 3, 2 };
+    private static final int[] FIRST_COL = { -1, 0, 0, 0 };
+
+    //for each kind and cell of the piece, the area bit of the cell before
+    //and after the move
+    private static final int[][] FROM = new int[4][4];
+    private static final int[][] TO = new int[4][4];
+
+    //the same as row and column offsets from the piece's upper-left corner
+    private static final int[][] TO_ROW = new int[4][4];
+    private static final int[][] TO_COL = new int[4][4];
+
+    //the table, indexed by (kind << 10) | (pattern << 6) | area
+    private static final byte[] TABLE = new byte[4 << 10];
+
+    static
+    {
+        for (int kind = 0; kind < 4; ++kind)
+        {
+            for (int cell = 0; cell < 4; ++cell)
+            {
+                int row = cell >> 1;
+                int col = cell & 1;
+                int toRow = row;
+                int toCol = col;
+                if (kind == LEFT)
+                {
+                    --toCol;
+                }
+                else if (kind == RIGHT)
+                {
+                    ++toCol;
+                }
+                else if (kind == DOWN)
+                {
+                    ++toRow;
+                }
+                else
+                {
+                    //a rotation moves each block to the next corner
+                    //counter-clockwise (see BitBoard.rotatePattern)
+                    int turned = Integer.numberOfTrailingZeros(BitBoard.rotatePattern(1 << cell));
+                    toRow = turned >> 1;
+                    toCol = turned & 1;
+                }
+                FROM[kind][cell] = row * WIDTH[kind] + col - FIRST_COL[kind];
+                TO[kind][cell] = toRow * WIDTH[kind] + toCol - FIRST_COL[kind];
+                TO_ROW[kind][cell] = toRow;
+                TO_COL[kind][cell] = toCol;
+            }
+
+            for (int pattern = 0; pattern < 16; ++pattern)
+            {
+                for (int area = 0; area <= AREA; ++area)
+                {
+                    TABLE[(kind << 10) | (pattern << 6) | area] =
+                        (byte) build(kind, pattern, area);
+                }
+            }
+        }
+    }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    private MoveTable()
+    {
+    }
+
+    /**
+     * build
+     *
+     * @return the table entry for one move
+     */
+    private static int build(int kind, int pattern, int area)
+    {
+        int piece = 0;
+        int moving = 0;
+        int target = 0;
+        int landing = 0;
+        for (int cell = 0; cell < 4; ++cell)
+        {
+            if (((pattern >> cell) & 1) == 0)
+            {
+                continue;
+            }
+            piece |= 1 << FROM[kind][cell];
+            target |= 1 << TO[kind][cell];
+            if (((area >> FROM[kind][cell]) & 1) != 0)
+            {
+                moving |= 1 << FROM[kind][cell];
+                landing |= 1 << TO[kind][cell];
+            }
+        }
+
+        //every cell the piece moves onto must be free of other blocks, even
+        //where the piece has no block to move there
+        int others = area & ~piece;
+        if ((target & others) != 0)
+        {
+            return area;
+        }
+        return LEGAL | (area & ~moving) | landing;
+    }//build
+
+    /**
+     * lookup
+     *
+     * @param kind LEFT, DOWN, RIGHT or ROTATE
+     * @param pattern the 4-bit pattern of the piece
+     * @param area the occupancy of the move's area
+     * @return the occupancy of the area after the move, plus LEGAL if the
+     *         move is allowed
+     */
+    public static int lookup(int kind, int pattern, int area)
+    {
+        return TABLE[(kind << 10) | (pattern << 6) | area];
+    }
+
+    /**
+     * @return the number of columns of a kind's area
+     */
+    public static int width(int kind)
+    {
+        return WIDTH[kind];
+    }
+
+    /**
+     * @return the column of a kind's area that the piece's left edge is in
+     */
+    public static int firstCol(int kind)
+    {
+        return FIRST_COL[kind];
+    }
+
+    /**
+     * @return the area bit a cell of the piece is in before the move
+     */
+    public static int from(int kind, int cell)
+    {
+        return FROM[kind][cell];
+    }
+
+    /**
+     * @return the row a cell of the piece ends up in, relative to the
+     *         piece's upper-left corner
+     */
+    public static int toRow(int kind, int cell)
+    {
+        return TO_ROW[kind][cell];
+    }
+
+    /**
+     * @return the column a cell of the piece ends up in, relative to the
+     *         piece's upper-left corner
+     */
+    public static int toCol(int kind, int cell)
+    {
+        return TO_COL[kind][cell];
+    }
+
+    /**
+     * This method checks the table against the cell-by-cell rules of
+     * {@link BitBoard}: for every kind of move, piece pattern and occupancy
+     * of the area, and for pieces on either side of a boundary between the
+     * words of a wide board, the move must be allowed or refused in the
+     * same way and leave the same cells and hash behind.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args)
+    {
+        //a board with the piece in the middle, and boards where the area
+        //straddles the boundary between two longs of a row
+        int[][] boards = { { 5, 6, 2 }, { 5, 130, 62 }, { 5, 130, 63 }, { 5, 130, 64 } };
+        long checked = 0;
+        long failed = 0;
+        for (int[] shape : boards)
+        {
+            for (int kind = 0; kind < 4; ++kind)
+            {
+                for (int pattern = 0; pattern < 16; ++pattern)
+                {
+                    for (int area = 0; area < ((kind == ROTATE) ? 16 : 64); ++area)
+                    {
+                        ++checked;
+                        if (!check(shape[0], shape[1], 1, shape[2], kind, pattern, area))
+                        {
+                            ++failed;
+                            if (failed <= 10)
+                            {
+                                System.out.println("mismatch: board " + shape[0] + "x" + shape[1]
+                                    + " col " + shape[2] + " kind " + kind + " pattern "
+                                    + pattern + " area " + area);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println(checked + " moves checked, " + failed + " mismatches");
+        if (failed > 0)
+        {
+            System.exit(1);
+        }
+    }//main
+
+    /**
+     * check
+     *
+     * Sets up one move on two boards, carries it out with the table on one
+     * and cell by cell on the other, and compares them.
+     */
+    private static boolean check(int numRows, int numCols, int row, int col,
+                                 int kind, int pattern, int area)
+    {
+        BitBoard fast = new BitBoard(numRows, numCols);
+        BitBoard slow = new BitBoard(numRows, numCols);
+        int left = col + FIRST_COL[kind];
+        for (int bit = 0; bit < 6; ++bit)
+        {
+            if (((area >> bit) & 1) != 0)
+            {
+                //a different color per cell, so moved colors are checked too
+                int color = bit % MintrisEngine.NUM_COLORS + 1;
+                fast.set(row + bit / WIDTH[kind], left + bit % WIDTH[kind], color);
+                slow.set(row + bit / WIDTH[kind], left + bit % WIDTH[kind], color);
+            }
+        }
+
+        boolean legal;
+        if (kind == ROTATE)
+        {
+            legal = slow.canRotate(row, col, pattern);
+            if (legal)
+            {
+                slow.rotate(row, col, pattern);
+            }
+        }
+        else
+        {
+            int dRow = (kind == DOWN) ? 1 : 0;
+            int dCol = kind - DOWN;
+            legal = slow.canShift(row, col, pattern, dRow, dCol);
+            if (legal)
+            {
+                slow.shift(row, col, pattern, dRow, dCol);
+            }
+        }
+
+        if ((fast.canMove(row, col, pattern, kind) != legal)
+            || (fast.move(row, col, pattern, kind) != legal))
+        {
+            return false;
+        }
+        for (int r = 0; r < numRows; ++r)
+        {
+            if (fast.fillCount(r) != slow.fillCount(r))
+            {
+                return false;
+            }
+            for (int c = 0; c < numCols; ++c)
+            {
+                if (fast.get(r, c) != slow.get(r, c))
+                {
+                    return false;
+                }
+            }
+        }
+        return fast.getHash() == slow.getHash();
+    }//check
+
+}//class MoveTable
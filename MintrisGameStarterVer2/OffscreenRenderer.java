@@ -0,0 +1,453 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.imageio.*;
+import javax.imageio.stream.*;
+
+/**
+ * Class OffscreenRenderer - draws the games of a replay file (see
+ * {@link ReplayReader}) into images, with no window and no screen, for
+ * looking through archived games.
+ *
+ * Each game is replayed and drawn with the same {@link RenderCache} the
+ * window uses, either as a PNG file per frame or as a contact sheet: one
+ * PNG of small pictures of the game, evenly spaced from its start to its
+ * end.  The games are shared out among worker threads.  Every worker
+ * replays on an engine of its own and draws into images of its own that it
+ * keeps for every game, so nothing is allocated per frame for drawing; the
+ * replay logs are passed from the reader to the workers and back through a
+ * fixed set, so the reader never runs more than a few games ahead.
+ *
+ * It runs under java.awt.headless=true, which {@link #main} sets unless told
+ * otherwise.
+ */
+public class OffscreenRenderer
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    public static final int DEFAULT_TILES = 24;
+    public static final int DEFAULT_COLUMNS = 8;
+
+    //the size of a tile of a contact sheet, half the window, and the gap
+    //between tiles
+    public static final int TILE_WIDTH = Mintris.WINDOW_WIDTH / 2;
+    public static final int TILE_HEIGHT = Mintris.WINDOW_HEIGHT / 2;
+    public static final int TILE_GAP = 4;
+
+    //the replay logs each worker may have waiting for it
+    private static final int LOGS_PER_WORKER = 2;
+
+    //tells a worker there are no more games
+    private static final Job DONE = new Job();
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private Path directory;
+
+    //true for a contact sheet per game, false for every frame
+    private boolean sheets;
+
+    //for frames, how many steps apart they are drawn; for sheets, the
+    //tiles of a sheet and how many go across
+    private int every = 1;
+    private int tiles = DEFAULT_TILES;
+    private int columns = DEFAULT_COLUMNS;
+
+    //statistics
+    private AtomicLong games = new AtomicLong();
+    private AtomicLong images = new AtomicLong();
+    private AtomicLong mismatches = new AtomicLong();
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * OffscreenRenderer
+     *
+     * @param directory where the images go; it is created if need be
+     * @param sheets true for a contact sheet of each game, false for a PNG
+     *               of every frame
+     */
+    public OffscreenRenderer(Path directory, boolean sheets)
+    {
+        this.directory = directory;
+        this.sheets = sheets;
+    }
+
+    /**
+     * setFrameInterval
+     *
+     * @param every draw a frame after every this many steps (and the
+     *              last one), at least 1
+     */
+    public void setFrameInterval(int every)
+    {
+        if (every < 1)
+        {
+            throw new IllegalArgumentException("frame interval must be at least 1: " + every);
+        }
+        this.every = every;
+    }//setFrameInterval
+
+    /**
+     * setSheetSize
+     *
+     * @param tiles the pictures on each contact sheet, at least 2
+     * @param columns how many go across, at least 1
+     */
+    public void setSheetSize(int tiles, int columns)
+    {
+        if ((tiles < 2) || (columns < 1))
+        {
+            throw new IllegalArgumentException("a contact sheet needs at least 2 tiles and"
+                + " 1 column, not " + tiles + " and " + columns);
+        }
+        this.tiles = tiles;
+        this.columns = columns;
+    }//setSheetSize
+
+    /**
+     * renderAll
+     *
+     * Draws every game that is left in a replay file.
+     *
+     * @param reader the replay file
+     * @param threads the number of worker threads
+     */
+    public void renderAll(ReplayReader reader, int threads)
+        throws IOException, InterruptedException
+    {
+        Files.createDirectories(directory);
+        int jobs = threads * (LOGS_PER_WORKER + 1);
+        BlockingQueue<Job> free = new ArrayBlockingQueue<Job>(jobs);
+        BlockingQueue<Job> work = new ArrayBlockingQueue<Job>(jobs);
+        for (int i = 0; i < jobs; ++i)
+        {
+            free.add(new Job());
+        }
+
+        AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; ++i)
+        {
+            workers[i] = new Worker(work, free, failure);
+            workers[i].setName("offscreen-renderer-" + i);
+            workers[i].start();
+        }
+
+        //the first game gets number 0, the next 1, and so on
+        long game = 0;
+        try
+        {
+            while (failure.get() == null)
+            {
+                Job job = free.take();
+                if (!reader.next(job.log))
+                {
+                    break;
+                }
+                job.game = game++;
+                work.put(job);
+            }
+        }
+        finally
+        {
+            for (int i = 0; i < threads; ++i)
+            {
+                work.put(DONE);
+            }
+            for (Worker worker : workers)
+            {
+                worker.join();
+            }
+        }
+
+        Exception e = failure.get();
+        if (e instanceof IOException)
+        {
+            throw (IOException) e;
+        }
+        else if (e != null)
+        {
+            throw new IOException("rendering failed", e);
+        }
+    }//renderAll
+
+    public long getGames()
+    {
+        return games.get();
+    }
+
+    public long getImages()
+    {
+        return images.get();
+    }
+
+    /**
+     * @return how many games did not end the way they were recorded
+     */
+    public long getMismatches()
+    {
+        return mismatches.get();
+    }
+
+    /**
+     * Class Job - a game of the replay file and its number in the file.
+     */
+    private static class Job
+    {
+        private final ReplayLog log = new ReplayLog();
+        private long game;
+    }//class Job
+
+    /**
+     * Class Worker - a thread that draws whole games, with its own engine
+     * and images.
+     */
+    private class Worker extends Thread
+    {
+        private BlockingQueue<Job> work;
+        private BlockingQueue<Job> free;
+        private AtomicReference<Exception> failure;
+
+        private MintrisEngine engine = new MintrisEngine();
+        private RenderCache cache = new RenderCache(Mintris.defaultBlockColors());
+        private ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+
+        //the window, and the contact sheet the window is shrunk onto
+        private BufferedImage window = new BufferedImage(Mintris.WINDOW_WIDTH,
+            Mintris.WINDOW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        private Graphics2D windowGraphics = window.createGraphics();
+        private BufferedImage sheet;
+        private Graphics2D sheetGraphics;
+
+        //the game being drawn and where the replay is in it
+        private Job job;
+        private int step;
+        private int tile;
+
+        //run by the replay after every action and fall
+        private Runnable onStep = new Runnable() {
+                public void run() {
+                    stepped();
+                }
+            };
+
+        Worker(BlockingQueue<Job> work, BlockingQueue<Job> free,
+               AtomicReference<Exception> failure)
+        {
+            this.work = work;
+            this.free = free;
+            this.failure = failure;
+            setDaemon(true);
+            if (sheets)
+            {
+                int rows = (tiles + columns - 1) / columns;
+                sheet = new BufferedImage(columns * (TILE_WIDTH + TILE_GAP) + TILE_GAP,
+                    rows * (TILE_HEIGHT + TILE_GAP) + TILE_GAP, BufferedImage.TYPE_INT_RGB);
+                sheetGraphics = sheet.createGraphics();
+                sheetGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            }
+        }//Worker
+
+        public void run()
+        {
+            try
+            {
+                while ((job = work.take()) != DONE)
+                {
+                    try
+                    {
+                        if (failure.get() == null)
+                        {
+                            render();
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        failure.compareAndSet(null, e);
+                    }
+                    free.put(job);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                windowGraphics.dispose();
+                if (sheetGraphics != null)
+                {
+                    sheetGraphics.dispose();
+                }
+                writer.dispose();
+            }
+        }//run
+
+        /**
+         * render
+         *
+         * Replays and draws the game of the job.
+         */
+        private void render() throws IOException
+        {
+            long game = job.game;
+            step = 0;
+            tile = 0;
+            if (sheets)
+            {
+                sheetGraphics.setColor(RenderCache.BACKGROUND_COLOR);
+                sheetGraphics.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+            }
+            else
+            {
+                Files.createDirectories(directory.resolve(String.format("game-%06d", game)));
+            }
+
+            try
+            {
+                if (!job.log.replay(engine, onStep))
+                {
+                    mismatches.incrementAndGet();
+                }
+            }
+            catch (UncheckedIOException e)
+            {
+                throw e.getCause();
+            }
+            if (sheets)
+            {
+                write(sheet, directory.resolve(String.format("game-%06d.png", game)));
+            }
+            games.incrementAndGet();
+        }//render
+
+        /**
+         * stepped
+         *
+         * Draws the game as it is after an action or fall, if it is time to.
+         */
+        private void stepped()
+        {
+            int steps = job.log.getActionCount() + (int) job.log.getEndTick();
+            try
+            {
+                if (!sheets)
+                {
+                    if ((step % every == 0) || (step == steps))
+                    {
+                        cache.paintGame(windowGraphics, engine);
+                        write(window, directory.resolve(String.format(
+                            "game-%06d/frame-%06d.png", job.game, step)));
+                    }
+                }
+                else if ((tile < tiles) && (step == (int) ((long) tile * steps / (tiles - 1))))
+                {
+                    //the tiles are spread evenly from the start to the end
+                    //of the game; a short game repeats frames
+                    while ((tile < tiles) && (step == (int) ((long) tile * steps / (tiles - 1))))
+                    {
+                        cache.paintGame(windowGraphics, engine);
+                        int x = TILE_GAP + (tile % columns) * (TILE_WIDTH + TILE_GAP);
+                        int y = TILE_GAP + (tile / columns) * (TILE_HEIGHT + TILE_GAP);
+                        sheetGraphics.drawImage(window, x, y, TILE_WIDTH, TILE_HEIGHT, null);
+                        ++tile;
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            ++step;
+        }//stepped
+
+        /**
+         * write
+         *
+         * Stores an image as a PNG file, replacing any file already there.
+         */
+        private void write(BufferedImage image, Path path) throws IOException
+        {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(path))))
+            {
+                writer.setOutput(out);
+                writer.write(image);
+            }
+            finally
+            {
+                writer.setOutput(null);
+            }
+            images.incrementAndGet();
+        }//write
+    }//class Worker
+
+    /**
+     * This method draws the games of a replay file and prints how fast it
+     * went.
+     *
+     * @param args the replay file, the directory for the images (default
+     *             thumbnails), "sheets" for a contact sheet per game (the
+     *             default) or "frames" for every frame, the tiles of a sheet
+     *             or the steps between frames (default 24 or 1), and the
+     *             number of threads (default one per processor)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if (System.getProperty("java.awt.headless") == null)
+        {
+            System.setProperty("java.awt.headless", "true");
+        }
+        Path path = Paths.get(args[0]);
+        Path directory = Paths.get((args.length > 1) ? args[1] : "thumbnails");
+        boolean sheets = (args.length <= 2) || !args[2].equals("frames");
+        int threads = (args.length > 4) ? Integer.parseInt(args[4])
+            : Runtime.getRuntime().availableProcessors();
+
+        //the images are small; a cache file for each would only slow it down
+        ImageIO.setUseCache(false);
+
+        OffscreenRenderer renderer = new OffscreenRenderer(directory, sheets);
+        if (args.length > 3)
+        {
+            if (sheets)
+            {
+                renderer.setSheetSize(Integer.parseInt(args[3]), DEFAULT_COLUMNS);
+            }
+            else
+            {
+                renderer.setFrameInterval(Integer.parseInt(args[3]));
+            }
+        }
+
+        long start = System.nanoTime();
+        try (ReplayReader reader = new ReplayReader(path))
+        {
+            renderer.renderAll(reader, threads);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games, %d images in %.1f s with %d threads, %.0f games per hour%n",
+            renderer.getGames(), renderer.getImages(), seconds, threads,
+            renderer.getGames() * 3600 / seconds);
+        if (renderer.getMismatches() > 0)
+        {
+            System.out.println(renderer.getMismatches()
+                + " games did not end the way they were recorded");
+        }
+    }//main
+
+}//class OffscreenRenderer
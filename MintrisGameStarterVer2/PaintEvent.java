@@ -0,0 +1,15 @@
+import jdk.jfr.*;
+
+/**
+ * Class PaintEvent - a JFR event for one paint of the Mintris window.
+ */
+@Name("mintris.Paint")
+@Label("Paint")
+@Category("Mintris")
+@Description("The Swing view painting a frame")
+public class PaintEvent extends Event
+{
+    @Label("Frame")
+    public long frame;
+
+}//class PaintEvent
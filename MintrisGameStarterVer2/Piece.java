@@ -0,0 +1,57 @@
+/**
+ * Class Piece - a Mintris piece packed into an int, so that pieces can be
+ * queued and passed around without allocating.
+ *
+ * A piece is a 2x2 block of one color with one cell left empty, spawned at
+ * the top of the field in a given column:
+ *
+ *      bits 0-1    which cell is empty (a bit number of the pattern, see
+ *                  {@link BitBoard})
+ *      bits 4-5    the color
+ *      bits 8 up   the column of the piece's left edge
+ */
+public final class Piece
+{
+    private Piece()
+    {
+    }
+
+    /**
+     * pack
+     *
+     * @param col the column the piece is spawned in
+     * @param color the color of its blocks
+     * @param which the cell of the 2x2 area that is empty (0 to 3)
+     * @return the packed piece
+     */
+    public static int pack(int col, int color, int which)
+    {
+        return (col << 8) | (color << 4) | which;
+    }
+
+    public static int col(int piece)
+    {
+        return piece >>> 8;
+    }
+
+    public static int color(int piece)
+    {
+        return (piece >>> 4) & 0xF;
+    }
+
+    public static int which(int piece)
+    {
+        return piece & 3;
+    }
+
+    /**
+     * pattern
+     *
+     * @return the 4-bit pattern of the piece's blocks
+     */
+    public static int pattern(int piece)
+    {
+        return 0xF & ~(1 << which(piece));
+    }
+
+}//class Piece
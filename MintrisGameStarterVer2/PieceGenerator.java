@@ -0,0 +1,37 @@
+/**
+ * Interface PieceGenerator - deals the pieces of a Mintris game (see
+ * {@link Piece}).
+ *
+ * A generator is seeded at the start of every game, and the same seed must
+ * deal the same pieces, so that games can be replayed.  The engine draws
+ * from it through a {@link PieceQueue}, a few pieces ahead of play.
+ */
+public interface PieceGenerator
+{
+    /**
+     * setSeed
+     *
+     * Starts the generator over for a new game.
+     *
+     * @param seed the seed of the game
+     */
+    void setSeed(long seed);
+
+    /**
+     * next
+     *
+     * @param numCols the number of columns of the field
+     * @return the next piece, packed (see {@link Piece})
+     */
+    int next(int numCols);
+
+    /**
+     * copy
+     *
+     * @return a generator that deals the same pieces from here on as this
+     *         one, but independently of it; a generator that can't be
+     *         copied returns itself
+     */
+    PieceGenerator copy();
+
+}//interface PieceGenerator
@@ -0,0 +1,192 @@
+/**
+ * Class PieceQueue - the next few pieces of a game, dealt ahead of play so
+ * that the view can preview them and a player can plan for them.
+ *
+ * The pieces are kept in a ring buffer that always holds the same number
+ * of them: taking the oldest piece deals a new one onto the end.  Dealing
+ * ahead doesn't change which pieces come up, only when they are drawn.
+ */
+public class PieceQueue
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //how many pieces a queue shows unless told otherwise
+    public static final int DEFAULT_LOOKAHEAD = 3;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private PieceGenerator generator;
+    private int numCols;
+
+    //the pieces are ring[head], ring[head + 1], ... (modulo its length,
+    //a power of two)
+    private int[] ring;
+    private int mask;
+    private int head = 0;
+    private int size;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * PieceQueue
+     *
+     * Creates a queue and deals its first pieces from the generator as it
+     * stands.
+     *
+     * @param generator deals the pieces
+     * @param size how many pieces the queue holds, at least 1
+     * @param numCols the number of columns of the field
+     */
+    public PieceQueue(PieceGenerator generator, int size, int numCols)
+    {
+        if (size < 1)
+        {
+            throw new IllegalArgumentException("a piece queue holds at least one piece");
+        }
+        this.generator = generator;
+        this.size = size;
+        this.numCols = numCols;
+        ring = new int[Integer.highestOneBit(size) << 1];
+        mask = ring.length - 1;
+        fill();
+    }//PieceQueue
+
+    /**
+     * setSeed
+     *
+     * Reseeds the generator and deals the queue again.
+     *
+     * @param seed the seed of the new game
+     */
+    public void setSeed(long seed)
+    {
+        generator.setSeed(seed);
+        fill();
+    }
+
+    /**
+     * take
+     *
+     * @return the oldest piece of the queue, which is replaced by a newly
+     *         dealt one
+     */
+    public int take()
+    {
+        int piece = ring[head];
+        ring[(head + size) & mask] = generator.next(numCols);
+        head = (head + 1) & mask;
+        return piece;
+    }//take
+
+    /**
+     * peek
+     *
+     * @param index 0 for the piece {@link #take} returns next, 1 for the
+     *              one after, and so on up to size - 1
+     * @return the piece
+     */
+    public int peek(int index)
+    {
+        return ring[(head + index) & mask];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public PieceGenerator getGenerator()
+    {
+        return generator;
+    }
+
+    /**
+     * copy
+     *
+     * @return a queue that will deal the same pieces as this one, on a copy
+     *         of its generator (see {@link PieceGenerator#copy})
+     */
+    public PieceQueue copy()
+    {
+        PieceQueue copy = new PieceQueue(this);
+        copy.generator = generator.copy();
+        return copy;
+    }
+
+    /**
+     * restore
+     *
+     * Makes this queue deal what a copy made earlier will deal.  The copy
+     * can be restored again later.
+     *
+     * @param saved a queue of the same size made by {@link #copy}
+     */
+    public void restore(PieceQueue saved)
+    {
+        System.arraycopy(saved.ring, 0, ring, 0, ring.length);
+        head = saved.head;
+        generator = saved.generator.copy();
+    }
+
+    /**
+     * PieceQueue
+     *
+     * Makes a queue of pieces that were dealt earlier, such as a saved
+     * game's (see {@link SaveState}), without dealing any.
+     *
+     * @param generator deals the pieces after these
+     * @param numCols the number of columns of the field
+     * @param pieces the pieces, the one {@link #take} returns first first
+     */
+    PieceQueue(PieceGenerator generator, int numCols, int[] pieces)
+    {
+        if (pieces.length < 1)
+        {
+            throw new IllegalArgumentException("a piece queue holds at least one piece");
+        }
+        this.generator = generator;
+        this.size = pieces.length;
+        this.numCols = numCols;
+        ring = new int[Integer.highestOneBit(size) << 1];
+        mask = ring.length - 1;
+        System.arraycopy(pieces, 0, ring, 0, size);
+    }//PieceQueue
+
+    /**
+     * PieceQueue
+     *
+     * Copies the pieces of another queue and shares its generator.
+     */
+    private PieceQueue(PieceQueue other)
+    {
+        generator = other.generator;
+        numCols = other.numCols;
+        ring = other.ring.clone();
+        mask = other.mask;
+        head = other.head;
+        size = other.size;
+    }
+
+    /**
+     * fill
+     *
+     * Deals a whole queue of pieces.
+     */
+    private void fill()
+    {
+        head = 0;
+        for (int i = 0; i < size; ++i)
+        {
+            ring[i] = generator.next(numCols);
+        }
+    }//fill
+
+}//class PieceQueue
@@ -0,0 +1,89 @@
+import java.util.*;
+
+/**
+ * Class PieceRandom - the random number generator the engine draws its
+ * pieces from.  It produces exactly the same numbers as java.util.Random
+ * for the same seed, but its state can be read and put back, so a saved
+ * game (see {@link EngineState}) goes on to spawn the same pieces it would
+ * have spawned.  Unlike java.util.Random it is not safe to share between
+ * threads.
+ */
+public class PieceRandom extends Random
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //the linear congruential generator of java.util.Random
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+
+    //the 48-bit state; set by the constructor of Random through setSeed, so
+    //it must not have an initializer of its own
+    private long state;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * PieceRandom
+     *
+     * Creates a generator with a seed that is different every time.
+     */
+    public PieceRandom()
+    {
+        super();
+    }
+
+    /**
+     * PieceRandom
+     *
+     * @param seed the initial seed
+     */
+    public PieceRandom(long seed)
+    {
+        super(seed);
+    }
+
+    public void setSeed(long seed)
+    {
+        super.setSeed(seed);
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * getState
+     *
+     * @return the state of the generator, for {@link #setState}
+     */
+    public long getState()
+    {
+        return state;
+    }
+
+    /**
+     * setState
+     *
+     * @param state a state returned by {@link #getState}
+     */
+    public void setState(long state)
+    {
+        this.state = state;
+    }
+
+    protected int next(int bits)
+    {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+}//class PieceRandom
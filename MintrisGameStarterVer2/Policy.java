@@ -0,0 +1,28 @@
+/**
+ * Interface Policy - something that plays Mintris one action at a time.
+ *
+ * A policy keeps whatever it knows about the game it is playing, so one
+ * policy plays one game at a time.  It may be reused for another game after
+ * {@link #newGame} has been called.
+ */
+public interface Policy
+{
+    /**
+     * newGame
+     *
+     * Forgets the previous game before a new one starts.
+     *
+     * @param seed the seed of the new game, for policies that make random
+     *             choices of their own
+     */
+    void newGame(long seed);
+
+    /**
+     * nextAction
+     *
+     * @param engine the game being played
+     * @return the action to step the game with
+     */
+    MintrisEngine.Action nextAction(MintrisEngine engine);
+
+}//interface Policy
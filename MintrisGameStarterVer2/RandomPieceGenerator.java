@@ -0,0 +1,74 @@
+import java.util.*;
+
+/**
+ * Class RandomPieceGenerator - deals pieces from a java.util.Random the way
+ * Mintris always has: for each piece a column, then a color, then the empty
+ * cell, each uniformly at random.  Games recorded with it replay with it.
+ */
+public class RandomPieceGenerator implements PieceGenerator
+{
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private Random randGen;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * RandomPieceGenerator
+     *
+     * Creates a generator with a seed that is different every time.
+     */
+    public RandomPieceGenerator()
+    {
+        this(new PieceRandom());
+    }
+
+    /**
+     * RandomPieceGenerator
+     *
+     * @param randGen the source of the pieces; only a {@link PieceRandom}
+     *                can be copied
+     */
+    public RandomPieceGenerator(Random randGen)
+    {
+        this.randGen = randGen;
+    }
+
+    public void setSeed(long seed)
+    {
+        randGen.setSeed(seed);
+    }
+
+    public int next(int numCols)
+    {
+        int col = randGen.nextInt(numCols - 1);
+        int color = randGen.nextInt(MintrisEngine.NUM_COLORS) + 1;
+        int which = randGen.nextInt(4);
+        return Piece.pack(col, color, which);
+    }//next
+
+    public PieceGenerator copy()
+    {
+        if (!(randGen instanceof PieceRandom))
+        {
+            return this;
+        }
+        PieceRandom copy = new PieceRandom(0);
+        copy.setState(((PieceRandom) randGen).getState());
+        return new RandomPieceGenerator(copy);
+    }//copy
+
+    /**
+     * @return the source of the pieces
+     */
+    Random getSource()
+    {
+        return randGen;
+    }
+
+}//class RandomPieceGenerator
@@ -0,0 +1,42 @@
+import java.util.*;
+
+/**
+ * Class RandomPolicy - plays Mintris by picking one of the moves at random.
+ */
+public class RandomPolicy implements Policy
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //the actions to choose from
+    private static final MintrisEngine.Action[] MOVES = {
+        MintrisEngine.Action.LEFT,
+        MintrisEngine.Action.RIGHT,
+        MintrisEngine.Action.DOWN,
+        MintrisEngine.Action.DROP,
+        MintrisEngine.Action.ROTATE };
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private Random randGen = new Random();
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    public void newGame(long seed)
+    {
+        randGen.setSeed(seed);
+    }
+
+    public MintrisEngine.Action nextAction(MintrisEngine engine)
+    {
+        return MOVES[randGen.nextInt(MOVES.length)];
+    }
+
+}//class RandomPolicy
@@ -0,0 +1,371 @@
+import java.awt.*;
+import java.awt.image.*;
+
+/**
+ * Class RenderCache - pre-rendered images for drawing a Mintris window.
+ *
+ * Everything that never changes (the background, the playing field, its
+ * border and the title) is drawn once into a background layer, and each
+ * block color is drawn once into a sprite.  Painting the window is then a
+ * matter of copying the part of the background that needs repainting and
+ * the sprites of the blocks on top of it.
+ *
+ * Painting allocates nothing: even the text of the score is put together in
+ * a buffer the cache keeps.  So a cache paints on one thread at a time.
+ */
+public class RenderCache
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    public static final int BLOCK_SIZE = Mintris.BLOCK_SIZE;
+
+    //width of the border around the playing field
+    public static final int MARGIN = 5;
+
+    //The position of the playing field
+    public static final int FIELD_TOP = Mintris.WINDOW_HEIGHT
+        - (MintrisEngine.NUM_ROWS * BLOCK_SIZE + MARGIN + Mintris.WINDOW_MARGIN);
+    public static final int FIELD_LEFT = Mintris.WINDOW_MARGIN + MARGIN;
+
+    //a sprite includes the block's border on its right and bottom edges
+    public static final int SPRITE_SIZE = BLOCK_SIZE + 1;
+
+    //where the score is drawn, and the area that covers it
+    public static final int SCORE_X = 70;
+    public static final int SCORE_Y = 75;
+    public static final Rectangle SCORE_AREA = new Rectangle(
+        SCORE_X - 2, SCORE_Y - 22, Mintris.WINDOW_WIDTH - SCORE_X + 2, 30);
+
+    //where the next pieces are previewed: small blocks in a column at the
+    //top right, as many pieces as fit above the field
+    public static final int PREVIEW_BLOCK = 8;
+    public static final int PREVIEW_GAP = 4;
+    public static final int PREVIEW_X = 192;
+    public static final int PREVIEW_Y = 12;
+    public static final int MAX_PREVIEW = 3;
+    public static final Rectangle PREVIEW_AREA = new Rectangle(
+        PREVIEW_X, PREVIEW_Y, 2 * PREVIEW_BLOCK + 1,
+        MAX_PREVIEW * (2 * PREVIEW_BLOCK + PREVIEW_GAP));
+
+    public static final Color BACKGROUND_COLOR = new Color(0x330088);  //medium-dark purple
+    public static final Color FIELD_COLOR = new Color(0x9966FF);       //lavender
+    public static final Font TITLE_FONT = new Font("SansSerif", Font.BOLD, 32);
+    public static final Font SCORE_FONT = new Font("SansSerif", Font.PLAIN, 18);
+    public static final String SCORE_LABEL = "Score:";
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    // the window without any blocks or score
+    private BufferedImage background;
+
+    // one pre-rendered block per color index, full size and for previews
+    private BufferedImage[] sprites;
+    private BufferedImage[] previewSprites;
+
+    // the label and the digits of the score, with room for any int
+    private char[] scoreText = new char[SCORE_LABEL.length() + 11];
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * RenderCache
+     *
+     * Renders the background layer and a sprite for each block color.
+     *
+     * @param blockColors the color of each cell value, indexed like the field
+     */
+    public RenderCache(Color[] blockColors)
+    {
+        background = new BufferedImage(Mintris.WINDOW_WIDTH, Mintris.WINDOW_HEIGHT,
+            BufferedImage.TYPE_INT_RGB);
+        Graphics g = background.createGraphics();
+        drawBackground(g);
+        g.dispose();
+
+        sprites = new BufferedImage[blockColors.length];
+        for (int i = 0; i < blockColors.length; ++i)
+        {
+            sprites[i] = new BufferedImage(SPRITE_SIZE, SPRITE_SIZE, BufferedImage.TYPE_INT_RGB);
+            g = sprites[i].createGraphics();
+            drawBlock(g, 0, 0, blockColors[i]);
+            g.dispose();
+        }
+
+        previewSprites = new BufferedImage[blockColors.length];
+        for (int i = 0; i < blockColors.length; ++i)
+        {
+            previewSprites[i] = new BufferedImage(PREVIEW_BLOCK + 1, PREVIEW_BLOCK + 1,
+                BufferedImage.TYPE_INT_RGB);
+            g = previewSprites[i].createGraphics();
+            g.setColor(blockColors[i]);
+            g.fillRect(0, 0, PREVIEW_BLOCK, PREVIEW_BLOCK);
+            g.setColor(Color.BLACK);
+            g.drawRect(0, 0, PREVIEW_BLOCK, PREVIEW_BLOCK);
+            g.dispose();
+        }
+
+        SCORE_LABEL.getChars(0, SCORE_LABEL.length(), scoreText, 0);
+    }//RenderCache
+
+    /**
+     * cellX
+     *
+     * @return the x coordinate of the left edge of a column of the field
+     */
+    public static int cellX(int col)
+    {
+        return FIELD_LEFT + col * BLOCK_SIZE;
+    }
+
+    /**
+     * cellY
+     *
+     * @return the y coordinate of the top edge of a row of the field
+     */
+    public static int cellY(int row)
+    {
+        return FIELD_TOP + row * BLOCK_SIZE;
+    }
+
+    /**
+     * paintBackground
+     *
+     * Copies the background layer; only the part inside the clip of the
+     * Graphics object is actually drawn.
+     *
+     * @param g the Graphics object to draw on
+     */
+    public void paintBackground(Graphics g)
+    {
+        g.drawImage(background, 0, 0, null);
+    }
+
+    /**
+     * paintBlock
+     *
+     * Draws the sprite of a block with its upper-left corner at x,y.
+     *
+     * @param g the Graphics object to draw on
+     * @param x, y the coordinates of the block
+     * @param color the color index of the block
+     */
+    public void paintBlock(Graphics g, int x, int y, int color)
+    {
+        g.drawImage(sprites[color], x, y, null);
+    }
+
+    /**
+     * paintScore
+     *
+     * Draws the score over the background.
+     *
+     * @param g the Graphics object to draw on
+     * @param score the score to show
+     */
+    public void paintScore(Graphics g, int score)
+    {
+        //the digits are written from the last one back, after the label
+        int length = SCORE_LABEL.length();
+        long value = score;
+        if (value < 0)
+        {
+            scoreText[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value; rest >= 10; rest /= 10)
+        {
+            ++digits;
+        }
+        for (int i = length + digits - 1; i >= length; --i)
+        {
+            scoreText[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+
+        g.setColor(Color.WHITE);
+        g.setFont(SCORE_FONT);
+        g.drawChars(scoreText, 0, length + digits, SCORE_X, SCORE_Y);
+    }//paintScore
+
+    /**
+     * paintNext
+     *
+     * Draws small pictures of the next pieces over the background, the
+     * next one at the top.
+     *
+     * @param g the Graphics object to draw on
+     * @param frame the frame whose pieces to draw
+     */
+    public void paintNext(Graphics g, GameFrame frame)
+    {
+        int count = Math.min(frame.getLookahead(), MAX_PREVIEW);
+        for (int i = 0; i < count; ++i)
+        {
+            paintPreview(g, i, frame.getNextPiece(i));
+        }
+    }//paintNext
+
+    /**
+     * paintPreview
+     *
+     * Draws a small picture of one of the next pieces.
+     *
+     * @param g the Graphics object to draw on
+     * @param index 0 for the next piece, at the top, and so on
+     * @param piece the piece, packed (see {@link Piece})
+     */
+    private void paintPreview(Graphics g, int index, int piece)
+    {
+        BufferedImage sprite = previewSprites[Piece.color(piece)];
+        int pattern = Piece.pattern(piece);
+        int y = PREVIEW_Y + index * (2 * PREVIEW_BLOCK + PREVIEW_GAP);
+        for (int cell = 0; cell < 4; ++cell)
+        {
+            if (((pattern >> cell) & 1) != 0)
+            {
+                g.drawImage(sprite, PREVIEW_X + (cell & 1) * PREVIEW_BLOCK,
+                    y + (cell >> 1) * PREVIEW_BLOCK, null);
+            }
+        }
+    }//paintPreview
+
+    /**
+     * paintFrame
+     *
+     * Draws a whole frame of the game: the background, every block, the
+     * score and the next pieces.
+     *
+     * @param g the Graphics object to draw on
+     * @param frame the frame to draw
+     */
+    public void paintFrame(Graphics g, GameFrame frame)
+    {
+        paintBackground(g);
+        for (int row = 0; row < MintrisEngine.NUM_ROWS; ++row)
+        {
+            for (int col = 0; col < MintrisEngine.NUM_COLS; ++col)
+            {
+                int color = frame.getCell(row, col);
+                if ((color < 0) || (color > MintrisEngine.EMPTY))
+                {
+                    color = MintrisEngine.INVALID_COLOR;
+                }
+                if (color != MintrisEngine.EMPTY)
+                {
+                    paintBlock(g, cellX(col), cellY(row), color);
+                }
+            }
+        }
+        paintScore(g, frame.getScore());
+        paintNext(g, frame);
+    }//paintFrame
+
+    /**
+     * paintGame
+     *
+     * Draws a whole game straight from its engine, the way
+     * {@link #paintFrame} draws a frame of it, without taking a frame.  The
+     * engine must not change while it is drawn.
+     *
+     * @param g the Graphics object to draw on
+     * @param engine the game to draw, on a field of the standard size
+     */
+    public void paintGame(Graphics g, MintrisEngine engine)
+    {
+        paintBackground(g);
+        for (int row = 0; row < MintrisEngine.NUM_ROWS; ++row)
+        {
+            for (int col = 0; col < MintrisEngine.NUM_COLS; ++col)
+            {
+                int color = engine.getCell(row, col);
+                if ((color < 0) || (color > MintrisEngine.EMPTY))
+                {
+                    color = MintrisEngine.INVALID_COLOR;
+                }
+                if (color != MintrisEngine.EMPTY)
+                {
+                    paintBlock(g, cellX(col), cellY(row), color);
+                }
+            }
+        }
+        paintScore(g, engine.getScore());
+        int count = Math.min(engine.getLookahead(), MAX_PREVIEW);
+        for (int i = 0; i < count; ++i)
+        {
+            paintPreview(g, i, engine.getNextPiece(i));
+        }
+    }//paintGame
+
+    /**
+     * drawBackground
+     *
+     * Draws the parts of the window that never change: the background, the
+     * empty playing field with a thick border around it, and the title.
+     *
+     * @param g the Graphics object to draw on
+     */
+    public static void drawBackground(Graphics g)
+    {
+        int width = MintrisEngine.NUM_COLS * BLOCK_SIZE;
+        int height = MintrisEngine.NUM_ROWS * BLOCK_SIZE;
+
+        //start with the background color
+        g.setColor(BACKGROUND_COLOR);
+        g.fillRect(0, 0, Mintris.WINDOW_WIDTH, Mintris.WINDOW_HEIGHT);
+
+        //Draw the playing field
+        g.setColor(FIELD_COLOR);
+        g.fillRect(FIELD_LEFT, FIELD_TOP, width, height);
+
+        //Draw a thick border around the playing field
+        g.setColor(Color.WHITE);
+        for(int i = 1; i <= MARGIN; ++i)
+        {
+            g.drawRect(FIELD_LEFT - i, FIELD_TOP - i, width + MARGIN, height + MARGIN);
+        }
+
+        //draw the title
+        g.setFont(TITLE_FONT);
+        g.drawString("Mintris", 45, 50);
+    }//drawBackground
+
+    /**
+     * drawBlock
+     *
+     * This method draws a Mintris block of a given color at a given x,y
+     * coordinate.
+     *
+     * @param  g          the Graphics object to draw on
+     * @param  x, y       the coordinates of the block
+     * @param  blockColor the main color of the block
+     */
+    public static void drawBlock(Graphics g, int x, int y, Color blockColor)
+    {
+        //draw the main block
+        g.setColor(blockColor);
+        g.fillRect(x, y, BLOCK_SIZE, BLOCK_SIZE);
+
+        //draw some shading on the edges for a 3D effect
+        g.setColor(Color.white); //blockColor.brighter());
+        g.drawLine(x, y+1, x + BLOCK_SIZE, y+1);
+        g.drawLine(x + BLOCK_SIZE - 1, y, x + BLOCK_SIZE - 1, y + BLOCK_SIZE);
+        g.setColor(blockColor.darker());
+        g.drawLine(x+1, y, x+1, y + BLOCK_SIZE);
+        g.drawLine(x+1, y + BLOCK_SIZE - 1, x + BLOCK_SIZE - 1, y + BLOCK_SIZE - 1);
+
+        //draw a black border around it
+        g.setColor(Color.BLACK);
+        g.drawRect(x, y, BLOCK_SIZE, BLOCK_SIZE);
+
+    }//drawBlock
+
+}//class RenderCache
@@ -0,0 +1,462 @@
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Class ReplayLog - the record of one Mintris game: the seed of its piece
+ * generator, every action the player took and the gravity tick it was taken
+ * on (see {@link MintrisEngine#fall}), and the tick, score and field
+ * checksum it ended with.  Replaying the actions from the seed, letting the
+ * piece fall at every tick in between, plays the same game again.
+ *
+ * Each action is stored as one unsigned varint (7 bits per byte, high bit
+ * set on all bytes but the last) holding the number of ticks since the
+ * previous action, shifted left by three, plus the ordinal of the action.
+ * An action up to fifteen ticks after the one before costs one byte.
+ *
+ * In a replay file a game is stored as
+ *
+ *      varint  length of the rest of the record
+ *      long    seed
+ *      varint  number of actions
+ *      bytes   the actions
+ *      varint  final tick
+ *      varint  final score
+ *      long    final field checksum
+ *
+ * A log can be reused for game after game without allocating once its
+ * buffer has grown to the length of the longest game, and never allocates
+ * while logging a game no longer than the number of actions it was made
+ * with room for.
+ */
+public class ReplayLog
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //bits of an encoded action that hold the action's ordinal
+    private static final int ACTION_BITS = 3;
+    private static final MintrisEngine.Action[] ACTIONS = MintrisEngine.Action.values();
+
+    //the most bytes a varint of a long can take
+    public static final int MAX_VARINT_SIZE = 10;
+
+    //the bytes a new log has room for when no size is given
+    private static final int DEFAULT_CAPACITY = 256;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private long seed = 0;
+
+    //the encoded actions
+    private byte[] actions;
+    private int length = 0;
+    private int count = 0;
+    private long lastTick = 0;
+
+    //how the game ended
+    private long endTick = 0;
+    private int score = 0;
+    private long checksum = 0;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * ReplayLog
+     *
+     * Creates an empty log with a small buffer that grows as needed.
+     */
+    public ReplayLog()
+    {
+        actions = new byte[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * ReplayLog
+     *
+     * Creates an empty log with room for a number of actions, however far
+     * apart they are, so that logging a game that long never grows it.
+     *
+     * @param capacity the number of actions to make room for
+     */
+    public ReplayLog(int capacity)
+    {
+        if (capacity < 0)
+        {
+            throw new IllegalArgumentException("negative capacity " + capacity);
+        }
+        actions = new byte[Math.max(DEFAULT_CAPACITY, capacity * MAX_VARINT_SIZE)];
+    }//ReplayLog
+
+    /**
+     * begin
+     *
+     * Forgets the previous game and starts logging a new one.
+     *
+     * @param seed the seed the new game was started with
+     */
+    public void begin(long seed)
+    {
+        this.seed = seed;
+        length = 0;
+        count = 0;
+        lastTick = 0;
+        endTick = 0;
+        score = 0;
+        checksum = 0;
+    }//begin
+
+    /**
+     * add
+     *
+     * Appends one action to the log.
+     *
+     * @param tick when the action was taken; no earlier than the last one
+     * @param action what the player did
+     */
+    public void add(long tick, MintrisEngine.Action action)
+    {
+        long delta = tick - lastTick;
+        if (delta < 0)
+        {
+            throw new IllegalArgumentException("tick " + tick + " is before " + lastTick);
+        }
+        lastTick = tick;
+
+        if (length + MAX_VARINT_SIZE > actions.length)
+        {
+            actions = Arrays.copyOf(actions, actions.length * 2);
+        }
+        long value = (delta << ACTION_BITS) | action.ordinal();
+        while ((value & ~0x7FL) != 0)
+        {
+            actions[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        actions[length++] = (byte) value;
+        ++count;
+    }//add
+
+    /**
+     * removeLast
+     *
+     * Takes the most recent action back out of the log, as when the step
+     * is undone, so that the next action may again be taken on any tick
+     * since the one before it.
+     *
+     * @return false if the log has no actions
+     */
+    public boolean removeLast()
+    {
+        if (count == 0)
+        {
+            return false;
+        }
+        //every byte of an action but its last has the high bit set
+        int start = length - 1;
+        while ((start > 0) && (actions[start - 1] < 0))
+        {
+            --start;
+        }
+        long value = 0;
+        int shift = 0;
+        for (int pos = start; pos < length; ++pos)
+        {
+            value |= (long) (actions[pos] & 0x7F) << shift;
+            shift += 7;
+        }
+        lastTick -= value >>> ACTION_BITS;
+        length = start;
+        --count;
+        return true;
+    }//removeLast
+
+    /**
+     * finish
+     *
+     * Records how a game ended, to be checked when it is replayed.
+     *
+     * @param engine the game that was logged
+     */
+    public void finish(MintrisEngine engine)
+    {
+        endTick = engine.getTick();
+        score = engine.getScore();
+        checksum = engine.checksum();
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @return the bytes of actions the log holds before it has to grow
+     */
+    public int getCapacity()
+    {
+        return actions.length;
+    }
+
+    /**
+     * @return the number of actions in the log
+     */
+    public int getActionCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the tick the game ended on, which is also the number of times
+     *         the piece fell by itself
+     */
+    public long getEndTick()
+    {
+        return endTick;
+    }
+
+    public int getScore()
+    {
+        return score;
+    }
+
+    public long getChecksum()
+    {
+        return checksum;
+    }
+
+    /**
+     * replay
+     *
+     * Plays the logged game again on an engine, as fast as it can.
+     *
+     * @param engine the engine to play on; it must not be recording into
+     *               this log
+     * @return true if the game ended with the logged score and field
+     */
+    public boolean replay(MintrisEngine engine)
+    {
+        return replay(engine, null);
+    }
+
+    /**
+     * replay
+     *
+     * Plays the logged game again on an engine, stopping after the game is
+     * started and after every action and fall to let a listener look at it.
+     *
+     * @param engine the engine to play on; it must not be recording into
+     *               this log
+     * @param onStep run once the game is started and after every action
+     *               and fall, or null
+     * @return true if the game ended with the logged tick, score and field
+     */
+    public boolean replay(MintrisEngine engine, Runnable onStep)
+    {
+        engine.newGame(seed);
+        if (onStep != null)
+        {
+            onStep.run();
+        }
+        int pos = 0;
+        long tick = 0;
+        for (int i = 0; i < count; ++i)
+        {
+            long value = 0;
+            int shift = 0;
+            while (actions[pos] < 0)
+            {
+                value |= (long) (actions[pos++] & 0x7F) << shift;
+                shift += 7;
+            }
+            value |= (long) actions[pos++] << shift;
+            tick += value >>> ACTION_BITS;
+            fallUntil(engine, tick, onStep);
+            engine.step(ACTIONS[(int) value & ((1 << ACTION_BITS) - 1)]);
+            if (onStep != null)
+            {
+                onStep.run();
+            }
+        }
+        fallUntil(engine, endTick, onStep);
+        return (engine.getTick() == endTick) && (engine.getScore() == score)
+            && (engine.checksum() == checksum);
+    }//replay
+
+    /**
+     * fallUntil
+     *
+     * Lets the piece of a replayed game fall until the game reaches a tick.
+     */
+    private static void fallUntil(MintrisEngine engine, long tick, Runnable onStep)
+    {
+        while (engine.getTick() < tick)
+        {
+            engine.fall();
+            if (onStep != null)
+            {
+                onStep.run();
+            }
+        }
+    }//fallUntil
+
+    /**
+     * getTick
+     *
+     * Decodes the tick of one of the logged actions.
+     *
+     * @param index which action, from 0
+     * @return the tick the action was taken on
+     */
+    public long getTick(int index)
+    {
+        long tick = 0;
+        int pos = 0;
+        for (int i = 0; i <= index; ++i)
+        {
+            long value = 0;
+            int shift = 0;
+            while (actions[pos] < 0)
+            {
+                value |= (long) (actions[pos++] & 0x7F) << shift;
+                shift += 7;
+            }
+            value |= (long) actions[pos++] << shift;
+            tick += value >>> ACTION_BITS;
+        }
+        return tick;
+    }//getTick
+
+    /**
+     * encodedSize
+     *
+     * @return the number of bytes {@link #writeTo} puts in a buffer
+     */
+    public int encodedSize()
+    {
+        int body = bodySize();
+        return varintSize(body) + body;
+    }
+
+    /**
+     * bodySize
+     *
+     * @return the size of the record without its length prefix
+     */
+    private int bodySize()
+    {
+        return Long.BYTES + varintSize(count) + length + varintSize(endTick)
+            + varintSize(score) + Long.BYTES;
+    }
+
+    /**
+     * writeTo
+     *
+     * Stores the log as a replay file record.
+     *
+     * @param out a buffer with at least {@link #encodedSize} bytes left
+     */
+    public void writeTo(ByteBuffer out)
+    {
+        putVarint(out, bodySize());
+        out.putLong(seed);
+        putVarint(out, count);
+        out.put(actions, 0, length);
+        putVarint(out, endTick);
+        putVarint(out, score);
+        out.putLong(checksum);
+    }//writeTo
+
+    /**
+     * readFrom
+     *
+     * Replaces the contents of this log with a replay file record.
+     *
+     * @param in a buffer positioned at the start of a whole record
+     */
+    public void readFrom(ByteBuffer in)
+    {
+        int body = (int) getVarint(in);
+        int end = in.position() + body;
+        begin(in.getLong());
+        count = (int) getVarint(in);
+
+        //the actions run up to the tick, score and checksum at the end; the
+        //ticks are added up on the way, so that more actions can be added
+        int start = in.position();
+        for (int i = 0; i < count; ++i)
+        {
+            lastTick += getVarint(in) >>> ACTION_BITS;
+        }
+        length = in.position() - start;
+        if (length + MAX_VARINT_SIZE > actions.length)
+        {
+            actions = new byte[Math.max(length + MAX_VARINT_SIZE, actions.length * 2)];
+        }
+        in.position(start);
+        in.get(actions, 0, length);
+        endTick = getVarint(in);
+        score = (int) getVarint(in);
+        checksum = in.getLong();
+        if (in.position() != end)
+        {
+            throw new IllegalStateException("corrupt replay record");
+        }
+    }//readFrom
+
+    /**
+     * putVarint
+     *
+     * Writes an unsigned varint.
+     */
+    public static void putVarint(ByteBuffer out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }//putVarint
+
+    /**
+     * getVarint
+     *
+     * Reads an unsigned varint.
+     */
+    public static long getVarint(ByteBuffer in)
+    {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        while ((b = in.get()) < 0)
+        {
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return value | ((long) b << shift);
+    }//getVarint
+
+    /**
+     * varintSize
+     *
+     * @return the number of bytes the varint of a value takes
+     */
+    public static int varintSize(long value)
+    {
+        int size = 1;
+        while ((value & ~0x7FL) != 0)
+        {
+            ++size;
+            value >>>= 7;
+        }
+        return size;
+    }//varintSize
+
+}//class ReplayLog
@@ -0,0 +1,158 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/**
+ * Class ReplayReader - reads the games of a replay file (see
+ * {@link ReplayWriter}) through a memory-mapped file channel.
+ *
+ * The file is mapped a window at a time, so files of any size can be read.
+ * A new window is mapped whenever the next record doesn't fit in what is
+ * left of the current one.
+ */
+public class ReplayReader implements Closeable
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //how much of the file is mapped at once
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private FileChannel channel;
+    private long size;
+
+    //the mapped part of the file and where in the file it starts
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * ReplayReader
+     *
+     * Opens a replay file and checks its header.
+     *
+     * @param path the file to read
+     */
+    public ReplayReader(Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+        map(0);
+        if ((window.remaining() < ReplayWriter.HEADER_SIZE)
+            || (window.getInt() != ReplayWriter.MAGIC))
+        {
+            channel.close();
+            throw new IOException(path + " is not a replay file");
+        }
+        byte version = window.get();
+        if (version != ReplayWriter.VERSION)
+        {
+            channel.close();
+            throw new IOException(path + " has replay format version " + version
+                + ", expected " + ReplayWriter.VERSION);
+        }
+    }//ReplayReader
+
+    /**
+     * next
+     *
+     * Reads the next game of the file.
+     *
+     * @param into the log to replace with the game
+     * @return false if there are no more games
+     */
+    public boolean next(ReplayLog into) throws IOException
+    {
+        long position = windowStart + window.position();
+        if (position >= size)
+        {
+            return false;
+        }
+
+        //make sure the length and then the whole record are mapped
+        if (window.remaining() < ReplayLog.MAX_VARINT_SIZE)
+        {
+            map(position);
+        }
+        int start = window.position();
+        long recordSize = ReplayLog.getVarint(window) + (window.position() - start);
+        window.position(start);
+        if (recordSize > window.remaining())
+        {
+            if (position + recordSize > size)
+            {
+                throw new EOFException("replay file ends inside a record");
+            }
+            map(position);
+        }
+
+        into.readFrom(window);
+        return true;
+    }//next
+
+    /**
+     * map
+     *
+     * Maps the window of the file that starts at the given position.
+     */
+    private void map(long position) throws IOException
+    {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(WINDOW_SIZE, size - position));
+    }//map
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * This method replays every game in a replay file and checks that each
+     * ends with the score and field it was recorded with.
+     *
+     * @param args the file
+     */
+    public static void main(String[] args) throws IOException
+    {
+        MintrisEngine engine = new MintrisEngine();
+        ReplayLog log = new ReplayLog();
+        long games = 0;
+        long failed = 0;
+        long start = System.nanoTime();
+        try (ReplayReader reader = new ReplayReader(Paths.get(args[0])))
+        {
+            while (reader.next(log))
+            {
+                ++games;
+                if (!log.replay(engine))
+                {
+                    ++failed;
+                    System.out.println("game " + games + " (seed " + log.getSeed()
+                        + ") ended with score " + engine.getScore() + ", expected "
+                        + log.getScore());
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games replayed, %d failed, %.0f games per second%n",
+            games, failed, games / seconds);
+        if (failed > 0)
+        {
+            System.exit(1);
+        }
+    }//main
+
+}//class ReplayReader
@@ -0,0 +1,187 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/**
+ * Class ReplayWriter - appends game logs to a replay file.
+ *
+ * A replay file starts with a header (the magic number "MNTR" and a format
+ * version byte) followed by one {@link ReplayLog} record per game.  Records
+ * are gathered in a direct buffer and written to the file channel in large
+ * blocks.
+ */
+public class ReplayWriter implements Closeable
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    public static final int MAGIC = 0x4D4E5452;   //"MNTR"
+    public static final byte VERSION = 2;
+    public static final int HEADER_SIZE = Integer.BYTES + 1;
+
+    //size of the buffer records are gathered in
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    //how many steps the player of main takes back each time it undoes
+    private static final int UNDO_STEPS = 2;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long games = 0;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * ReplayWriter
+     *
+     * Creates (or replaces) a replay file.
+     *
+     * @param path where the file goes
+     */
+    public ReplayWriter(Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+    }//ReplayWriter
+
+    /**
+     * write
+     *
+     * Appends a game to the file.
+     *
+     * @param log the finished game
+     */
+    public void write(ReplayLog log) throws IOException
+    {
+        int size = log.encodedSize();
+        if (size > buffer.remaining())
+        {
+            flush();
+            if (size > buffer.capacity())
+            {
+                buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(size) * 2);
+            }
+        }
+        log.writeTo(buffer);
+        ++games;
+    }//write
+
+    /**
+     * @return the number of games written so far
+     */
+    public long getGames()
+    {
+        return games;
+    }
+
+    /**
+     * flush
+     *
+     * Writes the gathered records to the file.
+     */
+    public void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }//flush
+
+    public void close() throws IOException
+    {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * play
+     *
+     * Plays one game to the end, or until maxPieces pieces were placed,
+     * letting the piece fall after every perTick actions and taking the
+     * last UNDO_STEPS steps back after every undoEvery actions (never if 0).
+     */
+    private static void play(MintrisEngine engine, Policy policy, int maxPieces,
+                             int perTick, int undoEvery)
+    {
+        long actions = 0;
+        while (!engine.isGameOver() && (engine.getPieces() <= maxPieces))
+        {
+            engine.step(policy.nextAction(engine));
+            ++actions;
+            if ((perTick > 0) && (actions % perTick == 0))
+            {
+                engine.fall();
+            }
+            if ((undoEvery > 0) && (actions % undoEvery == 0))
+            {
+                for (int i = 0; i < UNDO_STEPS; ++i)
+                {
+                    engine.undo();
+                }
+            }
+        }
+    }//play
+
+    /**
+     * This method records a number of headless games into a replay file.
+     * With gravity on, the piece falls a row by itself after every so many
+     * actions, as if the player made that many moves per gravity tick.
+     * With undo on, the player takes back its last two steps after every
+     * so many actions, and plays on.
+     *
+     * @param args the file, the number of games (default 10000), the policy
+     *             (default random, see {@link Simulator#policyFor}), the
+     *             most pieces per game (default 1000), the actions per
+     *             gravity tick (default 0 for no gravity) and the actions
+     *             between undos (default 0 for no undo)
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Path path = Paths.get(args[0]);
+        long games = (args.length > 1) ? Long.parseLong(args[1]) : 10000;
+        String name = (args.length > 2) ? args[2] : "random";
+        int maxPieces = (args.length > 3) ? Integer.parseInt(args[3]) : 1000;
+        int perTick = (args.length > 4) ? Integer.parseInt(args[4]) : 0;
+        int undoEvery = (args.length > 5) ? Integer.parseInt(args[5]) : 0;
+
+        Policy policy = Simulator.policyFor(name, ForkJoinPool.commonPool()).get();
+        MintrisEngine engine = new MintrisEngine();
+        ReplayLog log = new ReplayLog();
+        engine.setRecorder(log);
+        engine.setUndoLimit((undoEvery > 0) ? UNDO_STEPS : 0);
+        long start = System.nanoTime();
+        try (ReplayWriter writer = new ReplayWriter(path))
+        {
+            for (long game = 0; game < games; ++game)
+            {
+                long seed = Simulator.gameSeed(System.nanoTime(), game);
+                policy.newGame(seed);
+                engine.newGame(seed);
+                play(engine, policy, maxPieces, perTick, undoEvery);
+                log.finish(engine);
+                writer.write(log);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long bytes = Files.size(path);
+        System.out.printf("%d games, %d bytes (%.1f per game), %.0f games per second%n",
+            games, bytes, (double) (bytes - HEADER_SIZE) / games, games / seconds);
+    }//main
+
+}//class ReplayWriter
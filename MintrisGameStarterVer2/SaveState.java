@@ -0,0 +1,548 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Class SaveState - a compact binary form of an {@link EngineState}, for
+ * keeping many games on disk and picking them up again later.
+ *
+ * A record holds the size of the field, the score, the piece count, the
+ * tick, the current piece, the pieces to come and the state of the piece
+ * generator, then every cell of the field at 3 bits a cell (the colors
+ * INVALID_COLOR to EMPTY), and ends with a CRC-32C of all of it.  A game
+ * on the standard field takes about 130 bytes.  Only the generators whose
+ * state can be read back are supported: a {@link RandomPieceGenerator} on
+ * a {@link PieceRandom} and a {@link SplitPieceGenerator}.
+ *
+ * {@link #saveAll} and {@link #loadAll} keep a whole list of games in one
+ * file, mapped into memory: the magic number "MNTS", a format version byte
+ * and the number of games, followed by their records.
+ *
+ * A restored field counts every row with blocks in it as changed, so the
+ * next step looks for full rows in all of them.  The engine never leaves a
+ * full row behind, so this only costs a little time once.
+ */
+public class SaveState
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    public static final int MAGIC = 0x4D4E5453;   //"MNTS"
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = Integer.BYTES + 1 + Integer.BYTES;
+
+    //the version of a record, which comes first in it
+    public static final byte RECORD_VERSION = 1;
+
+    //the generators a record can hold
+    private static final byte GENERATOR_RANDOM = 0;
+    private static final byte GENERATOR_UNIFORM = 1;
+    private static final byte GENERATOR_BAG = 2;
+
+    //where the fixed fields of a record are, and its size before the pieces
+    //to come
+    private static final int NUM_ROWS_AT = 1;
+    private static final int NUM_COLS_AT = 3;
+    private static final int GENERATOR_AT = 27;
+    private static final int LOOKAHEAD_AT = 28;
+    private static final int FIXED_SIZE = 29;
+
+    //the size of the generator's state, by kind
+    private static final int[] GENERATOR_SIZE = { Long.BYTES, Long.BYTES,
+        Long.BYTES + 1 + MintrisEngine.NUM_COLORS * 4 };
+
+    private static final int CELL_BITS = 3;
+    private static final int CELL_MASK = (1 << CELL_BITS) - 1;
+
+    private static final int GAME_OVER = 1;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    private SaveState()
+    {
+    }
+
+    /**
+     * encodedSize
+     *
+     * @param state a saved game
+     * @return the number of bytes {@link #encode} puts in a buffer
+     */
+    public static int encodedSize(EngineState state)
+    {
+        return recordSize(state.getBoard().getNumRows(), state.getBoard().getNumCols(),
+            generatorKind(state.getUpcoming().getGenerator()), state.getUpcoming().size());
+    }
+
+    /**
+     * recordSize
+     *
+     * @return the size of a record with the given layout
+     */
+    private static int recordSize(int numRows, int numCols, int generator, int lookahead)
+    {
+        return FIXED_SIZE + lookahead * Integer.BYTES + GENERATOR_SIZE[generator]
+            + cellBytes(numRows, numCols) + Integer.BYTES;
+    }
+
+    /**
+     * cellBytes
+     *
+     * @return the bytes the cells of a field are packed into
+     */
+    private static int cellBytes(int numRows, int numCols)
+    {
+        return (int) (((long) numRows * numCols * CELL_BITS + 7) >>> 3);
+    }
+
+    /**
+     * generatorKind
+     *
+     * @return which kind of generator a record holds for the given one
+     */
+    private static int generatorKind(PieceGenerator generator)
+    {
+        if ((generator instanceof RandomPieceGenerator)
+            && (((RandomPieceGenerator) generator).getSource() instanceof PieceRandom))
+        {
+            return GENERATOR_RANDOM;
+        }
+        if (generator instanceof SplitPieceGenerator)
+        {
+            return (((SplitPieceGenerator) generator).getDistribution()
+                == SplitPieceGenerator.Distribution.BAG) ? GENERATOR_BAG : GENERATOR_UNIFORM;
+        }
+        throw new IllegalArgumentException("the state of a "
+            + generator.getClass().getSimpleName() + " can't be saved");
+    }//generatorKind
+
+    /**
+     * encode
+     *
+     * Stores a saved game as a record.
+     *
+     * @param state the game
+     * @param out a buffer with at least {@link #encodedSize} bytes left
+     * @throws IllegalStateException if a cell holds a color outside
+     *         INVALID_COLOR to EMPTY (see {@link MintrisEngine#setCell}),
+     *         which 3 bits can't hold; the buffer is left where it was
+     */
+    public static void encode(EngineState state, ByteBuffer out)
+    {
+        BitBoard.Snapshot board = state.getBoard();
+        int numRows = board.getNumRows();
+        int numCols = board.getNumCols();
+        PieceQueue upcoming = state.getUpcoming();
+        PieceGenerator generator = upcoming.getGenerator();
+        int kind = generatorKind(generator);
+        if ((numRows > 0xFFFF) || (numCols > 0xFFFF) || (upcoming.size() > 0xFF))
+        {
+            throw new IllegalArgumentException("the game is too big to save");
+        }
+
+        int start = out.position();
+        out.put(RECORD_VERSION);
+        out.putShort((short) numRows);
+        out.putShort((short) numCols);
+        out.putInt(state.getScore());
+        out.putInt(state.getPieces());
+        out.putLong(state.getTick());
+        out.put((byte) (state.isGameOver() ? GAME_OVER : 0));
+        out.putShort((short) state.getCurrRow());
+        out.putShort((short) state.getCurrCol());
+        out.put((byte) state.getCurrPattern());
+        out.put((byte) kind);
+        out.put((byte) upcoming.size());
+        for (int i = 0; i < upcoming.size(); ++i)
+        {
+            out.putInt(upcoming.peek(i));
+        }
+
+        if (kind == GENERATOR_RANDOM)
+        {
+            out.putLong(((PieceRandom) ((RandomPieceGenerator) generator).getSource()).getState());
+        }
+        else
+        {
+            SplitPieceGenerator split = (SplitPieceGenerator) generator;
+            out.putLong(split.getState());
+            if (kind == GENERATOR_BAG)
+            {
+                out.put((byte) split.getDealt());
+                out.put(split.getBag());
+            }
+        }
+
+        //the cells, row by row, the first in the low bits of the first byte
+        long bits = 0;
+        int count = 0;
+        for (int row = 0; row < numRows; ++row)
+        {
+            for (int col = 0; col < numCols; ++col)
+            {
+                int color = board.get(row, col);
+                if ((color < MintrisEngine.INVALID_COLOR) || (color > MintrisEngine.EMPTY))
+                {
+                    out.position(start);
+                    throw new IllegalStateException("can't save cell color " + color
+                        + " at row " + row + ", column " + col);
+                }
+                bits |= (long) color << count;
+                count += CELL_BITS;
+                if (count >= Byte.SIZE)
+                {
+                    out.put((byte) bits);
+                    bits >>>= Byte.SIZE;
+                    count -= Byte.SIZE;
+                }
+            }
+        }
+        if (count > 0)
+        {
+            out.put((byte) bits);
+        }
+
+        out.putInt(checksum(out, start, out.position()));
+    }//encode
+
+    /**
+     * decode
+     *
+     * Reads a record back.  The game can be put on an engine of the same
+     * size and lookahead with {@link MintrisEngine#restore}.
+     *
+     * @param in a buffer positioned at the start of a whole record; it is
+     *           left just after the record
+     * @return the saved game
+     */
+    public static EngineState decode(ByteBuffer in)
+    {
+        int start = in.position();
+        if (in.remaining() < FIXED_SIZE)
+        {
+            throw new IllegalStateException("save state record is cut short");
+        }
+        byte version = in.get(start);
+        if (version != RECORD_VERSION)
+        {
+            throw new IllegalStateException("save state record has version " + version
+                + ", expected " + RECORD_VERSION);
+        }
+        int numRows = in.getShort(start + NUM_ROWS_AT) & 0xFFFF;
+        int numCols = in.getShort(start + NUM_COLS_AT) & 0xFFFF;
+        int kind = in.get(start + GENERATOR_AT);
+        int lookahead = in.get(start + LOOKAHEAD_AT) & 0xFF;
+        if ((kind < 0) || (kind >= GENERATOR_SIZE.length))
+        {
+            throw new IllegalStateException("save state record has unknown generator " + kind);
+        }
+
+        //check the whole record before trusting any of it
+        int size = recordSize(numRows, numCols, kind, lookahead);
+        if (in.remaining() < size)
+        {
+            throw new IllegalStateException("save state record is cut short");
+        }
+        int end = start + size - Integer.BYTES;
+        if (in.getInt(end) != checksum(in, start, end))
+        {
+            throw new IllegalStateException("corrupt save state record");
+        }
+
+        in.position(start + NUM_COLS_AT + Short.BYTES);
+        int score = in.getInt();
+        int pieces = in.getInt();
+        long tick = in.getLong();
+        boolean gameOver = (in.get() & GAME_OVER) != 0;
+        int currRow = in.getShort();
+        int currCol = in.getShort();
+        int currPattern = in.get();
+        in.position(start + FIXED_SIZE);
+        int[] next = new int[lookahead];
+        for (int i = 0; i < lookahead; ++i)
+        {
+            next[i] = in.getInt();
+        }
+
+        PieceGenerator generator;
+        long generatorState = in.getLong();
+        if (kind == GENERATOR_RANDOM)
+        {
+            PieceRandom randGen = new PieceRandom(0);
+            randGen.setState(generatorState);
+            generator = new RandomPieceGenerator(randGen);
+        }
+        else if (kind == GENERATOR_UNIFORM)
+        {
+            generator = new SplitPieceGenerator(SplitPieceGenerator.Distribution.UNIFORM,
+                generatorState, new byte[MintrisEngine.NUM_COLORS * 4],
+                MintrisEngine.NUM_COLORS * 4);
+        }
+        else
+        {
+            int dealt = in.get();
+            byte[] bag = new byte[MintrisEngine.NUM_COLORS * 4];
+            in.get(bag);
+            generator = new SplitPieceGenerator(SplitPieceGenerator.Distribution.BAG,
+                generatorState, bag, dealt);
+        }
+
+        BitBoard board = new BitBoard(numRows, numCols);
+        long bits = 0;
+        int count = 0;
+        for (int row = 0; row < numRows; ++row)
+        {
+            for (int col = 0; col < numCols; ++col)
+            {
+                if (count < CELL_BITS)
+                {
+                    bits |= (long) (in.get() & 0xFF) << count;
+                    count += Byte.SIZE;
+                }
+                int color = (int) bits & CELL_MASK;
+                bits >>>= CELL_BITS;
+                count -= CELL_BITS;
+                if (color > MintrisEngine.EMPTY)
+                {
+                    throw new IllegalStateException("save state record has cell color " + color);
+                }
+                if (color != MintrisEngine.EMPTY)
+                {
+                    board.set(row, col, color);
+                }
+            }
+        }
+        in.position(end + Integer.BYTES);
+
+        return new EngineState(board.snapshot(), score, currRow, currCol, currPattern,
+            pieces, gameOver, tick, new PieceQueue(generator, numCols, next));
+    }//decode
+
+    /**
+     * checksum
+     *
+     * @return the CRC-32C of part of a buffer
+     */
+    private static int checksum(ByteBuffer buffer, int start, int end)
+    {
+        ByteBuffer part = buffer.duplicate();
+        part.limit(end).position(start);
+        CRC32C crc = new CRC32C();
+        crc.update(part);
+        return (int) crc.getValue();
+    }//checksum
+
+    /**
+     * saveAll
+     *
+     * Creates (or replaces) a file holding a list of games.
+     *
+     * @param path where the file goes
+     * @param states the games
+     */
+    public static void saveAll(Path path, List<EngineState> states) throws IOException
+    {
+        long size = HEADER_SIZE;
+        for (EngineState state : states)
+        {
+            size += encodedSize(state);
+        }
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new IOException("too many games for one save file: " + states.size());
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                 StandardOpenOption.WRITE))
+        {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC);
+            out.put(VERSION);
+            out.putInt(states.size());
+            for (EngineState state : states)
+            {
+                encode(state, out);
+            }
+            out.force();
+        }
+    }//saveAll
+
+    /**
+     * loadAll
+     *
+     * Reads back every game of a file made by {@link #saveAll}.
+     *
+     * @param path the file
+     * @return the games, in the order they were saved
+     */
+    public static List<EngineState> loadAll(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException(path + " is too big to be a save file");
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if ((size < HEADER_SIZE) || (in.getInt() != MAGIC))
+            {
+                throw new IOException(path + " is not a save file");
+            }
+            byte version = in.get();
+            if (version != VERSION)
+            {
+                throw new IOException(path + " has save format version " + version
+                    + ", expected " + VERSION);
+            }
+            int count = in.getInt();
+            if (count < 0)
+            {
+                throw new IOException(path + " is not a save file");
+            }
+
+            List<EngineState> states = new ArrayList<EngineState>(count);
+            try
+            {
+                for (int i = 0; i < count; ++i)
+                {
+                    states.add(decode(in));
+                }
+            }
+            catch (IllegalStateException | IllegalArgumentException e)
+            {
+                throw new IOException(path + ", game " + states.size() + ": " + e.getMessage(), e);
+            }
+            return states;
+        }
+    }//loadAll
+
+    /**
+     * This method plays a batch of games part of the way, saves them all to
+     * one file and loads them back, and prints how long that took.  Each
+     * loaded game must match the one saved and, resumed on an engine, must
+     * play on exactly as the original does; the method exits with status 1
+     * if one does not.  A third of the games each are dealt by a
+     * {@link PieceRandom} and by the two kinds of {@link SplitPieceGenerator}.
+     *
+     * @param args the file (default saves.bin), the number of games (default
+     *             10000), the steps played before saving (default 300) and
+     *             the steps played after loading (default 100)
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Path path = Paths.get((args.length > 0) ? args[0] : "saves.bin");
+        int games = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+        int before = (args.length > 2) ? Integer.parseInt(args[2]) : 300;
+        int after = (args.length > 3) ? Integer.parseInt(args[3]) : 100;
+
+        MintrisEngine[] engines = {
+            new MintrisEngine(),
+            new MintrisEngine(MintrisEngine.NUM_ROWS, MintrisEngine.NUM_COLS,
+                new SplitPieceGenerator(SplitPieceGenerator.Distribution.UNIFORM),
+                PieceQueue.DEFAULT_LOOKAHEAD),
+            new MintrisEngine(MintrisEngine.NUM_ROWS, MintrisEngine.NUM_COLS,
+                new SplitPieceGenerator(SplitPieceGenerator.Distribution.BAG),
+                PieceQueue.DEFAULT_LOOKAHEAD) };
+        Policy policy = new RandomPolicy();
+        List<EngineState> saved = new ArrayList<EngineState>(games);
+        for (int g = 0; g < games; ++g)
+        {
+            MintrisEngine engine = engines[g % engines.length];
+            long seed = Simulator.gameSeed(1, g);
+            engine.newGame(seed);
+            policy.newGame(seed);
+            play(engine, policy, before);
+            saved.add(engine.save());
+        }
+
+        long start = System.nanoTime();
+        saveAll(path, saved);
+        double saveMillis = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        List<EngineState> loaded = loadAll(path);
+        double loadMillis = (System.nanoTime() - start) / 1e6;
+
+        //resume both copies of each game with the same moves
+        MintrisEngine original = new MintrisEngine();
+        MintrisEngine resumed = new MintrisEngine();
+        Policy other = new RandomPolicy();
+        int failed = 0;
+        for (int g = 0; g < games; ++g)
+        {
+            original.restore(saved.get(g));
+            resumed.restore(loaded.get(g));
+            boolean same = same(original, resumed);
+            policy.newGame(g);
+            other.newGame(g);
+            play(original, policy, after);
+            play(resumed, other, after);
+            if (!same || !same(original, resumed))
+            {
+                ++failed;
+                if (failed <= 10)
+                {
+                    System.out.println("game " + g + (same ? " plays on differently" : " differs")
+                        + " after loading");
+                }
+            }
+        }
+
+        System.out.printf("%d games, %d bytes (%.1f per game)%n", games, Files.size(path),
+            (Files.size(path) - HEADER_SIZE) / (double) games);
+        System.out.printf("saved in %.1f ms, loaded in %.1f ms%n", saveMillis, loadMillis);
+        System.out.println(failed + " games differ after loading");
+        if (failed > 0)
+        {
+            System.exit(1);
+        }
+    }//main
+
+    /**
+     * play
+     *
+     * Plays up to the given number of steps of a game, or to its end.
+     */
+    private static void play(MintrisEngine engine, Policy policy, int steps)
+    {
+        for (int i = 0; (i < steps) && !engine.isGameOver(); ++i)
+        {
+            engine.step(policy.nextAction(engine));
+        }
+    }//play
+
+    /**
+     * same
+     *
+     * @return true if two engines show the same game
+     */
+    private static boolean same(MintrisEngine a, MintrisEngine b)
+    {
+        if ((a.checksum() != b.checksum()) || (a.getHash() != b.getHash())
+            || (a.getScore() != b.getScore()) || (a.getPieces() != b.getPieces())
+            || (a.getTick() != b.getTick()) || (a.isGameOver() != b.isGameOver())
+            || (a.getCurrRow() != b.getCurrRow()) || (a.getCurrCol() != b.getCurrCol())
+            || (a.getCurrPattern() != b.getCurrPattern()))
+        {
+            return false;
+        }
+        for (int i = 0; i < a.getLookahead(); ++i)
+        {
+            if (a.getNextPiece(i) != b.getNextPiece(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }//same
+
+}//class SaveState
@@ -0,0 +1,89 @@
+/**
+ * Class ScriptedPolicy - plays Mintris by repeating a fixed list of actions.
+ *
+ * A script is written one letter per action:
+ *
+ *      L = left    R = right    D = down    X = drop    W = rotate
+ *
+ * so "WLLX" rotates each piece, moves it two columns left and drops it.
+ */
+public class ScriptedPolicy implements Policy
+{
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private MintrisEngine.Action[] script;
+
+    //the next action of the script to play
+    private int next = 0;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * ScriptedPolicy
+     *
+     * @param script the actions to repeat, one letter each; it must move
+     *               pieces down at some point or the game would never end
+     */
+    public ScriptedPolicy(String script)
+    {
+        this.script = new MintrisEngine.Action[script.length()];
+        boolean goesDown = false;
+        for (int i = 0; i < script.length(); ++i)
+        {
+            this.script[i] = parse(script.charAt(i));
+            goesDown |= (this.script[i] == MintrisEngine.Action.DOWN)
+                || (this.script[i] == MintrisEngine.Action.DROP);
+        }
+        if (!goesDown)
+        {
+            throw new IllegalArgumentException("script never moves a piece down: " + script);
+        }
+    }//ScriptedPolicy
+
+    public void newGame(long seed)
+    {
+        next = 0;
+    }
+
+    public MintrisEngine.Action nextAction(MintrisEngine engine)
+    {
+        MintrisEngine.Action action = script[next];
+        next = (next + 1) % script.length;
+        return action;
+    }
+
+    /**
+     * parse
+     *
+     * @return the action a script letter stands for
+     */
+    private static MintrisEngine.Action parse(char letter)
+    {
+        switch(Character.toUpperCase(letter))
+        {
+            case 'L':
+            return MintrisEngine.Action.LEFT;
+
+            case 'R':
+            return MintrisEngine.Action.RIGHT;
+
+            case 'D':
+            return MintrisEngine.Action.DOWN;
+
+            case 'X':
+            return MintrisEngine.Action.DROP;
+
+            case 'W':
+            return MintrisEngine.Action.ROTATE;
+
+            default:
+            throw new IllegalArgumentException("not a script action: " + letter);
+        }//switch
+    }//parse
+
+}//class ScriptedPolicy
@@ -0,0 +1,441 @@
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Class Simulator - plays a large batch of headless Mintris games with a
+ * {@link Policy} and sums up how they went.
+ *
+ * The games are split into fork/join tasks.  Each task plays its share of
+ * the games one after the other on a single engine and policy, reseeding
+ * them for every game, so a game costs no allocation of its own beyond what
+ * the policy does.  The summaries of the tasks are merged as they join.
+ *
+ * Game g of a batch with seed s is started with
+ * {@link MintrisEngine#newGame}({@link #gameSeed}(s, g)), so every game can
+ * be played again on its own with the same piece generator.  The games are
+ * dealt by a {@link SplitPieceGenerator} unless the simulator is given
+ * other generators; each task has its own, so the streams of parallel
+ * games are independent and never contended.
+ *
+ * Games are played on the standard field unless the simulator is given
+ * another size; tall and wide fields make good stress workloads.
+ */
+public class Simulator
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //fewest games a task plays without splitting
+    private static final long MIN_GAMES_PER_TASK = 64;
+
+    //how many tasks each worker thread should get, to even out the load
+    private static final int TASKS_PER_THREAD = 8;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private ForkJoinPool pool;
+
+    //makes a policy for each task
+    private Supplier<Policy> policies;
+
+    //games are stopped after this many pieces
+    private int maxPieces;
+
+    //the size of the field
+    private int numRows = MintrisEngine.NUM_ROWS;
+    private int numCols = MintrisEngine.NUM_COLS;
+
+    //makes the piece generator of each task
+    private Supplier<PieceGenerator> generators = generatorFor("uniform");
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * Simulator
+     *
+     * @param pool where the games are played
+     * @param policies makes the policy that plays the games; each call must
+     *                 return a new policy
+     * @param maxPieces games still going after this many pieces are stopped
+     */
+    public Simulator(ForkJoinPool pool, Supplier<Policy> policies, int maxPieces)
+    {
+        this.pool = pool;
+        this.policies = policies;
+        this.maxPieces = maxPieces;
+    }
+
+    /**
+     * Simulator
+     *
+     * @param pool where the games are played
+     * @param policies makes the policy that plays the games; each call must
+     *                 return a new policy
+     * @param maxPieces games still going after this many pieces are stopped
+     * @param numRows the number of rows of the field
+     * @param numCols the number of columns of the field
+     */
+    public Simulator(ForkJoinPool pool, Supplier<Policy> policies, int maxPieces,
+                     int numRows, int numCols)
+    {
+        this(pool, policies, maxPieces);
+        this.numRows = numRows;
+        this.numCols = numCols;
+    }
+
+    /**
+     * setGenerators
+     *
+     * @param generators makes the piece generators the games are dealt by;
+     *                   each call must return a new generator
+     */
+    public void setGenerators(Supplier<PieceGenerator> generators)
+    {
+        this.generators = generators;
+    }
+
+    /**
+     * run
+     *
+     * Plays a batch of games.
+     *
+     * @param games the number of games to play
+     * @param seed the seed of the batch
+     * @return a summary of all the games
+     */
+    public Summary run(long games, long seed)
+    {
+        long perTask = Math.max(MIN_GAMES_PER_TASK,
+            games / ((long) pool.getParallelism() * TASKS_PER_THREAD));
+        return pool.invoke(new Batch(seed, 0, games, perTask));
+    }//run
+
+    /**
+     * gameSeed
+     *
+     * @param seed the seed of a batch
+     * @param game the number of a game in the batch
+     * @return the seed of the game's piece generator
+     */
+    public static long gameSeed(long seed, long game)
+    {
+        //spread neighbouring games far apart (the golden ratio increment of
+        //SplittableRandom)
+        return seed + game * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * playGame
+     *
+     * Plays one game to the end, or until maxPieces pieces were placed.
+     *
+     * @param engine the game, already started
+     * @param policy plays the game
+     * @param maxPieces the most pieces to place
+     */
+    public static void playGame(MintrisEngine engine, Policy policy, int maxPieces)
+    {
+        while (!engine.isGameOver() && (engine.getPieces() <= maxPieces))
+        {
+            engine.step(policy.nextAction(engine));
+        }
+    }//playGame
+
+    /**
+     * Plays a range of the games of a batch, splitting it while it is big.
+     */
+    private class Batch extends RecursiveTask<Summary>
+    {
+        private long seed;
+        private long first;
+        private long count;
+        private long perTask;
+
+        Batch(long seed, long first, long count, long perTask)
+        {
+            this.seed = seed;
+            this.first = first;
+            this.count = count;
+            this.perTask = perTask;
+        }
+
+        protected Summary compute()
+        {
+            if (count > perTask)
+            {
+                long half = count / 2;
+                Batch left = new Batch(seed, first, half, perTask);
+                Batch right = new Batch(seed, first + half, count - half, perTask);
+                left.fork();
+                Summary summary = right.compute();
+                summary.merge(left.join());
+                return summary;
+            }
+
+            Summary summary = new Summary(maxPieces, numCols);
+            MintrisEngine engine = new MintrisEngine(numRows, numCols, generators.get(),
+                PieceQueue.DEFAULT_LOOKAHEAD);
+            Policy policy = policies.get();
+            for (long game = first; game < first + count; ++game)
+            {
+                long gameSeed = gameSeed(seed, game);
+                policy.newGame(gameSeed);
+                engine.newGame(gameSeed);
+                playGame(engine, policy, maxPieces);
+                summary.add(engine.getScore(), engine.getPieces());
+            }
+            return summary;
+        }
+    }//class Batch
+
+    /**
+     * Class Summary - the distribution of scores and game lengths over a
+     * number of games.  Both are counted exactly, so the percentiles are
+     * exact too.
+     */
+    public static class Summary
+    {
+        private long games = 0;
+        private long totalScore = 0;
+        private long totalPieces = 0;
+
+        //the number of games with each score and each length (in pieces)
+        private long[] scores;
+        private long[] lengths;
+
+        /**
+         * Summary
+         *
+         * @param maxPieces the longest a game can be
+         */
+        public Summary(int maxPieces)
+        {
+            this(maxPieces, MintrisEngine.NUM_COLS);
+        }
+
+        /**
+         * Summary
+         *
+         * @param maxPieces the longest a game can be
+         * @param numCols the number of columns of the field the games are
+         *                played on
+         */
+        public Summary(int maxPieces, int numCols)
+        {
+            //every row removed takes numCols blocks and a piece has three
+            lengths = new long[maxPieces + 2];
+            scores = new long[(maxPieces + 1) * 3 / numCols + 2];
+        }
+
+        /**
+         * add
+         *
+         * Counts one game.
+         *
+         * @param score the score of the game (the number of rows removed)
+         * @param pieces the number of pieces placed
+         */
+        public void add(int score, int pieces)
+        {
+            ++games;
+            totalScore += score;
+            totalPieces += pieces;
+            ++scores[Math.min(score, scores.length - 1)];
+            ++lengths[Math.min(pieces, lengths.length - 1)];
+        }//add
+
+        /**
+         * merge
+         *
+         * Adds the games of another summary made for the same maxPieces
+         * and field.
+         */
+        public void merge(Summary other)
+        {
+            games += other.games;
+            totalScore += other.totalScore;
+            totalPieces += other.totalPieces;
+            for (int i = 0; i < scores.length; ++i)
+            {
+                scores[i] += other.scores[i];
+            }
+            for (int i = 0; i < lengths.length; ++i)
+            {
+                lengths[i] += other.lengths[i];
+            }
+        }//merge
+
+        public long getGames()
+        {
+            return games;
+        }
+
+        public double getMeanScore()
+        {
+            return (games == 0) ? 0 : (double) totalScore / games;
+        }
+
+        public double getMeanLength()
+        {
+            return (games == 0) ? 0 : (double) totalPieces / games;
+        }
+
+        /**
+         * @return rows removed per piece placed over all of the games
+         */
+        public double getLinesPerPiece()
+        {
+            return (totalPieces == 0) ? 0 : (double) totalScore / totalPieces;
+        }
+
+        /**
+         * @param percent between 0 and 100
+         * @return the lowest score that at least percent of the games reached
+         *         or fell below
+         */
+        public int scorePercentile(double percent)
+        {
+            return percentile(scores, percent);
+        }
+
+        /**
+         * @param percent between 0 and 100
+         * @return the game length at the given percentile
+         */
+        public int lengthPercentile(double percent)
+        {
+            return percentile(lengths, percent);
+        }
+
+        /**
+         * percentile
+         *
+         * @return the smallest value whose count, added to the counts of the
+         *         values below it, covers the given percentage of the games
+         */
+        private int percentile(long[] counts, double percent)
+        {
+            long wanted = (long) Math.ceil(games * percent / 100.0);
+            long seen = 0;
+            for (int value = 0; value < counts.length; ++value)
+            {
+                seen += counts[value];
+                if ((seen >= wanted) && (seen > 0))
+                {
+                    return value;
+                }
+            }
+            return 0;
+        }//percentile
+
+        public String toString()
+        {
+            return String.format("%d games%n"
+                + "score:  mean %.2f  min %d  p50 %d  p90 %d  p99 %d  max %d%n"
+                + "pieces: mean %.2f  min %d  p50 %d  p90 %d  p99 %d  max %d%n"
+                + "lines per piece: %.4f",
+                games,
+                getMeanScore(), scorePercentile(0), scorePercentile(50),
+                scorePercentile(90), scorePercentile(99), scorePercentile(100),
+                getMeanLength(), lengthPercentile(0), lengthPercentile(50),
+                lengthPercentile(90), lengthPercentile(99), lengthPercentile(100),
+                getLinesPerPiece());
+        }//toString
+    }//class Summary
+
+    /**
+     * policyFor
+     *
+     * @param name "random", "greedy" or "scripted:" followed by a script
+     *             (see {@link ScriptedPolicy})
+     * @param pool where the greedy policy searches
+     * @return makes new policies of the named kind
+     */
+    public static Supplier<Policy> policyFor(String name, final ForkJoinPool pool)
+    {
+        if (name.equals("random"))
+        {
+            return RandomPolicy::new;
+        }
+        if (name.equals("greedy"))
+        {
+            return () -> new AutoPlayer(WeightedHeuristic.DEFAULT, 0, pool);
+        }
+        if (name.startsWith("scripted:"))
+        {
+            final String script = name.substring("scripted:".length());
+            new ScriptedPolicy(script); //fail now if the script is bad
+            return () -> new ScriptedPolicy(script);
+        }
+        throw new IllegalArgumentException("unknown policy: " + name);
+    }//policyFor
+
+    /**
+     * generatorFor
+     *
+     * @param name "random" for the generator Mintris has always used (see
+     *             {@link RandomPieceGenerator}), or "uniform" or "bag" (see
+     *             {@link SplitPieceGenerator})
+     * @return makes new generators of the named kind
+     */
+    public static Supplier<PieceGenerator> generatorFor(String name)
+    {
+        if (name.equals("random"))
+        {
+            return RandomPieceGenerator::new;
+        }
+        if (name.equals("uniform"))
+        {
+            return () -> new SplitPieceGenerator(SplitPieceGenerator.Distribution.UNIFORM);
+        }
+        if (name.equals("bag"))
+        {
+            return () -> new SplitPieceGenerator(SplitPieceGenerator.Distribution.BAG);
+        }
+        throw new IllegalArgumentException("unknown piece generator: " + name);
+    }//generatorFor
+
+    /**
+     * This method plays a batch of games and prints the summary.
+     *
+     * @param args policy (default random), number of games (default
+     *             100000), most pieces per game (default 1000), seed
+     *             (default 0), the rows and columns of the field
+     *             (default 20 and 10) and the piece generator (default
+     *             uniform, see {@link #generatorFor})
+     */
+    public static void main(String[] args)
+    {
+        String policy = (args.length > 0) ? args[0] : "random";
+        long games = (args.length > 1) ? Long.parseLong(args[1]) : 100000;
+        int maxPieces = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+        long seed = (args.length > 3) ? Long.parseLong(args[3]) : 0;
+        int numRows = (args.length > 4) ? Integer.parseInt(args[4]) : MintrisEngine.NUM_ROWS;
+        int numCols = (args.length > 5) ? Integer.parseInt(args[5]) : MintrisEngine.NUM_COLS;
+        String generator = (args.length > 6) ? args[6] : "uniform";
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        Simulator simulator = new Simulator(pool, policyFor(policy, pool), maxPieces,
+            numRows, numCols);
+        simulator.setGenerators(generatorFor(generator));
+        long start = System.nanoTime();
+        Summary summary = simulator.run(games, seed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(summary);
+        System.out.printf("%.2f s, %.0f games per second on %d threads%n",
+            seconds, games / seconds, pool.getParallelism());
+        if (Metrics.ENABLED)
+        {
+            System.out.println(Metrics.report());
+        }
+    }//main
+
+}//class Simulator
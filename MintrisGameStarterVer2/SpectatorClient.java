@@ -0,0 +1,374 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Class SpectatorClient - the picture of one game that a watcher of a
+ * {@link SpectatorServer} builds from the messages it receives.
+ *
+ * The client does no networking of its own beyond {@link #main}: whoever
+ * owns the connection sends {@link #request} and hands what it reads to
+ * {@link #consume}, so one thread can look after many clients.  A delta
+ * that does not follow the update before it is ignored, and so is
+ * everything after it, until the next keyframe puts the picture right.
+ */
+public class SpectatorClient
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //how cells are shown, by color
+    private static final char[] CELL_CHARS = { '0', '1', '2', '3', '.' };
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private int game;
+
+    //the picture; no cells until the first keyframe
+    private int numRows = 0;
+    private int numCols = 0;
+    private byte[] cells = new byte[0];
+    private int score = 0;
+    private boolean gameOver = false;
+    private int[] next = new int[0];
+
+    //the update the picture shows, and whether it is right
+    private int sequence = 0;
+    private boolean synced = false;
+
+    //statistics
+    private long keyframes = 0;
+    private long deltas = 0;
+    private long gaps = 0;
+    private long bytes = 0;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * SpectatorClient
+     *
+     * @param game the number of the game to watch
+     */
+    public SpectatorClient(int game)
+    {
+        this.game = game;
+    }
+
+    /**
+     * request
+     *
+     * @return the request that subscribes to the game, ready to be written
+     */
+    public ByteBuffer request()
+    {
+        ByteBuffer request = ByteBuffer.allocate(Integer.BYTES);
+        request.putInt(game);
+        request.flip();
+        return request;
+    }//request
+
+    /**
+     * consume
+     *
+     * Applies every whole message in a buffer to the picture.  A message
+     * that has not arrived completely is left in the buffer.
+     *
+     * @param in the bytes received, ready to be read
+     * @return the number of messages applied
+     */
+    public int consume(ByteBuffer in)
+    {
+        int count = 0;
+        while (in.remaining() >= Integer.BYTES)
+        {
+            int length = in.getInt(in.position());
+            if (in.remaining() < Integer.BYTES + length)
+            {
+                break;
+            }
+            int end = in.position() + Integer.BYTES + length;
+            in.position(in.position() + Integer.BYTES);
+            apply(in);
+            in.position(end);
+            bytes += Integer.BYTES + length;
+            ++count;
+        }
+        return count;
+    }//consume
+
+    /**
+     * apply
+     *
+     * Applies one message, read from just after its length.
+     */
+    private void apply(ByteBuffer in)
+    {
+        byte type = in.get();
+        if (in.getInt() != game)
+        {
+            //left over from a game watched before
+            return;
+        }
+        int messageSequence = in.getInt();
+        if (type == SpectatorServer.DELTA)
+        {
+            ++deltas;
+            if (!synced || (messageSequence != sequence + 1))
+            {
+                if (synced)
+                {
+                    ++gaps;
+                }
+                synced = false;
+                return;
+            }
+        }
+        else
+        {
+            ++keyframes;
+        }
+
+        sequence = messageSequence;
+        score = in.getInt();
+        gameOver = in.get() != 0;
+        int lookahead = in.get();
+        if (next.length != lookahead)
+        {
+            next = new int[lookahead];
+        }
+        for (int i = 0; i < lookahead; ++i)
+        {
+            next[i] = in.getInt();
+        }
+
+        if (type == SpectatorServer.KEYFRAME)
+        {
+            numRows = in.getShort();
+            numCols = in.getShort();
+            if (cells.length != numRows * numCols)
+            {
+                cells = new byte[numRows * numCols];
+            }
+            in.get(cells);
+            synced = true;
+        }
+        else
+        {
+            int count = in.getInt();
+            for (int i = 0; i < count; ++i)
+            {
+                int change = in.getInt();
+                cells[change >>> 3] = (byte) (change & 7);
+            }
+        }
+    }//apply
+
+    /**
+     * @return the number of the game watched
+     */
+    public int getGame()
+    {
+        return game;
+    }
+
+    /**
+     * @return true once a keyframe has arrived, as long as no delta has
+     *         been missed since
+     */
+    public boolean isSynced()
+    {
+        return synced;
+    }
+
+    /**
+     * @return the update of the game the picture shows
+     */
+    public int getSequence()
+    {
+        return sequence;
+    }
+
+    public int getNumRows()
+    {
+        return numRows;
+    }
+
+    public int getNumCols()
+    {
+        return numCols;
+    }
+
+    /**
+     * getCell
+     *
+     * @return the color of a cell of the picture
+     */
+    public int getCell(int row, int col)
+    {
+        return cells[row * numCols + col];
+    }
+
+    public int getScore()
+    {
+        return score;
+    }
+
+    public boolean isGameOver()
+    {
+        return gameOver;
+    }
+
+    /**
+     * getNextPiece
+     *
+     * @param index 0 for the piece that will be spawned next, and so on
+     * @return the piece, packed (see {@link Piece})
+     */
+    public int getNextPiece(int index)
+    {
+        return next[index];
+    }
+
+    public long getKeyframes()
+    {
+        return keyframes;
+    }
+
+    public long getDeltas()
+    {
+        return deltas;
+    }
+
+    /**
+     * @return how many times a delta was missed
+     */
+    public long getGaps()
+    {
+        return gaps;
+    }
+
+    /**
+     * @return the bytes of the messages consumed
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * matches
+     *
+     * @param frame a frame of the game
+     * @return true if the picture is in sync and shows the same as the frame
+     */
+    public boolean matches(GameFrame frame)
+    {
+        if (!synced || (frame.getNumRows() != numRows) || (frame.getNumCols() != numCols)
+            || (frame.getScore() != score) || (frame.isGameOver() != gameOver)
+            || (frame.getLookahead() != next.length))
+        {
+            return false;
+        }
+        for (int i = 0; i < next.length; ++i)
+        {
+            if (frame.getNextPiece(i) != next[i])
+            {
+                return false;
+            }
+        }
+        for (int row = 0; row < numRows; ++row)
+        {
+            for (int col = 0; col < numCols; ++col)
+            {
+                if (frame.getCell(row, col) != getCell(row, col))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }//matches
+
+    /**
+     * toString
+     *
+     * @return the picture as text: the score, then the field row by row
+     *         ('.' for empty cells, the color number for blocks)
+     */
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        text.append("game ").append(game).append("  update ").append(sequence)
+            .append("  score ").append(score).append(gameOver ? "  GAME OVER" : "")
+            .append(synced ? "" : "  (waiting for a keyframe)").append('\n');
+        for (int row = 0; row < numRows; ++row)
+        {
+            for (int col = 0; col < numCols; ++col)
+            {
+                int color = getCell(row, col);
+                text.append(((color >= 0) && (color < CELL_CHARS.length))
+                    ? CELL_CHARS[color] : '?');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }//toString
+
+    /**
+     * This method watches a game on a spectator server and prints the
+     * picture after every message.
+     *
+     * @param args the host (default localhost), the port (default 4646),
+     *             the game (default 0) and the number of messages to watch
+     *             for (default no limit)
+     */
+    public static void main(String[] args) throws IOException
+    {
+        String host = (args.length > 0) ? args[0] : "localhost";
+        int port = (args.length > 1) ? Integer.parseInt(args[1]) : SpectatorServer.DEFAULT_PORT;
+        int game = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+        long limit = (args.length > 3) ? Long.parseLong(args[3]) : Long.MAX_VALUE;
+
+        SpectatorClient client = new SpectatorClient(game);
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port)))
+        {
+            ByteBuffer request = client.request();
+            while (request.hasRemaining())
+            {
+                channel.write(request);
+            }
+
+            ByteBuffer in = ByteBuffer.allocate(SpectatorServer.DEFAULT_BUFFER_SIZE);
+            long seen = 0;
+            while ((seen < limit) && (channel.read(in) >= 0))
+            {
+                in.flip();
+                int applied = client.consume(in);
+                in.compact();
+                if (!in.hasRemaining())
+                {
+                    //a message bigger than the buffer, such as a keyframe
+                    //of a large field
+                    in.flip();
+                    in = ByteBuffer.allocate(in.capacity() * 2).put(in);
+                }
+                if (applied > 0)
+                {
+                    seen += applied;
+                    System.out.println(client);
+                }
+            }
+        }
+        System.out.printf("%d keyframes, %d deltas, %d gaps, %d bytes%n",
+            client.getKeyframes(), client.getDeltas(), client.getGaps(), client.getBytes());
+    }//main
+
+}//class SpectatorClient
@@ -0,0 +1,207 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Class SpectatorLoadTest - broadcasts headless games to many watchers over
+ * the loopback interface, all in one process.
+ *
+ * The watchers are {@link SpectatorClient}s served by a single thread and
+ * selector, like the server.  Some of them stall: they stop reading until
+ * the games are over, so the server has to drop them to keyframes.  Once
+ * the games stop, every watcher must end up with exactly the picture of the
+ * last frame of its game; the test exits with status 1 if one does not.
+ */
+public class SpectatorLoadTest
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //the write buffer of each watcher on the server, and the socket buffers,
+    //kept small so that stalled watchers fill them quickly
+    private static final int SERVER_BUFFER_SIZE = 2048;
+    private static final int SOCKET_BUFFER_SIZE = 1024;
+
+    //how long the watchers get to catch up once the games have stopped
+    private static final long CATCH_UP_MILLIS = 30000;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    private SpectatorLoadTest()
+    {
+    }
+
+    /**
+     * This method runs the load test and prints how it went.
+     *
+     * @param args the number of games (default 200), of watchers (default
+     *             2000), the seconds to run (default 10), the steps per
+     *             second of each game (default 20) and how many watchers in
+     *             a hundred stall (default 5)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int games = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        int count = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        double seconds = (args.length > 2) ? Double.parseDouble(args[2]) : 10;
+        double rate = (args.length > 3) ? Double.parseDouble(args[3]) : 20;
+        int stalling = (args.length > 4) ? Integer.parseInt(args[4]) : 5;
+
+        SpectatorServer server = new SpectatorServer(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), SERVER_BUFFER_SIZE);
+        server.setSendBufferSize(SOCKET_BUFFER_SIZE);
+        SpectatorServer.Broadcaster broadcaster = new SpectatorServer.Broadcaster(server,
+            games, RandomPolicy::new, rate, 42);
+        server.start();
+        broadcaster.start();
+
+        Selector selector = Selector.open();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+            server.getPort());
+        Viewer[] viewers = new Viewer[count];
+        for (int i = 0; i < count; ++i)
+        {
+            viewers[i] = new Viewer(i % games, (i % 100) < stalling);
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            if (viewers[i].stalled)
+            {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+            }
+            channel.connect(address);
+            viewers[i].key = channel.register(selector, SelectionKey.OP_CONNECT, viewers[i]);
+        }
+
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        while (System.nanoTime() < end)
+        {
+            serve(selector, 100);
+        }
+        broadcaster.stop();
+        double played = (System.nanoTime() - start) / 1e9;
+        long sentWhilePlaying = server.getMessages();
+
+        //let the stalled watchers read again, and wait for everyone to show
+        //the last frame of their game
+        for (Viewer viewer : viewers)
+        {
+            if (viewer.stalled && viewer.key.isValid())
+            {
+                viewer.stalled = false;
+                viewer.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+        long deadline = System.currentTimeMillis() + CATCH_UP_MILLIS;
+        int behind = count;
+        while ((behind > 0) && (System.currentTimeMillis() < deadline))
+        {
+            serve(selector, 100);
+            behind = 0;
+            for (Viewer viewer : viewers)
+            {
+                if (!viewer.client.matches(broadcaster.getFrame(viewer.client.getGame())))
+                {
+                    ++behind;
+                }
+            }
+        }
+
+        long keyframes = 0;
+        long deltas = 0;
+        long gaps = 0;
+        long bytes = 0;
+        for (Viewer viewer : viewers)
+        {
+            keyframes += viewer.client.getKeyframes();
+            deltas += viewer.client.getDeltas();
+            gaps += viewer.client.getGaps();
+            bytes += viewer.client.getBytes();
+        }
+        System.out.printf("%d games, %d watchers (%d stalled), %.1f s%n",
+            games, count, count * Math.min(stalling, 100) / 100, played);
+        System.out.printf("server: %s%n", server);
+        System.out.printf("%.0f messages per second while playing%n", sentWhilePlaying / played);
+        System.out.printf("watchers: %d keyframes, %d deltas, %d gaps, %.1f MB%n",
+            keyframes, deltas, gaps, bytes / 1e6);
+        System.out.println((behind == 0) ? "every watcher shows the last frame of its game"
+            : behind + " watchers do not show the last frame of their game");
+
+        for (SelectionKey key : selector.keys())
+        {
+            key.channel().close();
+        }
+        selector.close();
+        server.close();
+        if (behind > 0)
+        {
+            System.exit(1);
+        }
+    }//main
+
+    /**
+     * serve
+     *
+     * Waits for the watchers' sockets once, and connects, subscribes and
+     * reads as they are ready.
+     */
+    private static void serve(Selector selector, long timeout) throws IOException
+    {
+        selector.select(timeout);
+        for (SelectionKey key : selector.selectedKeys())
+        {
+            Viewer viewer = (Viewer) key.attachment();
+            SocketChannel channel = (SocketChannel) key.channel();
+            if (key.isConnectable())
+            {
+                channel.finishConnect();
+                channel.write(viewer.client.request());
+                key.interestOps(viewer.stalled ? 0 : SelectionKey.OP_READ);
+            }
+            else if (key.isReadable())
+            {
+                if (channel.read(viewer.in) < 0)
+                {
+                    key.cancel();
+                    channel.close();
+                    continue;
+                }
+                viewer.in.flip();
+                viewer.client.consume(viewer.in);
+                viewer.in.compact();
+                if (!viewer.in.hasRemaining())
+                {
+                    viewer.in.flip();
+                    viewer.in = ByteBuffer.allocate(viewer.in.capacity() * 2).put(viewer.in);
+                }
+            }
+        }
+        selector.selectedKeys().clear();
+    }//serve
+
+    /**
+     * Class Viewer - a watcher's connection.
+     */
+    private static class Viewer
+    {
+        private final SpectatorClient client;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(SERVER_BUFFER_SIZE);
+
+        //true while the watcher does not read
+        private boolean stalled;
+
+        Viewer(int game, boolean stalled)
+        {
+            this.client = new SpectatorClient(game);
+            this.stalled = stalled;
+        }
+    }//class Viewer
+
+}//class SpectatorLoadTest
@@ -0,0 +1,1011 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+/**
+ * Class SpectatorServer - broadcasts live Mintris games to many watchers
+ * over TCP.
+ *
+ * Games hand the server a {@link GameFrame} after every change through
+ * their {@link Feed}.  The server compares it with the last frame it sent
+ * for the game and sends each watcher only the cells that changed, with the
+ * score and the next pieces.  A watcher that has just subscribed, and every
+ * watcher every so often, gets a keyframe with the whole field instead.
+ *
+ * Everything runs on one thread around a {@link Selector}; there is no
+ * thread per connection.  Each watcher has its own write buffer.  A watcher
+ * that reads too slowly for its buffer to take the next message misses
+ * every update until the buffer has drained, then gets a keyframe and picks
+ * up from there.  Games never wait for the server either: a feed only keeps
+ * the newest frame it was given, so if the server falls behind it sends the
+ * changes of several frames at once.
+ *
+ * If the selector or the listening socket fails, the server thread stops
+ * and keeps the exception: {@link #getFailure} returns it, and
+ * {@link #close} throws it.
+ *
+ * The protocol is big-endian.  A watcher sends the number of the game to
+ * watch as an int, and may send another number later to switch games.  The
+ * server sends messages that start with an int holding the length of the
+ * rest of the message, then:
+ *
+ *     type (byte)        KEYFRAME or DELTA
+ *     game (int)
+ *     sequence (int)     counts the updates of the game; a delta applies to
+ *                        the picture of the update before it
+ *     score (int)
+ *     game over (byte)   1 or 0
+ *     lookahead (byte)   followed by that many next pieces (int, see Piece)
+ *
+ * A keyframe goes on with the number of rows and columns (shorts) and the
+ * color of every cell, row by row (bytes).  A delta goes on with the number
+ * of cells that changed (int) and then one int per cell,
+ * (row * numCols + col) << 3 | color.
+ */
+public class SpectatorServer implements Runnable, Closeable
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    public static final byte KEYFRAME = 1;
+    public static final byte DELTA = 2;
+
+    public static final int DEFAULT_PORT = 4646;
+
+    //bytes waiting to be sent to one watcher before it is dropped to
+    //keyframes
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    //updates of a game between keyframes to all its watchers
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+
+    //the bytes of a message before the fields of its type
+    public static final int HEADER_SIZE = Integer.BYTES + 1 + 3 * Integer.BYTES + 2;
+
+    //pending connections the listening socket may hold
+    private static final int BACKLOG = 4096;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private Selector selector;
+    private ServerSocketChannel listener;
+    private int bufferSize;
+    private volatile int sendBufferSize = 0;
+    private volatile int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+
+    //every game, by number
+    private List<Feed> feeds = new CopyOnWriteArrayList<Feed>();
+
+    //games with a frame the server has not looked at yet
+    private Queue<Feed> ready = new ConcurrentLinkedQueue<Feed>();
+
+    //set once the selector has been woken up for the frames in ready
+    private AtomicBoolean woken = new AtomicBoolean(false);
+
+    //watchers with something to send; only the server thread uses these
+    private List<Watcher> dirty = new ArrayList<Watcher>();
+    private ByteBuffer message = ByteBuffer.allocate(1024);
+
+    private volatile Thread thread = null;
+    private volatile boolean running = false;
+
+    //why the server thread stopped by itself, or null
+    private volatile IOException failure = null;
+
+    //statistics; written by the server thread only
+    private volatile int watchers = 0;
+    private volatile long updates = 0;
+    private volatile long messages = 0;
+    private volatile long keyframes = 0;
+    private volatile long bytesSent = 0;
+    private volatile long overflows = 0;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * SpectatorServer
+     *
+     * Opens the listening socket.  Call {@link #start} to serve.
+     *
+     * @param address where to listen (port 0 picks a free port)
+     * @param bufferSize the bytes each watcher's write buffer holds
+     */
+    public SpectatorServer(InetSocketAddress address, int bufferSize) throws IOException
+    {
+        this.bufferSize = bufferSize;
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.bind(address, BACKLOG);
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+    }//SpectatorServer
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort()
+    {
+        return listener.socket().getLocalPort();
+    }
+
+    /**
+     * setKeyframeInterval
+     *
+     * @param interval updates of a game between keyframes to all its
+     *                 watchers, or 0 to send keyframes only to watchers that
+     *                 need one
+     */
+    public void setKeyframeInterval(int interval)
+    {
+        keyframeInterval = interval;
+    }
+
+    /**
+     * setSendBufferSize
+     *
+     * @param bytes the socket send buffer of connections accepted from now
+     *              on, or 0 for the system's default; small buffers make the
+     *              server notice slow watchers sooner
+     */
+    public void setSendBufferSize(int bytes)
+    {
+        sendBufferSize = bytes;
+    }
+
+    /**
+     * addGame
+     *
+     * Makes a new game that watchers can subscribe to.  It may be called
+     * from any thread.
+     *
+     * @return the feed to hand the game's frames to
+     */
+    public synchronized Feed addGame()
+    {
+        Feed feed = new Feed(feeds.size());
+        feeds.add(feed);
+        return feed;
+    }//addGame
+
+    /**
+     * start
+     *
+     * Starts the server thread.
+     */
+    public synchronized void start()
+    {
+        if (thread != null)
+        {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "Mintris spectator server");
+        thread.setDaemon(true);
+        thread.start();
+    }//start
+
+    /**
+     * close
+     *
+     * Stops the server thread and closes every connection.
+     *
+     * @throws IOException if the server thread had already stopped because
+     *         it failed (see {@link #getFailure}), once everything is closed
+     */
+    public void close() throws IOException
+    {
+        running = false;
+        selector.wakeup();
+        Thread serving = thread;
+        if ((serving != null) && (serving != Thread.currentThread()))
+        {
+            try
+            {
+                serving.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        //a failure may have come from the selector being closed already
+        if (selector.isOpen())
+        {
+            for (SelectionKey key : selector.keys())
+            {
+                key.channel().close();
+            }
+            selector.close();
+        }
+        listener.close();
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }//close
+
+    /**
+     * getFailure
+     *
+     * @return what made the server thread stop by itself, or null if it is
+     *         still serving or was stopped by {@link #close}
+     */
+    public IOException getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * run
+     *
+     * The server thread: waits for connections, requests and frames, and
+     * sends what they call for.
+     */
+    public void run()
+    {
+        try
+        {
+            while (running)
+            {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys())
+                {
+                    if (!key.isValid())
+                    {
+                        continue;
+                    }
+                    if (key.isAcceptable())
+                    {
+                        accept();
+                    }
+                    else
+                    {
+                        Watcher watcher = (Watcher) key.attachment();
+                        if (key.isReadable())
+                        {
+                            read(watcher);
+                        }
+                        if (key.isValid() && key.isWritable())
+                        {
+                            markDirty(watcher);
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                //frames offered before this point are seen now; later ones
+                //wake the selector again
+                woken.set(false);
+                Feed feed;
+                while ((feed = ready.poll()) != null)
+                {
+                    GameFrame frame = feed.latest.getAndSet(null);
+                    if (frame != null)
+                    {
+                        update(feed, frame);
+                    }
+                }
+
+                for (int i = 0; i < dirty.size(); ++i)
+                {
+                    flush(dirty.get(i));
+                }
+                dirty.clear();
+            }
+        }
+        catch (IOException e)
+        {
+            //the selector or the listening socket failed
+            failure = e;
+        }
+        catch (RuntimeException e)
+        {
+            failure = new IOException("the spectator server failed", e);
+        }
+        finally
+        {
+            running = false;
+        }
+    }//run
+
+    /**
+     * accept
+     *
+     * Takes the connections waiting on the listening socket.
+     */
+    private void accept() throws IOException
+    {
+        SocketChannel channel;
+        while ((channel = listener.accept()) != null)
+        {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (sendBufferSize > 0)
+            {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+            }
+            Watcher watcher = new Watcher(channel);
+            watcher.key = channel.register(selector, SelectionKey.OP_READ, watcher);
+            ++watchers;
+        }
+    }//accept
+
+    /**
+     * read
+     *
+     * Reads a watcher's requests: the numbers of the games to watch.
+     */
+    private void read(Watcher watcher)
+    {
+        try
+        {
+            int read;
+            while ((read = watcher.channel.read(watcher.in)) > 0)
+            {
+                if (!watcher.in.hasRemaining())
+                {
+                    int game = watcher.in.getInt(0);
+                    watcher.in.clear();
+                    if ((game < 0) || (game >= feeds.size()))
+                    {
+                        drop(watcher);
+                        return;
+                    }
+                    subscribe(watcher, feeds.get(game));
+                }
+            }
+            if (read < 0)
+            {
+                drop(watcher);
+            }
+        }
+        catch (IOException e)
+        {
+            drop(watcher);
+        }
+    }//read
+
+    /**
+     * subscribe
+     *
+     * Moves a watcher to a game and sends it a keyframe of the game.
+     */
+    private void subscribe(Watcher watcher, Feed feed)
+    {
+        if (watcher.feed != null)
+        {
+            watcher.feed.watchers.remove(watcher);
+        }
+        watcher.feed = feed;
+        feed.watchers.add(watcher);
+
+        //whatever is waiting was meant for the old game, so the keyframe
+        //follows once it is gone
+        watcher.behind = true;
+        markDirty(watcher);
+    }//subscribe
+
+    /**
+     * update
+     *
+     * Sends the watchers of a game what changed since the last frame sent.
+     */
+    private void update(Feed feed, GameFrame frame)
+    {
+        GameFrame sent = feed.sent;
+        feed.sent = frame;
+        ++feed.sequence;
+        if (feed.watchers.isEmpty())
+        {
+            //a watcher that comes along gets a keyframe anyway
+            return;
+        }
+
+        boolean keyframe = (sent == null)
+            || (sent.getNumRows() != frame.getNumRows())
+            || (sent.getNumCols() != frame.getNumCols());
+        int interval = keyframeInterval;
+        if ((interval > 0) && (feed.sinceKeyframe + 1 >= interval))
+        {
+            keyframe = true;
+        }
+        if (!keyframe && encodeDelta(feed, sent, frame))
+        {
+            if ((message.getInt(HEADER_SIZE + frame.getLookahead() * Integer.BYTES) == 0)
+                && !headerChanged(sent, frame))
+            {
+                //the watchers can't tell the frames apart
+                --feed.sequence;
+                return;
+            }
+            ++feed.sinceKeyframe;
+        }
+        else
+        {
+            encodeKeyframe(feed);
+            feed.sinceKeyframe = 0;
+        }
+        ++updates;
+
+        boolean isKeyframe = message.get(Integer.BYTES) == KEYFRAME;
+        for (int i = 0; i < feed.watchers.size(); ++i)
+        {
+            Watcher watcher = feed.watchers.get(i);
+            if (isKeyframe && watcher.behind && (watcher.out.position() == 0))
+            {
+                //this keyframe is the one it was waiting for
+                watcher.behind = false;
+            }
+            send(watcher);
+        }
+    }//update
+
+    /**
+     * headerChanged
+     *
+     * @return true if two frames of a game differ in the score, the end of
+     *         the game or the next pieces
+     */
+    private static boolean headerChanged(GameFrame before, GameFrame after)
+    {
+        if ((before.getScore() != after.getScore())
+            || (before.isGameOver() != after.isGameOver())
+            || (before.getLookahead() != after.getLookahead()))
+        {
+            return true;
+        }
+        for (int i = 0; i < after.getLookahead(); ++i)
+        {
+            if (before.getNextPiece(i) != after.getNextPiece(i))
+            {
+                return true;
+            }
+        }
+        return false;
+    }//headerChanged
+
+    /**
+     * encodeKeyframe
+     *
+     * Puts a keyframe of a game's last frame sent into the message buffer.
+     */
+    private void encodeKeyframe(Feed feed)
+    {
+        GameFrame frame = feed.sent;
+        int numRows = frame.getNumRows();
+        int numCols = frame.getNumCols();
+        beginMessage(KEYFRAME, feed, 2 * Short.BYTES + numRows * numCols);
+        message.putShort((short) numRows);
+        message.putShort((short) numCols);
+        for (int row = 0; row < numRows; ++row)
+        {
+            for (int col = 0; col < numCols; ++col)
+            {
+                message.put((byte) frame.getCell(row, col));
+            }
+        }
+        endMessage();
+        ++keyframes;
+    }//encodeKeyframe
+
+    /**
+     * encodeDelta
+     *
+     * Puts the cells that changed between two frames of a game into the
+     * message buffer.
+     *
+     * @return false if so many changed that a keyframe would be smaller
+     */
+    private boolean encodeDelta(Feed feed, GameFrame before, GameFrame after)
+    {
+        int numRows = after.getNumRows();
+        int numCols = after.getNumCols();
+        int cells = numRows * numCols;
+        beginMessage(DELTA, feed, Integer.BYTES + cells);
+        int countAt = message.position();
+        message.putInt(0);
+        int count = 0;
+        for (int row = 0; row < numRows; ++row)
+        {
+            for (int col = 0; col < numCols; ++col)
+            {
+                int color = after.getCell(row, col);
+                if (before.getCell(row, col) != color)
+                {
+                    if (++count * Integer.BYTES >= cells)
+                    {
+                        return false;
+                    }
+                    message.putInt(((row * numCols + col) << 3) | color);
+                }
+            }
+        }
+        message.putInt(countAt, count);
+        endMessage();
+        return true;
+    }//encodeDelta
+
+    /**
+     * beginMessage
+     *
+     * Starts a message in the message buffer, making room for it first.
+     *
+     * @param body the most bytes the message has after its header and next
+     *             pieces
+     */
+    private void beginMessage(byte type, Feed feed, int body)
+    {
+        GameFrame frame = feed.sent;
+        int size = HEADER_SIZE + frame.getLookahead() * Integer.BYTES + body;
+        if (message.capacity() < size)
+        {
+            message = ByteBuffer.allocate(Integer.highestOneBit(size) * 2);
+        }
+        message.clear();
+        message.putInt(0);
+        message.put(type);
+        message.putInt(feed.id);
+        message.putInt(feed.sequence);
+        message.putInt(frame.getScore());
+        message.put((byte) (frame.isGameOver() ? 1 : 0));
+        message.put((byte) frame.getLookahead());
+        for (int i = 0; i < frame.getLookahead(); ++i)
+        {
+            message.putInt(frame.getNextPiece(i));
+        }
+    }//beginMessage
+
+    /**
+     * endMessage
+     *
+     * Fills in the length of the message in the message buffer.
+     */
+    private void endMessage()
+    {
+        message.putInt(0, message.position() - Integer.BYTES);
+        message.flip();
+    }
+
+    /**
+     * send
+     *
+     * Adds the message in the message buffer to a watcher's write buffer,
+     * unless the watcher is behind.  A watcher whose buffer is too full for
+     * the message is behind from now on.
+     */
+    private void send(Watcher watcher)
+    {
+        if (watcher.behind)
+        {
+            return;
+        }
+        int length = message.limit();
+        if (watcher.out.remaining() < length)
+        {
+            watcher.behind = true;
+            ++overflows;
+            return;
+        }
+        watcher.out.put(message.array(), message.arrayOffset(), length);
+        ++messages;
+        markDirty(watcher);
+    }//send
+
+    /**
+     * markDirty
+     *
+     * Remembers to write to a watcher at the end of this turn of the loop.
+     */
+    private void markDirty(Watcher watcher)
+    {
+        if (!watcher.dirty)
+        {
+            watcher.dirty = true;
+            dirty.add(watcher);
+        }
+    }
+
+    /**
+     * flush
+     *
+     * Writes as much of a watcher's buffer as its socket takes.  A watcher
+     * that was behind and has caught up gets a keyframe.  The watcher is
+     * only asked about writing while something is left in its buffer.
+     */
+    private void flush(Watcher watcher)
+    {
+        watcher.dirty = false;
+        if (!watcher.key.isValid())
+        {
+            return;
+        }
+        try
+        {
+            write(watcher);
+            if (watcher.behind && (watcher.out.position() == 0)
+                && (watcher.feed != null) && (watcher.feed.sent != null))
+            {
+                watcher.behind = false;
+                encodeKeyframe(watcher.feed);
+                send(watcher);
+                write(watcher);
+            }
+            watcher.key.interestOps((watcher.out.position() > 0)
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ);
+        }
+        catch (IOException e)
+        {
+            drop(watcher);
+        }
+    }//flush
+
+    /**
+     * write
+     *
+     * Writes what a watcher's socket takes without blocking.
+     */
+    private void write(Watcher watcher) throws IOException
+    {
+        ByteBuffer out = watcher.out;
+        out.flip();
+        bytesSent += watcher.channel.write(out);
+        out.compact();
+    }
+
+    /**
+     * drop
+     *
+     * Closes a watcher's connection.
+     */
+    private void drop(Watcher watcher)
+    {
+        if (!watcher.key.isValid())
+        {
+            return;
+        }
+        if (watcher.feed != null)
+        {
+            watcher.feed.watchers.remove(watcher);
+        }
+        watcher.key.cancel();
+        try
+        {
+            watcher.channel.close();
+        }
+        catch (IOException e)
+        {
+            //it is gone either way
+        }
+        --watchers;
+    }//drop
+
+    /**
+     * @return the watchers connected
+     */
+    public int getWatchers()
+    {
+        return watchers;
+    }
+
+    /**
+     * @return the updates of all games that were sent to watchers
+     */
+    public long getUpdates()
+    {
+        return updates;
+    }
+
+    /**
+     * @return the messages put into watchers' buffers
+     */
+    public long getMessages()
+    {
+        return messages;
+    }
+
+    public long getKeyframes()
+    {
+        return keyframes;
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent;
+    }
+
+    /**
+     * @return how many times a watcher fell behind and missed updates
+     */
+    public long getOverflows()
+    {
+        return overflows;
+    }
+
+    public String toString()
+    {
+        return String.format("%d watchers, %d updates, %d messages (%d keyframes), "
+            + "%.1f MB sent, %d overflows", getWatchers(), getUpdates(), getMessages(),
+            getKeyframes(), getBytesSent() / 1e6, getOverflows());
+    }
+
+    /**
+     * Class Feed - where a game hands its frames to the server.
+     */
+    public final class Feed
+    {
+        private final int id;
+
+        //the newest frame not yet looked at, or null
+        private final AtomicReference<GameFrame> latest = new AtomicReference<GameFrame>();
+
+        //only the server thread uses these
+        private GameFrame sent = null;
+        private int sequence = 0;
+        private int sinceKeyframe = 0;
+        private List<Watcher> watchers = new ArrayList<Watcher>();
+
+        private Feed(int id)
+        {
+            this.id = id;
+        }
+
+        /**
+         * @return the number watchers subscribe to the game with
+         */
+        public int getId()
+        {
+            return id;
+        }
+
+        /**
+         * offer
+         *
+         * Hands the server a new frame of the game.  It never blocks; a
+         * frame the server has not got to yet is replaced.
+         *
+         * @param frame the game as it is now
+         */
+        public void offer(GameFrame frame)
+        {
+            if (latest.getAndSet(frame) == null)
+            {
+                ready.add(this);
+                if (!woken.getAndSet(true))
+                {
+                    selector.wakeup();
+                }
+            }
+        }//offer
+
+    }//class Feed
+
+    /**
+     * Class Watcher - one connection.
+     */
+    private class Watcher
+    {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(Integer.BYTES);
+        private final ByteBuffer out = ByteBuffer.allocate(bufferSize);
+
+        //the game watched, or null
+        private Feed feed = null;
+
+        //true while updates are being skipped until a keyframe can be sent
+        private boolean behind = false;
+
+        //true while on the dirty list
+        private boolean dirty = false;
+
+        Watcher(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+    }//class Watcher
+
+    /**
+     * Class Broadcaster - plays a number of headless games at a steady pace
+     * on one thread, and hands a frame of each game to a spectator server
+     * after every step.  A game that is over starts again with a new seed.
+     */
+    public static class Broadcaster implements Runnable
+    {
+        private final MintrisEngine[] engines;
+        private final Policy[] policies;
+        private final Feed[] feeds;
+        private final GameFrame[] frames;
+        private long published = 0;
+        private final long period;
+        private final long seed;
+        private long started = 0;
+
+        private volatile Thread thread = null;
+        private volatile boolean running = false;
+
+        /**
+         * Broadcaster
+         *
+         * @param server where to broadcast the games
+         * @param count the number of games
+         * @param policy makes the player of each game
+         * @param rate the steps per second of each game
+         * @param seed the seed of the first games (see
+         *             {@link Simulator#gameSeed})
+         */
+        public Broadcaster(SpectatorServer server, int count, Supplier<Policy> policy,
+                           double rate, long seed)
+        {
+            engines = new MintrisEngine[count];
+            policies = new Policy[count];
+            feeds = new Feed[count];
+            frames = new GameFrame[count];
+            period = (long) (1e9 / rate);
+            this.seed = seed;
+            for (int i = 0; i < count; ++i)
+            {
+                engines[i] = new MintrisEngine();
+                policies[i] = policy.get();
+                feeds[i] = server.addGame();
+                newGame(i);
+            }
+        }//Broadcaster
+
+        /**
+         * @return the number of games
+         */
+        public int getGames()
+        {
+            return engines.length;
+        }
+
+        /**
+         * getFrame
+         *
+         * @return the last frame handed to the server for a game
+         */
+        public GameFrame getFrame(int game)
+        {
+            synchronized (frames)
+            {
+                return frames[game];
+            }
+        }
+
+        /**
+         * @return the feed of a game
+         */
+        public Feed getFeed(int game)
+        {
+            return feeds[game];
+        }
+
+        public synchronized void start()
+        {
+            running = true;
+            thread = new Thread(this, "Mintris broadcaster");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * stop
+         *
+         * Stops the games and waits until their last frames were handed
+         * over.
+         */
+        public void stop() throws InterruptedException
+        {
+            running = false;
+            Thread playing = thread;
+            if (playing != null)
+            {
+                LockSupport.unpark(playing);
+                playing.join();
+            }
+        }//stop
+
+        public void run()
+        {
+            long next = System.nanoTime();
+            while (running)
+            {
+                for (int i = 0; i < engines.length; ++i)
+                {
+                    if (engines[i].isGameOver())
+                    {
+                        newGame(i);
+                    }
+                    else
+                    {
+                        engines[i].step(policies[i].nextAction(engines[i]));
+                        publish(i);
+                    }
+                }
+
+                //keep to the rate, but don't rush to catch up after a stall
+                next += period;
+                long wait = next - System.nanoTime();
+                if (wait > 0)
+                {
+                    LockSupport.parkNanos(wait);
+                }
+                else if (wait < -period)
+                {
+                    next = System.nanoTime();
+                }
+            }
+        }//run
+
+        /**
+         * newGame
+         *
+         * Starts a game again with the next seed.
+         */
+        private void newGame(int i)
+        {
+            long gameSeed = Simulator.gameSeed(seed, started++);
+            policies[i].newGame(gameSeed);
+            engines[i].newGame(gameSeed);
+            publish(i);
+        }//newGame
+
+        private void publish(int i)
+        {
+            GameFrame frame = new GameFrame(engines[i], published++);
+            synchronized (frames)
+            {
+                frames[i] = frame;
+            }
+            feeds[i].offer(frame);
+        }
+
+    }//class Broadcaster
+
+    /**
+     * This method serves a number of headless games to spectators until it
+     * is killed, printing statistics now and then.  If the server fails, it
+     * throws what went wrong.  Watch a game with {@link SpectatorClient}.
+     *
+     * @param args the port (default 4646), the number of games (default
+     *             100), the policy (default random, see
+     *             {@link Simulator#policyFor}) and the steps per second of
+     *             each game (default 10)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int games = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        String policy = (args.length > 2) ? args[2] : "random";
+        double rate = (args.length > 3) ? Double.parseDouble(args[3]) : 10;
+
+        SpectatorServer server = new SpectatorServer(new InetSocketAddress(port),
+            DEFAULT_BUFFER_SIZE);
+        Broadcaster broadcaster = new Broadcaster(server, games,
+            Simulator.policyFor(policy, ForkJoinPool.commonPool()), rate, System.nanoTime());
+        server.start();
+        broadcaster.start();
+        System.out.println("serving " + games + " games on port " + server.getPort());
+        while (server.getFailure() == null)
+        {
+            Thread.sleep(5000);
+            System.out.println(server);
+        }
+        server.close();
+    }//main
+
+}//class SpectatorServer
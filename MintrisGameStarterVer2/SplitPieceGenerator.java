@@ -0,0 +1,207 @@
+import java.util.*;
+
+/**
+ * Class SplitPieceGenerator - deals pieces from a SplittableRandom, which
+ * is faster than java.util.Random and, being unshared, never contended.
+ *
+ * Two distributions are offered.  UNIFORM picks the color and the empty
+ * cell of each piece at random.  BAG deals the twelve kinds of piece (three
+ * colors times four empty cells) in a shuffled bag, so every kind comes up
+ * once in every twelve pieces.  The column is always uniform.
+ *
+ * Every piece and every shuffle step takes exactly one nextLong, so the
+ * position in the stream is known and a copy is made by starting a new
+ * SplittableRandom there.  The seed is mixed before use: seeds one golden
+ * gamma apart, as {@link Simulator#gameSeed} makes them, would otherwise
+ * give the same stream shifted by one.
+ */
+public class SplitPieceGenerator implements PieceGenerator
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    public enum Distribution
+    {
+        UNIFORM,
+        BAG
+    }
+
+    //the increment SplittableRandom(seed) adds to its state per draw
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    //the kinds of piece in a bag
+    private static final int KINDS = MintrisEngine.NUM_COLORS * 4;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private Distribution distribution;
+    private SplittableRandom randGen;
+
+    //the state of randGen, which SplittableRandom doesn't reveal
+    private long state;
+
+    //the kinds left in the bag are bag[dealt .. KINDS - 1]
+    private byte[] bag = new byte[KINDS];
+    private int dealt = KINDS;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * SplitPieceGenerator
+     *
+     * @param distribution how the pieces are picked
+     */
+    public SplitPieceGenerator(Distribution distribution)
+    {
+        this.distribution = distribution;
+        setSeed(System.nanoTime());
+    }
+
+    public Distribution getDistribution()
+    {
+        return distribution;
+    }
+
+    public void setSeed(long seed)
+    {
+        state = mix(seed);
+        randGen = new SplittableRandom(state);
+        dealt = KINDS;
+    }//setSeed
+
+    public int next(int numCols)
+    {
+        long bits = draw();
+
+        //the column from the high half; the rest from the low bits
+        int col = (int) (((bits >>> 32) * (numCols - 1)) >>> 32);
+        if (distribution == Distribution.UNIFORM)
+        {
+            int color = (int) (((bits & 0xFFFF) * MintrisEngine.NUM_COLORS) >>> 16) + 1;
+            int which = (int) (bits >>> 16) & 3;
+            return Piece.pack(col, color, which);
+        }
+
+        if (dealt == KINDS)
+        {
+            shuffle();
+        }
+        int kind = bag[dealt++];
+        return Piece.pack(col, kind / 4 + 1, kind % 4);
+    }//next
+
+    public PieceGenerator copy()
+    {
+        SplitPieceGenerator copy = new SplitPieceGenerator(distribution, state);
+        System.arraycopy(bag, 0, copy.bag, 0, KINDS);
+        copy.dealt = dealt;
+        return copy;
+    }//copy
+
+    /**
+     * SplitPieceGenerator
+     *
+     * Makes a generator at a given point of a stream (see {@link #copy}).
+     */
+    private SplitPieceGenerator(Distribution distribution, long state)
+    {
+        this.distribution = distribution;
+        this.state = state;
+        this.randGen = new SplittableRandom(state);
+    }
+
+    /**
+     * SplitPieceGenerator
+     *
+     * Makes a generator at a given point of a stream with a given bag, as
+     * read back from a saved game (see {@link SaveState}).
+     *
+     * @param bag the kinds of piece in the bag, of which the first dealt
+     *            have been dealt
+     */
+    SplitPieceGenerator(Distribution distribution, long state, byte[] bag, int dealt)
+    {
+        this(distribution, state);
+        if ((bag.length != KINDS) || (dealt < 0) || (dealt > KINDS))
+        {
+            throw new IllegalArgumentException("not a bag of " + KINDS + " kinds of piece");
+        }
+        System.arraycopy(bag, 0, this.bag, 0, KINDS);
+        this.dealt = dealt;
+    }
+
+    /**
+     * @return the point of the stream the generator is at
+     */
+    long getState()
+    {
+        return state;
+    }
+
+    /**
+     * @return the kinds of piece in the bag, of which the first
+     *         {@link #getDealt} have been dealt; not a copy
+     */
+    byte[] getBag()
+    {
+        return bag;
+    }
+
+    int getDealt()
+    {
+        return dealt;
+    }
+
+    /**
+     * shuffle
+     *
+     * Refills the bag in a random order (Fisher-Yates).
+     */
+    private void shuffle()
+    {
+        for (int i = 0; i < KINDS; ++i)
+        {
+            bag[i] = (byte) i;
+        }
+        for (int i = KINDS - 1; i > 0; --i)
+        {
+            int j = (int) (((draw() >>> 32) * (i + 1)) >>> 32);
+            byte kind = bag[i];
+            bag[i] = bag[j];
+            bag[j] = kind;
+        }
+        dealt = 0;
+    }//shuffle
+
+    /**
+     * draw
+     *
+     * @return the next 64 random bits
+     */
+    private long draw()
+    {
+        state += GOLDEN_GAMMA;
+        return randGen.nextLong();
+    }
+
+    /**
+     * mix
+     *
+     * @return the seed with its bits thoroughly mixed (the finalizer of
+     *         MurmurHash3)
+     */
+    private static long mix(long seed)
+    {
+        seed = (seed ^ (seed >>> 33)) * 0xFF51AFD7ED558CCDL;
+        seed = (seed ^ (seed >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return seed ^ (seed >>> 33);
+    }//mix
+
+}//class SplitPieceGenerator
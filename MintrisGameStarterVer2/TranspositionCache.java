@@ -0,0 +1,224 @@
+import java.util.concurrent.atomic.*;
+
+/**
+ * Class TranspositionCache - a bounded cache of search results keyed by
+ * 64-bit position hashes (see {@link Zobrist}), shared by many threads.
+ *
+ * The cache is split into sets of WAYS entries; a key can only live in the
+ * set its low bits pick.  When a set is full, the entry to replace is
+ * chosen with the clock algorithm: each entry has a "referenced" bit that a
+ * hit sets, and a hand sweeps the set clearing bits until it finds an entry
+ * whose bit was already clear.
+ *
+ * There are no locks.  An entry is stored as two longs, the value and the
+ * key XORed with the value, and a lookup only hits if they still agree, so
+ * an entry torn by two threads writing at once reads as a miss rather than
+ * a wrong value.  Losing an entry that way now and then is harmless for a
+ * cache.
+ */
+public class TranspositionCache
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //entries per set
+    private static final int WAYS = 4;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private int setMask;
+
+    //entry i holds checks[i] = key ^ values[i]
+    private AtomicLongArray checks;
+    private AtomicLongArray values;
+
+    //the referenced bit of each entry and the clock hand of each set; races
+    //on these only make eviction less exact
+    private byte[] referenced;
+    private byte[] hands;
+
+    //statistics
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+    private LongAdder evictions = new LongAdder();
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * TranspositionCache
+     *
+     * @param capacity the most entries to hold; rounded up to a power of two
+     *                 of at least WAYS
+     */
+    public TranspositionCache(int capacity)
+    {
+        int sets = Integer.highestOneBit(Math.max(capacity / WAYS - 1, 1)) << 1;
+        setMask = sets - 1;
+        checks = new AtomicLongArray(sets * WAYS);
+        values = new AtomicLongArray(sets * WAYS);
+        referenced = new byte[sets * WAYS];
+        hands = new byte[sets];
+    }//TranspositionCache
+
+    /**
+     * @return the most entries the cache holds
+     */
+    public int getCapacity()
+    {
+        return checks.length();
+    }
+
+    /**
+     * get
+     *
+     * @param key the hash of a position
+     * @return the value stored for the key, or NaN if there is none
+     */
+    public double get(long key)
+    {
+        key = nonZero(key);
+        int first = set(key) * WAYS;
+        for (int i = first; i < first + WAYS; ++i)
+        {
+            long value = values.get(i);
+            if ((checks.get(i) ^ value) == key)
+            {
+                referenced[i] = 1;
+                hits.increment();
+                return Double.longBitsToDouble(value);
+            }
+        }
+        misses.increment();
+        return Double.NaN;
+    }//get
+
+    /**
+     * put
+     *
+     * Stores a value for a key, replacing the value already stored for it
+     * or, if its set is full, the entry the clock hand picks.
+     *
+     * @param key the hash of a position
+     * @param value the value to store (not NaN)
+     */
+    public void put(long key, double value)
+    {
+        key = nonZero(key);
+        int set = set(key);
+        int first = set * WAYS;
+
+        //the key's own entry, or else an empty one
+        int slot = -1;
+        for (int i = first; i < first + WAYS; ++i)
+        {
+            long check = checks.get(i);
+            long stored = values.get(i);
+            if ((check ^ stored) == key)
+            {
+                slot = i;
+                break;
+            }
+            if ((slot < 0) && (check == 0) && (stored == 0))
+            {
+                slot = i;
+            }
+        }
+
+        if (slot < 0)
+        {
+            //sweep the set for an entry not used since the hand last passed
+            int hand = hands[set];
+            while (referenced[first + hand] != 0)
+            {
+                referenced[first + hand] = 0;
+                hand = (hand + 1) % WAYS;
+            }
+            slot = first + hand;
+            hands[set] = (byte) ((hand + 1) % WAYS);
+            evictions.increment();
+        }
+
+        long bits = Double.doubleToRawLongBits(value);
+        values.set(slot, bits);
+        checks.set(slot, key ^ bits);
+        referenced[slot] = 0;
+    }//put
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that found a value
+     */
+    public double getHitRate()
+    {
+        long found = hits.sum();
+        long total = found + misses.sum();
+        return (total == 0) ? 0 : (double) found / total;
+    }
+
+    /**
+     * clear
+     *
+     * Empties the cache and resets the statistics.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < checks.length(); ++i)
+        {
+            checks.set(i, 0);
+            values.set(i, 0);
+            referenced[i] = 0;
+        }
+        java.util.Arrays.fill(hands, (byte) 0);
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }//clear
+
+    /**
+     * set
+     *
+     * @return the set a key belongs to
+     */
+    private int set(long key)
+    {
+        return (int) key & setMask;
+    }
+
+    /**
+     * nonZero
+     *
+     * @return the key, moved off zero (an empty entry looks like key zero)
+     */
+    private static long nonZero(long key)
+    {
+        return (key == 0) ? 1 : key;
+    }
+
+    public String toString()
+    {
+        return String.format("%d hits, %d misses (%.1f%%), %d evictions, %d entries",
+            getHits(), getMisses(), 100 * getHitRate(), getEvictions(), getCapacity());
+    }
+
+}//class TranspositionCache
@@ -0,0 +1,644 @@
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Class WeightTuner - finds the weights of a {@link WeightedHeuristic} by
+ * letting {@link AutoPlayer}s play, with the cross-entropy method.
+ *
+ * Every generation draws a population of weight vectors from a normal
+ * distribution, one independent normal per weight.  Each candidate plays
+ * the same batch of seeded games, so candidates are compared on the same
+ * pieces, and is scored by its mean number of rows removed.  The mean and
+ * standard deviation of the best candidates (the elite) become the
+ * distribution of the next generation, with some extra noise in the early
+ * generations so that it does not collapse too soon.
+ *
+ * Every candidate is a fork/join task, and the players search in the same
+ * work-stealing pool, so a generation keeps all cores busy even while the
+ * last few candidates of a round finish.  The games are played in rounds of
+ * a quarter each.  After each round but the last, a candidate is stopped
+ * early if its rows removed so far fall clearly below those of the
+ * elite-th best of the candidates still playing.  Stopped candidates can't
+ * be elite.  Whether a candidate is stopped depends only on the scores,
+ * never on which candidates happened to finish first, so a run is the same
+ * for any number of threads and when it is resumed from a checkpoint.
+ *
+ * After every generation the tuner's state and the best weights of every
+ * generation so far are written to a checkpoint file, which a new tuner can
+ * resume from (see {@link #load}).  The file is replaced atomically, so a
+ * run killed halfway leaves the last complete generation behind.
+ */
+public class WeightTuner
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //the share of a generation that is elite
+    public static final double ELITE_FRACTION = 0.2;
+
+    //the rounds each candidate's games are played in; candidates are only
+    //stopped between rounds
+    public static final int ROUNDS = 4;
+
+    //how far below the elite a candidate may fall before it is stopped, as
+    //a share of the elite's rows
+    public static final double DEFAULT_MARGIN = 0.25;
+
+    //the distribution of the first generation
+    private static final double INITIAL_MEAN = 0;
+    private static final double INITIAL_STDDEV = 1;
+
+    //how much of the old distribution is kept in each update
+    private static final double SMOOTHING = 0.1;
+
+    //variance added to every weight, shrinking to nothing over this many
+    //generations
+    private static final double NOISE = 0.04;
+    private static final int NOISE_GENERATIONS = 20;
+
+    //the first line of a checkpoint file
+    private static final String MAGIC = "# WeightTuner checkpoint";
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private ForkJoinPool pool;
+    private int population;
+    private int games;
+    private int maxPieces;
+    private long seed;
+    private int lookahead = 0;
+    private double margin = DEFAULT_MARGIN;
+
+    //the distribution the next generation is drawn from
+    private double[] mean = new double[WeightedHeuristic.NUM_FEATURES];
+    private double[] stddev = new double[WeightedHeuristic.NUM_FEATURES];
+
+    //the number of generations done, and the candidates stopped early in
+    //the last one
+    private int generation = 0;
+    private int stopped = 0;
+
+    //"generation score weights..." for the best of each generation
+    private List<String> history = new ArrayList<String>();
+
+    //where the state goes after each generation, or null
+    private Path checkpoint = null;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * WeightTuner
+     *
+     * @param pool where the games are played and the players search
+     * @param population the candidates per generation
+     * @param games the games each candidate plays
+     * @param maxPieces games are stopped after this many pieces
+     * @param seed picks the candidates and the games of every generation
+     */
+    public WeightTuner(ForkJoinPool pool, int population, int games, int maxPieces, long seed)
+    {
+        if ((population < 1) || (games < 1))
+        {
+            throw new IllegalArgumentException("need at least one candidate and one game");
+        }
+        this.pool = pool;
+        this.population = population;
+        this.games = games;
+        this.maxPieces = maxPieces;
+        this.seed = seed;
+        Arrays.fill(mean, INITIAL_MEAN);
+        Arrays.fill(stddev, INITIAL_STDDEV);
+    }//WeightTuner
+
+    /**
+     * setLookahead
+     *
+     * @param lookahead how many pieces beyond the current one the players
+     *                  search (see {@link AutoPlayer})
+     */
+    public void setLookahead(int lookahead)
+    {
+        this.lookahead = lookahead;
+    }
+
+    /**
+     * setMargin
+     *
+     * @param margin how far below the elite, as a share of the elite's rows,
+     *               a candidate may fall before it is stopped; negative to
+     *               let every candidate play all its games
+     */
+    public void setMargin(double margin)
+    {
+        this.margin = margin;
+    }
+
+    /**
+     * setCheckpoint
+     *
+     * @param path where to write the tuner's state after every generation,
+     *             or null
+     */
+    public void setCheckpoint(Path path)
+    {
+        checkpoint = path;
+    }
+
+    /**
+     * @return the number of generations done
+     */
+    public int getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * @return the candidates of the last generation that were stopped early
+     */
+    public int getStopped()
+    {
+        return stopped;
+    }
+
+    /**
+     * @return a copy of the mean of the distribution, indexed by the
+     *         feature constants of WeightedHeuristic
+     */
+    public double[] getMean()
+    {
+        return mean.clone();
+    }
+
+    /**
+     * @return a copy of the standard deviation of the distribution
+     */
+    public double[] getStddev()
+    {
+        return stddev.clone();
+    }
+
+    /**
+     * step
+     *
+     * Runs one generation: draws the candidates, lets them play, moves the
+     * distribution towards the elite and writes the checkpoint.
+     *
+     * @return the best candidate of the generation
+     */
+    public Candidate step() throws IOException
+    {
+        //the candidates and the games depend on nothing but the seed and
+        //the generation
+        SplittableRandom random = new SplittableRandom(Simulator.gameSeed(seed, generation));
+        long[] seeds = new long[games];
+        for (int g = 0; g < games; ++g)
+        {
+            seeds[g] = random.nextLong();
+        }
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (int i = 0; i < population; ++i)
+        {
+            double[] weights = new double[mean.length];
+            for (int f = 0; f < weights.length; ++f)
+            {
+                weights[f] = mean[f] + stddev[f] * random.nextGaussian();
+            }
+            candidates.add(new Candidate(weights, games));
+        }
+
+        int eliteSize = Math.max(1, (int) Math.round(population * ELITE_FRACTION));
+        List<Play> plays = new ArrayList<Play>();
+        for (Candidate candidate : candidates)
+        {
+            plays.add(new Play(candidate, seeds));
+        }
+        for (int round = 1; (round <= ROUNDS) && !plays.isEmpty(); ++round)
+        {
+            int end = games * round / ROUNDS;
+            for (Play play : plays)
+            {
+                play.playUntil(end);
+            }
+            pool.invoke(new PlayAll(plays));
+            if ((end > 0) && (end < games))
+            {
+                plays = cut(plays, eliteSize, end);
+            }
+        }
+
+        //the elite: the best of the candidates that played every game
+        List<Candidate> finished = new ArrayList<Candidate>();
+        for (Candidate candidate : candidates)
+        {
+            if (!candidate.stopped)
+            {
+                finished.add(candidate);
+            }
+        }
+        stopped = candidates.size() - finished.size();
+        finished.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        List<Candidate> elite = finished.subList(0, Math.min(eliteSize, finished.size()));
+        update(elite);
+
+        Candidate best = elite.get(0);
+        history.add(generation + " " + format(best.getScore(), best.weights));
+        ++generation;
+        if (checkpoint != null)
+        {
+            save(checkpoint);
+        }
+        return best;
+    }//step
+
+    /**
+     * cut
+     *
+     * Stops the candidates that are clearly not going to be elite: those
+     * that have removed well under as many rows as the elite-th best of the
+     * candidates still playing.
+     *
+     * @param plays the candidates still playing, all after the same game
+     * @param elite the size of the elite
+     * @param played the games each has played
+     * @return the candidates that play on
+     */
+    private List<Play> cut(List<Play> plays, int elite, int played)
+    {
+        if ((margin < 0) || (plays.size() <= elite))
+        {
+            return plays;
+        }
+        long[] after = new long[plays.size()];
+        for (int i = 0; i < after.length; ++i)
+        {
+            after[i] = plays.get(i).candidate.total[played - 1];
+        }
+        Arrays.sort(after);
+        long cutoff = after[after.length - elite];
+
+        List<Play> kept = new ArrayList<Play>();
+        for (Play play : plays)
+        {
+            if (play.candidate.total[played - 1] < (1 - margin) * cutoff)
+            {
+                play.candidate.stopped = true;
+            }
+            else
+            {
+                kept.add(play);
+            }
+        }
+        return kept;
+    }//cut
+
+    /**
+     * update
+     *
+     * Moves the distribution towards the mean and spread of the elite.
+     */
+    private void update(List<Candidate> elite)
+    {
+        double noise = NOISE * Math.max(0, 1 - (double) generation / NOISE_GENERATIONS);
+        for (int f = 0; f < mean.length; ++f)
+        {
+            double sum = 0;
+            for (Candidate candidate : elite)
+            {
+                sum += candidate.weights[f];
+            }
+            double eliteMean = sum / elite.size();
+            double squares = 0;
+            for (Candidate candidate : elite)
+            {
+                double d = candidate.weights[f] - eliteMean;
+                squares += d * d;
+            }
+            double eliteStddev = Math.sqrt(squares / elite.size() + noise);
+            mean[f] = SMOOTHING * mean[f] + (1 - SMOOTHING) * eliteMean;
+            stddev[f] = SMOOTHING * stddev[f] + (1 - SMOOTHING) * eliteStddev;
+        }
+    }//update
+
+    /**
+     * save
+     *
+     * Writes the tuner's state to a file, replacing it atomically.
+     */
+    public void save(Path path) throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        lines.add(MAGIC);
+        lines.add("seed " + seed);
+        lines.add("generation " + generation);
+        lines.add("mean " + format(mean));
+        lines.add("stddev " + format(stddev));
+        for (String best : history)
+        {
+            lines.add("best " + best);
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try
+        {
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }//save
+
+    /**
+     * load
+     *
+     * Picks up where the tuner that wrote a checkpoint file left off: its
+     * seed, its distribution and the generations it has done.
+     */
+    public void load(Path path) throws IOException
+    {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(MAGIC))
+        {
+            throw new IOException(path + " is not a WeightTuner checkpoint");
+        }
+        history.clear();
+        for (String line : lines.subList(1, lines.size()))
+        {
+            int space = line.indexOf(' ');
+            String key = (space < 0) ? line : line.substring(0, space);
+            String value = (space < 0) ? "" : line.substring(space + 1);
+            try
+            {
+                switch (key)
+                {
+                    case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+
+                    case "generation":
+                    generation = Integer.parseInt(value);
+                    break;
+
+                    case "mean":
+                    mean = parse(value);
+                    break;
+
+                    case "stddev":
+                    stddev = parse(value);
+                    break;
+
+                    case "best":
+                    history.add(value);
+                    break;
+
+                    default:
+                    throw new IOException("unknown line in " + path + ": " + line);
+                }//switch
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException("bad line in " + path + ": " + line, e);
+            }
+        }
+    }//load
+
+    /**
+     * parse
+     *
+     * @return the weights in a line of a checkpoint
+     */
+    private static double[] parse(String text) throws IOException
+    {
+        String[] words = text.trim().split(" +");
+        if (words.length != WeightedHeuristic.NUM_FEATURES)
+        {
+            throw new IOException("expected " + WeightedHeuristic.NUM_FEATURES
+                + " weights: " + text);
+        }
+        double[] weights = new double[words.length];
+        for (int f = 0; f < words.length; ++f)
+        {
+            weights[f] = Double.parseDouble(words[f]);
+        }
+        return weights;
+    }//parse
+
+    /**
+     * format
+     *
+     * @return numbers separated by spaces, exactly enough to read back
+     */
+    private static String format(double... values)
+    {
+        StringBuilder text = new StringBuilder();
+        for (double value : values)
+        {
+            if (text.length() > 0)
+            {
+                text.append(' ');
+            }
+            text.append(value);
+        }
+        return text.toString();
+    }//format
+
+    private static String format(double score, double[] weights)
+    {
+        return score + " " + format(weights);
+    }
+
+    /**
+     * Class Candidate - one weight vector of a generation and how it played.
+     */
+    public static class Candidate
+    {
+        private final double[] weights;
+
+        //the rows removed after each game played, summed
+        private final long[] total;
+        private int played = 0;
+        private volatile boolean stopped = false;
+
+        Candidate(double[] weights, int games)
+        {
+            this.weights = weights;
+            this.total = new long[games];
+        }
+
+        /**
+         * @return a copy of the weights, indexed by the feature constants of
+         *         WeightedHeuristic
+         */
+        public double[] getWeights()
+        {
+            return weights.clone();
+        }
+
+        /**
+         * @return the mean rows removed per game played
+         */
+        public double getScore()
+        {
+            return (played == 0) ? 0 : (double) total[played - 1] / played;
+        }
+
+        /**
+         * @return the number of games played
+         */
+        public int getPlayed()
+        {
+            return played;
+        }
+
+        /**
+         * @return true if the candidate was stopped before all its games
+         */
+        public boolean isStopped()
+        {
+            return stopped;
+        }
+
+        public String toString()
+        {
+            return String.format("%.2f rows per game with %s%s", getScore(),
+                new WeightedHeuristic(weights), stopped ? " (stopped)" : "");
+        }
+    }//class Candidate
+
+    /**
+     * Plays the games of one candidate, a round at a time.
+     */
+    private class Play extends RecursiveAction
+    {
+        private Candidate candidate;
+        private long[] seeds;
+
+        //the games to have played by the end of the round
+        private int end = 0;
+
+        //made when the first round starts, and kept for the rest
+        private MintrisEngine engine = null;
+        private AutoPlayer player = null;
+
+        Play(Candidate candidate, long[] seeds)
+        {
+            this.candidate = candidate;
+            this.seeds = seeds;
+        }
+
+        /**
+         * playUntil
+         *
+         * Readies the task to play the next round.
+         *
+         * @param end the games to have played by the end of the round
+         */
+        void playUntil(int end)
+        {
+            this.end = end;
+            reinitialize();
+        }
+
+        protected void compute()
+        {
+            if (engine == null)
+            {
+                engine = new MintrisEngine(MintrisEngine.NUM_ROWS, MintrisEngine.NUM_COLS,
+                    new SplitPieceGenerator(SplitPieceGenerator.Distribution.UNIFORM),
+                    PieceQueue.DEFAULT_LOOKAHEAD);
+                player = new AutoPlayer(new WeightedHeuristic(candidate.weights),
+                    lookahead, pool);
+            }
+            long sum = (candidate.played == 0) ? 0 : candidate.total[candidate.played - 1];
+            for (int g = candidate.played; g < end; ++g)
+            {
+                engine.newGame(seeds[g]);
+                player.newGame(seeds[g]);
+                Simulator.playGame(engine, player, maxPieces);
+                sum += engine.getScore();
+                candidate.total[g] = sum;
+                candidate.played = g + 1;
+            }
+        }
+    }//class Play
+
+    /**
+     * Runs the plays of a generation in the pool.
+     */
+    private static class PlayAll extends RecursiveAction
+    {
+        private List<Play> plays;
+
+        PlayAll(List<Play> plays)
+        {
+            this.plays = plays;
+        }
+
+        protected void compute()
+        {
+            invokeAll(plays);
+        }
+    }//class PlayAll
+
+    /**
+     * This method tunes the weights and prints the best candidate of every
+     * generation.  If the checkpoint file exists, tuning picks up where it
+     * left off.
+     *
+     * @param args the checkpoint file (default tuner.txt), the generations
+     *             to run (default 20), the candidates per generation (default
+     *             100), the games per candidate (default 20), the most
+     *             pieces per game (default 2000), the seed (default 1), the
+     *             lookahead of the players (default 0) and the number of
+     *             threads (default one per core)
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Path path = Paths.get((args.length > 0) ? args[0] : "tuner.txt");
+        int generations = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int population = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+        int games = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+        int maxPieces = (args.length > 4) ? Integer.parseInt(args[4]) : 2000;
+        long seed = (args.length > 5) ? Long.parseLong(args[5]) : 1;
+        int lookahead = (args.length > 6) ? Integer.parseInt(args[6]) : 0;
+        int threads = (args.length > 7) ? Integer.parseInt(args[7])
+            : Runtime.getRuntime().availableProcessors();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        WeightTuner tuner = new WeightTuner(pool, population, games, maxPieces, seed);
+        tuner.setLookahead(lookahead);
+        tuner.setCheckpoint(path);
+        if (Files.exists(path))
+        {
+            tuner.load(path);
+            System.out.println("resuming " + path + " after generation "
+                + (tuner.getGeneration() - 1));
+        }
+
+        while (tuner.getGeneration() < generations)
+        {
+            long start = System.nanoTime();
+            Candidate best = tuner.step();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("generation %d: %s (%d of %d stopped early, %.1f s)%n",
+                tuner.getGeneration() - 1, best, tuner.getStopped(), population, seconds);
+            System.out.println("  mean " + new WeightedHeuristic(tuner.getMean())
+                + "; stddev " + format(tuner.getStddev()));
+        }
+        pool.shutdown();
+    }//main
+
+}//class WeightTuner
@@ -0,0 +1,125 @@
+/**
+ * Class WeightedHeuristic - scores a field as a weighted sum of four
+ * features: aggregate column height, lines cleared, holes (empty cells
+ * below the top block of their column) and bumpiness (the sum of height
+ * differences between neighbouring columns).
+ */
+public class WeightedHeuristic implements Heuristic
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    //The features, in the order of the weights
+    public static final int HEIGHT    = 0;
+    public static final int LINES     = 1;
+    public static final int HOLES     = 2;
+    public static final int BUMPINESS = 3;
+    public static final int NUM_FEATURES = 4;
+
+    //weights that play a reasonable game: low, flat, few holes
+    public static final WeightedHeuristic DEFAULT =
+        new WeightedHeuristic(-0.51, 0.76, -0.36, -0.18);
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    private double[] weights;
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * WeightedHeuristic
+     *
+     * @param height weight of the aggregate column height
+     * @param lines weight of the number of lines cleared
+     * @param holes weight of the number of holes
+     * @param bumpiness weight of the bumpiness
+     */
+    public WeightedHeuristic(double height, double lines, double holes, double bumpiness)
+    {
+        this(new double[] { height, lines, holes, bumpiness });
+    }
+
+    /**
+     * WeightedHeuristic
+     *
+     * @param weights one weight per feature, indexed by the feature constants
+     */
+    public WeightedHeuristic(double[] weights)
+    {
+        if (weights.length != NUM_FEATURES)
+        {
+            throw new IllegalArgumentException("expected " + NUM_FEATURES
+                + " weights, got " + weights.length);
+        }
+        this.weights = weights.clone();
+    }
+
+    /**
+     * @return a copy of the weights, indexed by the feature constants
+     */
+    public double[] getWeights()
+    {
+        return weights.clone();
+    }
+
+    /**
+     * evaluate
+     *
+     * @see Heuristic#evaluate
+     */
+    public double evaluate(int[] rows, int linesCleared)
+    {
+        int numCols = MintrisEngine.NUM_COLS;
+        int seen = 0;       //columns that have a block at or above this row
+        int holes = 0;
+        int height = 0;
+        int bumpiness = 0;
+        int prevHeight = -1;
+
+        //holes: empty cells in columns that already had a block above
+        for (int r = 0; r < rows.length; ++r)
+        {
+            holes += Integer.bitCount(seen & ~rows[r]);
+            seen |= rows[r];
+        }
+
+        //heights: the first row from the top with a block in each column
+        for (int c = 0; c < numCols; ++c)
+        {
+            int h = 0;
+            for (int r = 0; r < rows.length; ++r)
+            {
+                if ((rows[r] & (1 << c)) != 0)
+                {
+                    h = rows.length - r;
+                    break;
+                }
+            }
+            height += h;
+            if (prevHeight >= 0)
+            {
+                bumpiness += Math.abs(h - prevHeight);
+            }
+            prevHeight = h;
+        }
+
+        return weights[HEIGHT] * height
+            + weights[LINES] * linesCleared
+            + weights[HOLES] * holes
+            + weights[BUMPINESS] * bumpiness;
+    }//evaluate
+
+    public String toString()
+    {
+        return "height " + weights[HEIGHT] + ", lines " + weights[LINES]
+            + ", holes " + weights[HOLES] + ", bumpiness " + weights[BUMPINESS];
+    }
+
+}//class WeightedHeuristic
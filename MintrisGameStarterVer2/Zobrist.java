@@ -0,0 +1,160 @@
+import java.util.*;
+
+/**
+ * Class Zobrist - Zobrist hashing of the occupancy of a Mintris field.
+ *
+ * Every cell has a random 64-bit key, and the hash of a field is the XOR of
+ * the keys of its filled cells.  Filling or emptying a cell therefore
+ * changes the hash by one XOR, which lets a board keep its hash up to date
+ * as it changes.  Colors are not hashed: two fields with the same blocks
+ * in different colors play the same.
+ *
+ * The keys come from a fixed seed, so hashes are the same in every run and
+ * can be compared across games and processes.  The cells of the standard
+ * field have their keys in a table; cells of larger fields (see
+ * {@link BitBoard}) get theirs by mixing the row and column.
+ */
+public class Zobrist
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    private static final int NUM_ROWS = MintrisEngine.NUM_ROWS;
+    private static final int NUM_COLS = MintrisEngine.NUM_COLS;
+
+    //one key per cell, row by row
+    private static final long[] KEYS = new long[NUM_ROWS * NUM_COLS];
+
+    static
+    {
+        SplittableRandom randGen = new SplittableRandom(0x5EED2B15L);
+        for (int i = 0; i < KEYS.length; ++i)
+        {
+            KEYS[i] = randGen.nextLong();
+        }
+    }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    private Zobrist()
+    {
+    }
+
+    /**
+     * cellKey
+     *
+     * @return the key of one cell
+     */
+    public static long cellKey(int row, int col)
+    {
+        if ((row < NUM_ROWS) && (col < NUM_COLS))
+        {
+            return KEYS[row * NUM_COLS + col];
+        }
+        return withContext(0x5EED2B15L, row, col);
+    }//cellKey
+
+    /**
+     * wordKey
+     *
+     * @param row the row of the cells
+     * @param word which 64 columns of the row
+     * @param bits the columns of the cells within the word
+     * @return the XOR of the keys of the given cells of a row
+     */
+    public static long wordKey(int row, int word, long bits)
+    {
+        long key = 0;
+        int first = word << 6;
+        while (bits != 0)
+        {
+            key ^= cellKey(row, first + Long.numberOfTrailingZeros(bits));
+            bits &= bits - 1;
+        }
+        return key;
+    }//wordKey
+
+    /**
+     * rowKey
+     *
+     * @param row the row of the cells
+     * @param bits the columns of the cells, as a row mask
+     * @return the XOR of the keys of the given cells of a row
+     */
+    public static long rowKey(int row, int bits)
+    {
+        long key = 0;
+        int base = row * NUM_COLS;
+        while (bits != 0)
+        {
+            key ^= KEYS[base + Integer.numberOfTrailingZeros(bits)];
+            bits &= bits - 1;
+        }
+        return key;
+    }//rowKey
+
+    /**
+     * hash
+     *
+     * @param rows the occupancy mask of each row of a field
+     * @return the hash of the field
+     */
+    public static long hash(int[] rows)
+    {
+        long hash = 0;
+        for (int row = 0; row < NUM_ROWS; ++row)
+        {
+            hash ^= rowKey(row, rows[row]);
+        }
+        return hash;
+    }//hash
+
+    /**
+     * update
+     *
+     * Works out the hash of a field from the hash of another one, looking
+     * only at the rows in which they differ.
+     *
+     * @param hash the hash of the first field
+     * @param before the rows of the first field
+     * @param after the rows of the second field
+     * @return the hash of the second field
+     */
+    public static long update(long hash, int[] before, int[] after)
+    {
+        for (int row = 0; row < NUM_ROWS; ++row)
+        {
+            int changed = before[row] ^ after[row];
+            if (changed != 0)
+            {
+                hash ^= rowKey(row, changed);
+            }
+        }
+        return hash;
+    }//update
+
+    /**
+     * withContext
+     *
+     * Mixes more of the state of a search into the hash of a field, so that
+     * the same field reached in different circumstances gets a different
+     * key.
+     *
+     * @param hash the hash of a field
+     * @param a, b small numbers describing the search, e.g. the depth left
+     *             and the lines cleared so far
+     * @return a key for a transposition cache
+     */
+    public static long withContext(long hash, int a, int b)
+    {
+        long mixed = hash ^ (a * 0x9E3779B97F4A7C15L) ^ (b * 0xC2B2AE3D27D4EB4FL);
+        mixed = (mixed ^ (mixed >>> 33)) * 0xFF51AFD7ED558CCDL;
+        return mixed ^ (mixed >>> 33);
+    }//withContext
+
+}//class Zobrist
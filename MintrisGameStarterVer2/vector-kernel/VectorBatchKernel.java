@@ -0,0 +1,263 @@
+import jdk.incubator.vector.*;
+
+/**
+ * Class VectorBatchKernel - the kernels of a {@link BoardBatch} written with
+ * the Vector API, so that each instruction works on as many fields as the
+ * processor's vectors hold: sixteen with 256-bit vectors.
+ *
+ * The rows of a batch are loaded as longs and looked at as shorts, one
+ * field to a short, in the order of the fields.  Full rows and collisions
+ * are lane comparisons; holes are counted with a popcount of each lane; and
+ * the column heights are counted with a five-bit counter per column kept as
+ * five bit planes, to which each row adds the columns that have had a block
+ * so far.  Nothing is looked at one field at a time.
+ *
+ * The class needs the incubator module jdk.incubator.vector, at compile
+ * time and at run time.  It lives apart from the other classes so that
+ * BlueJ, which does not add the module, never compiles it; Maven compiles
+ * it with --add-modules jdk.incubator.vector.  BoardBatch only loads it
+ * when the module is there (run with --add-modules jdk.incubator.vector),
+ * and uses its own kernels otherwise.
+ */
+class VectorBatchKernel implements BoardBatch.Kernel
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    private static final int NUM_ROWS = MintrisEngine.NUM_ROWS;
+    private static final int NUM_COLS = MintrisEngine.NUM_COLS;
+    private static final short FULL_ROW = (short) BitBoard.FULL_ROW;
+
+    //the rows are loaded as longs and worked on as shorts of the same size
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+
+    //fields in a long
+    private static final int FIELDS_PER_LONG = Long.SIZE / Short.SIZE;
+
+    //bit planes enough to count to NUM_ROWS
+    private static final int PLANES = Integer.SIZE - Integer.numberOfLeadingZeros(NUM_ROWS);
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * VectorBatchKernel
+     *
+     * Called by BoardBatch through reflection.
+     */
+    VectorBatchKernel()
+    {
+        if (LONGS.vectorBitSize() != SHORTS.vectorBitSize())
+        {
+            throw new IllegalStateException("the preferred long and short vectors differ in size");
+        }
+    }
+
+    /**
+     * @see BoardBatch.Kernel#longsPerVector
+     */
+    public int longsPerVector()
+    {
+        return LONGS.length();
+    }
+
+    /**
+     * load
+     *
+     * @return row r of the fields of the vector at long w, a field a lane
+     */
+    private static ShortVector load(long[] rows, int words, int r, int w)
+    {
+        return LongVector.fromArray(LONGS, rows, r * words + w).reinterpretAsShorts();
+    }
+
+    /**
+     * @see BoardBatch.Kernel#countFullRows
+     */
+    public void countFullRows(long[] rows, int words, short[] into)
+    {
+        for (int w = 0; w < words; w += LONGS.length())
+        {
+            ShortVector count = ShortVector.zero(SHORTS);
+            for (int r = 0; r < NUM_ROWS; ++r)
+            {
+                count = count.add((short) 1, load(rows, words, r, w).compare(VectorOperators.EQ, FULL_ROW));
+            }
+            count.intoArray(into, w * FIELDS_PER_LONG);
+        }
+    }//countFullRows
+
+    /**
+     * fit
+     *
+     * @return the lanes of the vector at long w where a piece fits
+     */
+    private static VectorMask<Short> fit(long[] rows, int words, int row, int w,
+                                         short upper, short lower)
+    {
+        return load(rows, words, row, w).and(upper)
+            .or(load(rows, words, row + 1, w).and(lower))
+            .compare(VectorOperators.EQ, (short) 0);
+    }//fit
+
+    /**
+     * @see BoardBatch.Kernel#fits
+     */
+    public void fits(long[] rows, int words, int row, int upper, int lower, boolean[] into)
+    {
+        for (int w = 0; w < words; w += LONGS.length())
+        {
+            fit(rows, words, row, w, (short) upper, (short) lower)
+                .intoArray(into, w * FIELDS_PER_LONG);
+        }
+    }//fits
+
+    /**
+     * @see BoardBatch.Kernel#drop
+     */
+    public void drop(long[] rows, int words, int row, int upper, int lower, short[] into)
+    {
+        for (int w = 0; w < words; w += LONGS.length())
+        {
+            //count the rows each piece falls, for as long as any still falls
+            VectorMask<Short> start = fit(rows, words, row, w, (short) upper, (short) lower);
+            VectorMask<Short> falling = start;
+            ShortVector rest = ShortVector.broadcast(SHORTS, (short) row);
+            for (int r = row + 1; (r <= NUM_ROWS - 2) && falling.anyTrue(); ++r)
+            {
+                falling = falling.and(fit(rows, words, r, w, (short) upper, (short) lower));
+                rest = rest.add((short) 1, falling);
+            }
+            ShortVector.broadcast(SHORTS, (short) -1).blend(rest, start)
+                .intoArray(into, w * FIELDS_PER_LONG);
+        }
+    }//drop
+
+    /**
+     * @see BoardBatch.Kernel#countHoles
+     */
+    public void countHoles(long[] rows, int words, short[] into)
+    {
+        for (int w = 0; w < words; w += LONGS.length())
+        {
+            ShortVector seen = ShortVector.zero(SHORTS);
+            ShortVector holes = ShortVector.zero(SHORTS);
+            for (int r = 0; r < NUM_ROWS; ++r)
+            {
+                ShortVector row = load(rows, words, r, w);
+                holes = holes.add(bitCounts(seen.and(row.not())));
+                seen = seen.or(row);
+            }
+            holes.intoArray(into, w * FIELDS_PER_LONG);
+        }
+    }//countHoles
+
+    /**
+     * @see BoardBatch.Kernel#columnHeights
+     */
+    public void columnHeights(long[] rows, int words, short[] into)
+    {
+        ShortVector[] heights = new ShortVector[NUM_COLS];
+        int fields = words * FIELDS_PER_LONG;
+        for (int w = 0; w < words; w += LONGS.length())
+        {
+            heights(rows, words, w, heights);
+            for (int c = 0; c < NUM_COLS; ++c)
+            {
+                heights[c].intoArray(into, c * fields + w * FIELDS_PER_LONG);
+            }
+        }
+    }//columnHeights
+
+    /**
+     * @see BoardBatch.Kernel#surface
+     */
+    public void surface(long[] rows, int words, short[] height, short[] holes, short[] bumpiness)
+    {
+        ShortVector[] heights = new ShortVector[NUM_COLS];
+        for (int w = 0; w < words; w += LONGS.length())
+        {
+            ShortVector seen = ShortVector.zero(SHORTS);
+            ShortVector gaps = ShortVector.zero(SHORTS);
+            for (int r = 0; r < NUM_ROWS; ++r)
+            {
+                ShortVector row = load(rows, words, r, w);
+                gaps = gaps.add(bitCounts(seen.and(row.not())));
+                seen = seen.or(row);
+            }
+            gaps.intoArray(holes, w * FIELDS_PER_LONG);
+
+            heights(rows, words, w, heights);
+            ShortVector sum = heights[0];
+            ShortVector bumps = ShortVector.zero(SHORTS);
+            for (int c = 1; c < NUM_COLS; ++c)
+            {
+                sum = sum.add(heights[c]);
+                bumps = bumps.add(heights[c].sub(heights[c - 1]).abs());
+            }
+            sum.intoArray(height, w * FIELDS_PER_LONG);
+            bumps.intoArray(bumpiness, w * FIELDS_PER_LONG);
+        }
+    }//surface
+
+    /**
+     * heights
+     *
+     * Finds the heights of the columns of the fields of the vector at long
+     * w.  Going down the rows, every column that has had a block so far
+     * grows by one; the counters are bit planes, a column a bit, so one row
+     * adds to every column of every field at once.
+     *
+     * @param into receives the height of each column, a field a lane
+     */
+    private static void heights(long[] rows, int words, int w, ShortVector[] into)
+    {
+        ShortVector[] planes = new ShortVector[PLANES];
+        for (int p = 0; p < PLANES; ++p)
+        {
+            planes[p] = ShortVector.zero(SHORTS);
+        }
+        ShortVector seen = ShortVector.zero(SHORTS);
+        for (int r = 0; r < NUM_ROWS; ++r)
+        {
+            seen = seen.or(load(rows, words, r, w));
+            ShortVector carry = seen;
+            for (int p = 0; p < PLANES; ++p)
+            {
+                ShortVector next = planes[p].and(carry);
+                planes[p] = planes[p].lanewise(VectorOperators.XOR, carry);
+                carry = next;
+            }
+        }
+
+        for (int c = 0; c < NUM_COLS; ++c)
+        {
+            ShortVector height = ShortVector.zero(SHORTS);
+            for (int p = 0; p < PLANES; ++p)
+            {
+                height = height.or(planes[p].lanewise(VectorOperators.LSHR, c)
+                    .and((short) 1).lanewise(VectorOperators.LSHL, p));
+            }
+            into[c] = height;
+        }
+    }//heights
+
+    /**
+     * bitCounts
+     *
+     * @return the number of set bits of each lane
+     */
+    private static ShortVector bitCounts(ShortVector x)
+    {
+        x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and((short) 0x5555));
+        x = x.and((short) 0x3333).add(x.lanewise(VectorOperators.LSHR, 2).and((short) 0x3333));
+        x = x.add(x.lanewise(VectorOperators.LSHR, 4)).and((short) 0x0F0F);
+        return x.add(x.lanewise(VectorOperators.LSHR, 8)).and((short) 0x00FF);
+    }//bitCounts
+
+}//class VectorBatchKernel
@@ -0,0 +1,318 @@
+package mintris.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Class MintrisBenchmark - JMH benchmarks for the Mintris engine and view.
+ *
+ * Each benchmark runs against one of several board layouts.  Throughput
+ * gives ops/sec and SampleTime gives the latency percentiles; add the gc
+ * profiler for the allocation rate:
+ *
+ *      mvn -B package
+ *      java -jar benchmarks/target/benchmarks.jar -prof gc
+ *
+ * The game classes live in the default package, which cannot be imported
+ * from here (and JMH refuses benchmarks in the default package), so they
+ * are reached through constant method handles that the JIT inlines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class MintrisBenchmark
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+
+    private static final int LEFT = -1;
+    private static final int DOWN = 0;
+    private static final int RIGHT = 1;
+
+    private static final int RED_BLOCK = 1;
+    private static final int BLUE_BLOCK = 3;
+    private static final int EMPTY = 4;
+
+    //where the benchmarks put the piece they move around
+    private static final int PIECE_ROW = 0;
+    private static final int PIECE_COL = 3;
+
+    //the seed of every trial's game, so that each trial starts alike
+    private static final long SEED = 42;
+
+    private static final MethodHandle NEW_VIEW;
+    private static final MethodHandle GET_ENGINE;
+    private static final MethodHandle GET_LOOP;
+    private static final MethodHandle PUBLISH;
+    private static final MethodHandle PAINT;
+    private static final MethodHandle NEW_GAME;
+    private static final MethodHandle STEP;
+    private static final MethodHandle SET_CELL;
+    private static final MethodHandle MOVE;
+    private static final MethodHandle VALID_MOVE;
+    private static final MethodHandle ROTATE;
+    private static final MethodHandle REMOVE_ROWS;
+    private static final MethodHandle CLEAR_PIECE;
+    private static final MethodHandle CREATE_RANDOM_PIECE;
+    private static final MethodHandle GET_CURR_COL;
+    private static final MethodHandle NUM_ROWS;
+    private static final MethodHandle NUM_COLS;
+    private static final MethodHandle WINDOW_WIDTH;
+    private static final MethodHandle WINDOW_HEIGHT;
+    private static final Object TEST_LAYOUT;
+
+    static
+    {
+        try
+        {
+            Class<?> view = Class.forName("Mintris");
+            Class<?> engine = Class.forName("MintrisEngine");
+            Class<?> action = Class.forName("MintrisEngine$Action");
+            Class<?> loop = Class.forName("GameLoop");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+            NEW_VIEW = lookup.findConstructor(view, MethodType.methodType(void.class))
+                .asType(MethodType.methodType(Object.class));
+            GET_ENGINE = virtual(view, "getEngine", engine);
+            GET_LOOP = virtual(view, "getLoop", loop);
+            PUBLISH = virtual(loop, "publish", void.class);
+            PAINT = virtual(view, "paint", void.class, java.awt.Graphics.class);
+            NEW_GAME = virtual(engine, "newGame", void.class, long.class);
+            STEP = virtual(engine, "step", void.class, action);
+            SET_CELL = virtual(engine, "setCell", void.class, int.class, int.class, int.class);
+            MOVE = virtual(engine, "move", void.class, int.class, int.class, int.class);
+            VALID_MOVE = virtual(engine, "validMove", boolean.class, int.class, int.class, int.class);
+            ROTATE = virtual(engine, "rotate", void.class, int.class, int.class);
+            REMOVE_ROWS = virtual(engine, "removeRows", void.class);
+            CLEAR_PIECE = virtual(engine, "clearPiece", void.class);
+            CREATE_RANDOM_PIECE = virtual(engine, "createRandomPiece", void.class);
+            GET_CURR_COL = virtual(engine, "getCurrCol", int.class);
+            NUM_ROWS = lookup.findStaticGetter(engine, "NUM_ROWS", int.class);
+            NUM_COLS = lookup.findStaticGetter(engine, "NUM_COLS", int.class);
+            WINDOW_WIDTH = lookup.findStaticGetter(view, "WINDOW_WIDTH", int.class);
+            WINDOW_HEIGHT = lookup.findStaticGetter(view, "WINDOW_HEIGHT", int.class);
+            TEST_LAYOUT = action.getField("TEST_LAYOUT").get(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * The board layouts the benchmarks run against.
+     */
+    public enum Layout
+    {
+        EMPTY,          //nothing but the piece
+        HALF_FULL,      //the bottom half filled, one hole per row
+        NEAR_TOP,       //filled up to just below the piece
+        TEST_LAYOUT     //the 'T' key layout
+    }
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    @Param
+    public Layout layout;
+
+    private Object view;
+    private Object engine;
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private int pieceCol;
+    private int rows;
+    private int cols;
+
+    /*======================================================================
+     * Setup
+     *----------------------------------------------------------------------
+     */
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable
+    {
+        view = (Object) NEW_VIEW.invokeExact();
+        engine = (Object) GET_ENGINE.invokeExact(view);
+        rows = (int) NUM_ROWS.invokeExact();
+        cols = (int) NUM_COLS.invokeExact();
+        image = new BufferedImage((int) WINDOW_WIDTH.invokeExact(),
+            (int) WINDOW_HEIGHT.invokeExact(), BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+
+        NEW_GAME.invokeExact(engine, SEED);
+        if (layout == Layout.TEST_LAYOUT)
+        {
+            STEP.invokeExact(engine, TEST_LAYOUT);
+        }
+        else
+        {
+            int top = (layout == Layout.HALF_FULL) ? rows / 2
+                    : (layout == Layout.NEAR_TOP) ? 3
+                    : rows;
+            fill(top);
+        }
+
+        //replace the spawned piece with one at a known position: an
+        //L-shape (lower-right empty) that can move left, right and down.
+        //The engine forgets its own piece, which could have spawned at the
+        //same place, so that the L is what gets moved
+        for (int row = 0; row < 3; ++row)
+        {
+            for (int col = 0; col < cols; ++col)
+            {
+                SET_CELL.invokeExact(engine, row, col, EMPTY);
+            }
+        }
+        SET_CELL.invokeExact(engine, PIECE_ROW, PIECE_COL, RED_BLOCK);
+        SET_CELL.invokeExact(engine, PIECE_ROW, PIECE_COL + 1, RED_BLOCK);
+        SET_CELL.invokeExact(engine, PIECE_ROW + 1, PIECE_COL, RED_BLOCK);
+        CLEAR_PIECE.invokeExact(engine);
+        pieceCol = PIECE_COL;
+        REMOVE_ROWS.invokeExact(engine);
+
+        //the view paints the frames its game loop publishes; the loop is
+        //not started, so publish this one by hand
+        PUBLISH.invokeExact((Object) GET_LOOP.invokeExact(view));
+    }//setUp
+
+    /**
+     * fill
+     *
+     * Fills every row from top to the bottom with blocks, leaving one
+     * pseudo-random hole per row so that no row is complete.
+     */
+    private void fill(int top) throws Throwable
+    {
+        Random rand = new Random(42);
+        for (int row = top; row < rows; ++row)
+        {
+            int hole = rand.nextInt(cols);
+            for (int col = 0; col < cols; ++col)
+            {
+                if ((col != hole) && (rand.nextInt(4) != 0))
+                {
+                    SET_CELL.invokeExact(engine, row, col, BLUE_BLOCK);
+                }
+            }
+        }
+    }//fill
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        graphics.dispose();
+    }
+
+    /*======================================================================
+     * Benchmarks
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * Moves the piece left and back again, so the board ends where it began.
+     * Each move also looks for complete rows.
+     */
+    @Benchmark
+    public void moveLeftRight() throws Throwable
+    {
+        MOVE.invokeExact(engine, PIECE_ROW, PIECE_COL, LEFT);
+        MOVE.invokeExact(engine, PIECE_ROW, PIECE_COL - 1, RIGHT);
+    }
+
+    @Benchmark
+    public void validMove(Blackhole bh) throws Throwable
+    {
+        bh.consume((boolean) VALID_MOVE.invokeExact(engine, PIECE_ROW, PIECE_COL, LEFT));
+        bh.consume((boolean) VALID_MOVE.invokeExact(engine, PIECE_ROW, PIECE_COL, RIGHT));
+        bh.consume((boolean) VALID_MOVE.invokeExact(engine, PIECE_ROW, PIECE_COL, DOWN));
+    }
+
+    @Benchmark
+    public void rotate() throws Throwable
+    {
+        ROTATE.invokeExact(engine, PIECE_ROW, PIECE_COL);
+    }
+
+    /**
+     * Marks the top and bottom rows as changed, then looks for complete rows
+     * over the whole field in between.
+     */
+    @Benchmark
+    public void removeRows() throws Throwable
+    {
+        SET_CELL.invokeExact(engine, PIECE_ROW, PIECE_COL, RED_BLOCK);
+        SET_CELL.invokeExact(engine, rows - 1, 0, EMPTY);
+        REMOVE_ROWS.invokeExact(engine);
+    }
+
+    /**
+     * Takes the last piece off the top of the field and creates a new one.
+     */
+    @Benchmark
+    public void createRandomPiece() throws Throwable
+    {
+        SET_CELL.invokeExact(engine, 0, pieceCol, EMPTY);
+        SET_CELL.invokeExact(engine, 0, pieceCol + 1, EMPTY);
+        SET_CELL.invokeExact(engine, 1, pieceCol, EMPTY);
+        SET_CELL.invokeExact(engine, 1, pieceCol + 1, EMPTY);
+        CREATE_RANDOM_PIECE.invokeExact(engine);
+        pieceCol = (int) GET_CURR_COL.invokeExact(engine);
+    }
+
+    /**
+     * Paints the whole window into an offscreen image.
+     */
+    @Benchmark
+    public void paint() throws Throwable
+    {
+        PAINT.invokeExact(view, (Object) graphics);
+    }
+
+    /*======================================================================
+     * Helpers
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * virtual
+     *
+     * Looks up a public instance method and erases its reference types to
+     * Object, so it can be called with invokeExact from this package.
+     */
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returns,
+                                        Class<?>... params)
+        throws ReflectiveOperationException
+    {
+        MethodHandle handle = MethodHandles.publicLookup()
+            .findVirtual(owner, name, MethodType.methodType(returns, params));
+        return handle.asType(handle.type().erase());
+    }//virtual
+
+}//class MintrisBenchmark